@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import freemarker.log.Logger;
+import freemarker.template.Configuration;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * A {@link TemplateLoader} that wraps another {@link TemplateLoader}, and keeps an in-memory index of the names of
+ * the templates that exist, so that lookups of templates that surely don't exist can be answered without I/O. That's
+ * useful as with {@linkplain Configuration#setLocalizedLookup(boolean) localized lookup}, and with acquisition (names
+ * containing {@code "*"} steps), most {@link #findTemplateSource(String)} calls are for names that don't exist (like
+ * {@code foo_en_US.ftl} and {@code foo_en.ftl}, before {@code foo.ftl} is found). If the name is in the index, the
+ * lookup is delegated to the wrapped {@link TemplateLoader} as usual.
+ *
+ * <p>The index can be built for these {@link TemplateLoader}-s:
+ * <ul>
+ *   <li>{@link FileTemplateLoader}: All files under the {@linkplain FileTemplateLoader#baseDir base directory} are
+ *       indexed.
+ *   <li>{@link ClassTemplateLoader}: The directory that corresponds to the base package is listed in all class
+ *       path entries, where it's in a directory or in a jar file. Note that jar files that lack directory entries
+ *       aren't found this way (as {@link ClassLoader#getResources(String)} won't return them), so templates in such
+ *       jar files would be seen as missing. Class path entries accessed with any other URL protocol (like in some
+ *       application servers) make the loader non-indexable.
+ *   <li>{@link MultiTemplateLoader}: The index is the union of the indexes of the loaders inside it, which therefore
+ *       all have to be indexable.
+ * </ul>
+ * If the wrapped {@link TemplateLoader} is not indexable (see {@link #isIndexed()}), all lookups are simply
+ * delegated to it.
+ *
+ * <p>The index is a snapshot, so templates added after it was built are seen as missing until the index is
+ * refreshed. That happens when {@link #refreshIndex()} is called, when {@link Configuration#clearTemplateCache()}
+ * is called (via {@link #resetState()}), and automatically if the index gets older than
+ * {@link #setIndexMaxAge(long) indexMaxAge}. Template removals and modifications need no refresh, as those are
+ * handled by the wrapped {@link TemplateLoader}. Names are matched case-sensitively, even on a case-insensitive file
+ * system.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @since 2.3.33
+ */
+public class IndexedTemplateLoader implements StatefulTemplateLoader {
+
+    private static final Logger LOG = Logger.getLogger("freemarker.cache");
+
+    private final TemplateLoader templateLoader;
+    private volatile long indexMaxAge = -1;
+    /** {@code null} if the index must be (re)built before the next lookup. */
+    private volatile Index index;
+
+    /**
+     * @param templateLoader
+     *            The {@link TemplateLoader} whose templates are indexed, and to which the lookups of the templates
+     *            that exist are delegated.
+     */
+    public IndexedTemplateLoader(TemplateLoader templateLoader) {
+        NullArgumentException.check("templateLoader", templateLoader);
+        this.templateLoader = templateLoader;
+    }
+
+    @Override
+    public Object findTemplateSource(String name) throws IOException {
+        Set<String> templateNames = getIndex().templateNames;
+        if (templateNames != null && !templateNames.contains(name)) {
+            return null;
+        }
+        return templateLoader.findTemplateSource(name);
+    }
+
+    @Override
+    public long getLastModified(Object templateSource) {
+        return templateLoader.getLastModified(templateSource);
+    }
+
+    @Override
+    public Reader getReader(Object templateSource, String encoding) throws IOException {
+        return templateLoader.getReader(templateSource, encoding);
+    }
+
+    @Override
+    public void closeTemplateSource(Object templateSource) throws IOException {
+        templateLoader.closeTemplateSource(templateSource);
+    }
+
+    /**
+     * Discards the index (it will be rebuilt on the next lookup), and resets the state of the wrapped
+     * {@link TemplateLoader}, if that's a {@link StatefulTemplateLoader}.
+     */
+    @Override
+    public void resetState() {
+        index = null;
+        if (templateLoader instanceof StatefulTemplateLoader) {
+            ((StatefulTemplateLoader) templateLoader).resetState();
+        }
+    }
+
+    /**
+     * Rebuilds the index immediately.
+     */
+    public void refreshIndex() {
+        synchronized (this) {
+            index = buildIndex();
+        }
+    }
+
+    /**
+     * Tells if the index could be built for the wrapped {@link TemplateLoader}. If not, all lookups are delegated to
+     * the wrapped {@link TemplateLoader}. Builds the index if it wasn't built yet.
+     */
+    public boolean isIndexed() {
+        return getIndex().templateNames != null;
+    }
+
+    /**
+     * Returns the names of the templates in the index, or {@code null} if the wrapped {@link TemplateLoader} is not
+     * indexable. Builds the index if it wasn't built yet.
+     */
+    public Set<String> getIndexedTemplateNames() {
+        return getIndex().templateNames;
+    }
+
+    /**
+     * The maximum age of the index in milliseconds; once the index is older than this, it will be rebuilt on the next
+     * lookup. Negative values mean that the index never expires, which is the default. The rebuilding blocks the
+     * lookups of all threads until it's done, so don't set this to too low for a big template directory.
+     */
+    public void setIndexMaxAge(long indexMaxAge) {
+        this.indexMaxAge = indexMaxAge;
+    }
+
+    /**
+     * Getter pair of {@link #setIndexMaxAge(long)}.
+     */
+    public long getIndexMaxAge() {
+        return indexMaxAge;
+    }
+
+    /**
+     * Returns the {@link TemplateLoader} that was passed to the constructor.
+     */
+    public TemplateLoader getTemplateLoader() {
+        return templateLoader;
+    }
+
+    private Index getIndex() {
+        Index index = this.index;
+        if (index == null || isExpired(index)) {
+            synchronized (this) {
+                index = this.index;
+                if (index == null || isExpired(index)) {
+                    index = buildIndex();
+                    this.index = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private boolean isExpired(Index index) {
+        long indexMaxAge = this.indexMaxAge;
+        return indexMaxAge >= 0 && System.currentTimeMillis() - index.creationTime > indexMaxAge;
+    }
+
+    private Index buildIndex() {
+        long creationTime = System.currentTimeMillis();
+        Set<String> templateNames = new HashSet<>();
+        try {
+            if (!addTemplateNames(templateLoader, templateNames)) {
+                templateNames = null;
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to build template name index for " + templateLoader
+                    + "; all lookups will be delegated to it until the next refresh.", e);
+            templateNames = null;
+        }
+        return new Index(templateNames != null ? Collections.unmodifiableSet(templateNames) : null, creationTime);
+    }
+
+    /**
+     * @return Whether the {@link TemplateLoader} was indexable.
+     */
+    private static boolean addTemplateNames(TemplateLoader templateLoader, Set<String> templateNames)
+            throws IOException {
+        if (templateLoader instanceof FileTemplateLoader) {
+            addFileNames(((FileTemplateLoader) templateLoader).baseDir, templateNames);
+            return true;
+        } else if (templateLoader instanceof ClassTemplateLoader) {
+            return addClassTemplateLoaderNames((ClassTemplateLoader) templateLoader, templateNames);
+        } else if (templateLoader instanceof MultiTemplateLoader) {
+            MultiTemplateLoader multiTemplateLoader = (MultiTemplateLoader) templateLoader;
+            for (int i = 0; i < multiTemplateLoader.getTemplateLoaderCount(); i++) {
+                if (!addTemplateNames(multiTemplateLoader.getTemplateLoader(i), templateNames)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private static boolean addClassTemplateLoaderNames(ClassTemplateLoader templateLoader, Set<String> templateNames)
+            throws IOException {
+        String basePackagePath = templateLoader.getBasePackagePath();
+        ClassLoader classLoader;
+        String baseDirPath;
+        Class<?> resourceLoaderClass = templateLoader.getResourceLoaderClass();
+        if (resourceLoaderClass != null) {
+            classLoader = resourceLoaderClass.getClassLoader();
+            if (basePackagePath.startsWith("/")) {
+                baseDirPath = basePackagePath.substring(1);
+            } else {
+                // Class.getResource resolves relative paths relatively to the package of the class:
+                String className = resourceLoaderClass.getName();
+                int lastDotIdx = className.lastIndexOf('.');
+                baseDirPath = lastDotIdx == -1
+                        ? basePackagePath
+                        : className.substring(0, lastDotIdx + 1).replace('.', '/') + basePackagePath;
+            }
+        } else {
+            classLoader = templateLoader.getClassLoader();
+            baseDirPath = basePackagePath;
+        }
+        if (classLoader == null) {
+            return false;
+        }
+        if (baseDirPath.isEmpty()) {
+            // ClassLoader.getResources("") doesn't return the roots of jar-s, so we can't index the root package.
+            return false;
+        }
+
+        Enumeration<URL> baseDirURLs = classLoader.getResources(
+                baseDirPath.endsWith("/") ? baseDirPath.substring(0, baseDirPath.length() - 1) : baseDirPath);
+        boolean foundBaseDir = false;
+        while (baseDirURLs.hasMoreElements()) {
+            URL baseDirURL = baseDirURLs.nextElement();
+            String protocol = baseDirURL.getProtocol();
+            if (protocol.equals("file")) {
+                try {
+                    addFileNames(new File(baseDirURL.toURI()), templateNames);
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    return logNotIndexable(templateLoader, baseDirURL);
+                }
+            } else if (protocol.equals("jar")) {
+                addJarEntryNames(baseDirURL, templateNames);
+            } else {
+                return logNotIndexable(templateLoader, baseDirURL);
+            }
+            foundBaseDir = true;
+        }
+        // If the base directory wasn't found at all, it's possibly in jar-s without directory entries, so we don't
+        // risk claiming that the templates don't exist.
+        return foundBaseDir;
+    }
+
+    private static boolean logNotIndexable(ClassTemplateLoader templateLoader, URL baseDirURL) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Can't index the templates of " + templateLoader + ", as it can't list the content of "
+                    + baseDirURL);
+        }
+        return false;
+    }
+
+    private static void addJarEntryNames(URL baseDirURL, Set<String> templateNames) throws IOException {
+        URLConnection conn = baseDirURL.openConnection();
+        if (!(conn instanceof JarURLConnection)) {
+            throw new IOException("Unexpected URLConnection class for " + baseDirURL + ": " + conn.getClass());
+        }
+        JarURLConnection jarConn = (JarURLConnection) conn;
+        jarConn.setUseCaches(false);
+        String entryPrefix = jarConn.getEntryName();
+        entryPrefix = entryPrefix == null || entryPrefix.isEmpty() || entryPrefix.endsWith("/")
+                ? entryPrefix : entryPrefix + "/";
+        try (JarFile jarFile = jarConn.getJarFile()) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (!entry.isDirectory() && (entryPrefix == null || entryName.startsWith(entryPrefix))) {
+                    templateNames.add(entryPrefix == null ? entryName : entryName.substring(entryPrefix.length()));
+                }
+            }
+        }
+    }
+
+    private static void addFileNames(File baseDir, final Set<String> templateNames) throws IOException {
+        final Path basePath = baseDir.toPath();
+        if (!Files.isDirectory(basePath)) {
+            return;
+        }
+        Files.walkFileTree(basePath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            StringBuilder name = new StringBuilder();
+                            for (Path nameElement : basePath.relativize(file)) {
+                                if (name.length() != 0) {
+                                    name.append('/');
+                                }
+                                name.append(nameElement.toString());
+                            }
+                            templateNames.add(name.toString());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                        if (exc instanceof FileSystemLoopException) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        throw exc;
+                    }
+                });
+    }
+
+    /**
+     * Show class name and some details that are useful in template-not-found errors.
+     */
+    @Override
+    public String toString() {
+        return TemplateLoaderUtils.getClassNameForToString(this) + "(" + templateLoader + ")";
+    }
+
+    private static final class Index {
+        /** {@code null} if the template loader is not indexable. */
+        private final Set<String> templateNames;
+        private final long creationTime;
+
+        private Index(Set<String> templateNames, long creationTime) {
+            this.templateNames = templateNames;
+            this.creationTime = creationTime;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * The {@link JarFile}-s that a {@link URLTemplateLoader} keeps open to read template sources from, if
+ * {@link URLTemplateLoader#setJarSourcesImmutable(boolean)} is on. This spares opening the jar file, and parsing its
+ * central directory, for each template loaded. The jar files are only closed when this object is garbage collected.
+ * 
+ * @since 2.3.33
+ */
+final class SharedJarFiles {
+
+    private final ConcurrentMap<File, JarFile> jarFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the entry that the connection points to with the shared {@link JarFile}, without connecting the
+     * {@link JarURLConnection} itself.
+     * 
+     * @return {@code null} if the jar isn't in the local file system, or the entry wasn't found in it.
+     */
+    InputStream getInputStream(JarURLConnection conn) throws IOException {
+        URL jarFileURL = conn.getJarFileURL();
+        String entryName = conn.getEntryName();
+        if (!jarFileURL.getProtocol().equals("file") || entryName == null) {
+            return null;
+        }
+        File file;
+        try {
+            file = new File(jarFileURL.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+
+        JarFile jarFile = getJarFile(file);
+        ZipEntry entry = jarFile.getEntry(entryName);
+        return entry != null ? jarFile.getInputStream(entry) : null;
+    }
+
+    private JarFile getJarFile(File file) throws IOException {
+        JarFile jarFile = jarFiles.get(file);
+        if (jarFile == null) {
+            JarFile newJarFile = new JarFile(file);
+            jarFile = jarFiles.putIfAbsent(file, newJarFile);
+            if (jarFile == null) {
+                jarFile = newJarFile;
+            } else {
+                newJarFile.close();
+            }
+        }
+        return jarFile;
+    }
+
+}
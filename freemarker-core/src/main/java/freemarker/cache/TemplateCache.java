@@ -26,8 +26,11 @@ import java.io.StringWriter;
 import java.lang.reflect.Method;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 import freemarker.cache.MultiTemplateLoader.MultiSource;
@@ -81,10 +84,15 @@ public class TemplateCache {
     private final TemplateConfigurationFactory templateConfigurations;
     
     private final boolean isStorageConcurrent;
+    private final TemplateDependencyGraph dependencyGraph = new TemplateDependencyGraph();
     /** {@link Configuration#setTemplateUpdateDelayMilliseconds(long)} */
     private long updateDelay = DEFAULT_TEMPLATE_UPDATE_DELAY_MILLIS;
     /** {@link Configuration#setLocalizedLookup(boolean)} */
     private boolean localizedLookup = true;
+    /** {@link Configuration#setTemplateChangeWatching(boolean)} */
+    private boolean changeWatching;
+    /** Non-{@code null} if {@link #changeWatching} is on, and the template loader could be watched. */
+    private volatile TemplateSourceWatcher sourceWatcher;
 
     private Configuration config;
 
@@ -329,6 +337,8 @@ public class TemplateCache {
                 ? buildDebugName(name, locale, customLookupCondition, encoding, parseAsFTL)
                 : null;
         final TemplateKey tk = new TemplateKey(name, locale, customLookupCondition, encoding, parseAsFTL);
+        final TemplateSourceWatcher sourceWatcher = this.sourceWatcher;
+        final long sourceWatcherEventCount = sourceWatcher != null ? sourceWatcher.getEventCount() : 0L;
         
         CachedTemplate cachedTemplate;
         if (isStorageConcurrent) {
@@ -346,8 +356,11 @@ public class TemplateCache {
         TemplateLookupResult newLookupResult = null;
         try {
             if (cachedTemplate != null) {
-                // If we're within the refresh delay, return the cached copy
-                if (now - cachedTemplate.lastChecked < updateDelay) {
+                // If the source can't change, or the source watcher would have removed the cached copy on change, or
+                // we're within the refresh delay, return the cached copy
+                if (cachedTemplate.sourceImmutable
+                        || sourceWatcher != null && cachedTemplate.sourceWatcher == sourceWatcher
+                        || now - cachedTemplate.lastChecked < updateDelay) {
                     if (debug) {
                         LOG.debug(debugName + " cached copy not yet stale; using cached.");
                     }
@@ -369,6 +382,7 @@ public class TemplateCache {
                 cachedTemplate = cachedTemplate.cloneCachedTemplate();
                 // Update the last-checked flag
                 cachedTemplate.lastChecked = now;
+                cachedTemplate.sourceWatcher = null;
 
                 // Find the template source
                 newLookupResult = lookupTemplate(name, locale, customLookupCondition);
@@ -378,6 +392,7 @@ public class TemplateCache {
                     if (debug) {
                         LOG.debug(debugName + " no source found.");
                     } 
+                    cachedTemplate.sourceWatcher = getIfNoEventSince(sourceWatcher, sourceWatcherEventCount);
                     storeNegativeLookup(tk, cachedTemplate, null);
                     return null;
                 }
@@ -392,6 +407,7 @@ public class TemplateCache {
                     if (debug) {
                         LOG.debug(debugName + ": using cached since " + newLookupResultSource + " hasn't changed.");
                     }
+                    cachedTemplate.sourceWatcher = getIfNoEventSince(sourceWatcher, sourceWatcherEventCount);
                     storeCached(tk, cachedTemplate);
                     return (Template) cachedTemplate.templateOrException;
                 } else if (debug) {
@@ -421,6 +437,7 @@ public class TemplateCache {
                 newLookupResult = lookupTemplate(name, locale, customLookupCondition);
                 
                 if (!newLookupResult.isPositive()) {
+                    cachedTemplate.sourceWatcher = getIfNoEventSince(sourceWatcher, sourceWatcherEventCount);
                     storeNegativeLookup(tk, cachedTemplate, null);
                     return null;
                 }
@@ -430,6 +447,9 @@ public class TemplateCache {
 
             Object source = newLookupResult.getTemplateSource();
             cachedTemplate.source = source;
+            cachedTemplate.sourceImmutable = source instanceof URLTemplateSource
+                    && ((URLTemplateSource) source).isImmutable();
+            dependencyGraph.addSourceName(newLookupResult.getTemplateSourceName(), name);
             
             // If we get here, then we need to (re)load the template
             if (debug) {
@@ -443,6 +463,8 @@ public class TemplateCache {
                     encoding, parseAsFTL);
             cachedTemplate.templateOrException = template;
             cachedTemplate.lastModified = lastModified;
+            dependencyGraph.addDependencies(name, template.getDependencyNames());
+            cachedTemplate.sourceWatcher = getIfNoEventSince(sourceWatcher, sourceWatcherEventCount);
             storeCached(tk, cachedTemplate);
             return template;
         } catch (RuntimeException e) {
@@ -462,6 +484,14 @@ public class TemplateCache {
         }
     }
 
+    /**
+     * Returns the source watcher if it hasn't processed any change events since it had the given event count, so the
+     * template loaded meanwhile can't be outdated, and will be removed from the cache when its source changes.
+     */
+    private static TemplateSourceWatcher getIfNoEventSince(TemplateSourceWatcher sourceWatcher, long eventCount) {
+        return sourceWatcher != null && sourceWatcher.getEventCount() == eventCount ? sourceWatcher : null;
+    }
+
     private static final Method INIT_CAUSE = getInitCauseMethod();
     
     private static final Method getInitCauseMethod() {
@@ -506,12 +536,18 @@ public class TemplateCache {
     private void storeNegativeLookup(TemplateKey tk, 
             CachedTemplate cachedTemplate, Exception e) {
         cachedTemplate.templateOrException = e;
+        if (e != null) {
+            // Load errors are possibly transient, so we don't trust them until the next change event.
+            cachedTemplate.sourceWatcher = null;
+        }
         cachedTemplate.source = null;
+        cachedTemplate.sourceImmutable = false;
         cachedTemplate.lastModified = 0L;
         storeCached(tk, cachedTemplate);
     }
 
     private void storeCached(TemplateKey tk, CachedTemplate cachedTemplate) {
+        dependencyGraph.addCacheKey(tk.name, tk);
         if (isStorageConcurrent) {
             storage.put(tk, cachedTemplate);
         } else {
@@ -612,6 +648,78 @@ public class TemplateCache {
         }
     }
 
+    /**
+     * Sets whether to watch the template sources for changes, instead of checking their last modification time after
+     * {@link #setDelay(long)} has elapsed. Defaults to {@code false}. See
+     * {@link Configuration#setTemplateChangeWatching(boolean)} for more.
+     * 
+     * @since 2.3.33
+     */
+    public void setChangeWatching(boolean changeWatching) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            if (this.changeWatching == changeWatching) {
+                return;
+            }
+            this.changeWatching = changeWatching;
+            if (changeWatching) {
+                try {
+                    sourceWatcher = TemplateSourceWatcher.start(this, templateLoader);
+                    if (sourceWatcher == null) {
+                        LOG.warn("Can't watch the template sources for changes, as the template loader isn't "
+                                + "(or doesn't only consist of) FileTemplateLoader-s; the template update delay "
+                                + "will be used instead. Template loader: " + templateLoader);
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Failed to start watching the template sources for changes; the template update delay "
+                            + "will be used instead.", e);
+                }
+            } else if (sourceWatcher != null) {
+                sourceWatcher.stop();
+                sourceWatcher = null;
+            }
+        }
+    }
+
+    /**
+     * The getter pair of {@link #setChangeWatching(boolean)}.
+     * 
+     * @since 2.3.33
+     */
+    public boolean getChangeWatching() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return changeWatching;
+        }
+    }
+
+    /**
+     * Called by the {@link TemplateSourceWatcher} when the template source with the given name was modified or
+     * deleted.
+     */
+    void templateSourceChanged(String sourceName) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(sourceName);
+        names.addAll(dependencyGraph.getNamesBySourceName(sourceName));
+        Set<String> removedNames = removeTemplatesAndDependents(names);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removed " + removedNames + " from the cache, if they were there, because the "
+                    + StringUtil.jQuoteNoXSS(sourceName) + " template source was changed.");
+        }
+    }
+
+    /**
+     * Called by the {@link TemplateSourceWatcher} when it had to stop due to an error.
+     */
+    void templateSourceWatcherFailed(TemplateSourceWatcher failedSourceWatcher) {
+        synchronized (this) {
+            if (sourceWatcher == failedSourceWatcher) {
+                sourceWatcher = null;
+            }
+        }
+        clear();
+    }
+
     /**
      * Returns if localized template lookup is enabled or not.
      */
@@ -645,6 +753,7 @@ public class TemplateCache {
     public void clear() {
         synchronized (storage) {
             storage.clear();
+            dependencyGraph.clear();
             if (templateLoader instanceof StatefulTemplateLoader) {
                 ((StatefulTemplateLoader) templateLoader).resetState();
             }
@@ -701,6 +810,101 @@ public class TemplateCache {
         }
     }
 
+    /**
+     * Removes the template with the given name from the cache, along with all the templates that directly or
+     * indirectly depend on it (see {@link #getDependents(String)}). Unlike
+     * {@link #removeTemplate(String, Locale, Object, String, boolean)}, this removes the template for all locales,
+     * custom lookup conditions, encodings, and both parsed and unparsed. This is useful if you know that a template
+     * source was modified, and want the change to be visible without waiting for {@link #setDelay(long)} to pass, and
+     * without calling {@link #clear()}.
+     * 
+     * @param name
+     *            The name of the template, as you would pass it to {@link Configuration#getTemplate(String)}.
+     * 
+     * @return The normalized names of the templates that were removed; not {@code null}. (Some of them might not have
+     *         been in the cache anymore.)
+     * 
+     * @since 2.3.33
+     */
+    public Set<String> removeTemplateAndDependents(String name) throws IOException {
+        if (name == null) {
+            throw new IllegalArgumentException("Argument \"name\" can't be null");
+        }
+        name = templateNameFormat.normalizeRootBasedName(name);
+        if (name == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> removedNames = removeTemplatesAndDependents(Collections.singleton(name));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removed " + removedNames + " from the cache, if they were there, because "
+                    + StringUtil.jQuoteNoXSS(name) + " was removed.");
+        }
+        return removedNames;
+    }
+
+    private Set<String> removeTemplatesAndDependents(Set<String> names) {
+        Set<String> removedNames = new LinkedHashSet<>();
+        for (String name : names) {
+            removedNames.add(name);
+            removedNames.addAll(dependencyGraph.getDependents(name));
+        }
+        List<Object> cacheKeys = dependencyGraph.removeCacheKeys(removedNames);
+        if (isStorageConcurrent) {
+            for (Object cacheKey : cacheKeys) {
+                storage.remove(cacheKey);
+            }
+        } else {
+            synchronized (storage) {
+                for (Object cacheKey : cacheKeys) {
+                    storage.remove(cacheKey);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(removedNames);
+    }
+
+    /**
+     * Returns the names of the templates that the template with the given name directly {@code #include}-s or
+     * {@code #import}-s, according to the versions of the templates that were loaded into this cache since the last
+     * {@link #clear()}. See {@link Template#getDependencyNames()} about what dependencies are known.
+     * 
+     * @param name
+     *            The name of the template, as you would pass it to {@link Configuration#getTemplate(String)}.
+     * 
+     * @return An unmodifiable set of normalized template names; not {@code null}.
+     * 
+     * @since 2.3.33
+     */
+    public Set<String> getDependencies(String name) throws MalformedTemplateNameException {
+        if (name == null) {
+            throw new IllegalArgumentException("Argument \"name\" can't be null");
+        }
+        name = templateNameFormat.normalizeRootBasedName(name);
+        return name != null ? dependencyGraph.getDependencies(name) : Collections.<String>emptySet();
+    }
+
+    /**
+     * Returns the names of the templates that directly or indirectly {@code #include} or {@code #import} the
+     * template with the given name, according to the versions of the templates that were loaded into this cache since
+     * the last {@link #clear()}. See {@link Template#getDependencyNames()} about what dependencies are known.
+     * 
+     * @param name
+     *            The name of the template, as you would pass it to {@link Configuration#getTemplate(String)}.
+     * 
+     * @return An unmodifiable set of normalized template names; not {@code null}. It doesn't contain the name of
+     *         the template itself, unless there's a dependency cycle.
+     * 
+     * @since 2.3.33
+     */
+    public Set<String> getDependents(String name) throws MalformedTemplateNameException {
+        if (name == null) {
+            throw new IllegalArgumentException("Argument \"name\" can't be null");
+        }
+        name = templateNameFormat.normalizeRootBasedName(name);
+        return name != null ? dependencyGraph.getDependents(name) : Collections.<String>emptySet();
+    }
+
     private String buildDebugName(String name, Locale locale, Object customLookupCondition, String encoding,
             boolean parse) {
         return StringUtil.jQuoteNoXSS(name) + "("
@@ -882,8 +1086,15 @@ public class TemplateCache {
 
         Object templateOrException;
         Object source;
+        /** If the source is known to never change, so it needn't be checked for update. */
+        boolean sourceImmutable;
         long lastChecked;
         long lastModified;
+        /**
+         * Non-{@code null} if the {@link TemplateSourceWatcher} will remove this entry when the source changes, so it
+         * needn't be checked for update.
+         */
+        transient TemplateSourceWatcher sourceWatcher;
         
         public CachedTemplate cloneCachedTemplate() {
             try {
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of which template (by name) depends on which other templates, and under which keys the templates of
+ * a given name are stored in the {@link CacheStorage}. Used by {@link TemplateCache} to remove a template together
+ * with all the templates that directly or indirectly include or import it. Thread safe.
+ * 
+ * <p>
+ * This only grows, until {@link #clear()} is called, which is fine as the number of distinct template names in an
+ * application is limited. The data can become outdated (like when a template stops including another), but that can
+ * only cause removing more templates from the cache than necessary, never less.
+ * 
+ * @since 2.3.33
+ */
+final class TemplateDependencyGraph {
+
+    private final Map<String, Set<Object>> cacheKeysByName = new HashMap<>();
+    private final Map<String, Set<String>> dependenciesByName = new HashMap<>();
+    private final Map<String, Set<String>> dependentsByName = new HashMap<>();
+    private final Map<String, Set<String>> namesBySourceName = new HashMap<>();
+
+    /**
+     * Records that the template with the given name was stored in the cache with the given key.
+     */
+    synchronized void addCacheKey(String name, Object cacheKey) {
+        Set<Object> cacheKeys = cacheKeysByName.get(name);
+        if (cacheKeys == null) {
+            cacheKeys = new HashSet<>();
+            cacheKeysByName.put(name, cacheKeys);
+        }
+        cacheKeys.add(cacheKey);
+    }
+
+    /**
+     * Records that the template with the given name directly depends on the templates with the given names.
+     */
+    synchronized void addDependencies(String name, Set<String> dependencyNames) {
+        for (String dependencyName : dependencyNames) {
+            if (dependencyName.equals(name)) {
+                continue;
+            }
+            addToMultiMap(dependenciesByName, name, dependencyName);
+            addToMultiMap(dependentsByName, dependencyName, name);
+        }
+    }
+
+    /**
+     * Records that the template with the given name was loaded from the template source with the given name (which
+     * differs from the template name if it was found with localized or acquisition lookup, for example).
+     */
+    synchronized void addSourceName(String sourceName, String name) {
+        if (!sourceName.equals(name)) {
+            addToMultiMap(namesBySourceName, sourceName, name);
+        }
+    }
+
+    synchronized Set<String> getNamesBySourceName(String sourceName) {
+        Set<String> names = namesBySourceName.get(sourceName);
+        return names != null
+                ? Collections.unmodifiableSet(new LinkedHashSet<>(names))
+                : Collections.<String>emptySet();
+    }
+
+    private static void addToMultiMap(Map<String, Set<String>> map, String key, String value) {
+        Set<String> values = map.get(key);
+        if (values == null) {
+            values = new LinkedHashSet<>();
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    synchronized Set<String> getDependencies(String name) {
+        Set<String> dependencies = dependenciesByName.get(name);
+        return dependencies != null
+                ? Collections.unmodifiableSet(new LinkedHashSet<>(dependencies))
+                : Collections.<String>emptySet();
+    }
+
+    /**
+     * Returns the names of the templates that directly or indirectly depend on the given template; doesn't contain the
+     * name of the template itself, unless it's a part of a dependency cycle.
+     */
+    synchronized Set<String> getDependents(String name) {
+        Set<String> result = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(name);
+        while (!queue.isEmpty()) {
+            Set<String> dependents = dependentsByName.get(queue.remove());
+            if (dependents != null) {
+                for (String dependent : dependents) {
+                    if (result.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Forgets the cache keys of the templates with the given names, and returns them.
+     */
+    synchronized List<Object> removeCacheKeys(Set<String> names) {
+        List<Object> result = new ArrayList<>();
+        for (String name : names) {
+            Set<Object> cacheKeys = cacheKeysByName.remove(name);
+            if (cacheKeys != null) {
+                result.addAll(cacheKeys);
+            }
+        }
+        return result;
+    }
+
+    synchronized void clear() {
+        cacheKeysByName.clear();
+        dependenciesByName.clear();
+        dependentsByName.clear();
+        namesBySourceName.clear();
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.log.Logger;
+
+/**
+ * Watches the base directories of {@link FileTemplateLoader}-s with a {@link WatchService}, and tells the
+ * {@link TemplateCache} which template sources were changed, so that it needn't check the last modification time of
+ * the cached templates. Used by {@link TemplateCache#setChangeWatching(boolean)}.
+ * 
+ * <p>
+ * The events are processed on a daemon thread. The watcher only holds a weak reference to the {@link TemplateCache},
+ * and stops itself when that was garbage collected.
+ * 
+ * @since 2.3.33
+ */
+final class TemplateSourceWatcher {
+
+    private static final Logger LOG = Logger.getLogger("freemarker.cache");
+
+    /** How often the thread checks if the {@link TemplateCache} was garbage collected, if there are no events. */
+    private static final long POLL_TIMEOUT_SECONDS = 10;
+
+    private final WeakReference<TemplateCache> templateCacheRef;
+    private final WatchService watchService;
+    /** Only accessed from the thread that registers the directories (first the creator, then the watcher thread). */
+    private final Map<WatchKey, WatchedDirectory> watchedDirectories = new HashMap<>();
+    private final AtomicLong eventCount = new AtomicLong();
+    private final Thread thread;
+
+    private TemplateSourceWatcher(TemplateCache templateCache, List<File> baseDirs) throws IOException {
+        templateCacheRef = new WeakReference<>(templateCache);
+        watchService = baseDirs.isEmpty()
+                ? null : baseDirs.get(0).toPath().getFileSystem().newWatchService();
+        try {
+            for (File baseDir : baseDirs) {
+                registerTree(baseDir.toPath(), "");
+            }
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processEvents();
+            }
+        }, "FreeMarker template source watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the base directories of the {@link FileTemplateLoader}-s that the given {@link TemplateLoader}
+     * consists of.
+     * 
+     * @return {@code null} if the {@link TemplateLoader} can't be watched (as it's not, or doesn't only consist of
+     *         {@link FileTemplateLoader}-s).
+     */
+    static TemplateSourceWatcher start(TemplateCache templateCache, TemplateLoader templateLoader)
+            throws IOException {
+        List<File> baseDirs = new ArrayList<>();
+        if (!addBaseDirectories(templateLoader, baseDirs)) {
+            return null;
+        }
+        TemplateSourceWatcher watcher = new TemplateSourceWatcher(templateCache, baseDirs);
+        if (watcher.watchService != null) {
+            watcher.thread.start();
+        }
+        return watcher;
+    }
+
+    private static boolean addBaseDirectories(TemplateLoader templateLoader, List<File> baseDirs) {
+        if (templateLoader instanceof FileTemplateLoader) {
+            baseDirs.add(((FileTemplateLoader) templateLoader).getBaseDirectory());
+            return true;
+        } else if (templateLoader instanceof MultiTemplateLoader) {
+            MultiTemplateLoader multiTemplateLoader = (MultiTemplateLoader) templateLoader;
+            for (int i = 0; i < multiTemplateLoader.getTemplateLoaderCount(); i++) {
+                if (!addBaseDirectories(multiTemplateLoader.getTemplateLoader(i), baseDirs)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (templateLoader instanceof IndexedTemplateLoader) {
+            return addBaseDirectories(((IndexedTemplateLoader) templateLoader).getTemplateLoader(), baseDirs);
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * The number of change events processed so far. As this is incremented before the cache entries are invalidated,
+     * if this hasn't changed while a template was loaded, then the loaded template can't be outdated.
+     */
+    long getEventCount() {
+        return eventCount.get();
+    }
+
+    void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close template source WatchService", e);
+            }
+        }
+    }
+
+    private void registerTree(final Path dir, final String namePrefix) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs)
+                            throws IOException {
+                        StringBuilder subDirNamePrefix = new StringBuilder(namePrefix);
+                        for (Path nameElement : dir.relativize(subDir)) {
+                            String nameElementStr = nameElement.toString();
+                            if (!nameElementStr.isEmpty()) {
+                                subDirNamePrefix.append(nameElementStr).append('/');
+                            }
+                        }
+                        WatchKey key = subDir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                        WatchedDirectory watchedDirectory = watchedDirectories.get(key);
+                        if (watchedDirectory == null) {
+                            watchedDirectory = new WatchedDirectory(subDir);
+                            watchedDirectories.put(key, watchedDirectory);
+                        }
+                        String subDirNamePrefixStr = subDirNamePrefix.toString();
+                        if (!watchedDirectory.namePrefixes.contains(subDirNamePrefixStr)) {
+                            watchedDirectory.namePrefixes.add(subDirNamePrefixStr);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                        if (exc instanceof FileSystemLoopException) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        throw exc;
+                    }
+                });
+    }
+
+    private void processEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                TemplateCache templateCache = templateCacheRef.get();
+                if (templateCache == null) {
+                    stop();
+                    return;
+                }
+                if (key != null) {
+                    processEvents(key, templateCache);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Stopped
+        } catch (RuntimeException e) {
+            LOG.error("Template source watcher thread has failed; clearing the template cache and stopping", e);
+            stop();
+            TemplateCache templateCache = templateCacheRef.get();
+            if (templateCache != null) {
+                templateCache.templateSourceWatcherFailed(this);
+            }
+        }
+    }
+
+    private void processEvents(WatchKey key, TemplateCache templateCache) {
+        WatchedDirectory watchedDirectory = watchedDirectories.get(key);
+        if (watchedDirectory == null) {
+            key.cancel();
+            return;
+        }
+        boolean clearCache = false;
+        List<String> changedSourceNames = new ArrayList<>();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == OVERFLOW) {
+                clearCache = true;
+                continue;
+            }
+            Path path = watchedDirectory.dir.resolve((Path) event.context());
+            String fileName = path.getFileName().toString();
+            if (kind == ENTRY_CREATE) {
+                // A new file can change the result of localized or acquisition lookups, or of a cached failed
+                // lookup, and which lookups are affected depends on the TemplateLookupStrategy, so we start over.
+                clearCache = true;
+                if (Files.isDirectory(path)) {
+                    for (String namePrefix : watchedDirectory.namePrefixes) {
+                        try {
+                            registerTree(path, namePrefix + fileName + "/");
+                        } catch (IOException e) {
+                            LOG.warn("Failed to watch new template directory " + path, e);
+                        }
+                    }
+                }
+            } else if (kind == ENTRY_DELETE && unwatchDirectoryTree(path)) {
+                clearCache = true;
+            } else if (!Files.isDirectory(path)) {
+                for (String namePrefix : watchedDirectory.namePrefixes) {
+                    changedSourceNames.add(namePrefix + fileName);
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+
+        eventCount.incrementAndGet();
+        if (clearCache) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Clearing the template cache because of a file or directory creation or deletion in "
+                        + watchedDirectory.dir);
+            }
+            templateCache.clear();
+        } else {
+            for (String changedSourceName : changedSourceNames) {
+                templateCache.templateSourceChanged(changedSourceName);
+            }
+        }
+    }
+
+    /**
+     * Stops watching the given directory and its subdirectories, as they were deleted or moved away.
+     * 
+     * @return Whether the path was a watched directory.
+     */
+    private boolean unwatchDirectoryTree(Path path) {
+        boolean found = false;
+        for (Iterator<Map.Entry<WatchKey, WatchedDirectory>> it = watchedDirectories.entrySet().iterator();
+                it.hasNext(); ) {
+            Map.Entry<WatchKey, WatchedDirectory> entry = it.next();
+            if (entry.getValue().dir.startsWith(path)) {
+                entry.getKey().cancel();
+                it.remove();
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    private static final class WatchedDirectory {
+        private final Path dir;
+        /** The template name prefixes (with "/" at the end, or empty) of the files in the directory. */
+        private final List<String> namePrefixes = new ArrayList<>(1);
+
+        WatchedDirectory(Path dir) {
+            this.dir = dir;
+        }
+    }
+
+}
@@ -37,12 +37,13 @@ import freemarker.template.Configuration;
 public abstract class URLTemplateLoader implements TemplateLoader {
     
     private Boolean urlConnectionUsesCaches;
+    private volatile SharedJarFiles sharedJarFiles;
     
     @Override
     public Object findTemplateSource(String name)
     throws IOException {
         URL url = getURL(name);
-        return url == null ? null : new URLTemplateSource(url, getURLConnectionUsesCaches());
+        return url == null ? null : new URLTemplateSource(url, getURLConnectionUsesCaches(), sharedJarFiles);
     }
     
     @Override
@@ -93,6 +94,46 @@ public abstract class URLTemplateLoader implements TemplateLoader {
         this.urlConnectionUsesCaches = urlConnectionUsesCaches;
     }
 
+    /**
+     * Sets whether the templates that are loaded from jar files (i.e., that have a {@code jar:} URL) are assumed to
+     * never change. Defaults to {@code false}. When enabled:
+     * 
+     * <ul>
+     *   <li>{@link TemplateCache} (and so {@link Configuration#getTemplate(String)}) never checks if such templates were
+     *       updated, regardless of the {@link Configuration#setTemplateUpdateDelayMilliseconds(long)
+     *       template_update_delay}. This spares looking up the template again, and getting the last modification time
+     *       of the jar. Note that then an updated template only becomes visible after the template cache was cleared
+     *       (like by creating a new {@link Configuration}), and also it can't be shadowed by a template that's added
+     *       to an earlier class path entry later. (This doesn't apply if the loader is inside a
+     *       {@link MultiTemplateLoader}.)
+     *   <li>The templates are read through {@link java.util.jar.JarFile}-s that are kept open by this template loader,
+     *       instead of opening the jar file for each template loaded (as with
+     *       {@link #setURLConnectionUsesCaches(Boolean) URLConnection caching} off, each {@link URLConnection} to a
+     *       jar entry would do). This is only done for jar files that are in the local file system. The jar files
+     *       are kept open until this template loader is garbage collected.
+     * </ul>
+     * 
+     * <p>
+     * To also spare the class path lookup when the template cache is missed, the loader can be wrapped into an
+     * {@link IndexedTemplateLoader}.
+     * 
+     * @since 2.3.33
+     */
+    public void setJarSourcesImmutable(boolean jarSourcesImmutable) {
+        if (jarSourcesImmutable != getJarSourcesImmutable()) {
+            sharedJarFiles = jarSourcesImmutable ? new SharedJarFiles() : null;
+        }
+    }
+
+    /**
+     * Getter pair of {@link #setJarSourcesImmutable(boolean)}.
+     * 
+     * @since 2.3.33
+     */
+    public boolean getJarSourcesImmutable() {
+        return sharedJarFiles != null;
+    }
+
     /**
      * Given a template name (plus potential locale decorations) retrieves
      * an URL that points the template source.
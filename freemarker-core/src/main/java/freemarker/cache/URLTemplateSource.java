@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.jar.JarFile;
 
 /**
  * Wraps a {@link URL}, and implements methods required for a typical template source.
@@ -34,17 +35,29 @@ public class URLTemplateSource {
     private URLConnection conn;
     private InputStream inputStream;
     private Boolean useCaches;
+    /** Non-{@code null} if the source is a jar entry whose content is assumed to never change. */
+    private final SharedJarFiles sharedJarFiles;
 
     /**
      * @param useCaches {@code null} if this aspect wasn't set in the parent {@link TemplateLoader}.
      */
     public URLTemplateSource(URL url, Boolean useCaches) throws IOException {
+        this(url, useCaches, null);
+    }
+
+    /**
+     * @param sharedJarFiles
+     *            If not {@code null}, and the URL points into a jar, then the source is considered to be immutable, and
+     *            is read with these {@link JarFile}-s if possible.
+     */
+    URLTemplateSource(URL url, Boolean useCaches, SharedJarFiles sharedJarFiles) throws IOException {
         this.url = url;
         this.conn = url.openConnection();
         this.useCaches = useCaches;
         if (useCaches != null) {
             conn.setUseCaches(useCaches.booleanValue());
         }
+        this.sharedJarFiles = conn instanceof JarURLConnection ? sharedJarFiles : null;
     }
 
     @Override
@@ -104,25 +117,39 @@ public class URLTemplateSource {
     }
 
     public InputStream getInputStream() throws IOException {
+        if (sharedJarFiles != null) {
+            InputStream sharedJarFileInputStream = sharedJarFiles.getInputStream((JarURLConnection) conn);
+            if (sharedJarFileInputStream != null) {
+                closeInputStreamQuietly();
+                inputStream = sharedJarFileInputStream;
+                return inputStream;
+            }
+        }
         if (inputStream != null) {
             // Ensure that the returned InputStream reads from the beginning of the resource when getInputStream()
             // is called for the second time:
+            closeInputStreamQuietly();
+            this.conn = url.openConnection();
+        }
+        inputStream = conn.getInputStream();
+        return inputStream;
+    }
+
+    private void closeInputStreamQuietly() {
+        if (inputStream != null) {
             try {
                 inputStream.close();
             } catch (IOException e) {
                 // Ignore; this is maybe because it was closed for the 2nd time now
             }
-            this.conn = url.openConnection();
         }
-        inputStream = conn.getInputStream();
-        return inputStream;
     }
 
     public void close() throws IOException {
         try {
           if (inputStream != null) {
               inputStream.close();
-          } else {
+          } else if (sharedJarFiles == null) {
               conn.getInputStream().close();
           }
         } finally {
@@ -131,6 +158,14 @@ public class URLTemplateSource {
         }
     }
 
+    /**
+     * Tells if the content of the source is assumed to never change, so {@link TemplateCache} needn't check if it was
+     * updated.
+     */
+    boolean isImmutable() {
+        return sharedJarFiles != null;
+    }
+
     Boolean getUseCaches() {
         return useCaches;
     }
@@ -24,6 +24,7 @@ import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
+import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateException;
 import freemarker.template.utility.NumberUtil;
 import freemarker.template.utility.OptimizerUtil;
@@ -48,6 +49,24 @@ public abstract class ArithmeticEngine {
      * converting everything to BigDecimal up front.
      */
     public static final ConservativeEngine CONSERVATIVE_ENGINE = new ConservativeEngine();
+    /**
+     * Arithmetic engine that gives the same results as {@link #BIGDECIMAL_ENGINE}, but avoids the conversion to
+     * {@link BigDecimal} when all operands are integers that fit into {@code long}; see
+     * {@link FastIntegerBigDecimalEngine}.
+     * 
+     * @since 2.3.33
+     */
+    public static final FastIntegerBigDecimalEngine FAST_INTEGER_BIGDECIMAL_ENGINE
+            = new FastIntegerBigDecimalEngine();
+
+    /** The {@link SimpleNumber}-s for the {@link Integer}-s in [{@link #CACHED_SIMPLE_NUMBERS_MIN}, 1024). */
+    private static final int CACHED_SIMPLE_NUMBERS_MIN = -128;
+    private static final SimpleNumber[] CACHED_SIMPLE_NUMBERS = new SimpleNumber[1024 - CACHED_SIMPLE_NUMBERS_MIN];
+    static {
+        for (int i = 0; i < CACHED_SIMPLE_NUMBERS.length; i++) {
+            CACHED_SIMPLE_NUMBERS[i] = new SimpleNumber(Integer.valueOf(i + CACHED_SIMPLE_NUMBERS_MIN));
+        }
+    }
 
     public abstract int compareNumbers(Number first, Number second) throws TemplateException;
     public abstract Number add(Number first, Number second) throws TemplateException;
@@ -115,6 +134,13 @@ public abstract class ArithmeticEngine {
         
         @Override
         public int compareNumbers(Number first, Number second) {
+            // The typical loop counter and index comparisons need no conversion at all:
+            if (isIntegerFittingIntoLong(first) && isIntegerFittingIntoLong(second)) {
+                long firstL = first.longValue();
+                long secondL = second.longValue();
+                return firstL < secondL ? -1 : (firstL == secondL ? 0 : 1);
+            }
+
             // We try to find the result based on the sign (+/-/0) first, because:
             // - It's much faster than converting to BigDecimal, and comparing to 0 is the most common comparison.
             // - It doesn't require any type conversions, and thus things like "Infinity > 0" won't fail.
@@ -258,6 +284,88 @@ public abstract class ArithmeticEngine {
         }
     }
 
+    /**
+     * A {@link BigDecimalEngine} that for {@code +}, {@code -}, and {@code *} uses {@code long} arithmetic if both
+     * operands are {@link Integer}, {@link Long}, {@link Short}, or {@link Byte}, and hence need not allocate
+     * {@link BigDecimal}-s for things like {@code i + 1}. If the {@code long} operation would overflow, the operation is
+     * done with {@link BigDecimal}-s instead, so the numerical result is always the same as with
+     * {@link BigDecimalEngine}. The only difference is that such results are {@link Integer}-s (or {@link Long}-s, if
+     * they don't fit into {@code int}) instead of {@link BigDecimal}-s, which is only visible for Java code that
+     * inspects the class of the resulting {@link Number}. Division and all operations that involve non-integer
+     * operands are done exactly as in {@link BigDecimalEngine}.
+     * 
+     * @since 2.3.33
+     */
+    public static class FastIntegerBigDecimalEngine extends BigDecimalEngine {
+
+        @Override
+        public Number add(Number first, Number second) {
+            if (isIntegerFittingIntoLong(first) && isIntegerFittingIntoLong(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 + n2;
+                if (((n ^ n1) & (n ^ n2)) >= 0) { // overflow check
+                    return toIntegerOrLong(n);
+                }
+            }
+            return super.add(first, second);
+        }
+
+        @Override
+        public Number subtract(Number first, Number second) {
+            if (isIntegerFittingIntoLong(first) && isIntegerFittingIntoLong(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 - n2;
+                if (((n ^ n1) & (n1 ^ n2)) >= 0) { // overflow check
+                    return toIntegerOrLong(n);
+                }
+            }
+            return super.subtract(first, second);
+        }
+
+        @Override
+        public Number multiply(Number first, Number second) {
+            if (isIntegerFittingIntoLong(first) && isIntegerFittingIntoLong(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 * n2;
+                if (n1 == 0L
+                        || (n / n1 == n2 && !(n1 == -1L && n2 == Long.MIN_VALUE))) { // overflow check
+                    return toIntegerOrLong(n);
+                }
+            }
+            return super.multiply(first, second);
+        }
+
+        /**
+         * Same as {@link BigDecimalEngine#toNumber(String)}, except that integers that fit into {@code long}, and
+         * were written without decimal point or exponent, are returned as {@link Integer} or {@link Long}. This
+         * matters as number literals in templates are parsed with this, and so for example {@code i + 1} can use the
+         * fast path.
+         */
+        @Override
+        public Number toNumber(String s) {
+            Number n = super.toNumber(s);
+            if (n instanceof BigDecimal) {
+                BigDecimal bd = (BigDecimal) n;
+                if (bd.scale() == 0 && bd.precision() <= 18) {
+                    return toIntegerOrLong(bd.longValue());
+                }
+            }
+            return n;
+        }
+
+        private static Number toIntegerOrLong(long n) {
+            int nI = (int) n;
+            if (nI == n) {
+                return Integer.valueOf(nI);
+            }
+            return Long.valueOf(n);
+        }
+
+    }
+
     /**
      * An arithmetic engine that conservatively widens the operation arguments
      * to extent that they can hold the result of the operation. Widening 
@@ -599,6 +707,38 @@ public abstract class ArithmeticEngine {
         }
     }
 
+    /**
+     * Tells if the number is of a type that stores an integer that can be converted to {@code long} without loss.
+     */
+    private static boolean isIntegerFittingIntoLong(Number num) {
+        return num instanceof Integer || num instanceof Long || num instanceof Short || num instanceof Byte;
+    }
+
+    /**
+     * Tells if the engine is one of the engines provided by FreeMarker (not a subclass of them), and hence
+     * {@link #compareNumbers(Number, Number)} is known to order non-NaN numbers of the same primitive type just like
+     * Java does.
+     */
+    static boolean hasStandardNumberComparison(ArithmeticEngine ae) {
+        Class<?> aeClass = ae.getClass();
+        return aeClass == BigDecimalEngine.class || aeClass == FastIntegerBigDecimalEngine.class
+                || aeClass == ConservativeEngine.class;
+    }
+
+    /**
+     * Wraps the result of an arithmetic operation into a {@link SimpleNumber}; for frequently occurring small
+     * {@link Integer}-s this returns a cached instance.
+     */
+    static SimpleNumber toSimpleNumber(Number num) {
+        if (num instanceof Integer) {
+            int idx = num.intValue() - CACHED_SIMPLE_NUMBERS_MIN;
+            if (idx >= 0 && idx < CACHED_SIMPLE_NUMBERS.length) {
+                return CACHED_SIMPLE_NUMBERS[idx];
+            }
+        }
+        return new SimpleNumber(num);
+    }
+
     /**
      * Convert a {@code Number} to {@link BigDecimal}.
      * 
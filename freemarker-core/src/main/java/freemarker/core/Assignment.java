@@ -189,8 +189,10 @@ final class Assignment extends TemplateElement {
         }
         
         if (namespace == null) {
+            env.checkLocalVariableSettableInParallelListChunk(getNodeTypeSymbol());
             env.setLocalVariable(variableName, value);
         } else {
+            env.checkNotInParallelListChunk(getNodeTypeSymbol());
             namespace.put(variableName, value);
         }
         return null;
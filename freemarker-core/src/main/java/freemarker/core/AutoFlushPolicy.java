@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import freemarker.template.Template;
+import freemarker.template.utility.NullArgumentException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Specifies when the output {@link Writer} is flushed automatically during template processing, so that the
+ * receiver (like a browser) gets the beginning of the output before processing finishes; see
+ * {@link Configurable#setAutoFlushPolicy(AutoFlushPolicy)}. This is independent of the
+ * {@link Configurable#setAutoFlush(boolean) auto_flush} setting, which is about the flush at the end of
+ * {@link Template#process(Object, Writer)}.
+ *
+ * <p>Instances are immutable, and thus thread safe.
+ *
+ * @since 2.3.33
+ */
+public final class AutoFlushPolicy {
+
+    /**
+     * Never flushes automatically during processing (only {@code #flush} does); this is the default.
+     */
+    public static final AutoFlushPolicy NONE = new AutoFlushPolicy(0, 0, Collections.<String>emptySet());
+
+    private final int maxUnflushedChars;
+    private final long maxUnflushedMillis;
+    private final Set<String> flushAfterMacros;
+
+    /**
+     * @param maxUnflushedChars
+     *            Flush when at least this many characters were written since the last flush; 0 if there's no such
+     *            limit. As the encoding happens after the {@link Writer}, this is counted in characters, not in bytes.
+     * @param maxUnflushedMillis
+     *            Flush when writing output, if the oldest not yet flushed output was written at least this many
+     *            milliseconds ago; 0 if there's no such limit. As there's no background flushing, output that's not
+     *            followed by further output (like because the template is waiting for a slow data source) will only be
+     *            flushed by the other conditions.
+     * @param flushAfterMacros
+     *            Flush after the calls of the macros with these names has finished; not {@code null}. This is to mark
+     *            the parts of the page that should reach the browser as soon as possible (like the part with the
+     *            {@code link}-s to the CSS files, or the "above the fold" part of the page), without putting
+     *            {@code #flush} into the templates. Macros with the same name in any namespace are matched.
+     */
+    public AutoFlushPolicy(int maxUnflushedChars, long maxUnflushedMillis, Collection<String> flushAfterMacros) {
+        if (maxUnflushedChars < 0) {
+            throw new IllegalArgumentException("maxUnflushedChars can't be negative: " + maxUnflushedChars);
+        }
+        if (maxUnflushedMillis < 0) {
+            throw new IllegalArgumentException("maxUnflushedMillis can't be negative: " + maxUnflushedMillis);
+        }
+        NullArgumentException.check("flushAfterMacros", flushAfterMacros);
+        this.maxUnflushedChars = maxUnflushedChars;
+        this.maxUnflushedMillis = maxUnflushedMillis;
+        this.flushAfterMacros = flushAfterMacros.isEmpty()
+                ? Collections.<String>emptySet()
+                : Collections.unmodifiableSet(new LinkedHashSet<>(flushAfterMacros));
+    }
+
+    /**
+     * See the similar parameter of {@link #AutoFlushPolicy(int, long, Collection)}.
+     */
+    public int getMaxUnflushedChars() {
+        return maxUnflushedChars;
+    }
+
+    /**
+     * See the similar parameter of {@link #AutoFlushPolicy(int, long, Collection)}.
+     */
+    public long getMaxUnflushedMillis() {
+        return maxUnflushedMillis;
+    }
+
+    /**
+     * See the similar parameter of {@link #AutoFlushPolicy(int, long, Collection)}; not {@code null}.
+     */
+    public Set<String> getFlushAfterMacros() {
+        return flushAfterMacros;
+    }
+
+    /**
+     * Tells if this policy never causes a flush.
+     */
+    public boolean isNone() {
+        return maxUnflushedChars == 0 && maxUnflushedMillis == 0 && flushAfterMacros.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AutoFlushPolicy that = (AutoFlushPolicy) o;
+        return maxUnflushedChars == that.maxUnflushedChars && maxUnflushedMillis == that.maxUnflushedMillis
+                && flushAfterMacros.equals(that.flushAfterMacros);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = maxUnflushedChars;
+        result = 31 * result + (int) (maxUnflushedMillis ^ (maxUnflushedMillis >>> 32));
+        result = 31 * result + flushAfterMacros.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (isNone()) {
+            return "none";
+        }
+        StringBuilder sb = new StringBuilder();
+        if (maxUnflushedChars != 0) {
+            sb.append("max_unflushed_chars: ").append(maxUnflushedChars);
+        }
+        if (maxUnflushedMillis != 0) {
+            if (sb.length() != 0) sb.append(", ");
+            sb.append("max_unflushed_millis: ").append(maxUnflushedMillis);
+        }
+        if (!flushAfterMacros.isEmpty()) {
+            if (sb.length() != 0) sb.append(", ");
+            sb.append("flush_after_macros: ");
+            boolean first = true;
+            for (String macroName : flushAfterMacros) {
+                if (!first) sb.append(", ");
+                sb.append(StringUtil.jQuote(macroName));
+                first = false;
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Wraps the output {@link Writer} of the {@link Environment} to flush it according to an {@link AutoFlushPolicy}.
+ */
+final class AutoFlushingWriter extends Writer {
+
+    private final Writer out;
+    private final int maxUnflushedChars;
+    private final long maxUnflushedNanos;
+    private final AutoFlushPolicy policy;
+
+    private long unflushedChars;
+    private long firstUnflushedWriteNanoTime;
+
+    AutoFlushingWriter(Writer out, AutoFlushPolicy policy) {
+        this.out = out;
+        this.policy = policy;
+        this.maxUnflushedChars = policy.getMaxUnflushedChars();
+        this.maxUnflushedNanos = policy.getMaxUnflushedMillis() * 1000000L;
+    }
+
+    /**
+     * The wrapped {@link Writer}.
+     */
+    Writer getWrappedWriter() {
+        return out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        afterWrite(1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        out.write(cbuf, off, len);
+        afterWrite(len);
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        out.write(str);
+        afterWrite(str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        out.write(str, off, len);
+        afterWrite(len);
+    }
+
+    private void afterWrite(int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (maxUnflushedNanos != 0 && unflushedChars == 0) {
+            firstUnflushedWriteNanoTime = System.nanoTime();
+        }
+        unflushedChars += len;
+        if (maxUnflushedChars != 0 && unflushedChars >= maxUnflushedChars
+                || maxUnflushedNanos != 0 && System.nanoTime() - firstUnflushedWriteNanoTime >= maxUnflushedNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * Called when the call of a macro has finished.
+     */
+    void onMacroEnd(String macroName) throws IOException {
+        if (unflushedChars != 0 && policy.getFlushAfterMacros().contains(macroName)) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        unflushedChars = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
@@ -20,7 +20,6 @@
 package freemarker.core;
 
 import java.io.IOException;
-import java.io.StringWriter;
 
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateException;
@@ -51,9 +50,13 @@ final class BlockAssignment extends TemplateElement {
         
         TemplateModel value;
         if (children != null) {
-            StringWriter out = new StringWriter();
-            env.visit(children, out);
-            value = capturedStringToModel(out.toString());
+            _CaptureWriter out = env.newCaptureWriter();
+            try {
+                env.visit(children, out);
+                value = capturedStringToModel(out.toString());
+            } finally {
+                out.release();
+            }
         } else {
             value = capturedStringToModel("");
         }
@@ -69,12 +72,16 @@ final class BlockAssignment extends TemplateElement {
             if (namespace == null) {
                 throw InvalidReferenceException.getInstance(namespaceExp, env);
             }
+            env.checkNotInParallelListChunk(getNodeTypeSymbol());
             namespace.put(varName, value);
         } else if (scope == Assignment.NAMESPACE) {
+            env.checkNotInParallelListChunk(getNodeTypeSymbol());
             env.setVariable(varName, value);
         } else if (scope == Assignment.GLOBAL) {
+            env.checkNotInParallelListChunk(getNodeTypeSymbol());
             env.setGlobalVariable(varName, value);
         } else if (scope == Assignment.LOCAL) {
+            env.checkLocalVariableSettableInParallelListChunk(getNodeTypeSymbol());
             env.setLocalVariable(varName, value);
         } else {
             throw new BugException("Unhandled scope");
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import freemarker.template.TemplateException;
+
+/**
+ * Implemented by built-ins whose result is always a plain text string, and that can write that string directly into a
+ * {@link Writer}, without building it in memory first. This is used when the built-in is the whole expression of an
+ * interpolation that doesn't auto-escape (like <code>${x?json_string}</code> in the JSON output format).
+ */
+interface BuiltInWithDirectOutput {
+
+    /**
+     * Writes the same text into {@code out} as the string value of what {@link Expression#eval(Environment)} would
+     * return.
+     */
+    void writeResult(Environment env, Writer out) throws TemplateException, IOException;
+
+}
@@ -19,6 +19,8 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Date;
 import java.util.List;
 
@@ -68,12 +70,36 @@ class BuiltInsForMultipleTypes {
         }
     }
 
-    private static abstract class AbstractCLikeBI extends BuiltIn {
+    private static abstract class AbstractCLikeBI extends BuiltIn implements BuiltInWithDirectOutput {
 
         @Override
         final TemplateModel _eval(Environment env) throws TemplateException {
-            final String result;
             final TemplateModel model = target.eval(env);
+            if (isFormattedAsString(model)) {
+                String s = EvalUtil.modelToString((TemplateScalarModel) model, target, env);
+                return new SimpleScalar(env.getCFormat().formatString(s, env));
+            }
+            return new SimpleScalar(formatNonString(model, env));
+        }
+
+        @Override
+        public final void writeResult(Environment env, Writer out) throws TemplateException, IOException {
+            final TemplateModel model = target.eval(env);
+            if (isFormattedAsString(model)) {
+                String s = EvalUtil.modelToString((TemplateScalarModel) model, target, env);
+                env.getCFormat().formatString(s, env, out);
+            } else {
+                out.write(formatNonString(model, env));
+            }
+        }
+
+        private static boolean isFormattedAsString(TemplateModel model) {
+            return model instanceof TemplateScalarModel
+                    && !(model instanceof TemplateNumberModel) && !(model instanceof TemplateBooleanModel);
+        }
+
+        private String formatNonString(TemplateModel model, Environment env) throws TemplateException {
+            final String result;
             if (model instanceof TemplateNumberModel) {
                 TemplateNumberFormat cTemplateNumberFormat = env.getCTemplateNumberFormat();
                 try {
@@ -85,9 +111,6 @@ class BuiltInsForMultipleTypes {
                 boolean b = ((TemplateBooleanModel) model).getAsBoolean();
                 CFormat cFormat = env.getCFormat();
                 result = b ? cFormat.getTrueString() : cFormat.getFalseString();
-            } else if (model instanceof TemplateScalarModel) {
-                String s = EvalUtil.modelToString((TemplateScalarModel) model, target, env);
-                result = env.getCFormat().formatString(s, env);
             } else if (model == null) {
                 result = formatNull(env);
             } else {
@@ -97,7 +120,7 @@ class BuiltInsForMultipleTypes {
                         new Class[] { TemplateNumberModel.class, TemplateBooleanModel.class, TemplateScalarModel.class },
                         env);
             }
-            return new SimpleScalar(result);
+            return result;
         }
 
         protected abstract String formatNull(Environment env) throws InvalidReferenceException;
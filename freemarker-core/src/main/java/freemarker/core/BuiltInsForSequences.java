@@ -20,8 +20,10 @@
 package freemarker.core;
 
 import java.io.Serializable;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -47,6 +49,7 @@ import freemarker.template.TemplateScalarModel;
 import freemarker.template.TemplateSequenceModel;
 import freemarker.template._ObjectWrappers;
 import freemarker.template.utility.Constants;
+import freemarker.template.utility.SecurityUtilities;
 import freemarker.template.utility.StringUtil;
 
 /**
@@ -352,9 +355,19 @@ class BuiltInsForSequences {
                     throws TemplateModelException {
                 checkMethodArgCount(args, 1);
                 TemplateModel arg = (TemplateModel) args.get(0);
+                int itemType = PrimitiveNumberSequences.getItemTypeForComparison(
+                        m_seq, m_env.getArithmeticEngine());
+                if (itemType != _PrimitiveNumberSequence.ITEM_TYPE_NONE) {
+                    Boolean result = PrimitiveNumberSequences.contains((_PrimitiveNumberSequence) m_seq, itemType, arg);
+                    if (result != null) {
+                        return result.booleanValue() ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
+                    }
+                }
                 int size = m_seq.size();
+                TemplateModelIterator seqIter = m_seq instanceof _IterableSequence
+                        ? ((_IterableSequence) m_seq).sequenceIterator() : null;
                 for (int i = 0; i < size; i++) {
-                    if (modelsEqual(i, m_seq.get(i), arg, m_env))
+                    if (modelsEqual(i, seqIter != null ? seqIter.next() : m_seq.get(i), arg, m_env))
                         return TemplateBooleanModel.TRUE;
                 }
                 return TemplateBooleanModel.FALSE;
@@ -599,7 +612,22 @@ class BuiltInsForSequences {
     }
 
     static class sortBI extends BuiltInForSequence {
-        
+
+        /**
+         * From this length on, string keys are converted to {@link CollationKey}-s, so that the possibly expensive
+         * collation rules are applied once per item, instead of on each of the O(n log n) comparisons.
+         */
+        static final int COLLATION_KEYS_MIN_LENGTH = 16;
+
+        /**
+         * From this length on, the sorting is done with {@link Arrays#parallelSort(Object[], Comparator)}, if the
+         * comparator allows that. Set with the {@code freemarker.sort.parallelMinLength} system property; 0 (the
+         * default) means that parallel sorting is never used, as it occupies the threads of the common
+         * {@link java.util.concurrent.ForkJoinPool}, which might be undesirable in the application.
+         */
+        static final int PARALLEL_SORT_MIN_LENGTH = Math.max(
+                SecurityUtilities.getSystemProperty("freemarker.sort.parallelMinLength", 0).intValue(), 0);
+
         private static class BooleanKVPComparator implements Comparator, Serializable {
 
             @Override
@@ -634,6 +662,13 @@ class BuiltInsForSequences {
                 this.value = value;
             }
         }
+        private static class CollationKeyKVPComparator implements Comparator {
+
+            @Override
+            public int compare(Object arg0, Object arg1) {
+                return ((CollationKey) ((KVP) arg0).key).compareTo((CollationKey) ((KVP) arg1).key);
+            }
+        }
         private static class LexicalKVPComparator implements Comparator {
             private Collator collator;
 
@@ -702,6 +737,15 @@ class BuiltInsForSequences {
          */
         static TemplateSequenceModel sort(TemplateSequenceModel seq, String[] keyNames)
                 throws TemplateModelException {
+            return sort(seq, keyNames, PARALLEL_SORT_MIN_LENGTH);
+        }
+
+        /**
+         * Same as {@link #sort(TemplateSequenceModel, String[])}, but with explicitly specified
+         * {@link #PARALLEL_SORT_MIN_LENGTH}.
+         */
+        static TemplateSequenceModel sort(TemplateSequenceModel seq, String[] keyNames, int parallelSortMinLength)
+                throws TemplateModelException {
             int ln = seq.size();
             if (ln == 0) return seq;
             
@@ -712,6 +756,10 @@ class BuiltInsForSequences {
             // Copy the Seq into a Java List[KVP] (also detects key type at the 1st item):
             int keyType = KEY_TYPE_NOT_YET_DETECTED;
             Comparator keyComparator = null;
+            // Non-null if the string keys are stored as CollationKey-s:
+            Collator keyCollator = null;
+            // Whether keyComparator can be called concurrently:
+            boolean threadSafeKeyComparator = false;
             for (int i = 0; i < ln; i++) {
                 final TemplateModel item = seq.get(i);
                 TemplateModel key = item;
@@ -743,19 +791,29 @@ class BuiltInsForSequences {
                 if (keyType == KEY_TYPE_NOT_YET_DETECTED) {
                     if (key instanceof TemplateScalarModel) {
                         keyType = KEY_TYPE_STRING;
-                        keyComparator = new LexicalKVPComparator(
-                                Environment.getCurrentEnvironment().getCollator());
+                        Collator collator = Environment.getCurrentEnvironment().getCollator();
+                        if (ln >= COLLATION_KEYS_MIN_LENGTH) {
+                            keyCollator = collator;
+                            keyComparator = new CollationKeyKVPComparator();
+                            threadSafeKeyComparator = true;
+                        } else {
+                            keyComparator = new LexicalKVPComparator(collator);
+                        }
                     } else if (key instanceof TemplateNumberModel) {
                         keyType = KEY_TYPE_NUMBER;
-                        keyComparator = new NumericalKVPComparator(
-                                Environment.getCurrentEnvironment()
-                                        .getArithmeticEngine());
+                        ArithmeticEngine ae = Environment.getCurrentEnvironment().getArithmeticEngine();
+                        keyComparator = new NumericalKVPComparator(ae);
+                        // Custom engines aren't necessarily thread safe
+                        threadSafeKeyComparator = ae == ArithmeticEngine.BIGDECIMAL_ENGINE
+                                || ae == ArithmeticEngine.CONSERVATIVE_ENGINE;
                     } else if (key instanceof TemplateDateModel) {
                         keyType = KEY_TYPE_DATE;
                         keyComparator = new DateKVPComparator();
+                        threadSafeKeyComparator = true;
                     } else if (key instanceof TemplateBooleanModel) {
                         keyType = KEY_TYPE_BOOLEAN;
                         keyComparator = new BooleanKVPComparator();
+                        threadSafeKeyComparator = true;
                     } else {
                         throw new _TemplateModelException(
                                 startErrorMessage(keyNamesLn, i),
@@ -765,8 +823,9 @@ class BuiltInsForSequences {
                 switch(keyType) {
                     case KEY_TYPE_STRING:
                         try {
+                            String keyStr = ((TemplateScalarModel) key).getAsString();
                             res.add(new KVP(
-                                    ((TemplateScalarModel) key).getAsString(),
+                                    keyCollator != null ? keyCollator.getCollationKey(keyStr) : keyStr,
                                     item));
                         } catch (ClassCastException e) {
                             if (!(key instanceof TemplateScalarModel)) {
@@ -824,7 +883,13 @@ class BuiltInsForSequences {
 
             // Sort the List[KVP]:
             try {
-                Collections.sort(res, keyComparator);
+                if (parallelSortMinLength != 0 && ln >= parallelSortMinLength && threadSafeKeyComparator) {
+                    Object[] resArray = res.toArray();
+                    Arrays.parallelSort(resArray, keyComparator);
+                    res = new ArrayList(Arrays.asList(resArray));
+                } else {
+                    Collections.sort(res, keyComparator);
+                }
             } catch (Exception exc) {
                 throw new _TemplateModelException(exc,
                         startErrorMessage(keyNamesLn), "Unexpected error while sorting:" + exc);
@@ -862,6 +927,15 @@ class BuiltInsForSequences {
         @Override
         TemplateModel calculateResult(TemplateSequenceModel seq)
                 throws TemplateModelException {
+            int itemType = PrimitiveNumberSequences.getItemTypeForComparison(
+                    seq, Environment.getCurrentEnvironment().getArithmeticEngine());
+            if (itemType != _PrimitiveNumberSequence.ITEM_TYPE_NONE && !(seq instanceof RightUnboundedRangeModel)
+                    && seq.size() != 0) {
+                TemplateSequenceModel result = PrimitiveNumberSequences.sort((_PrimitiveNumberSequence) seq, itemType);
+                if (result != null) {
+                    return result;
+                }
+            }
             return sort(seq, null);
         }
         
@@ -998,6 +1072,15 @@ class BuiltInsForSequences {
         
         private TemplateModel calculateResultForSequence(TemplateSequenceModel seq, Environment env)
         throws TemplateException {
+            int itemType = PrimitiveNumberSequences.getItemTypeForComparison(seq, env.getArithmeticEngine());
+            if (itemType != _PrimitiveNumberSequence.ITEM_TYPE_NONE && seq.size() != 0) {
+                TemplateModel result = PrimitiveNumberSequences.minOrMax(
+                        (_PrimitiveNumberSequence) seq, itemType,
+                        comparatorOperator == EvalUtil.CMP_OP_GREATER_THAN);
+                if (result != null) {
+                    return result;
+                }
+            }
             TemplateModel best = null;
             for (int i = 0; i < seq.size(); i++) {
                 TemplateModel cur = seq.get(i);
@@ -19,11 +19,14 @@
 
 package freemarker.core;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.util.List;
 
 import freemarker.template.Configuration;
 import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateException;
 import freemarker.template.TemplateMethodModel;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -68,18 +71,28 @@ class BuiltInsForStringsEncoding {
         }
     }
 
-    static class js_stringBI extends BuiltInForString {
+    static class js_stringBI extends BuiltInForString implements BuiltInWithDirectOutput {
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.javaScriptStringEnc(s));
         }
+
+        @Override
+        public void writeResult(Environment env, Writer out) throws TemplateException, IOException {
+            StringUtil.javaScriptStringEnc(getTargetString(target, env), out);
+        }
     }
 
-    static class json_stringBI extends BuiltInForString {
+    static class json_stringBI extends BuiltInForString implements BuiltInWithDirectOutput {
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.jsonStringEnc(s));
         }
+
+        @Override
+        public void writeResult(Environment env, Writer out) throws TemplateException, IOException {
+            StringUtil.jsonStringEnc(getTargetString(target, env), out);
+        }
     }
 
     static class rtfBI extends BuiltInForLegacyEscaping {
@@ -19,6 +19,8 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.NumberFormat;
 
 import freemarker.template.TemplateException;
@@ -72,6 +74,16 @@ public abstract class CFormat {
      */
     abstract String formatString(String s, Environment env) throws TemplateException;
 
+    /**
+     * Same as {@link #formatString(String, Environment)}, but writes the result into a {@link Writer}. Implementations
+     * should override this if they can do that without creating the whole result {@link String} first.
+     *
+     * @since 2.3.33
+     */
+    void formatString(String s, Environment env, Writer out) throws TemplateException, IOException {
+        out.write(formatString(s, env));
+    }
+
     abstract String getTrueString();
 
     abstract String getFalseString();
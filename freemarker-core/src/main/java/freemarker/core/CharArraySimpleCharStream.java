@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A {@link SimpleCharStream} that reads an already fully loaded source directly from its {@code char} array, so the
+ * characters aren't copied into a separate buffer. Also, instead of recording the line and column of each character
+ * read, it calculates them only for the positions that are asked for (which are typically the beginning and end of
+ * tokens, and so are increasing), continuing from the last calculated position.
+ *
+ * <p>The line and column numbers are the same as {@link SimpleCharStream} would give.
+ */
+final class CharArraySimpleCharStream extends SimpleCharStream {
+
+    private final char[] chars;
+    private final int length;
+
+    /** The index of the last character read; -1 if nothing was read yet. */
+    private int pos = -1;
+    private int tokenBeginPos = -1;
+
+    // The state where the line and column calculation starts from; normally the beginning of the source, but
+    // adjustBeginLineColumn can move it:
+    private int originCalcPos = -1;
+    private int originCalcLine = 1;
+    private int originCalcColumn = 0;
+    private boolean originCalcPrevCharIsCR;
+    private boolean originCalcPrevCharIsLF;
+
+    // The state of the line and column calculation after processing the character at calcPos:
+    private int calcPos;
+    private int calcLine;
+    private int calcColumn;
+    private boolean calcPrevCharIsCR;
+    private boolean calcPrevCharIsLF;
+
+    // The same state, stored just before the calculation has stepped into calcLine, so that we can go back to the
+    // beginning of the current line without starting over from the beginning of the source:
+    private int lineStartCalcPos;
+    private int lineStartCalcLine;
+    private int lineStartCalcColumn;
+    private boolean lineStartCalcPrevCharIsCR;
+    private boolean lineStartCalcPrevCharIsLF;
+
+    /**
+     * @param chars
+     *            The source; only the first {@code length} characters are used. Not copied, so must not be modified
+     *            while the stream is in use.
+     */
+    CharArraySimpleCharStream(char[] chars, int length) {
+        super((Reader) null, 1, 1, 0);
+        this.chars = chars;
+        this.length = length;
+        resetLineColumnCalculation();
+    }
+
+    @Override
+    public char BeginToken() throws IOException {
+        if (pos + 1 >= length) {
+            tokenBeginPos = pos;
+            throw new IOException();
+        }
+        tokenBeginPos = ++pos;
+        return chars[pos];
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        if (pos + 1 >= length) {
+            throw new IOException();
+        }
+        return chars[++pos];
+    }
+
+    @Override
+    public void backup(int amount) {
+        pos -= amount;
+    }
+
+    @Override
+    public String GetImage() {
+        return new String(chars, tokenBeginPos, pos - tokenBeginPos + 1);
+    }
+
+    @Override
+    public char[] GetSuffix(int len) {
+        char[] suffix = new char[len];
+        System.arraycopy(chars, pos - len + 1, suffix, 0, len);
+        return suffix;
+    }
+
+    @Override
+    public int getBeginLine() {
+        return getLineAt(tokenBeginPos);
+    }
+
+    @Override
+    public int getBeginColumn() {
+        return getColumnAt(tokenBeginPos);
+    }
+
+    @Override
+    public int getEndLine() {
+        return getLineAt(pos);
+    }
+
+    @Override
+    public int getEndColumn() {
+        return getColumnAt(pos);
+    }
+
+    @Override
+    @Deprecated
+    public int getLine() {
+        return getEndLine();
+    }
+
+    @Override
+    @Deprecated
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    @Override
+    public void Done() {
+        // Nothing to release
+    }
+
+    /**
+     * Like in {@link SimpleCharStream}, the beginning of the current token will be at the given position, and the
+     * characters after it are shifted accordingly (the ones in the same line by columns, the ones in the following
+     * lines by lines). The positions before the token aren't asked for after this, so the calculation restarts from
+     * the token beginning. Unlike in {@link SimpleCharStream}, tabulators read ahead after the token beginning are
+     * expanded based on their shifted column, but the FreeMarker parser doesn't call this method anyway.
+     */
+    @Override
+    public void adjustBeginLineColumn(int newLine, int newCol) {
+        if (tokenBeginPos >= 0) {
+            calculateLineColumnUntil(tokenBeginPos);
+            originCalcPos = calcPos;
+            originCalcColumn = newCol;
+            originCalcPrevCharIsCR = calcPrevCharIsCR;
+            originCalcPrevCharIsLF = calcPrevCharIsLF;
+        } else {
+            originCalcPos = -1;
+            originCalcColumn = newCol - 1;
+            originCalcPrevCharIsCR = false;
+            originCalcPrevCharIsLF = false;
+        }
+        originCalcLine = newLine;
+        resetLineColumnCalculation();
+    }
+
+    private int getLineAt(int targetPos) {
+        if (targetPos < 0) {
+            return 0; // Like SimpleCharStream for an empty source
+        }
+        calculateLineColumnUntil(targetPos);
+        return calcLine;
+    }
+
+    private int getColumnAt(int targetPos) {
+        if (targetPos < 0) {
+            return 0; // Like SimpleCharStream for an empty source
+        }
+        calculateLineColumnUntil(targetPos);
+        return calcColumn;
+    }
+
+    private void resetLineColumnCalculation() {
+        calcPos = originCalcPos;
+        calcLine = originCalcLine;
+        calcColumn = originCalcColumn;
+        calcPrevCharIsCR = originCalcPrevCharIsCR;
+        calcPrevCharIsLF = originCalcPrevCharIsLF;
+        saveLineStartCalculationState();
+    }
+
+    private void saveLineStartCalculationState() {
+        lineStartCalcPos = calcPos;
+        lineStartCalcLine = calcLine;
+        lineStartCalcColumn = calcColumn;
+        lineStartCalcPrevCharIsCR = calcPrevCharIsCR;
+        lineStartCalcPrevCharIsLF = calcPrevCharIsLF;
+    }
+
+    /**
+     * Does the same as {@link SimpleCharStream#UpdateLineColumn(char)} for each character up to (and including) the
+     * given position.
+     */
+    private void calculateLineColumnUntil(int targetPos) {
+        if (targetPos < calcPos) {
+            if (targetPos > lineStartCalcPos) {
+                calcPos = lineStartCalcPos;
+                calcLine = lineStartCalcLine;
+                calcColumn = lineStartCalcColumn;
+                calcPrevCharIsCR = lineStartCalcPrevCharIsCR;
+                calcPrevCharIsLF = lineStartCalcPrevCharIsLF;
+            } else {
+                resetLineColumnCalculation();
+            }
+        }
+
+        final int tabSize = this.tabSize;
+        int line = calcLine;
+        int column = calcColumn;
+        boolean prevCharIsCR = calcPrevCharIsCR;
+        boolean prevCharIsLF = calcPrevCharIsLF;
+        for (int i = calcPos + 1; i <= targetPos; i++) {
+            final char c = chars[i];
+
+            if (prevCharIsLF || prevCharIsCR && c != '\n') {
+                calcPos = i - 1;
+                calcLine = line;
+                calcColumn = column;
+                calcPrevCharIsCR = prevCharIsCR;
+                calcPrevCharIsLF = prevCharIsLF;
+                saveLineStartCalculationState();
+            }
+
+            column++;
+            if (prevCharIsLF) {
+                prevCharIsLF = false;
+                line++;
+                column = 1;
+            } else if (prevCharIsCR) {
+                prevCharIsCR = false;
+                if (c == '\n') {
+                    prevCharIsLF = true;
+                } else {
+                    line++;
+                    column = 1;
+                }
+            }
+
+            switch (c) {
+            case '\r':
+                prevCharIsCR = true;
+                break;
+            case '\n':
+                prevCharIsLF = true;
+                break;
+            case '\t':
+                column--;
+                column += tabSize - (column % tabSize);
+                break;
+            default:
+                break;
+            }
+        }
+        if (targetPos > calcPos) {
+            calcPos = targetPos;
+            calcLine = line;
+            calcColumn = column;
+            calcPrevCharIsCR = prevCharIsCR;
+            calcPrevCharIsLF = prevCharIsLF;
+        }
+    }
+
+}
@@ -51,6 +51,8 @@ implements TemplateCollectionModel, TemplateSequenceModel, Serializable {
     public TemplateModelIterator iterator() throws TemplateModelException {
         if (collection != null) {
             return collection.iterator();
+        } else if (sequence instanceof _IterableSequence) {
+            return ((_IterableSequence) sequence).sequenceIterator();
         } else {
             return new SequenceIterator(sequence);
         }
@@ -230,6 +230,13 @@ public class Configurable {
     public static final String AUTO_FLUSH_KEY_CAMEL_CASE = "autoFlush";
     /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. @since 2.3.17 */
     public static final String AUTO_FLUSH_KEY = AUTO_FLUSH_KEY_SNAKE_CASE;
+
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.33 */
+    public static final String AUTO_FLUSH_POLICY_KEY_SNAKE_CASE = "auto_flush_policy";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.33 */
+    public static final String AUTO_FLUSH_POLICY_KEY_CAMEL_CASE = "autoFlushPolicy";
+    /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. @since 2.3.33 */
+    public static final String AUTO_FLUSH_POLICY_KEY = AUTO_FLUSH_POLICY_KEY_SNAKE_CASE;
     
     /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.23 */
     public static final String NEW_BUILTIN_CLASS_RESOLVER_KEY_SNAKE_CASE = "new_builtin_class_resolver";
@@ -311,6 +318,7 @@ public class Configurable {
         ARITHMETIC_ENGINE_KEY_SNAKE_CASE,
         ATTEMPT_EXCEPTION_REPORTER_KEY_SNAKE_CASE,
         AUTO_FLUSH_KEY_SNAKE_CASE,
+        AUTO_FLUSH_POLICY_KEY_SNAKE_CASE,
         AUTO_IMPORT_KEY_SNAKE_CASE,
         AUTO_INCLUDE_KEY_SNAKE_CASE,
         BOOLEAN_FORMAT_KEY_SNAKE_CASE,
@@ -345,6 +353,7 @@ public class Configurable {
         ARITHMETIC_ENGINE_KEY_CAMEL_CASE,
         ATTEMPT_EXCEPTION_REPORTER_KEY_CAMEL_CASE,
         AUTO_FLUSH_KEY_CAMEL_CASE,
+        AUTO_FLUSH_POLICY_KEY_CAMEL_CASE,
         AUTO_IMPORT_KEY_CAMEL_CASE,
         AUTO_INCLUDE_KEY_CAMEL_CASE,
         BOOLEAN_FORMAT_KEY_CAMEL_CASE,
@@ -373,6 +382,7 @@ public class Configurable {
         WRAP_UNCHECKED_EXCEPTIONS_KEY_CAMEL_CASE
     };
 
+    // ATTENTION! When adding a setting field, also update unsetAllSettings()!
     private Configurable parent;
     private Properties properties;
     private HashMap<Object, Object> customAttributes;
@@ -397,6 +407,7 @@ public class Configurable {
     private String urlEscapingCharset;
     private boolean urlEscapingCharsetSet;
     private Boolean autoFlush;
+    private AutoFlushPolicy autoFlushPolicy;
     private Boolean showErrorTips;
     private TemplateClassResolver newBuiltinClassResolver;
     private Boolean apiBuiltinEnabled;
@@ -473,6 +484,8 @@ public class Configurable {
         
         autoFlush = Boolean.TRUE;
         properties.setProperty(AUTO_FLUSH_KEY, autoFlush.toString());
+
+        autoFlushPolicy = AutoFlushPolicy.NONE;
         
         newBuiltinClassResolver = TemplateClassResolver.UNRESTRICTED_RESOLVER;
         properties.setProperty(NEW_BUILTIN_CLASS_RESOLVER_KEY, newBuiltinClassResolver.getClass().getName());
@@ -515,6 +528,50 @@ public class Configurable {
         properties = new Properties(parent.properties);
         customAttributes = new HashMap<>(0);
     }
+
+    /**
+     * Puts all settings and custom attributes back into the state they are after {@link #Configurable(Configurable)},
+     * that is, makes them all inherited from the parent. Used by
+     * {@link Environment#reset(freemarker.template.TemplateHashModel, Writer)}.
+     */
+    void unsetAllSettings() {
+        properties = new Properties(parent.properties);
+        customAttributes = new HashMap<>(0);
+        locale = null;
+        cFormat = null;
+        numberFormat = null;
+        timeFormat = null;
+        dateFormat = null;
+        dateTimeFormat = null;
+        timeZone = null;
+        sqlDataAndTimeTimeZone = null;
+        sqlDataAndTimeTimeZoneSet = false;
+        booleanFormat = null;
+        classicCompatible = null;
+        templateExceptionHandler = null;
+        attemptExceptionReporter = null;
+        arithmeticEngine = null;
+        objectWrapper = null;
+        outputEncoding = null;
+        outputEncodingSet = false;
+        urlEscapingCharset = null;
+        urlEscapingCharsetSet = false;
+        autoFlush = null;
+        autoFlushPolicy = null;
+        showErrorTips = null;
+        newBuiltinClassResolver = null;
+        apiBuiltinEnabled = null;
+        truncateBuiltinAlgorithm = null;
+        logTemplateExceptions = null;
+        wrapUncheckedExceptions = null;
+        customDateFormats = null;
+        customNumberFormats = null;
+        autoImports = null;
+        autoIncludes = null;
+        lazyImports = null;
+        lazyAutoImports = null;
+        lazyAutoImportsSet = false;
+    }
     
     @Override
     protected Object clone() throws CloneNotSupportedException {
@@ -1651,6 +1708,45 @@ public class Configurable {
     public boolean isAutoFlushSet() {
         return autoFlush != null;
     }
+
+    /**
+     * Sets when the output {@link Writer} is flushed automatically during template processing, like after every 8K
+     * characters, or after the call of certain macros. The default is {@link AutoFlushPolicy#NONE}, which means that
+     * the output is only flushed by {@code #flush}, and at the end of processing (see {@link #setAutoFlush(boolean)}).
+     *
+     * <p>Flushing early lets the receiver start working on the beginning of the output while the rest is still being
+     * generated; for example, a browser can start loading the CSS files while a slow part of the page is still being
+     * rendered. But note that once the output was flushed to a HTTP response, the response is committed, so if an error
+     * occurs later, it can't be replaced with an error page anymore.
+     *
+     * <p>The policy is picked up when the processing of the main template starts; changing this setting during
+     * template processing has no effect.
+     *
+     * @since 2.3.33
+     */
+    public void setAutoFlushPolicy(AutoFlushPolicy autoFlushPolicy) {
+        NullArgumentException.check("autoFlushPolicy", autoFlushPolicy);
+        this.autoFlushPolicy = autoFlushPolicy;
+        properties.setProperty(AUTO_FLUSH_POLICY_KEY, autoFlushPolicy.toString());
+    }
+
+    /**
+     * See {@link #setAutoFlushPolicy(AutoFlushPolicy)}
+     *
+     * @since 2.3.33
+     */
+    public AutoFlushPolicy getAutoFlushPolicy() {
+        return autoFlushPolicy != null ? autoFlushPolicy : parent.getAutoFlushPolicy();
+    }
+
+    /**
+     * Tells if this setting is set directly in this object or its value is coming from the {@link #getParent() parent}.
+     *
+     * @since 2.3.33
+     */
+    public boolean isAutoFlushPolicySet() {
+        return autoFlushPolicy != null;
+    }
     
     /**
      * Sets if tips should be shown in error messages of errors arising during template processing.
@@ -2169,6 +2265,13 @@ public class Configurable {
     private static final String TRUSTED_TEMPLATES_SNAKE_CASE = "trusted_templates";
     private static final String ALLOWED_CLASSES_CAMEL_CASE = "allowedClasses";
     private static final String TRUSTED_TEMPLATES_CAMEL_CASE = "trustedTemplates";
+
+    private static final String MAX_UNFLUSHED_CHARS_SNAKE_CASE = "max_unflushed_chars";
+    private static final String MAX_UNFLUSHED_MILLIS_SNAKE_CASE = "max_unflushed_millis";
+    private static final String FLUSH_AFTER_MACROS_SNAKE_CASE = "flush_after_macros";
+    private static final String MAX_UNFLUSHED_CHARS_CAMEL_CASE = "maxUnflushedChars";
+    private static final String MAX_UNFLUSHED_MILLIS_CAMEL_CASE = "maxUnflushedMillis";
+    private static final String FLUSH_AFTER_MACROS_CAMEL_CASE = "flushAfterMacros";
     
     /**
      * Sets a FreeMarker setting by a name and string value. If you can configure FreeMarker directly with Java (or
@@ -2237,7 +2340,8 @@ public class Configurable {
      *       expression</a>.
      *       If the value does not contain dot,
      *       then it must be one of these special values (case insensitive):
-     *       {@code "bigdecimal"}, {@code "conservative"}.
+     *       {@code "bigdecimal"}, {@code "conservative"}, {@code "fast_integer_bigdecimal"} (since 2.3.33, means
+     *       {@link ArithmeticEngine#FAST_INTEGER_BIGDECIMAL_ENGINE}).
      *       
      *   <li><p>{@code "object_wrapper"}:
      *       See {@link #setObjectWrapper(ObjectWrapper)}.
@@ -2291,6 +2395,14 @@ public class Configurable {
      *       Since 2.3.17.
      *       <br>String value: {@code "true"}, {@code "false"}, {@code "y"},  etc.
      *       
+     *   <li><p>{@code "auto_flush_policy"}:
+     *       See {@link #setAutoFlushPolicy(AutoFlushPolicy)}.
+     *       Since 2.3.33.
+     *       <br>String value: {@code "none"}, or a segmented list like
+     *       {@code "max_unflushed_chars: 8192, max_unflushed_millis: 200, flush_after_macros: page_head, header"},
+     *       where all segments are optional (see the parameters of
+     *       {@link AutoFlushPolicy#AutoFlushPolicy(int, long, java.util.Collection)}).
+     *       
      *   <li><p>{@code "auto_import"}:
      *       See {@link Configuration#setAutoImports(Map)}
      *       <br>String value is something like:
@@ -2739,6 +2851,9 @@ public class Configurable {
                         setArithmeticEngine(ArithmeticEngine.BIGDECIMAL_ENGINE);
                     } else if ("conservative".equalsIgnoreCase(value)) {
                         setArithmeticEngine(ArithmeticEngine.CONSERVATIVE_ENGINE);
+                    } else if ("fast_integer_bigdecimal".equalsIgnoreCase(value)
+                            || "fastIntegerBigDecimal".equals(value)) {
+                        setArithmeticEngine(ArithmeticEngine.FAST_INTEGER_BIGDECIMAL_ENGINE);
                     } else {
                         throw invalidSettingValueException(name, value);
                     }
@@ -2794,6 +2909,43 @@ public class Configurable {
                 setStrictBeanModels(StringUtil.getYesNo(value));
             } else if (AUTO_FLUSH_KEY_SNAKE_CASE.equals(name) || AUTO_FLUSH_KEY_CAMEL_CASE.equals(name)) {
                 setAutoFlush(StringUtil.getYesNo(value));
+            } else if (AUTO_FLUSH_POLICY_KEY_SNAKE_CASE.equals(name)
+                    || AUTO_FLUSH_POLICY_KEY_CAMEL_CASE.equals(name)) {
+                if ("none".equals(value)) {
+                    setAutoFlushPolicy(AutoFlushPolicy.NONE);
+                } else {
+                    List segments = parseAsSegmentedList(value);
+                    int maxUnflushedChars = 0;
+                    long maxUnflushedMillis = 0;
+                    List<String> flushAfterMacros = Collections.emptyList();
+                    for (int i = 0; i < segments.size(); i++) {
+                        KeyValuePair kv = (KeyValuePair) segments.get(i);
+                        String segmentKey = (String) kv.getKey();
+                        List<String> segmentValue = (List<String>) kv.getValue();
+                        if (segmentKey.equals(MAX_UNFLUSHED_CHARS_SNAKE_CASE)
+                                || segmentKey.equals(MAX_UNFLUSHED_CHARS_CAMEL_CASE)) {
+                            maxUnflushedChars = Integer.parseInt(getSingleSegmentValue(segmentKey, segmentValue));
+                        } else if (segmentKey.equals(MAX_UNFLUSHED_MILLIS_SNAKE_CASE)
+                                || segmentKey.equals(MAX_UNFLUSHED_MILLIS_CAMEL_CASE)) {
+                            maxUnflushedMillis = Long.parseLong(getSingleSegmentValue(segmentKey, segmentValue));
+                        } else if (segmentKey.equals(FLUSH_AFTER_MACROS_SNAKE_CASE)
+                                || segmentKey.equals(FLUSH_AFTER_MACROS_CAMEL_CASE)) {
+                            flushAfterMacros = segmentValue;
+                        } else {
+                            throw new ParseException(
+                                    "Unrecognized list segment key: " + StringUtil.jQuote(segmentKey) +
+                                    ". Supported keys are: " +
+                                    "\"" + MAX_UNFLUSHED_CHARS_SNAKE_CASE + "\", " +
+                                    "\"" + MAX_UNFLUSHED_CHARS_CAMEL_CASE + "\", " +
+                                    "\"" + MAX_UNFLUSHED_MILLIS_SNAKE_CASE + "\", " +
+                                    "\"" + MAX_UNFLUSHED_MILLIS_CAMEL_CASE + "\", " +
+                                    "\"" + FLUSH_AFTER_MACROS_SNAKE_CASE + "\", " +
+                                    "\"" + FLUSH_AFTER_MACROS_CAMEL_CASE + "\". ",
+                                    0, 0);
+                        }
+                    }
+                    setAutoFlushPolicy(new AutoFlushPolicy(maxUnflushedChars, maxUnflushedMillis, flushAfterMacros));
+                }
             } else if (SHOW_ERROR_TIPS_KEY_SNAKE_CASE.equals(name) || SHOW_ERROR_TIPS_KEY_CAMEL_CASE.equals(name)) {
                 setShowErrorTips(StringUtil.getYesNo(value));
             } else if (API_BUILTIN_ENABLED_KEY_SNAKE_CASE.equals(name)
@@ -3194,6 +3346,17 @@ public class Configurable {
         return new SettingStringParser(text).parseAsList();
     }
 
+    private static String getSingleSegmentValue(String segmentKey, List<String> segmentValue)
+            throws ParseException {
+        if (segmentValue.size() != 1) {
+            throw new ParseException(
+                    "The " + StringUtil.jQuote(segmentKey) + " list segment must contain exactly 1 item, but it has "
+                    + segmentValue.size() + ".",
+                    0, 0);
+        }
+        return segmentValue.get(0);
+    }
+
     protected ArrayList parseAsSegmentedList(String text)
     throws ParseException {
         return new SettingStringParser(text).parseAsSegmentedList();
@@ -44,6 +44,12 @@ final class DollarVariable extends Interpolation {
     private final MarkupOutputFormat markupOutputFormat;
     private final boolean autoEscape;
 
+    /**
+     * If not {@code null}, the value can be written into the output directly, instead of creating a {@link String}
+     * first. This is the {@link #escapedExpression} itself, if that supports it, and no escaping is needed.
+     */
+    private final BuiltInWithDirectOutput directOutputExpression;
+
     DollarVariable(
             Expression expression, Expression escapedExpression,
             OutputFormat outputFormat, boolean autoEscape) {
@@ -53,6 +59,8 @@ final class DollarVariable extends Interpolation {
         this.markupOutputFormat
                 = (MarkupOutputFormat) (outputFormat instanceof MarkupOutputFormat ? outputFormat : null);
         this.autoEscape = autoEscape;
+        this.directOutputExpression = !autoEscape && escapedExpression instanceof BuiltInWithDirectOutput
+                ? (BuiltInWithDirectOutput) escapedExpression : null;
     }
 
     /**
@@ -60,6 +68,11 @@ final class DollarVariable extends Interpolation {
      */
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
+        if (directOutputExpression != null) {
+            directOutputExpression.writeResult(env, env.getOut());
+            return null;
+        }
+
         final Object moOrStr = calculateInterpolatedStringOrMarkup(env);
         final Writer out = env.getOut();
         if (moOrStr instanceof String) {
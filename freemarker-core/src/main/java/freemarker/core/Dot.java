@@ -19,6 +19,8 @@
 
 package freemarker.core;
 
+import freemarker.ext.beans.BeanModel;
+import freemarker.ext.beans._BeanPropertyInlineCache;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateModel;
@@ -30,6 +32,7 @@ import freemarker.template.TemplateModel;
 class Dot extends Expression {
     private final Expression target;
     protected final String key;
+    private final _BeanPropertyInlineCache beanPropertyInlineCache = new _BeanPropertyInlineCache();
 
     Dot(Expression target, String key) {
         this.target = target;
@@ -58,6 +61,9 @@ class Dot extends Expression {
     }
 
     protected TemplateModel evalOnHash(TemplateHashModel leftModel) throws TemplateException {
+        if (leftModel instanceof BeanModel) {
+            return beanPropertyInlineCache.get((BeanModel) leftModel, key);
+        }
         return leftModel.get(key);
     }
 
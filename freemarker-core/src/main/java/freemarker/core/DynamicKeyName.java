@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import freemarker.ext.beans.BeanModel;
+import freemarker.ext.beans._BeanPropertyInlineCache;
 import freemarker.template.SimpleScalar;
 import freemarker.template.SimpleSequence;
 import freemarker.template.TemplateCollectionModelEx;
@@ -50,6 +52,7 @@ class DynamicKeyName extends Expression {
     private final Expression keyExpression;
     private final Expression target;
     private boolean lazilyGeneratedResultEnabled;
+    private final _BeanPropertyInlineCache beanPropertyInlineCache = new _BeanPropertyInlineCache();
 
     DynamicKeyName(Expression target, Expression keyExpression) {
         this.target = target; 
@@ -177,6 +180,9 @@ class DynamicKeyName extends Expression {
 
     protected TemplateModel getFromHashModelWithStringKey(TemplateHashModel targetModel, String key)
             throws TemplateException {
+        if (targetModel instanceof BeanModel) {
+            return beanPropertyInlineCache.get((BeanModel) targetModel, key);
+        }
         return targetModel.get(key);
     }
 
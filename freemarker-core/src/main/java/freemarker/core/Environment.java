@@ -21,17 +21,18 @@ package freemarker.core;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.Collator;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -74,6 +75,7 @@ import freemarker.template._ObjectWrappers;
 import freemarker.template._VersionInts;
 import freemarker.template.utility.DateUtil;
 import freemarker.template.utility.DateUtil.DateToISO8601CalendarFactory;
+import freemarker.template.utility.NullArgumentException;
 import freemarker.template.utility.NullWriter;
 import freemarker.template.utility.StringUtil;
 import freemarker.template.utility.TemplateModelUtils;
@@ -103,7 +105,7 @@ public final class Environment extends Configurable {
 
     private final Configuration configuration;
     private final boolean incompatibleImprovementsGE2328;
-    private final TemplateHashModel rootDataModel;
+    private TemplateHashModel rootDataModel;
     private TemplateElement[] instructionStack = new TemplateElement[16];
     private int instructionStackSize = 0;
     private final ArrayList recoveredErrorStack = new ArrayList();
@@ -163,9 +165,11 @@ public final class Environment extends Configurable {
     private Collator cachedCollator;
 
     private Writer out;
+    /** Wraps the original output during {@link #process()}, if an {@link AutoFlushPolicy} is in effect. */
+    private AutoFlushingWriter autoFlushingWriter;
     private Macro.Context currentMacroContext;
     private LocalContextStack localContextStack;
-    private final Namespace mainNamespace;
+    private Namespace mainNamespace;
     private Namespace currentNamespace, globalNamespace;
     private HashMap<String, Namespace> loadedLibs;
     private Configurable legacyParent;
@@ -176,12 +180,49 @@ public final class Environment extends Configurable {
     private TemplateModel lastReturnValue;
     private Map<Object, Namespace> macroToNamespaceLookup = new IdentityHashMap<>();
 
+    /**
+     * The {@link Environment} that has forked this one to render a chunk of a parallel {@code #list}, or {@code null}
+     * if this isn't such a fork.
+     */
+    private final Environment parallelListParent;
+    /**
+     * The macro context that was current when this parallel {@code #list} chunk environment was forked; its local
+     * variables are shared with the other chunks, so they can't be modified.
+     */
+    private final Macro.Context parallelListInheritedMacroContext;
+    /** Shared with the other chunks of the same parallel {@code #list}; {@code null} if this isn't a chunk. */
+    private final ParallelListChunkGroup parallelListChunkGroup;
+
+    private static final String NOT_ALLOWED_IN_PARALLEL_LIST_CHUNK_MESSAGE
+            = " is not allowed inside a parallel #list (<#list ... parallel>)";
+    private static final String LOCAL_VARIABLES_IN_PARALLEL_LIST_CHUNK_TIP
+            = ", except for the local variables of macros or functions called inside it.";
+    private static final String PARALLEL_LIST_CHUNK_RESTRICTION_EXPLANATION
+            = " The chunks of a parallel #list are rendered concurrently and independently, so they can't change "
+            + "anything that the other chunks would see.";
+
     private TemplateNodeModel currentVisitorNode;
     private TemplateSequenceModel nodeNamespaces;
     // Things we keep track of for the fallback mechanism.
     private int nodeNamespaceIndex;
     private String currentNodeName, currentNodeNS;
 
+    /**
+     * Caches the results of {@link #getNodeProcessor(String, String, int)}, for each list of node namespaces that was
+     * used with {@code #visit}/{@code #recurse}. {@code null} if nothing was cached yet.
+     */
+    private HashMap<List<Namespace>, HashMap<NodeProcessorCacheKey, NodeProcessorCacheEntry>> nodeProcessorCaches;
+    /** The namespaces, and the cache for them, that was used most recently; to spare looking up the cache. */
+    private List<Namespace> lastNodeProcessorCacheNamespaces;
+    private HashMap<NodeProcessorCacheKey, NodeProcessorCacheEntry> lastNodeProcessorCache;
+    /**
+     * The variable names that were looked up in namespaces to find node processors. Changing any of these variables
+     * in any namespace invalidates {@link #nodeProcessorCaches}, but changing other variables doesn't.
+     */
+    private HashSet<String> nodeProcessorVariableNames;
+    /** Incremented when {@link #nodeProcessorCaches} is invalidated. */
+    private int nodeProcessorCachesModCount;
+
     private String cachedURLEscapingCharset;
     private boolean cachedURLEscapingCharsetSet;
 
@@ -189,6 +230,19 @@ public final class Environment extends Configurable {
 
     private TemplateProcessingTracer templateProcessingTracer;
 
+    /** Buffers reused by the constructs that capture output; created on demand. */
+    private _CharArrayPool charArrayPool;
+
+    /**
+     * The values of the settings that the cached formats and such depended on at the end of the last
+     * {@link #reset(TemplateHashModel, Writer)}; {@code null} if there was no such call, in which case the next reset
+     * drops the cached values. Not updated by {@link #process()}, so that only those who reuse the
+     * {@link Environment} pay for it.
+     */
+    private Object[] cachedValuesSettingValues;
+    /** Tells {@link #process()} that {@link #reset(TemplateHashModel, Writer)} has made the cached values valid. */
+    private boolean cachedValuesRevalidated;
+
     /**
      * Retrieves the environment object associated with the current thread, or {@code null} if there's no template
      * processing going on in this thread. Data model implementations that need access to the environment can call this
@@ -219,9 +273,215 @@ public final class Environment extends Configurable {
         this.currentNamespace = mainNamespace = new Namespace(template);
         this.out = out;
         this.rootDataModel = rootDataModel;
+        this.parallelListParent = null;
+        this.parallelListInheritedMacroContext = null;
+        this.parallelListChunkGroup = null;
         importMacros(template);
     }
 
+    /**
+     * Creates an environment that renders a chunk of a parallel {@code #list} of the parent environment, possibly on
+     * another thread. It inherits the settings of the parent environment, and sees the same namespaces, but it can't
+     * modify what the other chunks see (see {@link #checkNotInParallelListChunk(String)}). The parent environment
+     * mustn't be used until the chunk is done. The output is captured by the {@link _CaptureWriter} returned by
+     * {@link #getOut()}.
+     */
+    private Environment(Environment parent, ParallelListChunkGroup chunkGroup) {
+        super(parent);
+        configuration = parent.configuration;
+        incompatibleImprovementsGE2328 = parent.incompatibleImprovementsGE2328;
+        rootDataModel = parent.rootDataModel;
+        out = newCaptureWriter();
+        parallelListParent = parent;
+        parallelListChunkGroup = chunkGroup;
+
+        globalNamespace = parent.globalNamespace;
+        mainNamespace = parent.mainNamespace;
+        currentNamespace = parent.currentNamespace;
+        loadedLibs = parent.loadedLibs;
+        macroToNamespaceLookup = parent.macroToNamespaceLookup;
+        currentMacroContext = parallelListInheritedMacroContext = parent.currentMacroContext;
+        legacyParent = parent.legacyParent;
+
+        instructionStack = parent.instructionStack.clone();
+        instructionStackSize = parent.instructionStackSize;
+        // The top of the parent stack is the IterationContext of the parallel #list itself:
+        LocalContextStack parentLocalContextStack = parent.localContextStack;
+        localContextStack = parentLocalContextStack != null
+                ? parentLocalContextStack.copy(parentLocalContextStack.size() - 1) : null;
+        recoveredErrorStack.addAll(parent.recoveredErrorStack);
+        inAttemptBlock = parent.inAttemptBlock;
+        fastInvalidReferenceExceptions = parent.fastInvalidReferenceExceptions;
+        // templateProcessingTracer stays null, as prepareForParallelListing() doesn't allow forking if there's one.
+
+        currentVisitorNode = parent.currentVisitorNode;
+        nodeNamespaces = parent.nodeNamespaces;
+        nodeNamespaceIndex = parent.nodeNamespaceIndex;
+        currentNodeName = parent.currentNodeName;
+        currentNodeNS = parent.currentNodeNS;
+    }
+
+    /**
+     * Creates the environment that renders a chunk of a parallel {@code #list}; see
+     * {@link #Environment(Environment, ParallelListChunkGroup)}. This should be called on the thread that will use the
+     * created environment.
+     *
+     * @param chunkGroup
+     *            The same object for all chunks of the same parallel {@code #list}.
+     */
+    Environment newParallelListChunkEnvironment(ParallelListChunkGroup chunkGroup) {
+        return new Environment(this, chunkGroup);
+    }
+
+    /**
+     * Tells if this environment renders a chunk of a parallel {@code #list} that was cancelled, because another
+     * chunk of it has failed.
+     */
+    boolean isParallelListChunkCancelled() {
+        return parallelListChunkGroup != null && parallelListChunkGroup.isCancelled();
+    }
+
+    /**
+     * Prepares this environment for forking environments for a parallel {@code #list}; after this, the forks can
+     * safely read the shared state (as far as the data model is thread safe). Returns {@code false} if this
+     * environment can't be forked, in which case the listing must be done sequentially.
+     */
+    boolean prepareForParallelListing() {
+        if (isBeforeIcI2322()) {
+            // The parent of the environment is replaced on #include and such, so settings can't be inherited.
+            return false;
+        }
+        if (templateProcessingTracer != null) {
+            // The tracer would be called from multiple threads, and it would see the elements out of order.
+            return false;
+        }
+        if (loadedLibs != null) {
+            // Initializing a lazy import on demand would modify the shared state, so we do it now.
+            for (Namespace loadedLib : loadedLibs.values()) {
+                if (loadedLib instanceof LazilyInitializedNamespace) {
+                    try {
+                        ((LazilyInitializedNamespace) loadedLib).ensureInitializedTME();
+                    } catch (TemplateModelException e) {
+                        // Ignored; the failure is remembered, and reported if the namespace is accessed.
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells if this environment renders a chunk of a parallel {@code #list}.
+     */
+    boolean isParallelListChunk() {
+        return parallelListParent != null;
+    }
+
+    /**
+     * Throws exception if this environment renders a chunk of a parallel {@code #list}, as then {@code what} would
+     * modify state that's shared with the concurrently rendered other chunks.
+     *
+     * @param what
+     *            Describes the operation, like {@code "#assign"}; will be shown in the error message.
+     */
+    void checkNotInParallelListChunk(String what) throws TemplateException {
+        if (parallelListParent != null) {
+            throw newNotAllowedInParallelListChunkException(what, ".");
+        }
+    }
+
+    /**
+     * Like {@link #checkNotInParallelListChunk(String)}, but for setting a local variable, which is allowed if the
+     * current macro context was created inside the chunk.
+     */
+    void checkLocalVariableSettableInParallelListChunk(String what) throws TemplateException {
+        if (isLocalVariableSharedWithOtherParallelListChunks()) {
+            throw newNotAllowedInParallelListChunkException(what, LOCAL_VARIABLES_IN_PARALLEL_LIST_CHUNK_TIP);
+        }
+    }
+
+    /**
+     * Tells if the local variables of the current macro context are visible for the other chunks of a parallel
+     * {@code #list} too, because this environment renders such a chunk, and the macro context wasn't created inside
+     * it.
+     */
+    private boolean isLocalVariableSharedWithOtherParallelListChunks() {
+        if (parallelListParent != null) {
+            for (Macro.Context ctx = parallelListInheritedMacroContext; ctx != null; ctx = ctx.prevMacroContext) {
+                if (ctx == currentMacroContext) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #checkNotInParallelListChunk(String)}, but for the public API, where we can't throw
+     * {@link TemplateException}.
+     * 
+     * @throws IllegalStateException
+     *             If this environment renders a chunk of a parallel {@code #list}
+     */
+    private void checkNotInParallelListChunkForAPI(String what) {
+        if (parallelListParent != null) {
+            throw new IllegalStateException(what + NOT_ALLOWED_IN_PARALLEL_LIST_CHUNK_MESSAGE + "."
+                    + PARALLEL_LIST_CHUNK_RESTRICTION_EXPLANATION);
+        }
+    }
+
+    /**
+     * Rethrows an exception that was thrown in a chunk of a parallel {@code #list}, after it was already passed to the
+     * {@link TemplateExceptionHandler} there, so that it won't be handled again in this environment.
+     */
+    void rethrowParallelListChunkException(TemplateException e) throws TemplateException {
+        lastThrowable = e;
+        throw e;
+    }
+
+    /**
+     * The state shared by the chunks of the same parallel {@code #list}. When a chunk fails, the others are cancelled,
+     * so their errors aren't reported, and they stop before their next item.
+     */
+    static final class ParallelListChunkGroup {
+
+        private volatile boolean cancelled;
+        private Throwable failure;
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Records the failure of a chunk, and cancels the other chunks, unless a chunk has already failed.
+         */
+        synchronized void fail(Throwable failure) {
+            if (this.failure == null) {
+                this.failure = failure;
+            }
+            cancelled = true;
+        }
+
+        /**
+         * Cancels the chunks without a failure (like when a chunk has executed {@code #return}).
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Returns the failure that has cancelled the chunks, or {@code null}.
+         */
+        synchronized Throwable getFailure() {
+            return failure;
+        }
+    }
+
+    private _MiscTemplateException newNotAllowedInParallelListChunkException(String what, String tip) {
+        return new _MiscTemplateException(this,
+                what, NOT_ALLOWED_IN_PARALLEL_LIST_CHUNK_MESSAGE, tip, PARALLEL_LIST_CHUNK_RESTRICTION_EXPLANATION);
+    }
+
     /**
      * Despite its name it just returns {@link #getParent()}. If {@link Configuration#getIncompatibleImprovements()} is
      * at least 2.3.22, then that will be the same as {@link #getMainTemplate()}. Otherwise the returned value follows
@@ -234,7 +494,7 @@ public final class Environment extends Configurable {
      */
     @Deprecated
     public Template getTemplate() {
-        return (Template) getParent();
+        return parallelListParent == null ? (Template) getParent() : parallelListParent.getTemplate();
     }
 
     /** Returns the same value as pre-IcI 2.3.22 getTemplate() did. */
@@ -316,8 +576,17 @@ public final class Environment extends Configurable {
         Object savedEnv = threadEnv.get();
         threadEnv.set(this);
         try {
-            // Cached values from a previous execution are possibly outdated.
-            clearCachedValues();
+            // Cached values from a previous execution are possibly outdated, unless reset(...) has checked them.
+            if (cachedValuesRevalidated) {
+                cachedValuesRevalidated = false;
+            } else {
+                clearCachedValues();
+            }
+            AutoFlushPolicy autoFlushPolicy = getAutoFlushPolicy();
+            if (!autoFlushPolicy.isNone()) {
+                autoFlushingWriter = new AutoFlushingWriter(out, autoFlushPolicy);
+                out = autoFlushingWriter;
+            }
             try {
                 doAutoImportsAndIncludes(this);
                 visit(getTemplate().getRootTreeNode());
@@ -326,14 +595,115 @@ public final class Environment extends Configurable {
                     out.flush();
                 }
             } finally {
-                // It's just to allow the GC to free memory...
-                clearCachedValues();
+                if (autoFlushingWriter != null) {
+                    if (out == autoFlushingWriter) {
+                        out = autoFlushingWriter.getWrappedWriter();
+                    }
+                    autoFlushingWriter = null;
+                }
+                // Cached values aren't cleared, as the Environment might be reused with reset(...).
             }
         } finally {
             threadEnv.set(savedEnv);
         }
     }
 
+    /**
+     * Prepares this {@link Environment} to {@linkplain #process() process} its main template again, with another
+     * data-model and output {@link Writer}. After this, the {@link Environment} behaves as if it was newly created with
+     * {@link #Environment(Template, TemplateHashModel, Writer)}, except that it keeps the values that it has cached
+     * for its own use, as far as they are still valid (like the number and date/time formats created from the format
+     * settings). Thus reusing an {@link Environment} (like one per thread, for the same main template) is cheaper
+     * than creating a new one, which matters if a template is processed very frequently, and it's fast to process.
+     * 
+     * <p>
+     * All settings and custom attributes set on the {@link Environment} (before or during processing) are unset, so
+     * again the values of the main template and the {@link Configuration} are in effect. Also all variables, imports,
+     * and custom state (see {@link #getCustomState(CustomStateKey)}) are discarded, and the template processing
+     * tracer is removed.
+     * 
+     * <p>
+     * Like {@link Environment} in general, this is not thread safe. It can't be called during processing.
+     * 
+     * @param rootDataModel
+     *            Not {@code null}; see the similar parameter of {@link #Environment(Template, TemplateHashModel,
+     *            Writer)}. To wrap a data-model that's not a {@link TemplateHashModel}, use
+     *            {@code (TemplateHashModel) env.getObjectWrapper().wrap(dataModel)}.
+     * @param out
+     *            Not {@code null}
+     * 
+     * @throws IllegalStateException
+     *             If the {@link Environment} is currently processing a template.
+     * 
+     * @since 2.3.33
+     */
+    public void reset(TemplateHashModel rootDataModel, Writer out) {
+        NullArgumentException.check("rootDataModel", rootDataModel);
+        NullArgumentException.check("out", out);
+        if (instructionStackSize != 0 || threadEnv.get() == this) {
+            throw new IllegalStateException("Can't reset the Environment while it's processing a template.");
+        }
+
+        // The setters of the Environment invalidate the affected cached values, so they are valid for the current
+        // setting values. Only unsetAllSettings(), and changes in the parent Configurable-s since the last reset
+        // remain to be checked. Before the first reset we have nothing to compare with (as the parent Configurable-s
+        // could have been changed since the values were cached), so then the cached values are always dropped.
+        Object[] settingValuesBeforeUnset = getCachedValuesSettingValues();
+        unsetAllSettings();
+        Object[] settingValuesAfterUnset = getCachedValuesSettingValues();
+        if (cachedValuesSettingValues == null
+                || !Arrays.equals(cachedValuesSettingValues, settingValuesBeforeUnset)
+                || !Arrays.equals(settingValuesBeforeUnset, settingValuesAfterUnset)) {
+            clearCachedValues();
+            cachedSQLDateAndTimeTimeZoneSameAsNormal = null;
+            cNumberFormat = null;
+            cTemplateNumberFormat = null;
+            cTemplateNumberFormatWithPre2331IcIBug = null;
+            clearCachedTrueAndFalseString();
+        }
+        cachedValuesSettingValues = settingValuesAfterUnset;
+        cachedValuesRevalidated = true;
+
+        this.rootDataModel = rootDataModel;
+        this.out = out;
+        recoveredErrorStack.clear();
+        currentMacroContext = null;
+        localContextStack = null;
+        Template mainTemplate = getMainTemplate();
+        globalNamespace = new Namespace(null);
+        currentNamespace = mainNamespace = new Namespace(mainTemplate);
+        loadedLibs = null;
+        legacyParent = null;
+        inAttemptBlock = false;
+        lastThrowable = null;
+        lastReturnValue = null;
+        macroToNamespaceLookup.clear();
+        currentVisitorNode = null;
+        nodeNamespaces = null;
+        nodeNamespaceIndex = 0;
+        currentNodeName = null;
+        currentNodeNS = null;
+        invalidateNodeProcessorCaches();
+        nodeProcessorVariableNames = null;
+        fastInvalidReferenceExceptions = false;
+        templateProcessingTracer = null;
+        customStateVariables = null;
+        importMacros(mainTemplate);
+    }
+
+    /**
+     * The values of the settings that the values cached by this {@link Environment} depend on (directly, or via the
+     * setter methods that invalidate them).
+     */
+    private Object[] getCachedValuesSettingValues() {
+        return new Object[] {
+                getLocale(), getTimeZone(), getSQLDateAndTimeTimeZone(),
+                getNumberFormat(), getTimeFormat(), getDateFormat(), getDateTimeFormat(),
+                getBooleanFormat(), getCFormat(),
+                getCustomNumberFormats(), getCustomDateFormats(),
+                getURLEscapingCharset(), getOutputEncoding() };
+    }
+
     /**
      * "Visit" the template element.
      */
@@ -550,35 +920,53 @@ public final class Environment extends Configurable {
      void visitAttemptRecover(
              AttemptBlock attemptBlock, TemplateElement attemptedSection, RecoveryBlock recoverySection)
              throws TemplateException, IOException {
-        Writer prevOut = this.out;
-        StringWriter sw = new StringWriter();
-        this.out = sw;
-        TemplateException thrownException = null;
-        boolean lastFIRE = setFastInvalidReferenceExceptions(false);
-        boolean lastInAttemptBlock = inAttemptBlock;
-        try {
-            inAttemptBlock = true;
-            visit(attemptedSection);
-        } catch (TemplateException te) {
-            thrownException = te;
-        } finally {
-            inAttemptBlock = lastInAttemptBlock;
-            setFastInvalidReferenceExceptions(lastFIRE);
-            this.out = prevOut;
+        final Writer prevOut = this.out;
+        // If the output is already buffered (as in a nested #attempt), then we just remember where the output of this
+        // block starts, and roll back to there on failure, so nothing has to be copied on success.
+        final _CaptureWriter captureWriter;
+        final int rollbackLength;
+        final boolean ownCaptureWriter = !(prevOut instanceof _CaptureWriter);
+        if (ownCaptureWriter) {
+            captureWriter = newCaptureWriter();
+            rollbackLength = 0;
+            this.out = captureWriter;
+        } else {
+            captureWriter = (_CaptureWriter) prevOut;
+            rollbackLength = captureWriter.length();
         }
-        if (thrownException != null) {
-            if (ATTEMPT_LOGGER.isDebugEnabled()) {
-                ATTEMPT_LOGGER.debug("Error in attempt block " +
-                        attemptBlock.getStartLocationQuoted(), thrownException);
-            }
+        try {
+            TemplateException thrownException = null;
+            boolean lastFIRE = setFastInvalidReferenceExceptions(false);
+            boolean lastInAttemptBlock = inAttemptBlock;
             try {
-                recoveredErrorStack.add(thrownException);
-                visit(recoverySection);
+                inAttemptBlock = true;
+                visit(attemptedSection);
+            } catch (TemplateException te) {
+                thrownException = te;
             } finally {
-                recoveredErrorStack.remove(recoveredErrorStack.size() - 1);
+                inAttemptBlock = lastInAttemptBlock;
+                setFastInvalidReferenceExceptions(lastFIRE);
+                this.out = prevOut;
+            }
+            if (thrownException != null) {
+                captureWriter.truncate(rollbackLength);
+                if (ATTEMPT_LOGGER.isDebugEnabled()) {
+                    ATTEMPT_LOGGER.debug("Error in attempt block " +
+                            attemptBlock.getStartLocationQuoted(), thrownException);
+                }
+                try {
+                    recoveredErrorStack.add(thrownException);
+                    visit(recoverySection);
+                } finally {
+                    recoveredErrorStack.remove(recoveredErrorStack.size() - 1);
+                }
+            } else if (ownCaptureWriter) {
+                captureWriter.writeTo(out);
+            }
+        } finally {
+            if (ownCaptureWriter) {
+                captureWriter.release();
             }
-        } else {
-            out.write(sw.toString());
         }
     }
 
@@ -623,6 +1011,10 @@ public final class Environment extends Configurable {
             }
 
             this.localContextStack = invokingMacroContext.prevLocalContextStack;
+            if (parallelListParent != null && localContextStack != null) {
+                // The stack might be shared with the parent environment (and so with other chunks)
+                localContextStack = localContextStack.copy(localContextStack.size());
+            }
             if (invokingMacroContext.nestedContentParameterNames != null) {
                 pushLocalContext(bodyCtx);
             }
@@ -893,6 +1285,9 @@ public final class Environment extends Configurable {
                 localContextStack = prevLocalContextStack;
                 currentNamespace = prevNamespace;
             }
+            if (autoFlushingWriter != null && !macroOrFunction.isFunction()) {
+                autoFlushingWriter.onMacroEnd(macroOrFunction.getName());
+            }
         } finally {
             if (elementPushed) {
                 popElement();
@@ -909,6 +1304,10 @@ public final class Environment extends Configurable {
             final Map<String, ? extends Expression> namedArgs, final List<? extends Expression> positionalArgs)
             throws TemplateException {
         String catchAllParamName = macro.getCatchAll();
+        // Which kind of catch-all parameter the call has. Its value is only created when something is added to it;
+        // if it remains empty, it's created only if it's read (see Macro.Context.setEmptyCatchAllParameter).
+        boolean namedCatchAllParam = false;
+        boolean positionalCatchAllParam = false;
         SimpleHash namedCatchAllParamValue = null;
         SimpleSequence positionalCatchAllParamValue = null;
         int nextPositionalArgToAssignIdx = 0;
@@ -946,6 +1345,7 @@ public final class Environment extends Configurable {
                     } else if (catchAllParamName != null) {
                         if (namedCatchAllParamValue == null) {
                             namedCatchAllParamValue = initNamedCatchAllParameter(macroCtx, catchAllParamName);
+                            namedCatchAllParam = true;
                         }
                         if (!withArgsState.orderLast) {
                             namedCatchAllParamValue.put(argName, argValue);
@@ -977,6 +1377,7 @@ public final class Environment extends Configurable {
                             } else {
                                 if (positionalCatchAllParamValue == null) {
                                     positionalCatchAllParamValue = initPositionalCatchAllParameter(macroCtx, catchAllParamName);
+                                    positionalCatchAllParam = true;
                                 }
                                 positionalCatchAllParamValue.add(argValue);
                             }
@@ -1004,29 +1405,32 @@ public final class Environment extends Configurable {
         } // if (withArgsState != null)
 
         if (namedArgs != null) {
-            if (catchAllParamName != null && namedCatchAllParamValue == null && positionalCatchAllParamValue == null) {
+            if (catchAllParamName != null && !namedCatchAllParam && !positionalCatchAllParam) {
                 // If a macro call has no argument (like <@m />), before 2.3.30 we assumed it's a by-name call. But now
                 // if we have ?with_args(args), its argument type decides if the call is by-name or by-position.
                 if (namedArgs.isEmpty() && withArgsState != null && withArgsState.byPosition != null) {
-                    positionalCatchAllParamValue = initPositionalCatchAllParameter(macroCtx, catchAllParamName);
+                    positionalCatchAllParam = true;
                 } else {
-                    namedCatchAllParamValue = initNamedCatchAllParameter(macroCtx, catchAllParamName);
+                    namedCatchAllParam = true;
                 }
             }
 
             for (Map.Entry<String, ? extends Expression> argNameAndValExp : namedArgs.entrySet()) {
                 final String argName = argNameAndValExp.getKey();
                 final boolean isArgNameDeclared = macro.hasArgNamed(argName);
-                if (isArgNameDeclared || namedCatchAllParamValue != null) {
+                if (isArgNameDeclared || namedCatchAllParam) {
                     final Expression argValueExp = argNameAndValExp.getValue();
                     TemplateModel argValue = argValueExp.eval(this);
                     if (isArgNameDeclared) {
                         macroCtx.setLocalVar(argName, argValue);
                     } else {
+                        if (namedCatchAllParamValue == null) {
+                            namedCatchAllParamValue = initNamedCatchAllParameter(macroCtx, catchAllParamName);
+                        }
                         namedCatchAllParamValue.put(argName, argValue);
                     }
                 } else {
-                    if (positionalCatchAllParamValue != null) {
+                    if (positionalCatchAllParam) {
                         throw newBothNamedAndPositionalCatchAllParamsException(macro);
                     } else {
                         throw newUndeclaredParamNameException(macro, argName);
@@ -1034,19 +1438,19 @@ public final class Environment extends Configurable {
                 }
             }
         } else if (positionalArgs != null) {
-            if (catchAllParamName != null && positionalCatchAllParamValue == null && namedCatchAllParamValue == null) {
+            if (catchAllParamName != null && !positionalCatchAllParam && !namedCatchAllParam) {
                 if (positionalArgs.isEmpty() && withArgsState != null && withArgsState.byName != null) {
-                    namedCatchAllParamValue = initNamedCatchAllParameter(macroCtx, catchAllParamName);
+                    namedCatchAllParam = true;
                 } else {
-                    positionalCatchAllParamValue = initPositionalCatchAllParameter(macroCtx, catchAllParamName);
+                    positionalCatchAllParam = true;
                 }
             }
 
             String[] argNames = macro.getArgumentNamesNoCopy();
             final int argsCnt = positionalArgs.size();
             final int argsWithWithArgsCnt = argsCnt + nextPositionalArgToAssignIdx;
-            if (argNames.length < argsWithWithArgsCnt && positionalCatchAllParamValue == null) {
-                if (namedCatchAllParamValue != null) {
+            if (argNames.length < argsWithWithArgsCnt && !positionalCatchAllParam) {
+                if (namedCatchAllParam) {
                     throw newBothNamedAndPositionalCatchAllParamsException(macro);
                 } else {
                     throw newTooManyArgumentsException(macro, argNames, argsWithWithArgsCnt);
@@ -1064,6 +1468,9 @@ public final class Environment extends Configurable {
                     String argName = argNames[nextPositionalArgToAssignIdx++];
                     macroCtx.setLocalVar(argName, argValue);
                 } else {
+                    if (positionalCatchAllParamValue == null) {
+                        positionalCatchAllParamValue = initPositionalCatchAllParameter(macroCtx, catchAllParamName);
+                    }
                     positionalCatchAllParamValue.add(argValue);
                 }
             }
@@ -1087,11 +1494,20 @@ public final class Environment extends Configurable {
                         macroCtx.setLocalVar(argName, withArgValue);
                     } else {
                         // It was checked much earlier that we don't have too many arguments, so this must work:
+                        if (positionalCatchAllParamValue == null) {
+                            positionalCatchAllParamValue = initPositionalCatchAllParameter(
+                                    macroCtx, catchAllParamName);
+                        }
                         positionalCatchAllParamValue.add(withArgValue);
                     }
                 }
             }
         }
+
+        if ((namedCatchAllParam || positionalCatchAllParam)
+                && namedCatchAllParamValue == null && positionalCatchAllParamValue == null) {
+            macroCtx.setEmptyCatchAllParameter(positionalCatchAllParam);
+        }
     }
 
     private static WithArgsState getWithArgState(Macro macro) {
@@ -1183,6 +1599,17 @@ public final class Environment extends Configurable {
         if (children == null) {
             return;
         }
+        if (children instanceof _StreamedNodeSequence) {
+            // We don't need to know the size in advance, and we never return to an earlier node:
+            TemplateModelIterator childIter = ((_StreamedNodeSequence) children).releasingIterator();
+            while (childIter.hasNext()) {
+                TemplateNodeModel child = (TemplateNodeModel) childIter.next();
+                if (child != null) {
+                    invokeNodeHandlerFor(child, namespaces);
+                }
+            }
+            return;
+        }
         int size = children.size();
         for (int i = 0; i < size; i++) {
             TemplateNodeModel child = (TemplateNodeModel) children.get(i);
@@ -1211,6 +1638,28 @@ public final class Environment extends Configurable {
         }
         lastThrowable = templateException;
 
+        if (parallelListChunkGroup != null) {
+            // Handled one at a time, so that only the first error that's not recovered from is reported; the chunks
+            // that fail after that were cancelled anyway.
+            synchronized (parallelListChunkGroup) {
+                if (parallelListChunkGroup.isCancelled()) {
+                    throw templateException;
+                }
+                try {
+                    handleTemplateExceptionWithHandler(templateException);
+                } catch (TemplateException e) {
+                    if (!isInAttemptBlock()) {
+                        parallelListChunkGroup.fail(e);
+                    }
+                    throw e;
+                }
+            }
+        } else {
+            handleTemplateExceptionWithHandler(templateException);
+        }
+    }
+
+    private void handleTemplateExceptionWithHandler(TemplateException templateException) throws TemplateException {
         if (getLogTemplateExceptions() && LOG.isErrorEnabled()
                 && !isInAttemptBlock() /* because then the AttemptExceptionReporter will report this */) {
             LOG.error("Error executing FreeMarker template", templateException);
@@ -2513,8 +2962,11 @@ public final class Environment extends Configurable {
      * @param value
      *            The new value of the variable. {@code null} in effect removes the local variable (reading it will fall
      *            back to higher scope).
+     * @throws IllegalStateException
+     *             if called inside a parallel {@code #list}.
      */
     public void setGlobalVariable(String name, TemplateModel value) {
+        checkNotInParallelListChunkForAPI("Environment.setGlobalVariable");
         globalNamespace.put(name, value);
     }
 
@@ -2527,8 +2979,11 @@ public final class Environment extends Configurable {
      * @param value
      *            The new value of the variable. {@code null} in effect removes the local variable (reading it will fall
      *            back to higher scope).
+     * @throws IllegalStateException
+     *             if called inside a parallel {@code #list}.
      */
     public void setVariable(String name, TemplateModel value) {
+        checkNotInParallelListChunkForAPI("Environment.setVariable");
         currentNamespace.put(name, value);
     }
 
@@ -2545,12 +3000,17 @@ public final class Environment extends Configurable {
      *            The new value of the variable. {@code null} in effect removes the local variable (reading it will fall
      *            back to higher scope).
      * @throws IllegalStateException
-     *             if the environment is not executing a macro body.
+     *             if the environment is not executing a macro body, or if called inside a parallel {@code #list}, and
+     *             the macro was called outside it.
      */
     public void setLocalVariable(String name, TemplateModel value) {
         if (currentMacroContext == null) {
             throw new IllegalStateException("Not executing macro body");
         }
+        if (isLocalVariableSharedWithOtherParallelListChunks()) {
+            throw new IllegalStateException("Environment.setLocalVariable" + NOT_ALLOWED_IN_PARALLEL_LIST_CHUNK_MESSAGE
+                    + LOCAL_VARIABLES_IN_PARALLEL_LIST_CHUNK_TIP + PARALLEL_LIST_CHUNK_RESTRICTION_EXPLANATION);
+        }
         currentMacroContext.setLocalVar(name, value);
     }
 
@@ -2884,6 +3344,9 @@ public final class Environment extends Configurable {
      * Sets the {@link TemplateProcessingTracer} to use for this {@link Environment};
      * can be {@code null} to not have one. The default is also {@code null}.
      *
+     * <p>While a tracer is set, parallel {@code #list}-s ({@code <#list ... parallel>}) are processed sequentially,
+     * so the tracer is always called from the thread that processes the template, and sees all the elements in order.
+     *
      * @since 2.3.33
      */
     public void setTemplateProcessingTracer(TemplateProcessingTracer templateProcessingTracer) {
@@ -2966,10 +3429,99 @@ public final class Environment extends Configurable {
 
     private TemplateModel getNodeProcessor(final String nodeName, final String nsURI, int startIndex)
             throws TemplateException {
-        TemplateModel result = null;
-        int i;
+        NodeProcessorCacheEntry found;
+        HashMap<NodeProcessorCacheKey, NodeProcessorCacheEntry> cache = getNodeProcessorCache();
+        if (cache != null) {
+            NodeProcessorCacheKey key = new NodeProcessorCacheKey(nodeName, nsURI, startIndex);
+            found = cache.get(key);
+            if (found == null) {
+                int modCount = nodeProcessorCachesModCount;
+                found = findNodeProcessor(nodeName, nsURI, startIndex);
+                // The lookup can initialize lazily imported namespaces, which can invalidate the cache:
+                if (modCount == nodeProcessorCachesModCount) {
+                    cache.put(key, found);
+                }
+            }
+        } else {
+            found = findNodeProcessor(nodeName, nsURI, startIndex);
+        }
+
+        TemplateModel result = found.processor;
+        if (result != null) {
+            this.nodeNamespaceIndex = found.namespaceIndex + 1;
+            this.currentNodeName = nodeName;
+            this.currentNodeNS = nsURI;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the node processor cache for the current {@link #nodeNamespaces}, or {@code null} if the node
+     * processors for them can't be cached.
+     */
+    private HashMap<NodeProcessorCacheKey, NodeProcessorCacheEntry> getNodeProcessorCache()
+            throws TemplateModelException {
+        final int size = nodeNamespaces.size();
+
+        List<Namespace> lastNamespaces = lastNodeProcessorCacheNamespaces;
+        if (lastNamespaces != null && lastNamespaces.size() == size) {
+            boolean same = true;
+            for (int i = 0; i < size; i++) {
+                if (nodeNamespaces.get(i) != lastNamespaces.get(i)) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return lastNodeProcessorCache;
+            }
+        }
+
+        Namespace[] namespaces = new Namespace[size];
+        for (int i = 0; i < size; i++) {
+            TemplateModel namespace = nodeNamespaces.get(i);
+            if (!(namespace instanceof Namespace)) {
+                // We let the uncached lookup report the error, if there's one
+                return null;
+            }
+            namespaces[i] = (Namespace) namespace;
+        }
+        List<Namespace> namespaceList = Arrays.asList(namespaces);
+        if (nodeProcessorCaches == null) {
+            nodeProcessorCaches = new HashMap<>();
+        }
+        HashMap<NodeProcessorCacheKey, NodeProcessorCacheEntry> cache = nodeProcessorCaches.get(namespaceList);
+        if (cache == null) {
+            cache = new HashMap<>();
+            nodeProcessorCaches.put(namespaceList, cache);
+        }
+        lastNodeProcessorCacheNamespaces = namespaceList;
+        lastNodeProcessorCache = cache;
+        return cache;
+    }
+
+    private void invalidateNodeProcessorCaches() {
+        if (nodeProcessorCaches != null) {
+            nodeProcessorCaches = null;
+            lastNodeProcessorCacheNamespaces = null;
+            lastNodeProcessorCache = null;
+        }
+        nodeProcessorCachesModCount++;
+    }
+
+    /**
+     * Called when a variable of a {@link Namespace} was set or removed.
+     */
+    private void onNamespaceVariableChanged(String name) {
+        if (nodeProcessorVariableNames != null && nodeProcessorVariableNames.contains(name)) {
+            invalidateNodeProcessorCaches();
+        }
+    }
+
+    private NodeProcessorCacheEntry findNodeProcessor(final String nodeName, final String nsURI, int startIndex)
+            throws TemplateException {
         int size = nodeNamespaces.size();
-        for (i = startIndex; i < size; i++) {
+        for (int i = startIndex; i < size; i++) {
             Namespace ns = null;
             try {
                 ns = (Namespace) nodeNamespaces.get(i);
@@ -2978,25 +3530,18 @@ public final class Environment extends Configurable {
                         "A \"using\" clause should contain a sequence of namespaces or strings that indicate the "
                                 + "location of importable macro libraries.");
             }
-            result = getNodeProcessor(ns, nodeName, nsURI);
-            if (result != null)
-                break;
-        }
-        if (result != null) {
-            this.nodeNamespaceIndex = i + 1;
-            this.currentNodeName = nodeName;
-            this.currentNodeNS = nsURI;
+            TemplateModel result = getNodeProcessor(ns, nodeName, nsURI);
+            if (result != null) {
+                return new NodeProcessorCacheEntry(result, i);
+            }
         }
-        return result;
+        return NodeProcessorCacheEntry.NOT_FOUND;
     }
 
     private TemplateModel getNodeProcessor(Namespace ns, String localName, String nsURI) throws TemplateException {
         TemplateModel result = null;
         if (nsURI == null) {
-            result = ns.get(localName);
-            if (!(result instanceof Macro) && !(result instanceof TemplateTransformModel)) {
-                result = null;
-            }
+            result = getNodeProcessorVariable(ns, localName);
         } else {
             Template template = ns.getTemplate();
             String prefix = template.getPrefixForNamespace(nsURI);
@@ -3006,34 +3551,79 @@ public final class Environment extends Configurable {
                 return null;
             }
             if (prefix.length() > 0) {
-                result = ns.get(prefix + ":" + localName);
-                if (!(result instanceof Macro) && !(result instanceof TemplateTransformModel)) {
-                    result = null;
-                }
+                result = getNodeProcessorVariable(ns, prefix + ":" + localName);
             } else {
                 if (nsURI.length() == 0) {
-                    result = ns.get(Template.NO_NS_PREFIX + ":" + localName);
-                    if (!(result instanceof Macro) && !(result instanceof TemplateTransformModel)) {
-                        result = null;
-                    }
+                    result = getNodeProcessorVariable(ns, Template.NO_NS_PREFIX + ":" + localName);
                 }
                 if (nsURI.equals(template.getDefaultNS())) {
-                    result = ns.get(Template.DEFAULT_NAMESPACE_PREFIX + ":" + localName);
-                    if (!(result instanceof Macro) && !(result instanceof TemplateTransformModel)) {
-                        result = null;
-                    }
+                    result = getNodeProcessorVariable(ns, Template.DEFAULT_NAMESPACE_PREFIX + ":" + localName);
                 }
                 if (result == null) {
-                    result = ns.get(localName);
-                    if (!(result instanceof Macro) && !(result instanceof TemplateTransformModel)) {
-                        result = null;
-                    }
+                    result = getNodeProcessorVariable(ns, localName);
                 }
             }
         }
         return result;
     }
 
+    /**
+     * Returns the variable from the namespace if it's a macro or transform, otherwise {@code null}.
+     */
+    private TemplateModel getNodeProcessorVariable(Namespace ns, String name) throws TemplateModelException {
+        if (nodeProcessorVariableNames == null) {
+            nodeProcessorVariableNames = new HashSet<>();
+        }
+        nodeProcessorVariableNames.add(name);
+
+        TemplateModel result = ns.get(name);
+        return result instanceof Macro || result instanceof TemplateTransformModel ? result : null;
+    }
+
+    private static final class NodeProcessorCacheKey {
+        private final String nodeName;
+        private final String nsURI;
+        private final int startIndex;
+        private final int hashCode;
+
+        NodeProcessorCacheKey(String nodeName, String nsURI, int startIndex) {
+            this.nodeName = nodeName;
+            this.nsURI = nsURI;
+            this.startIndex = startIndex;
+            this.hashCode = (nodeName.hashCode() * 31 + (nsURI != null ? nsURI.hashCode() : 0)) * 31 + startIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof NodeProcessorCacheKey)) return false;
+            NodeProcessorCacheKey other = (NodeProcessorCacheKey) obj;
+            return hashCode == other.hashCode
+                    && startIndex == other.startIndex
+                    && nodeName.equals(other.nodeName)
+                    && (nsURI == null ? other.nsURI == null : nsURI.equals(other.nsURI));
+        }
+    }
+
+    private static final class NodeProcessorCacheEntry {
+        private static final NodeProcessorCacheEntry NOT_FOUND = new NodeProcessorCacheEntry(null, -1);
+
+        /** The {@link Macro} or {@link TemplateTransformModel}, or {@code null} if none was found. */
+        private final TemplateModel processor;
+        /** The index of the namespace in the node namespaces where {@link #processor} was found. */
+        private final int namespaceIndex;
+
+        NodeProcessorCacheEntry(TemplateModel processor, int namespaceIndex) {
+            this.processor = processor;
+            this.namespaceIndex = namespaceIndex;
+        }
+    }
+
     /**
      * Emulates <code>include</code> directive, except that <code>name</code> must be template root relative.
      *
@@ -3125,6 +3715,7 @@ public final class Environment extends Configurable {
      */
     public void include(Template includedTemplate)
             throws TemplateException, IOException {
+        checkNotInParallelListChunk("#include");
         final Template prevTemplate;
         final boolean parentReplacementOn = isBeforeIcI2322();
         prevTemplate = getTemplate();
@@ -3231,6 +3822,7 @@ public final class Environment extends Configurable {
     private Namespace importLib(
             String templateName, final Template loadedTemplate, final String targetNsVarName)
             throws IOException, TemplateException {
+        checkNotInParallelListChunk("#import");
         final boolean lazyImport;
         if (loadedTemplate != null) {
             lazyImport = false;
@@ -3353,16 +3945,37 @@ public final class Environment extends Configurable {
 
     String renderElementToString(TemplateElement te) throws IOException, TemplateException {
         Writer prevOut = out;
+        _CaptureWriter sw = newCaptureWriter();
         try {
-            StringWriter sw = new StringWriter();
             this.out = sw;
             visit(te);
             return sw.toString();
         } finally {
             this.out = prevOut;
+            sw.release();
         }
     }
 
+    /**
+     * Returns the pool of {@code char[]}-s that's used for capturing output; see {@link #newCaptureWriter()}.
+     */
+    _CharArrayPool getCharArrayPool() {
+        _CharArrayPool charArrayPool = this.charArrayPool;
+        if (charArrayPool == null) {
+            charArrayPool = new _CharArrayPool();
+            this.charArrayPool = charArrayPool;
+        }
+        return charArrayPool;
+    }
+
+    /**
+     * Creates a {@link Writer} for capturing output, whose buffer is reused from earlier captures in this
+     * {@link Environment}. Call {@link _CaptureWriter#release()} when the captured content was consumed.
+     */
+    _CaptureWriter newCaptureWriter() {
+        return getCharArrayPool().newCaptureWriter();
+    }
+
     void importMacros(Template template) {
         for (Iterator it = template.getMacros().values().iterator(); it.hasNext();) {
             visitMacroDef((Macro) it.next());
@@ -3476,6 +4089,15 @@ public final class Environment extends Configurable {
             this.template = Environment.this.getTemplate();
         }
 
+        /**
+         * @param expectedSize
+         *            The number of variables that the namespace is expected to hold, so that it needn't grow.
+         */
+        Namespace(int expectedSize) {
+            super(new HashMap<String, Object>(expectedSize * 4 / 3 + 1), _ObjectWrappers.SAFE_OBJECT_WRAPPER, 0);
+            this.template = Environment.this.getTemplate();
+        }
+
         Namespace(Template template) {
             super(_ObjectWrappers.SAFE_OBJECT_WRAPPER);
             this.template = template;
@@ -3490,6 +4112,19 @@ public final class Environment extends Configurable {
         
         void setTemplate(Template template) {
             this.template = template; 
+            invalidateNodeProcessorCaches();
+        }
+
+        @Override
+        public void put(String key, Object value) {
+            super.put(key, value);
+            onNamespaceVariableChanged(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            super.remove(key);
+            onNamespaceVariableChanged(key);
         }
         
     }
@@ -281,8 +281,7 @@ class EvalUtil {
             if (env.getConfiguration().getIncompatibleImprovements().intValue() < _VersionInts.V_2_3_33) {
                 cmpResult = env.getCollator().compare(leftString, rightString);
             } else {
-                cmpResult = Normalizer.normalize(leftString, Normalizer.Form.NFKC)
-                         .compareTo(Normalizer.normalize(rightString, Normalizer.Form.NFKC));
+                cmpResult = compareNFKCNormalized(leftString, leftExp, rightString, rightExp);
             }
         } else if (leftValue instanceof TemplateBooleanModel && rightValue instanceof TemplateBooleanModel) {
             if (operator != CMP_OP_EQUALS && operator != CMP_OP_NOT_EQUALS) {
@@ -601,6 +600,54 @@ class EvalUtil {
                 : tObj.getTemplate().getParserConfiguration().getArithmeticEngine();
     }
 
+    /**
+     * Compares the NFKC normalized forms of the two strings, like
+     * {@code normalize(left, NFKC).compareTo(normalize(right, NFKC))}, but avoids normalization where its result is
+     * known in advance. The expressions are only used to get the already normalized value of string literals.
+     *
+     * @param leftExp {@code null} allowed
+     * @param rightExp {@code null} allowed
+     */
+    static int compareNFKCNormalized(String left, Expression leftExp, String right, Expression rightExp) {
+        if (left.equals(right)) {
+            return 0;
+        }
+        return normalizeNFKC(left, leftExp).compareTo(normalizeNFKC(right, rightExp));
+    }
+
+    private static String normalizeNFKC(String s, Expression exp) {
+        if (exp instanceof StringLiteral) {
+            String normalized = ((StringLiteral) exp).getNFKCNormalizedValue(s);
+            if (normalized != null) {
+                return normalized;
+            }
+        }
+        return normalizeNFKC(s);
+    }
+
+    /**
+     * Same as {@code Normalizer.normalize(s, Normalizer.Form.NFKC)}, but returns {@code s} itself without calling
+     * the {@link Normalizer} if it only contains characters that NFKC normalization leaves alone in any context.
+     */
+    static String normalizeNFKC(String s) {
+        return isNFKCStable(s) ? s : Normalizer.normalize(s, Normalizer.Form.NFKC);
+    }
+
+    /**
+     * Tells if the string only contains characters below U+00A0, which are never changed by NFKC normalization. (They
+     * have no compatibility decomposition, and they don't compose with any of their neighbors, as combining marks
+     * start at U+0300.) U+00A0 itself is already decomposed to a space by NFKC.
+     */
+    private static boolean isNFKCStable(String s) {
+        final int ln = s.length();
+        for (int i = 0; i < ln; i++) {
+            if (s.charAt(i) >= 0xA0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     static boolean shouldWrapUncheckedException(Throwable e, Environment env) {
         if (FlowControlException.class.isInstance(e)) {
             return false;
@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Immutable, thread-safe re-implementation of the formatting part of {@link DecimalFormat}, for a subset of the
+ * patterns and of the numbers. Unlike a {@link DecimalFormat}, this can be shared by any number of threads without
+ * cloning it, and it writes the digits directly into the result, without {@link StringBuffer} and
+ * {@link java.text.FieldPosition} overhead. The output is the same as that of the {@link DecimalFormat} it was
+ * compiled from; when that can't be guaranteed, {@link #format(Number)} returns {@code null}, and the caller must use
+ * the {@link DecimalFormat} instead.
+ * 
+ * <p>
+ * Supported: non-scientific patterns, with any prefixes and suffixes, grouping, minimum and maximum digit counts,
+ * multiplier, and rounding mode. Numbers formatted: {@link Integer}, {@link Long}, {@link Short}, {@link Byte},
+ * {@link BigInteger} that fits into {@code long}, {@link BigDecimal}, and {@link Double} and {@link Float} that
+ * have a whole number value that's exactly representable.
+ * 
+ * @since 2.3.33
+ */
+final class FastDecimalFormat {
+
+    /** {@code DecimalFormat.DOUBLE_INTEGER_DIGITS}; the limit of integer digits when not formatting big numbers. */
+    private static final int DOUBLE_INTEGER_DIGITS = 309;
+    /** {@code DecimalFormat.DOUBLE_FRACTION_DIGITS}; the limit of fraction digits when not formatting big numbers. */
+    private static final int DOUBLE_FRACTION_DIGITS = 340;
+
+    /** Doubles whose absolute value is not greater than this, and are whole numbers, are exact. */
+    private static final long MAX_EXACT_DOUBLE_INTEGER = 1L << 53;
+
+    private static final long[] POWERS_OF_10 = new long[19];
+    static {
+        long p = 1;
+        for (int i = 0; i < POWERS_OF_10.length; i++) {
+            POWERS_OF_10[i] = p;
+            p *= 10;
+        }
+    }
+
+    private static final Number[] SELF_CHECK_NUMBERS = new Number[] {
+            0, 1, -1, 7, -12, 123, 1234, -12345, 1234567, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Long.MAX_VALUE / 1000, Long.MIN_VALUE / 1000,
+            0.0, 1.0, -1.0, 1e15, -2e15,
+            new BigDecimal("0"), new BigDecimal("0.00"), new BigDecimal("1.5"), new BigDecimal("-2.5"),
+            new BigDecimal("0.005"), new BigDecimal("-0.005"), new BigDecimal("0.125"), new BigDecimal("1234.5678"),
+            new BigDecimal("0.000667"), new BigDecimal("-0.000667"), new BigDecimal("0.0000001"),
+            new BigDecimal("-0.0000001"),
+            new BigDecimal("-98765.4321"), new BigDecimal("0.0001234"), new BigDecimal("1E+3"),
+            new BigDecimal("12345678901234567890.1234567890123456789")
+    };
+
+    private final String positivePrefix;
+    private final String positiveSuffix;
+    private final String negativePrefix;
+    private final String negativeSuffix;
+    private final int minIntDigits;
+    private final int maxIntDigits;
+    private final int minFracDigits;
+    private final int maxFracDigits;
+    private final int groupingSize;
+    private final boolean decimalSeparatorAlwaysShown;
+    private final int multiplier;
+    private final BigDecimal bigDecimalMultiplier;
+    private final RoundingMode roundingMode;
+    private final char zeroDigit;
+    private final char groupingSeparator;
+    private final char decimalSeparator;
+
+    private FastDecimalFormat(DecimalFormat df, boolean currencyFormat) {
+        positivePrefix = df.getPositivePrefix();
+        positiveSuffix = df.getPositiveSuffix();
+        negativePrefix = df.getNegativePrefix();
+        negativeSuffix = df.getNegativeSuffix();
+        minIntDigits = df.getMinimumIntegerDigits();
+        maxIntDigits = df.getMaximumIntegerDigits();
+        minFracDigits = df.getMinimumFractionDigits();
+        maxFracDigits = df.getMaximumFractionDigits();
+        groupingSize = df.isGroupingUsed() ? df.getGroupingSize() : 0;
+        decimalSeparatorAlwaysShown = df.isDecimalSeparatorAlwaysShown();
+        multiplier = df.getMultiplier();
+        bigDecimalMultiplier = BigDecimal.valueOf(multiplier);
+        roundingMode = df.getRoundingMode();
+
+        DecimalFormatSymbols symbols = df.getDecimalFormatSymbols();
+        zeroDigit = symbols.getZeroDigit();
+        groupingSeparator = currencyFormat ? symbols.getMonetaryGroupingSeparator() : symbols.getGroupingSeparator();
+        decimalSeparator = currencyFormat ? symbols.getMonetaryDecimalSeparator() : symbols.getDecimalSeparator();
+    }
+
+    /**
+     * Creates a {@link FastDecimalFormat} that formats like the given {@link DecimalFormat}, or returns {@code null}
+     * if the pattern of the {@link DecimalFormat} isn't supported. The {@link DecimalFormat} is not modified or
+     * retained (so it's not needed that it's not used by other threads meanwhile, as far as nobody modifies it).
+     */
+    static FastDecimalFormat compile(DecimalFormat df) {
+        boolean currencyFormat = false;
+        {
+            String pattern = df.toPattern();
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    quoted = !quoted;
+                } else if (!quoted) {
+                    if (c == 'E') {
+                        return null; // Scientific notation
+                    } else if (c == '\u00A4') {
+                        currencyFormat = true;
+                    }
+                }
+            }
+        }
+        if (df.getMultiplier() == 0) {
+            return null;
+        }
+        switch (df.getRoundingMode()) {
+        case UP:
+        case DOWN:
+        case CEILING:
+        case FLOOR:
+            // DecimalFormat applies these to its own digit list, which gives different results than
+            // BigDecimal.setScale in some cases (like -0.000667 with "0.##" and FLOOR is "-0", not "-0.01").
+            return null;
+        default:
+            break;
+        }
+
+        FastDecimalFormat fastFormat = new FastDecimalFormat(df, currencyFormat);
+
+        // Paranoid check, as DecimalFormat has a lot of quirks, and some are not visible through its API:
+        for (Number n : SELF_CHECK_NUMBERS) {
+            String fastResult;
+            try {
+                fastResult = fastFormat.format(n);
+            } catch (RuntimeException e) {
+                return null;
+            }
+            if (fastResult != null) {
+                String expectedResult;
+                try {
+                    expectedResult = df.format(n);
+                } catch (ArithmeticException e) {
+                    expectedResult = null; // RoundingMode.UNNECESSARY
+                }
+                if (!fastResult.equals(expectedResult)) {
+                    return null;
+                }
+            }
+        }
+
+        return fastFormat;
+    }
+
+    /**
+     * Formats the number like the {@link DecimalFormat} this was compiled from would.
+     * 
+     * @return {@code null} if this number can't be formatted by this class (but it can be by {@link DecimalFormat}).
+     */
+    String format(Number number) {
+        if (number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte) {
+            return formatLong(number.longValue());
+        } else if (number instanceof BigDecimal) {
+            return formatBigDecimal((BigDecimal) number);
+        } else if (number instanceof Double || number instanceof Float) {
+            return formatWholeDouble(number.doubleValue());
+        } else if (number instanceof BigInteger && ((BigInteger) number).bitLength() < 64) {
+            return formatLong(number.longValue());
+        } else {
+            return null;
+        }
+    }
+
+    private String formatLong(long n) {
+        if (n == Long.MIN_VALUE) {
+            return null;
+        }
+        boolean negative = n < 0;
+        if (negative) {
+            n = -n;
+        }
+        if (multiplier != 1) {
+            if (n > Long.MAX_VALUE / Math.abs(multiplier)) {
+                return null; // DecimalFormat switches to BigInteger
+            }
+            n *= multiplier;
+            if (n == 0) {
+                negative = false;
+            } else if (multiplier < 0) {
+                n = -n;
+                negative = !negative;
+            }
+        }
+        return formatInteger(negative, n);
+    }
+
+    private String formatWholeDouble(double d) {
+        if (!(d >= -MAX_EXACT_DOUBLE_INTEGER && d <= MAX_EXACT_DOUBLE_INTEGER) || d != Math.rint(d)) {
+            return null; // Not a whole number (or NaN or infinite); needs the complex rounding logic of DecimalFormat
+        }
+        if (d == 0 && (multiplier < 0 || Double.doubleToRawLongBits(d) != 0)) {
+            return null; // DecimalFormat formats these as negative zero
+        }
+        long n = (long) d;
+        boolean negative = n < 0;
+        if (negative) {
+            n = -n;
+        }
+        if (multiplier != 1) {
+            if (n > MAX_EXACT_DOUBLE_INTEGER / Math.abs(multiplier)) {
+                return null; // The multiplication would be inexact with double
+            }
+            n *= multiplier;
+            if (multiplier < 0) {
+                n = -n;
+                negative = !negative;
+            }
+        }
+        return formatInteger(negative, n);
+    }
+
+    private String formatInteger(boolean negative, long absValue) {
+        // DecimalFormat uses the setting values limited to the capabilities of double for long-s and double-s:
+        int minIntDigits = Math.min(this.minIntDigits, DOUBLE_INTEGER_DIGITS);
+        int maxIntDigits = Math.min(this.maxIntDigits, DOUBLE_INTEGER_DIGITS);
+        int minFracDigits = Math.min(this.minFracDigits, DOUBLE_FRACTION_DIGITS);
+
+        int digitCount = 0;
+        if (absValue != 0) {
+            digitCount = 1;
+            while (digitCount < POWERS_OF_10.length && POWERS_OF_10[digitCount] <= absValue) {
+                digitCount++;
+            }
+        }
+
+        StringBuilder sb = newResultBuilder(negative, digitCount, minIntDigits, minFracDigits);
+
+        int intCount = Math.min(Math.max(minIntDigits, digitCount), maxIntDigits);
+        for (int i = intCount - 1; i >= 0; i--) {
+            sb.append(i < digitCount ? (char) (zeroDigit + (int) (absValue / POWERS_OF_10[i] % 10)) : zeroDigit);
+            appendGroupingSeparatorIfNeeded(sb, i);
+        }
+        appendFractionPart(sb, intCount == 0, null, 0, 0, minFracDigits);
+
+        sb.append(negative ? negativeSuffix : positiveSuffix);
+        return sb.toString();
+    }
+
+    private String formatBigDecimal(BigDecimal n) {
+        if (multiplier != 1) {
+            n = n.multiply(bigDecimalMultiplier);
+        }
+        boolean negative = n.signum() == -1;
+        if (n.scale() > maxFracDigits) {
+            if (roundingMode == RoundingMode.UNNECESSARY) {
+                return null; // Let DecimalFormat throw its own exception
+            }
+            // Rounding happens before taking the absolute value, as CEILING and FLOOR depend on the sign:
+            n = n.setScale(maxFracDigits, roundingMode);
+        }
+        if (negative) {
+            n = n.negate();
+        }
+
+        String digits = n.unscaledValue().toString();
+        int scale = n.scale();
+        int intDigitCount = digits.length() - scale;
+        if (intDigitCount > maxIntDigits) {
+            return null; // DecimalFormat would drop the leading digits
+        }
+        if (n.signum() == 0) {
+            intDigitCount = 0;
+        }
+
+        StringBuilder sb = newResultBuilder(negative, Math.max(intDigitCount, 0), minIntDigits, minFracDigits);
+
+        int intCount = Math.max(minIntDigits, intDigitCount);
+        for (int i = intCount - 1; i >= 0; i--) {
+            if (i < intDigitCount) {
+                int digitIdx = intDigitCount - 1 - i;
+                sb.append(digitIdx < digits.length() ? localizeDigit(digits.charAt(digitIdx)) : zeroDigit);
+            } else {
+                sb.append(zeroDigit);
+            }
+            appendGroupingSeparatorIfNeeded(sb, i);
+        }
+
+        if (intDigitCount < 0) {
+            // Put the leading fraction zeros into the digits, so the fraction part is just the end of the digits
+            StringBuilder paddedDigits = new StringBuilder(digits.length() - intDigitCount);
+            for (int i = intDigitCount; i < 0; i++) {
+                paddedDigits.append('0');
+            }
+            digits = paddedDigits.append(digits).toString();
+            intDigitCount = 0;
+        }
+        int fracStart = Math.min(intDigitCount, digits.length());
+        int fracEnd = digits.length();
+        while (fracEnd > fracStart && digits.charAt(fracEnd - 1) == '0') {
+            fracEnd--;
+        }
+        appendFractionPart(sb, intCount == 0, digits, fracStart, fracEnd, minFracDigits);
+
+        sb.append(negative ? negativeSuffix : positiveSuffix);
+        return sb.toString();
+    }
+
+    private StringBuilder newResultBuilder(boolean negative, int digitCount, int minIntDigits, int minFracDigits) {
+        String prefix = negative ? negativePrefix : positivePrefix;
+        int intCount = Math.max(digitCount, minIntDigits);
+        StringBuilder sb = new StringBuilder(
+                prefix.length() + intCount + (groupingSize > 0 ? intCount / groupingSize : 0) + 1 + minFracDigits
+                + 4 + (negative ? negativeSuffix : positiveSuffix).length());
+        sb.append(prefix);
+        return sb;
+    }
+
+    private void appendGroupingSeparatorIfNeeded(StringBuilder sb, int remainingIntDigits) {
+        if (groupingSize > 0 && remainingIntDigits > 0 && remainingIntDigits % groupingSize == 0) {
+            sb.append(groupingSeparator);
+        }
+    }
+
+    /**
+     * @param noIntDigitsWritten
+     *            If no integer digits were output, which means that we must output a 0, unless there's a fraction part
+     * @param digits
+     *            The digits of which the ones from {@code fracStart} (inclusive) to {@code fracEnd} (exclusive) are the
+     *            fraction digits, without trailing zeros; {@code null} if there are no fraction digits.
+     */
+    private void appendFractionPart(
+            StringBuilder sb, boolean noIntDigitsWritten, String digits, int fracStart, int fracEnd,
+            int minFracDigits) {
+        int fracDigitCount = fracEnd - fracStart;
+        boolean fractionPresent = minFracDigits > 0 || fracDigitCount > 0;
+        if (!fractionPresent && noIntDigitsWritten) {
+            sb.append(zeroDigit);
+        }
+        if (fractionPresent || decimalSeparatorAlwaysShown) {
+            sb.append(decimalSeparator);
+        }
+        for (int i = 0; i < fracDigitCount; i++) {
+            sb.append(localizeDigit(digits.charAt(fracStart + i)));
+        }
+        for (int i = fracDigitCount; i < minFracDigits; i++) {
+            sb.append(zeroDigit);
+        }
+    }
+
+    private char localizeDigit(char c) {
+        return (char) (c - '0' + zeroDigit);
+    }
+
+}
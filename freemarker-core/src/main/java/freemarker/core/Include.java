@@ -26,6 +26,7 @@ import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateScalarModel;
+import freemarker.template._TemplateAPI;
 import freemarker.template.utility.StringUtil;
 
 
@@ -50,6 +51,14 @@ final class Include extends TemplateElement {
             Expression includedTemplatePathExp,
             Expression encodingExp, Expression parseExp, Expression ignoreMissingExp) throws ParseException {
         this.includedTemplateNameExp = includedTemplatePathExp;
+        if (includedTemplatePathExp instanceof StringLiteral && includedTemplatePathExp.isLiteral()) {
+            try {
+                _TemplateAPI.addDependencyName(template, includedTemplatePathExp.evalAndCoerceToPlainText(null));
+            } catch (TemplateException e) {
+                // evaluation of literals must not throw a TemplateException
+                throw new BugException(e);
+            }
+        }
         
         this.encodingExp = encodingExp;
         if (encodingExp == null) {
@@ -119,6 +128,7 @@ final class Include extends TemplateElement {
     
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
+        env.checkNotInParallelListChunk("#include");
         final String includedTemplateName = includedTemplateNameExp.evalAndCoerceToPlainText(env);
         final String fullIncludedTemplateName;
         try {
@@ -20,9 +20,15 @@
 package freemarker.core;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateBooleanModel;
@@ -33,21 +39,30 @@ import freemarker.template.TemplateHashModelEx2;
 import freemarker.template.TemplateHashModelEx2.KeyValuePair;
 import freemarker.template.TemplateHashModelEx2.KeyValuePairIterator;
 import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateModelIterator;
 import freemarker.template.TemplateScalarModel;
 import freemarker.template.TemplateSequenceModel;
 import freemarker.template.utility.Constants;
+import freemarker.template.utility.UndeclaredThrowableException;
 
 /**
  * A #list (or #foreach) element, or pre-#else section of it inside a {@link ListElseContainer}.
  */
 final class IteratorBlock extends TemplateElement {
 
+    /**
+     * With parallel listing, the number of chunks we aim for per thread of the {@link ForkJoinPool#commonPool()}, so
+     * that a thread that has finished its chunks early can take over chunks of the others.
+     */
+    private static final int PARALLEL_LIST_CHUNKS_PER_THREAD = 4;
+
     private final Expression listedExp;
     private final String loopVar1Name;
     private final String loopVar2Name;
     private final boolean hashListing;
     private final boolean forEach;
+    private final boolean parallel;
 
     /**
      * @param listedExp
@@ -68,19 +83,25 @@ final class IteratorBlock extends TemplateElement {
      *            a nested {@code #items}.
      * @param forEach
      *            Whether this is {@code #foreach} or a {@code #list}.
+     * @param parallel
+     *            Whether the nested content is executed for the items concurrently ({@code <#list ... parallel>}).
+     *            Then the output of the items is captured in chunks, and written out in the order of the items. Only
+     *            allowed if {@code loopVar1Name} is non-{@code null}, and {@code hashListing} is {@code false}.
      */
     IteratorBlock(Expression listedExp,
                   String loopVar1Name,
                   String loopVar2Name,
                   TemplateElements childrenBeforeElse,
                   boolean hashListing,
-                  boolean forEach) {
+                  boolean forEach,
+                  boolean parallel) {
         this.listedExp = listedExp;
         this.loopVar1Name = loopVar1Name;
         this.loopVar2Name = loopVar2Name;
         setChildren(childrenBeforeElse);
         this.hashListing = hashListing;
         this.forEach = forEach;
+        this.parallel = parallel;
 
         listedExp.enableLazilyGeneratedResult();
     }
@@ -127,6 +148,9 @@ final class IteratorBlock extends TemplateElement {
                     buf.append(", ");
                     buf.append(_CoreStringUtils.toFTLTopLevelIdentifierReference(loopVar2Name));
                 }
+                if (parallel) {
+                    buf.append(" parallel");
+                }
             }
         }
         if (canonical) {
@@ -233,12 +257,29 @@ final class IteratorBlock extends TemplateElement {
         private String loopVar2Name;
 
         private final TemplateModel listedValue;
-        
+
+        /**
+         * When listing a chunk of a parallel listing, all the items of the listed value, otherwise {@code null}. The
+         * items of the chunk are those from {@link #index} to {@link #chunkEnd} (exclusive).
+         */
+        private List<TemplateModel> chunkItems;
+        private int chunkEnd;
+
         public IterationContext(TemplateModel listedValue, String loopVar1Name, String loopVar2Name) {
             this.listedValue = listedValue;
             this.loopVar1Name = loopVar1Name;
             this.loopVar2Name = loopVar2Name;
         }
+
+        /**
+         * Creates the context of a chunk of a parallel listing.
+         */
+        private IterationContext(List<TemplateModel> items, int chunkStart, int chunkEnd, String loopVar1Name) {
+            this(null, loopVar1Name, null);
+            this.chunkItems = items;
+            this.index = chunkStart;
+            this.chunkEnd = chunkEnd;
+        }
         
         boolean accept(Environment env) throws TemplateException, IOException {
             return executeNestedContent(env, getChildBuffer());
@@ -274,6 +315,17 @@ final class IteratorBlock extends TemplateElement {
 
         private boolean executedNestedContentForCollOrSeqListing(Environment env, TemplateElement[] childBuffer)
                 throws IOException, TemplateException {
+            if (chunkItems != null) {
+                executeNestedContentForChunk(env, childBuffer);
+                return true;
+            }
+            if (parallel && loopVar1Name != null
+                    && (listedValue instanceof TemplateCollectionModel
+                            || listedValue instanceof TemplateSequenceModel)
+                    && env.prepareForParallelListing()) {
+                return executeNestedContentInParallel(env, childBuffer);
+            }
+
             final boolean listNotEmpty;
             if (listedValue instanceof TemplateCollectionModel) {
                 final TemplateCollectionModel collModel = (TemplateCollectionModel) listedValue;
@@ -313,8 +365,26 @@ final class IteratorBlock extends TemplateElement {
                 listNotEmpty = size != 0;
                 if (listNotEmpty) {
                     if (loopVar1Name != null) {
+                            // Items of primitive number sequences can be read without range checks and wrapping:
+                            final int primItemType = PrimitiveNumberSequences.getItemType(seqModel);
+                            final _PrimitiveNumberSequence primSeq
+                                    = primItemType != _PrimitiveNumberSequence.ITEM_TYPE_NONE
+                                    ? (_PrimitiveNumberSequence) seqModel : null;
+                            // Otherwise prefer walking through the items with an iterator, if the sequence has one:
+                            final TemplateModelIterator seqIter
+                                    = primSeq == null && seqModel instanceof _IterableSequence
+                                    ? ((_IterableSequence) seqModel).sequenceIterator() : null;
                             listLoop: for (index = 0; index < size; index++) {
-                                loopVar1Value = seqModel.get(index);
+                                if (seqIter != null) {
+                                    loopVar1Value = seqIter.next();
+                                } else if (primSeq == null) {
+                                    loopVar1Value = seqModel.get(index);
+                                } else if (primItemType != _PrimitiveNumberSequence.ITEM_TYPE_DOUBLE) {
+                                    loopVar1Value = PrimitiveNumberSequences.toModel(
+                                            primItemType, primSeq.getLong(index));
+                                } else {
+                                    loopVar1Value = PrimitiveNumberSequences.toModel(primSeq.getDouble(index));
+                                }
                                 hasNext = (size > index + 1);
                                 try {
                                     visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
@@ -361,6 +431,144 @@ final class IteratorBlock extends TemplateElement {
             return listNotEmpty;
         }
 
+        /**
+         * Lists the items in chunks that are rendered concurrently on the {@link ForkJoinPool#commonPool()}, each
+         * into its own buffer, and then writes out the buffers in order. Each chunk has its own forked
+         * {@link Environment}, and its own {@link IterationContext}, so the loop variables don't interfere. The
+         * template can't modify the variables shared by the chunks; see
+         * {@link Environment#checkNotInParallelListChunk(String)}. The items are read in the current thread, but the
+         * data model must be safe to use from multiple threads otherwise.
+         */
+        private boolean executeNestedContentInParallel(Environment env, TemplateElement[] childBuffer)
+                throws TemplateException, IOException {
+            final List<TemplateModel> items = listItems();
+            final int size = items.size();
+            if (size == 0) {
+                return false;
+            }
+
+            final int chunkCount = Math.min(
+                    size, ForkJoinPool.getCommonPoolParallelism() * PARALLEL_LIST_CHUNKS_PER_THREAD);
+            if (chunkCount < 2) {
+                chunkItems = items;
+                index = 0;
+                chunkEnd = size;
+                try {
+                    executeNestedContentForChunk(env, childBuffer);
+                } finally {
+                    chunkItems = null;
+                }
+                return true;
+            }
+
+            Environment.ParallelListChunkGroup chunkGroup = new Environment.ParallelListChunkGroup();
+            ParallelListChunk[] chunks = new ParallelListChunk[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                chunks[i] = new ParallelListChunk(env, chunkGroup, new IterationContext(
+                        items, (int) ((long) size * i / chunkCount), (int) ((long) size * (i + 1) / chunkCount),
+                        loopVar1Name));
+            }
+            ForkJoinTask.invokeAll(chunks);
+
+            Writer out = env.getOut();
+            Throwable failure = chunkGroup.getFailure();
+            boolean returned = false;
+            for (ParallelListChunk chunk : chunks) {
+                if (chunk.failure != null && chunk.failure != failure) {
+                    // Was cancelled because of the failure of another chunk, so it has stopped at a random point.
+                    break;
+                }
+                // The output of the failed chunk is written too, as it would have been without parallel listing.
+                chunk.output.writeTo(out);
+                if (chunk.failure != null) {
+                    break;
+                }
+                if (chunk.returned) {
+                    returned = true;
+                    break;
+                }
+            }
+            if (failure == null && !returned) {
+                // A chunk that has executed #return has cancelled the chunks before it too.
+                for (ParallelListChunk chunk : chunks) {
+                    returned |= chunk.returned;
+                }
+            }
+            if (failure != null) {
+                if (failure instanceof TemplateException) {
+                    // Was already passed to the TemplateExceptionHandler in the chunk
+                    env.rethrowParallelListChunkException((TemplateException) failure);
+                }
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw new UndeclaredThrowableException(failure);
+            }
+            if (returned) {
+                throw new _MiscTemplateException(env,
+                        "#return is not allowed inside a parallel #list (<#list ... parallel>), as its chunks are "
+                        + "rendered independently.");
+            }
+            return true;
+        }
+
+        /**
+         * Reads all items of the listed collection or sequence into a {@link List}.
+         */
+        private List<TemplateModel> listItems() throws TemplateModelException {
+            final List<TemplateModel> items;
+            if (listedValue instanceof TemplateCollectionModel) {
+                items = new ArrayList<>();
+                TemplateModelIterator iterModel = ((TemplateCollectionModel) listedValue).iterator();
+                while (iterModel.hasNext()) {
+                    items.add(iterModel.next());
+                }
+            } else {
+                final TemplateSequenceModel seqModel = (TemplateSequenceModel) listedValue;
+                final int size = seqModel.size();
+                items = new ArrayList<>(size);
+                if (seqModel instanceof _IterableSequence) {
+                    TemplateModelIterator seqIter = ((_IterableSequence) seqModel).sequenceIterator();
+                    for (int i = 0; i < size; i++) {
+                        items.add(seqIter.next());
+                    }
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        items.add(seqModel.get(i));
+                    }
+                }
+            }
+            return items;
+        }
+
+        /**
+         * Executes the nested content for the items of the chunk, which are part of a parallel listing.
+         */
+        private void executeNestedContentForChunk(Environment env, TemplateElement[] childBuffer)
+                throws IOException, TemplateException {
+            final List<TemplateModel> items = chunkItems;
+            final int size = items.size();
+            for (; index < chunkEnd; index++) {
+                if (env.isParallelListChunkCancelled()) {
+                    throw ParallelListChunk.CANCELLED;
+                }
+                loopVar1Value = items.get(index);
+                hasNext = size > index + 1;
+                try {
+                    visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
+                    env.visit(childBuffer);
+                } finally {
+                    visibleLoopVar1Name = null; // Hides all loop variables in FTL
+                }
+            }
+        }
+
         private boolean executedNestedContentForHashListing(Environment env, TemplateElement[] childBuffer)
                 throws IOException, TemplateException {
             final boolean hashNotEmpty;
@@ -513,5 +721,52 @@ final class IteratorBlock extends TemplateElement {
         }
         
     }
+
+    /**
+     * Renders a chunk of a parallel listing in a forked {@link Environment}, capturing its output. If a chunk fails,
+     * the other chunks of the listing stop before their next item (see {@link Environment.ParallelListChunkGroup}).
+     */
+    private static final class ParallelListChunk extends RecursiveAction {
+
+        /** Thrown to stop a chunk that was cancelled because another chunk has failed. */
+        static final RuntimeException CANCELLED = new CancellationException();
+
+        private final Environment parentEnv;
+        private final Environment.ParallelListChunkGroup chunkGroup;
+        private final IterationContext iterationContext;
+        private _CaptureWriter output;
+        private boolean returned;
+        private Throwable failure;
+
+        ParallelListChunk(
+                Environment parentEnv, Environment.ParallelListChunkGroup chunkGroup,
+                IterationContext iterationContext) {
+            this.parentEnv = parentEnv;
+            this.chunkGroup = chunkGroup;
+            this.iterationContext = iterationContext;
+        }
+
+        @Override
+        protected void compute() {
+            Environment prevEnv = Environment.getCurrentEnvironment();
+            Environment env = parentEnv.newParallelListChunkEnvironment(chunkGroup);
+            output = (_CaptureWriter) env.getOut();
+            Environment.setCurrentEnvironment(env);
+            try {
+                env.visitIteratorBlock(iterationContext);
+            } catch (ReturnInstruction.Return e) {
+                returned = true;
+                chunkGroup.cancel();
+            } catch (Throwable e) {
+                failure = e;
+                if (e != CANCELLED) {
+                    // Does nothing if a chunk has already failed (maybe this one, in the TemplateExceptionHandler).
+                    chunkGroup.fail(e);
+                }
+            } finally {
+                Environment.setCurrentEnvironment(prevEnv);
+            }
+        }
+    }
     
 }
@@ -19,6 +19,9 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.Writer;
+
 import freemarker.template.TemplateException;
 import freemarker.template.utility.StringUtil;
 import freemarker.template.utility.StringUtil.JsStringEncCompatibility;
@@ -49,6 +52,11 @@ public final class JavaScriptCFormat extends AbstractJSONLikeFormat {
         return StringUtil.jsStringEnc(s, JsStringEncCompatibility.JAVA_SCRIPT, JsStringEncQuotation.QUOTATION_MARK);
     }
 
+    @Override
+    void formatString(String s, Environment env, Writer out) throws TemplateException, IOException {
+        StringUtil.jsStringEnc(s, JsStringEncCompatibility.JAVA_SCRIPT, JsStringEncQuotation.QUOTATION_MARK, out);
+    }
+
     @Override
     public String getName() {
         return NAME;
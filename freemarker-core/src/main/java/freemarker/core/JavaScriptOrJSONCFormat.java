@@ -19,6 +19,9 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.Writer;
+
 import freemarker.template.Configuration;
 import freemarker.template.TemplateException;
 import freemarker.template.Version;
@@ -57,6 +60,12 @@ public final class JavaScriptOrJSONCFormat extends AbstractJSONLikeFormat {
                 s, JsStringEncCompatibility.JAVA_SCRIPT_OR_JSON, JsStringEncQuotation.QUOTATION_MARK);
     }
 
+    @Override
+    void formatString(String s, Environment env, Writer out) throws TemplateException, IOException {
+        StringUtil.jsStringEnc(
+                s, JsStringEncCompatibility.JAVA_SCRIPT_OR_JSON, JsStringEncQuotation.QUOTATION_MARK, out);
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -26,11 +26,33 @@ import freemarker.template.TemplateNumberModel;
 class JavaTemplateNumberFormat extends BackwardCompatibleTemplateNumberFormat {
     
     private final String formatString;
-    private final NumberFormat javaNumberFormat;
+    /** Shared by multiple threads, so it's not used directly, but is cloned on demand; {@code null} if not needed. */
+    private final NumberFormat javaNumberFormatPrototype;
+    /** Maybe {@code null}. */
+    private final FastDecimalFormat fastDecimalFormat;
+    /** Only used by the thread that uses this object (which normally belongs to a single {@link Environment}). */
+    private NumberFormat javaNumberFormat;
 
     public JavaTemplateNumberFormat(NumberFormat javaNumberFormat, String formatString) {
         this.formatString = formatString;
         this.javaNumberFormat = javaNumberFormat;
+        this.javaNumberFormatPrototype = null;
+        this.fastDecimalFormat = null;
+    }
+
+    /**
+     * @param javaNumberFormatPrototype
+     *            Will be cloned when it's first needed, as it's possibly shared with other threads.
+     * @param fastDecimalFormat
+     *            If not {@code null}, it's used instead of the {@link NumberFormat} when it can format the number.
+     * 
+     * @since 2.3.33
+     */
+    JavaTemplateNumberFormat(
+            NumberFormat javaNumberFormatPrototype, FastDecimalFormat fastDecimalFormat, String formatString) {
+        this.formatString = formatString;
+        this.javaNumberFormatPrototype = javaNumberFormatPrototype;
+        this.fastDecimalFormat = fastDecimalFormat;
     }
 
     @Override
@@ -46,8 +68,14 @@ class JavaTemplateNumberFormat extends BackwardCompatibleTemplateNumberFormat {
 
     @Override
     String format(Number number) throws UnformattableValueException {
+        if (fastDecimalFormat != null) {
+            String result = fastDecimalFormat.format(number);
+            if (result != null) {
+                return result;
+            }
+        }
         try {
-            return javaNumberFormat.format(number);
+            return getJavaNumberFormat().format(number);
         } catch (ArithmeticException e) {
             throw new UnformattableValueException(
                     "This format can't format the " + number + " number. Reason: " + e.getMessage(), e);
@@ -55,6 +83,12 @@ class JavaTemplateNumberFormat extends BackwardCompatibleTemplateNumberFormat {
     }
 
     public NumberFormat getJavaNumberFormat() {
+        NumberFormat javaNumberFormat = this.javaNumberFormat;
+        if (javaNumberFormat == null) {
+            // JFormat-s aren't thread-safe; must clone it
+            javaNumberFormat = (NumberFormat) javaNumberFormatPrototype.clone();
+            this.javaNumberFormat = javaNumberFormat;
+        }
         return javaNumberFormat;
     }
 
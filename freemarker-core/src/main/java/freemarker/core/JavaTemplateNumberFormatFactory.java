@@ -18,6 +18,7 @@
  */
 package freemarker.core;
 
+import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.Locale;
@@ -34,7 +35,7 @@ class JavaTemplateNumberFormatFactory extends TemplateNumberFormatFactory {
 
     private static final Logger LOG = Logger.getLogger("freemarker.runtime");
 
-    private static final ConcurrentHashMap<CacheKey, NumberFormat> GLOBAL_FORMAT_CACHE
+    private static final ConcurrentHashMap<CacheKey, CachedFormat> GLOBAL_FORMAT_CACHE
             = new ConcurrentHashMap<>();
     private static final int LEAK_ALERT_NUMBER_FORMAT_CACHE_SIZE = 1024;
 
@@ -46,8 +47,9 @@ class JavaTemplateNumberFormatFactory extends TemplateNumberFormatFactory {
     public TemplateNumberFormat get(String params, Locale locale, Environment env)
             throws InvalidFormatParametersException {
         CacheKey cacheKey = new CacheKey(params, locale);
-        NumberFormat jFormat = GLOBAL_FORMAT_CACHE.get(cacheKey);
-        if (jFormat == null) {
+        CachedFormat cachedFormat = GLOBAL_FORMAT_CACHE.get(cacheKey);
+        if (cachedFormat == null) {
+            NumberFormat jFormat;
             if ("number".equals(params)) {
                 jFormat = NumberFormat.getNumberInstance(locale);
             } else if ("currency".equals(params)) {
@@ -79,16 +81,29 @@ class JavaTemplateNumberFormatFactory extends TemplateNumberFormatFactory {
                 }
             }
             
-            NumberFormat prevJFormat = GLOBAL_FORMAT_CACHE.putIfAbsent(cacheKey, jFormat);
-            if (prevJFormat != null) {
-                jFormat = prevJFormat;
+            cachedFormat = new CachedFormat(
+                    jFormat,
+                    jFormat instanceof DecimalFormat ? FastDecimalFormat.compile((DecimalFormat) jFormat) : null);
+            CachedFormat prevCachedFormat = GLOBAL_FORMAT_CACHE.putIfAbsent(cacheKey, cachedFormat);
+            if (prevCachedFormat != null) {
+                cachedFormat = prevCachedFormat;
             }
         }  // if cache miss
         
-        // JFormat-s aren't thread-safe; must clone it
-        jFormat = (NumberFormat) jFormat.clone();
-        
-        return new JavaTemplateNumberFormat(jFormat, params); 
+        // JFormat-s aren't thread-safe, so it will be cloned if it's needed, but FastDecimalFormat-s can be shared.
+        return new JavaTemplateNumberFormat(cachedFormat.jFormat, cachedFormat.fastDecimalFormat, params); 
+    }
+
+    private static final class CachedFormat {
+        /** Must not be modified, or used without cloning it first. */
+        private final NumberFormat jFormat;
+        /** Maybe {@code null} */
+        private final FastDecimalFormat fastDecimalFormat;
+
+        CachedFormat(NumberFormat jFormat, FastDecimalFormat fastDecimalFormat) {
+            this.jFormat = jFormat;
+            this.fastDecimalFormat = fastDecimalFormat;
+        }
     }
 
     private static final class CacheKey {
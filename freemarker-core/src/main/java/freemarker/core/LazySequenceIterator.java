@@ -33,6 +33,7 @@ class LazySequenceIterator implements TemplateModelIterator {
     private final TemplateSequenceModel sequence;
     private Integer size;
     private int index = 0;
+    private TemplateModelIterator sequenceIterator;
 
     LazySequenceIterator(TemplateSequenceModel sequence) throws TemplateModelException {
         this.sequence = sequence;
@@ -40,6 +41,15 @@ class LazySequenceIterator implements TemplateModelIterator {
     }
     @Override
     public TemplateModel next() throws TemplateModelException {
+        if (sequence instanceof _IterableSequence) {
+            if (sequenceIterator == null) {
+                if (size == null) {
+                    size = sequence.size();
+                }
+                sequenceIterator = ((_IterableSequence) sequence).sequenceIterator();
+            }
+            return index++ < size ? sequenceIterator.next() : null;
+        }
         return sequence.get(index++);
     }
 
@@ -19,6 +19,8 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
@@ -91,6 +93,13 @@ public final class LegacyCFormat extends CFormat {
                 s, StringUtil.JsStringEncCompatibility.JAVA_SCRIPT_OR_JSON, StringUtil.JsStringEncQuotation.QUOTATION_MARK);
     }
 
+    @Override
+    final void formatString(String s, Environment env, Writer out) throws TemplateException, IOException {
+        StringUtil.jsStringEnc(
+                s, StringUtil.JsStringEncCompatibility.JAVA_SCRIPT_OR_JSON, StringUtil.JsStringEncQuotation.QUOTATION_MARK,
+                out);
+    }
+
     @Override
     final TemplateNumberFormat getTemplateNumberFormat(Environment env) {
         return getTemplateNumberFormat(env.getConfiguration().getIncompatibleImprovements().intValue());
@@ -24,6 +24,7 @@ import java.io.IOException;
 import freemarker.template.MalformedTemplateNameException;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
+import freemarker.template._TemplateAPI;
 
 /**
  * <b>Internal API - subject to change:</b> Represents an import via {@code #import}.
@@ -47,10 +48,19 @@ public final class LibraryLoad extends TemplateElement {
             String targetNsVarName) {
         this.targetNsVarName = targetNsVarName;
         this.importedTemplateNameExp = templateName;
+        if (templateName instanceof StringLiteral && templateName.isLiteral()) {
+            try {
+                _TemplateAPI.addDependencyName(template, templateName.evalAndCoerceToPlainText(null));
+            } catch (TemplateException e) {
+                // evaluation of literals must not throw a TemplateException
+                throw new BugException(e);
+            }
+        }
     }
 
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
+        env.checkNotInParallelListChunk("#import");
         final String importedTemplateName = importedTemplateNameExp.evalAndCoerceToPlainText(env);
         final String fullImportedTemplateName;
         try {
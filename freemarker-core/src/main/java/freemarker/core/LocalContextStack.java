@@ -54,4 +54,15 @@ final class LocalContextStack {
         return size;
     }
 
+    /**
+     * Creates a new stack that initially contains the bottom {@code size} elements of this stack.
+     */
+    LocalContextStack copy(int size) {
+        LocalContextStack copy = new LocalContextStack();
+        for (int i = 0; i < size; i++) {
+            copy.push(buffer[i]);
+        }
+        return copy;
+    }
+
 }
@@ -59,6 +59,11 @@ public final class Macro extends TemplateElement implements TemplateModel {
     private final String name;
     private final String[] paramNames;
     private final Map<String, Expression> paramNamesWithDefault;
+    /**
+     * The default value expressions (or {@code null}-s) from {@link #paramNamesWithDefault}, indexed like
+     * {@link #paramNames}, so that calls needn't look them up by name.
+     */
+    private final Expression[] paramDefaults;
     private final WithArgs withArgs;
     private boolean requireArgsSpecialVariable;
     private final String catchAllParamName;
@@ -78,6 +83,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
         this.name = name;
         this.paramNamesWithDefault = paramNamesWithDefault;
         this.paramNames = paramNamesWithDefault.keySet().toArray(new String[0]);
+        this.paramDefaults = paramNamesWithDefault.values().toArray(new Expression[0]);
         this.catchAllParamName = catchAllParamName;
         this.withArgs = null;
         this.requireArgsSpecialVariable = requireArgsSpecialVariable;
@@ -100,6 +106,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
         this.name = that.name;
         this.paramNamesWithDefault = that.paramNamesWithDefault;
         this.paramNames = that.paramNames;
+        this.paramDefaults = that.paramDefaults;
         this.catchAllParamName = that.catchAllParamName;
         this.withArgs = withArgs; // Using the argument value here
         this.requireArgsSpecialVariable = that.requireArgsSpecialVariable;
@@ -151,7 +158,8 @@ public final class Macro extends TemplateElement implements TemplateModel {
     }
 
     @Override
-    TemplateElement[] accept(Environment env) {
+    TemplateElement[] accept(Environment env) throws TemplateException {
+        env.checkNotInParallelListChunk("Defining a macro or function");
         env.visitMacroDef(this);
         return null;
     }
@@ -232,11 +240,18 @@ public final class Macro extends TemplateElement implements TemplateModel {
         final LocalContextStack prevLocalContextStack;
         final Context prevMacroContext;
         TemplateModel argsSpecialVariableValue;
+        /**
+         * If the catch-all parameter is empty, its value is only created when it's first read, as often it isn't; see
+         * {@link #setEmptyCatchAllParameter(boolean)}.
+         */
+        private boolean emptyCatchAllPending;
+        private boolean emptyCatchAllIsSequence;
         
         Context(Environment env, 
                 TemplateObject callPlace,
                 List<String> nestedContentParameterNames) {
-            this.localVars = env.new Namespace(); 
+            // The parameters, the catch-all parameter, and a few #local-s:
+            this.localVars = env.new Namespace(paramNames.length + 3);
             this.callPlace = callPlace;
             this.nestedContentNamespace = env.getCurrentNamespace();
             this.nestedContentParameterNames = nestedContentParameterNames;
@@ -271,7 +286,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                     final String argName = paramNames[paramIndex];
                     final TemplateModel argValue = localVars.get(argName);
                     if (argValue == null) {
-                        Expression defaultValueExp = paramNamesWithDefault.get(argName);
+                        Expression defaultValueExp = paramDefaults[paramIndex];
                         if (defaultValueExp != null) {
                             try {
                                 TemplateModel defaultValue = defaultValueExp.eval(env);
@@ -335,7 +350,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
             if (argsSpecVarDraft != null) {
                 final String catchAllParamName = getMacro().catchAllParamName;
                 final TemplateModel catchAllArgValue = catchAllParamName != null
-                        ? localVars.get(catchAllParamName) : null;
+                        ? getLocalVariable(catchAllParamName) : null;
 
                 if (getMacro().isFunction()) {
                     int lengthWithCatchAlls = argsSpecVarDraft.length;
@@ -401,10 +416,16 @@ public final class Macro extends TemplateElement implements TemplateModel {
 
         @Override
         public TemplateModel getLocalVariable(String name) throws TemplateModelException {
-             return localVars.get(name);
+            if (emptyCatchAllPending && name.equals(catchAllParamName)) {
+                bindEmptyCatchAllParameter();
+            }
+            return localVars.get(name);
         }
 
         Environment.Namespace getLocals() {
+            if (emptyCatchAllPending) {
+                bindEmptyCatchAllParameter();
+            }
             return localVars;
         }
         
@@ -412,11 +433,34 @@ public final class Macro extends TemplateElement implements TemplateModel {
          * Set a local variable in this macro 
          */
         void setLocalVar(String name, TemplateModel var) {
+            if (emptyCatchAllPending && name.equals(catchAllParamName)) {
+                emptyCatchAllPending = false;
+            }
             localVars.put(name, var);
         }
 
+        /**
+         * Marks the catch-all parameter as empty, without creating its value yet. The value will be a new
+         * {@link SimpleSequence} if {@code isSequence} is {@code true}, otherwise a new {@link SimpleHash}, same as
+         * if it was created right away.
+         */
+        void setEmptyCatchAllParameter(boolean isSequence) {
+            emptyCatchAllPending = true;
+            emptyCatchAllIsSequence = isSequence;
+        }
+
+        private void bindEmptyCatchAllParameter() {
+            emptyCatchAllPending = false;
+            localVars.put(catchAllParamName, emptyCatchAllIsSequence
+                    ? new SimpleSequence(_ObjectWrappers.SAFE_OBJECT_WRAPPER)
+                    : new SimpleHash(new LinkedHashMap<String, Object>(), _ObjectWrappers.SAFE_OBJECT_WRAPPER, 0));
+        }
+
         @Override
         public Collection getLocalVariableNames() throws TemplateModelException {
+            if (emptyCatchAllPending) {
+                bindEmptyCatchAllParameter();
+            }
             HashSet result = new HashSet();
             for (TemplateModelIterator it = localVars.keys().iterator(); it.hasNext(); ) {
                 result.add(((TemplateScalarModel) it.next()).getAsString());
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import freemarker.template.SimpleNumber;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * Fast paths for the built-ins and directives that process {@link _PrimitiveNumberSequence}-s, so that they need not
+ * create a {@link TemplateModel} for each item. Each of these must give the same result as the generic code path.
+ */
+final class PrimitiveNumberSequences {
+
+    private PrimitiveNumberSequences() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Returns the {@code ITEM_TYPE_...} constant of the value, or {@link _PrimitiveNumberSequence#ITEM_TYPE_NONE} if
+     * the value is not a {@link _PrimitiveNumberSequence}.
+     */
+    static int getItemType(TemplateModel model) {
+        return model instanceof _PrimitiveNumberSequence
+                ? ((_PrimitiveNumberSequence) model).getPrimitiveItemType()
+                : _PrimitiveNumberSequence.ITEM_TYPE_NONE;
+    }
+
+    /**
+     * Like {@link #getItemType(TemplateModel)}, but also returns {@link _PrimitiveNumberSequence#ITEM_TYPE_NONE} if
+     * the numbers will be compared with an {@link ArithmeticEngine} whose comparison rules we don't know.
+     */
+    static int getItemTypeForComparison(TemplateModel model, ArithmeticEngine ae) {
+        return ArithmeticEngine.hasStandardNumberComparison(ae)
+                ? getItemType(model) : _PrimitiveNumberSequence.ITEM_TYPE_NONE;
+    }
+
+    /**
+     * Creates the same {@link TemplateModel} that {@link _PrimitiveNumberSequence#get(int)} would return for the
+     * given {@link _PrimitiveNumberSequence#ITEM_TYPE_INT} or {@link _PrimitiveNumberSequence#ITEM_TYPE_LONG}
+     * item.
+     */
+    static TemplateModel toModel(int itemType, long value) {
+        if (itemType == _PrimitiveNumberSequence.ITEM_TYPE_INT) {
+            int intValue = (int) value;
+            if (intValue == value) {
+                return ArithmeticEngine.toSimpleNumber(Integer.valueOf(intValue));
+            }
+        }
+        return new SimpleNumber(Long.valueOf(value));
+    }
+
+    /**
+     * Creates the same {@link TemplateModel} that {@link _PrimitiveNumberSequence#get(int)} would return for the
+     * given {@link _PrimitiveNumberSequence#ITEM_TYPE_DOUBLE} item.
+     */
+    static TemplateModel toModel(double value) {
+        return new SimpleNumber(Double.valueOf(value));
+    }
+
+    /**
+     * Returns the sequence sorted into ascending order, or {@code null} if the result could differ from that of
+     * {@code ?sort}, in which case the generic implementation must be used. 
+     */
+    static TemplateSequenceModel sort(_PrimitiveNumberSequence seq, int itemType) throws TemplateModelException {
+        int size = seq.size();
+        if (itemType == _PrimitiveNumberSequence.ITEM_TYPE_DOUBLE) {
+            double[] items = new double[size];
+            for (int i = 0; i < size; i++) {
+                double item = seq.getDouble(i);
+                // Arrays.sort orders these differently than ArithmeticEngine.compareNumbers
+                if (Double.isNaN(item) || item == 0.0 && Double.doubleToRawLongBits(item) != 0L) {
+                    return null;
+                }
+                items[i] = item;
+            }
+            Arrays.sort(items);
+            return new SortedSequence(itemType, null, items);
+        } else {
+            long[] items = new long[size];
+            for (int i = 0; i < size; i++) {
+                items[i] = seq.getLong(i);
+            }
+            Arrays.sort(items);
+            return new SortedSequence(itemType, items, null);
+        }
+    }
+
+    /**
+     * Returns the smallest or biggest item, or {@code null} if the result could differ from that of {@code ?min}
+     * or {@code ?max}, in which case the generic implementation must be used. Must not be called for an empty
+     * sequence.
+     */
+    static TemplateModel minOrMax(_PrimitiveNumberSequence seq, int itemType, boolean max)
+            throws TemplateModelException {
+        int size = seq.size();
+        if (itemType == _PrimitiveNumberSequence.ITEM_TYPE_DOUBLE) {
+            double best = seq.getDouble(0);
+            if (Double.isNaN(best)) {
+                return null;
+            }
+            for (int i = 1; i < size; i++) {
+                double item = seq.getDouble(i);
+                if (Double.isNaN(item)) {
+                    return null;
+                }
+                if (max ? item > best : item < best) {
+                    best = item;
+                }
+            }
+            return toModel(best);
+        } else {
+            long best = seq.getLong(0);
+            for (int i = 1; i < size; i++) {
+                long item = seq.getLong(i);
+                if (max ? item > best : item < best) {
+                    best = item;
+                }
+            }
+            return toModel(itemType, best);
+        }
+    }
+
+    /**
+     * Tells if the sequence contains the searched value (as {@code ?seq_contains}), or returns {@code null} if the
+     * generic implementation must be used. 
+     */
+    static Boolean contains(_PrimitiveNumberSequence seq, int itemType, TemplateModel searched)
+            throws TemplateModelException {
+        if (itemType == _PrimitiveNumberSequence.ITEM_TYPE_DOUBLE || !(searched instanceof TemplateNumberModel)) {
+            return null;
+        }
+        Number searchedNum = ((TemplateNumberModel) searched).getAsNumber();
+        long searchedLong;
+        if (searchedNum instanceof Integer || searchedNum instanceof Long
+                || searchedNum instanceof Short || searchedNum instanceof Byte) {
+            searchedLong = searchedNum.longValue();
+        } else if (searchedNum instanceof BigDecimal) {
+            BigDecimal bd = (BigDecimal) searchedNum;
+            if (bd.signum() == 0) {
+                searchedLong = 0;
+            } else {
+                bd = bd.stripTrailingZeros();
+                if (bd.scale() > 0 || bd.precision() - bd.scale() > 19) {
+                    return Boolean.FALSE;
+                }
+                try {
+                    searchedLong = bd.longValueExact();
+                } catch (ArithmeticException e) {
+                    return Boolean.FALSE;
+                }
+            }
+        } else if (searchedNum instanceof BigInteger) {
+            BigInteger bi = (BigInteger) searchedNum;
+            if (bi.bitLength() > 63) {
+                return Boolean.FALSE;
+            }
+            searchedLong = bi.longValue();
+        } else {
+            // Floating point and unknown number types have too complex comparison rules to replicate them here
+            return null;
+        }
+
+        if (seq instanceof RangeModel) {
+            RangeModel range = (RangeModel) seq;
+            int size = range.size();
+            if (size == 0) {
+                return Boolean.FALSE;
+            }
+            long index = (searchedLong - range.getBegining()) * range.getStep();
+            return Boolean.valueOf(index >= 0 && index < size);
+        }
+
+        int size = seq.size();
+        for (int i = 0; i < size; i++) {
+            if (seq.getLong(i) == searchedLong) {
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * The result of {@link PrimitiveNumberSequences#sort(_PrimitiveNumberSequence, int)}.
+     */
+    private static final class SortedSequence implements _PrimitiveNumberSequence {
+
+        private final int itemType;
+        private final long[] longItems;
+        private final double[] doubleItems;
+
+        SortedSequence(int itemType, long[] longItems, double[] doubleItems) {
+            this.itemType = itemType;
+            this.longItems = longItems;
+            this.doubleItems = doubleItems;
+        }
+
+        @Override
+        public TemplateModel get(int index) throws TemplateModelException {
+            if (index < 0 || index >= size()) {
+                return null;
+            }
+            return longItems != null ? toModel(itemType, longItems[index]) : toModel(doubleItems[index]);
+        }
+
+        @Override
+        public int size() {
+            return longItems != null ? longItems.length : doubleItems.length;
+        }
+
+        @Override
+        public int getPrimitiveItemType() {
+            return itemType;
+        }
+
+        @Override
+        public long getLong(int index) {
+            return longItems[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return doubleItems[index];
+        }
+
+    }
+
+}
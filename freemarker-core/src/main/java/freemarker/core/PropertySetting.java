@@ -134,6 +134,7 @@ final class PropertySetting extends TemplateElement {
 
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException {
+        env.checkNotInParallelListChunk("#setting");
         TemplateModel mval = value.eval(env);
         String strval;
         if (mval instanceof TemplateScalarModel) {
@@ -19,12 +19,10 @@
 
 package freemarker.core;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
-import freemarker.template.TemplateSequenceModel;
 
-abstract class RangeModel implements TemplateSequenceModel, java.io.Serializable {
+abstract class RangeModel implements _PrimitiveNumberSequence, java.io.Serializable {
     
     private final int begin;
 
@@ -41,8 +39,22 @@ abstract class RangeModel implements TemplateSequenceModel, java.io.Serializable
         if (index < 0 || index >= size()) {
             throw new _TemplateModelException("Range item index ", Integer.valueOf(index), " is out of bounds.");
         }
-        long value = begin + getStep() * (long) index;
-        return value <= Integer.MAX_VALUE ? new SimpleNumber((int) value) : new SimpleNumber(value);
+        return PrimitiveNumberSequences.toModel(ITEM_TYPE_INT, getLong(index));
+    }
+
+    @Override
+    public final int getPrimitiveItemType() {
+        return ITEM_TYPE_INT;
+    }
+
+    @Override
+    public final long getLong(int index) {
+        return begin + getStep() * (long) index;
+    }
+
+    @Override
+    public final double getDouble(int index) {
+        return getLong(index);
     }
     
     /**
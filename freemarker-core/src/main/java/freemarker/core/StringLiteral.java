@@ -36,6 +36,12 @@ final class StringLiteral extends Expression implements TemplateScalarModel {
     
     /** {@link List} of {@link String}-s and {@link Interpolation}-s. */
     private List<Object> dynamicValue;
+
+    /**
+     * Lazily calculated NFKC normalized form of {@link #value}; only used if {@link #dynamicValue} is {@code null}.
+     * Not volatile, as concurrent threads calculating it again is harmless.
+     */
+    private String nfkcNormalizedValue;
     
     StringLiteral(String value) {
         this.value = value;
@@ -138,6 +144,25 @@ final class StringLiteral extends Expression implements TemplateScalarModel {
         return value;
     }
     
+    /**
+     * Returns the NFKC normalized form of the value of this literal, or {@code null} if this literal contains
+     * interpolations (so its value is only known at runtime).
+     *
+     * @param evaluatedValue
+     *            The value this literal was evaluated to; used for sanity checking only.
+     */
+    String getNFKCNormalizedValue(String evaluatedValue) {
+        if (dynamicValue != null || evaluatedValue != value && !evaluatedValue.equals(value)) {
+            return null;
+        }
+        String normalized = nfkcNormalizedValue;
+        if (normalized == null) {
+            normalized = EvalUtil.normalizeNFKC(value);
+            nfkcNormalizedValue = normalized;
+        }
+        return normalized;
+    }
+
     /**
      * Tells if this is something like <code>"${foo}"</code>, which is usually a user mistake.
      */
@@ -173,6 +173,9 @@ public final class TemplateConfiguration extends Configurable implements ParserC
         if (tc.isAutoFlushSet()) {
             setAutoFlush(tc.getAutoFlush());
         }
+        if (tc.isAutoFlushPolicySet()) {
+            setAutoFlushPolicy(tc.getAutoFlushPolicy());
+        }
         if (tc.isBooleanFormatSet()) {
             setBooleanFormat(tc.getBooleanFormat());
         }
@@ -316,6 +319,9 @@ public final class TemplateConfiguration extends Configurable implements ParserC
         if (isAutoFlushSet() && !template.isAutoFlushSet()) {
             template.setAutoFlush(getAutoFlush());
         }
+        if (isAutoFlushPolicySet() && !template.isAutoFlushPolicySet()) {
+            template.setAutoFlushPolicy(getAutoFlushPolicy());
+        }
         if (isBooleanFormatSet() && !template.isBooleanFormatSet()) {
             template.setBooleanFormat(getBooleanFormat());
         }
@@ -678,6 +684,7 @@ public final class TemplateConfiguration extends Configurable implements ParserC
                 isAPIBuiltinEnabledSet()
                 || isArithmeticEngineSet()
                 || isAutoFlushSet()
+                || isAutoFlushPolicySet()
                 || isAutoImportsSet()
                 || isAutoIncludesSet()
                 || isBooleanFormatSet()
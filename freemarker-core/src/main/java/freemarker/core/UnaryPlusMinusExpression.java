@@ -19,7 +19,6 @@
 
 package freemarker.core;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateNumberModel;
@@ -53,7 +52,7 @@ final class UnaryPlusMinusExpression extends Expression {
         target.assertNonNull(targetModel, env);
         Number n = targetModel.getAsNumber();
         n = ArithmeticEngine.CONSERVATIVE_ENGINE.multiply(MINUS_ONE, n);
-        return new SimpleNumber(n);
+        return ArithmeticEngine.toSimpleNumber(n);
     }
     
     @Override
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Don't use this; used internally by FreeMarker, might change without notice.
+ * 
+ * <p>
+ * A non-synchronized {@link Writer} that collects the output into a growable {@code char[]} taken from a
+ * {@link _CharArrayPool}. Unlike with {@link java.io.StringWriter}, the captured content is only copied once, when
+ * {@link #toString()} is called. After the content was consumed, {@link #release()} should be called, so that the
+ * buffer can be reused by later captures.
+ * 
+ * @since 2.3.33
+ */
+public final class _CaptureWriter extends Writer {
+
+    private final _CharArrayPool pool;
+    private char[] buf;
+    private int size;
+
+    _CaptureWriter(_CharArrayPool pool) {
+        this.pool = pool;
+        this.buf = pool.borrow(_CharArrayPool.MIN_ARRAY_LENGTH);
+    }
+
+    @Override
+    public void write(int c) {
+        ensureCapacity(size + 1);
+        buf[size++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        ensureCapacity(size + len);
+        System.arraycopy(cbuf, off, buf, size, len);
+        size += len;
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        ensureCapacity(size + len);
+        str.getChars(off, off + len, buf, size);
+        size += len;
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        String s = String.valueOf(csq);
+        write(s, 0, s.length());
+        return this;
+    }
+
+    @Override
+    public Writer append(char c) {
+        write(c);
+        return this;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (buf == null) {
+            throw new IllegalStateException("This writer was already released");
+        }
+        if (minCapacity > buf.length) {
+            if (minCapacity < 0) {
+                throw new OutOfMemoryError("Captured output is too long");
+            }
+            int newCapacity = buf.length << 1;
+            if (newCapacity < minCapacity) {
+                newCapacity = minCapacity;
+            }
+            char[] newBuf = pool.borrow(newCapacity);
+            System.arraycopy(buf, 0, newBuf, 0, size);
+            pool.giveBack(buf);
+            buf = newBuf;
+        }
+    }
+
+    /**
+     * Returns the number of characters captured so far.
+     */
+    public int length() {
+        return size;
+    }
+
+    /**
+     * Discards the characters captured after the first {@code length} characters; used to roll back output to an
+     * earlier {@link #length()}.
+     */
+    public void truncate(int length) {
+        if (length < 0 || length > size) {
+            throw new IndexOutOfBoundsException("length: " + length + ", size: " + size);
+        }
+        size = length;
+    }
+
+    /**
+     * Writes the captured content into another {@link Writer}, without creating a {@link String} from it.
+     */
+    public void writeTo(Writer out) throws IOException {
+        if (size != 0) {
+            out.write(buf, 0, size);
+        }
+    }
+
+    /**
+     * Returns the captured content; each call creates a new {@link String}.
+     */
+    @Override
+    public String toString() {
+        if (buf == null) {
+            throw new IllegalStateException("This writer was already released");
+        }
+        return size == 0 ? "" : new String(buf, 0, size);
+    }
+
+    /**
+     * Gives the buffer back to the pool; the writer can't be used after this. Calling this more than once has no
+     * further effect.
+     */
+    public void release() {
+        char[] buf = this.buf;
+        if (buf != null) {
+            this.buf = null;
+            pool.giveBack(buf);
+        }
+    }
+
+    /** Does nothing. */
+    @Override
+    public void flush() {
+        // Nothing to do
+    }
+
+    /** Does nothing; use {@link #release()} to free the buffer. */
+    @Override
+    public void close() {
+        // Nothing to do
+    }
+
+}
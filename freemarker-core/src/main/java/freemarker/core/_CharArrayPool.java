@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+/**
+ * Don't use this; used internally by FreeMarker, might change without notice.
+ * 
+ * <p>
+ * A small pool of {@code char[]}-s that's owned by an {@link Environment}, so it's only used from a single thread.
+ * It's used by the constructs that capture or buffer the output of their nested content (like
+ * {@code <#assign x>...</#assign>}), so that they needn't allocate new buffers (and grow them step by step) on each
+ * execution.
+ * 
+ * @since 2.3.33
+ */
+public final class _CharArrayPool {
+
+    /** The minimum size of the arrays we return from {@link #borrow(int)}. */
+    static final int MIN_ARRAY_LENGTH = 256;
+
+    /** Arrays bigger than this aren't kept, so that a single huge capturing doesn't pin that much memory. */
+    static final int MAX_POOLED_ARRAY_LENGTH = 64 * 1024;
+
+    /** The maximum number of arrays kept; deeper nesting than this will allocate. */
+    static final int MAX_POOLED_ARRAYS = 8;
+
+    private final char[][] freeArrays;
+    private int freeArrayCount;
+
+    /** Creates a pool that doesn't keep anything, only allocates. */
+    private static final _CharArrayPool NON_POOLING = new _CharArrayPool(0);
+
+    _CharArrayPool() {
+        this(MAX_POOLED_ARRAYS);
+    }
+
+    private _CharArrayPool(int maxPooledArrays) {
+        freeArrays = new char[maxPooledArrays][];
+    }
+
+    /**
+     * Returns the pool that belongs to the given {@link Environment}, or if that's {@code null}, a shared instance
+     * that doesn't pool (as then we don't know if we are only used from a single thread).
+     */
+    public static _CharArrayPool getInstance(Environment env) {
+        return env != null ? env.getCharArrayPool() : NON_POOLING;
+    }
+
+    /**
+     * Returns an array whose length is at least the specified length. The content of the array is undefined. Once
+     * you don't need the array anymore, you should (but don't have to) pass it to {@link #giveBack(char[])}.
+     */
+    public char[] borrow(int minLength) {
+        for (int i = freeArrayCount - 1; i >= 0; i--) {
+            char[] array = freeArrays[i];
+            if (array.length >= minLength) {
+                freeArrayCount--;
+                freeArrays[i] = freeArrays[freeArrayCount];
+                freeArrays[freeArrayCount] = null;
+                return array;
+            }
+        }
+        return new char[Math.max(minLength, MIN_ARRAY_LENGTH)];
+    }
+
+    /**
+     * Returns the array to the pool; the caller must not use it after this anymore. If the pool is full, or the
+     * array is too big, it will be simply left to the garbage collector.
+     * 
+     * @param array
+     *            Can be {@code null}, in which case nothing happens.
+     */
+    public void giveBack(char[] array) {
+        if (array == null || array.length > MAX_POOLED_ARRAY_LENGTH) {
+            return;
+        }
+        if (freeArrayCount < freeArrays.length) {
+            freeArrays[freeArrayCount++] = array;
+        } else if (freeArrayCount != 0) {
+            // Prefer keeping the bigger arrays, as those are more costly to re-create.
+            int smallestIdx = 0;
+            for (int i = 1; i < freeArrayCount; i++) {
+                if (freeArrays[i].length < freeArrays[smallestIdx].length) {
+                    smallestIdx = i;
+                }
+            }
+            if (freeArrays[smallestIdx].length < array.length) {
+                freeArrays[smallestIdx] = array;
+            }
+        }
+    }
+
+    /**
+     * Creates a new {@link _CaptureWriter} whose buffer is taken from this pool.
+     */
+    public _CaptureWriter newCaptureWriter() {
+        return new _CaptureWriter(this);
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * Don't use this; used internally by FreeMarker, might change without notice.
+ * 
+ * <p>
+ * A {@link TemplateSequenceModel} that can be walked through with an iterator faster than with calling
+ * {@link #get(int)} for each index. Directives and built-ins that visit the items in order (like {@code #list},
+ * {@code ?join}, {@code ?filter}) use this when it's available.
+ * 
+ * @since 2.3.33
+ */
+public interface _IterableSequence extends TemplateSequenceModel {
+
+    /**
+     * Returns an iterator that returns the same items as {@link #get(int)} would for the indexes from 0 to
+     * {@link #size()}{@code  - 1}. The caller must not call {@link TemplateModelIterator#next()} more times than the
+     * {@link #size()} it has queried before this method, though it needn't call
+     * {@link TemplateModelIterator#hasNext()} before each {@link TemplateModelIterator#next()} call.
+     */
+    TemplateModelIterator sequenceIterator() throws TemplateModelException;
+
+}
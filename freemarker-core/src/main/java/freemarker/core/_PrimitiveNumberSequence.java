@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * Don't use this; used internally by FreeMarker, might change without notice.
+ * 
+ * <p>
+ * A {@link TemplateSequenceModel} whose items are all non-{@code null} numbers that are stored as Java primitives, so
+ * built-ins and directives can read them without creating a {@link TemplateModel} for each item. The items returned by
+ * {@link #get(int)} must be {@link TemplateNumberModel}-s whose {@link TemplateNumberModel#getAsNumber()} returns
+ * an {@link Integer} (or a {@link Long}, if the value doesn't fit into {@code int}) for
+ * {@link #ITEM_TYPE_INT}, a {@link Long} for {@link #ITEM_TYPE_LONG}, and a {@link Double} for
+ * {@link #ITEM_TYPE_DOUBLE}, with the same value as {@link #getLong(int)} or {@link #getDouble(int)} returns.
+ * 
+ * @since 2.3.33
+ */
+public interface _PrimitiveNumberSequence extends TemplateSequenceModel {
+
+    /** The primitive access methods can't be used (the items must be read with {@link #get(int)}). */
+    int ITEM_TYPE_NONE = 0;
+    /** Read the items with {@link #getLong(int)}; they are {@link Integer}-s, unless they don't fit into it. */
+    int ITEM_TYPE_INT = 1;
+    /** Read the items with {@link #getLong(int)}; they are {@link Long}-s. */
+    int ITEM_TYPE_LONG = 2;
+    /** Read the items with {@link #getDouble(int)}; they are {@link Double}-s. */
+    int ITEM_TYPE_DOUBLE = 3;
+
+    /**
+     * Returns one of the {@code ITEM_TYPE_...} constants. If it's {@link #ITEM_TYPE_NONE}, then the primitive access
+     * methods must not be called, which can happen, for example, if the items of an adapted array are wrapped with a
+     * custom {@link freemarker.template.ObjectWrapper}.
+     */
+    int getPrimitiveItemType();
+
+    /**
+     * Returns the item at the given index, if the item type is {@link #ITEM_TYPE_INT} or {@link #ITEM_TYPE_LONG}.
+     * Unlike {@link #get(int)}, this needn't check if the index is in range (but it must not return garbage either).
+     */
+    long getLong(int index) throws TemplateModelException;
+
+    /**
+     * Returns the item at the given index, if the item type is {@link #ITEM_TYPE_DOUBLE}.
+     * Unlike {@link #get(int)}, this needn't check if the index is in range (but it must not return garbage either).
+     */
+    double getDouble(int index) throws TemplateModelException;
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNodeModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * Don't use this; used internally by FreeMarker, might change without notice.
+ * 
+ * <p>
+ * The child nodes of a {@link TemplateNodeModel} that are read from a stream, and so can be visited in order without
+ * holding all of them (and their subtrees) in memory. {@code #recurse} uses this when it's available.
+ * 
+ * @since 2.3.33
+ */
+public interface _StreamedNodeSequence extends TemplateSequenceModel {
+
+    /**
+     * Returns an iterator that returns the same nodes as {@link #get(int)} would for the indexes from 0 to
+     * {@link #size()}{@code  - 1}, but the caller guarantees that it won't use a returned node (nor its
+     * descendants) after calling {@link TemplateModelIterator#hasNext()} or {@link TemplateModelIterator#next()}
+     * again, so the iterator can skip the rest of its subtree.
+     */
+    TemplateModelIterator releasingIterator() throws TemplateModelException;
+
+}
@@ -21,6 +21,7 @@ package freemarker.ext.beans;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -221,14 +222,39 @@ implements TemplateHashModelEx, AdapterTemplateModel, WrapperTemplateModel, Temp
         } catch (TemplateModelException | MethodCallAwareTemplateHashModel.ShouldNotBeGetAsMethodException e) {
             throw e;
         } catch (Exception e) {
-            throw new _TemplateModelException(e,
-                    "An error has occurred when reading existing sub-variable ", new _DelayedJQuote(key),
-                    "; see cause exception! The type of the containing value was: ",
-                    new _DelayedFTLTypeDescription(this)
-            );
+            throw newSubVariableReadingFailedException(key, e);
         }
     }
 
+    /**
+     * Used by {@link _BeanPropertyInlineCache}; the result is the same as of {@link #get(String, boolean)} with
+     * {@code false} second argument, if the key was resolved to the {@code member} parameter.
+     *
+     * @param member
+     *            The read method of a non-indexed property, or a {@link Field}.
+     */
+    TemplateModel getThroughCachedMember(Member member, String key) throws TemplateModelException {
+        try {
+            if (member instanceof Method) {
+                return wrapper.invokeMethod(object, (Method) member, null);
+            } else {
+                return wrapper.readField(object, (Field) member);
+            }
+        } catch (TemplateModelException e) {
+            throw e;
+        } catch (Exception e) {
+            throw newSubVariableReadingFailedException(key, e);
+        }
+    }
+
+    private _TemplateModelException newSubVariableReadingFailedException(String key, Exception e) {
+        return new _TemplateModelException(e,
+                "An error has occurred when reading existing sub-variable ", new _DelayedJQuote(key),
+                "; see cause exception! The type of the containing value was: ",
+                new _DelayedFTLTypeDescription(this)
+        );
+    }
+
     /**
      * Can be overridden to be public, to implement {@link MethodCallAwareTemplateHashModel}. We don't implement that
      * in {@link BeanModel} for backward compatibility, but the functionality is present. If you expose this method by
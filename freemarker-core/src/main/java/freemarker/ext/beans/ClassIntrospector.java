@@ -177,7 +177,7 @@ class ClassIntrospector {
             = new LinkedList<>();
     private final ReferenceQueue<Object> modelFactoriesRefQueue = new ReferenceQueue<>();
 
-    private int clearingCounter;
+    private volatile int clearingCounter;
 
     // -----------------------------------------------------------------------------------------------------------------
     // Instantiation:
@@ -1017,9 +1017,8 @@ class ClassIntrospector {
      * Returns the number of events so far that could make class introspection data returned earlier outdated.
      */
     int getClearingCounter() {
-        synchronized (sharedLock) {
-            return clearingCounter;
-        }
+        // Volatile read; it's only modified while holding the sharedLock.
+        return clearingCounter;
     }
 
     private void onSameNameClassesDetected(String className) {
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.beans;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Don't use this; used internally by FreeMarker, might change without notice.
+ * 
+ * <p>Inline cache for a single hash sub-variable reading call site of a template (like {@code order.customer}, or
+ * {@code order[key]}). For plain {@link BeanModel}-s, it remembers what the key was resolved to for the last few
+ * receiver classes, so if a non-indexed JavaBeans property or a field is read again from an object of the same class,
+ * it can directly invoke the accessor, without going through the class introspection data and the member cache of
+ * the {@link BeanModel}. The cached resolutions are invalidated when the class introspection cache is cleared
+ * (fully, or for any class), or the {@link BeansWrapper} switches to another {@link ClassIntrospector}.
+ * 
+ * <p>This class is thread-safe, as the template (and so the call site) is possibly used by multiple threads
+ * concurrently.
+ * 
+ * @since 2.3.33
+ */
+public final class _BeanPropertyInlineCache {
+
+    /** The number of receiver class + key combinations that a call site remembers. */
+    private static final int MAX_ENTRIES = 4;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private volatile Entry[] entries = NO_ENTRIES;
+
+    /**
+     * Does the same as {@link BeanModel#get(String)}, but faster if the key resolution is cached.
+     */
+    public TemplateModel get(BeanModel model, String key) throws TemplateModelException {
+        Class<?> modelClass = model.getClass();
+        if (modelClass != BeanModel.class && modelClass != StringModel.class
+                && modelClass != GenericObjectModel.class) {
+            // Subclasses might override get(String[, boolean]), which we would bypass.
+            return model.get(key);
+        }
+        BeansWrapper wrapper = model.wrapper;
+        if (!wrapper.isMethodsShadowItems()) {
+            // The generic get(key) method of the object is tried first; that can't be cached.
+            return model.get(key);
+        }
+
+        Class<?> clazz = model.object.getClass();
+        ClassIntrospector classIntrospector = wrapper.getClassIntrospector();
+        int clearingCounter = classIntrospector.getClearingCounter();
+        Entry[] entries = this.entries;
+        for (Entry entry : entries) {
+            if (entry.clazz == clazz && (entry.key == key || entry.key.equals(key))
+                    && entry.classIntrospector == classIntrospector && entry.clearingCounter == clearingCounter) {
+                return model.getThroughCachedMember(entry.member, key);
+            }
+        }
+
+        // Cache miss:
+        Map<Object, Object> classInfo = classIntrospector.get(clazz);
+        Object desc = classInfo.get(key);
+        Member member;
+        if (desc instanceof FastPropertyDescriptor && ((FastPropertyDescriptor) desc).getIndexedReadMethod() == null) {
+            member = ((FastPropertyDescriptor) desc).getReadMethod();
+        } else if (desc instanceof Field) {
+            member = (Field) desc;
+        } else {
+            // Methods, indexed properties, and generic get(key) calls go through the usual BeanModel logic.
+            return model.get(key);
+        }
+        addEntry(entries, new Entry(clazz, key, classIntrospector, clearingCounter, member));
+        return model.getThroughCachedMember(member, key);
+    }
+
+    private void addEntry(Entry[] oldEntries, Entry newEntry) {
+        // Entries made stale by clearing the class introspection cache are dropped here.
+        Entry[] newEntries = new Entry[MAX_ENTRIES];
+        int newLength = 0;
+        for (Entry oldEntry : oldEntries) {
+            if (oldEntry.classIntrospector == newEntry.classIntrospector
+                    && oldEntry.clearingCounter == newEntry.clearingCounter) {
+                newEntries[newLength++] = oldEntry;
+            }
+        }
+        if (newLength == MAX_ENTRIES) {
+            // The call site is megamorphic; we keep the entries we already have.
+            return;
+        }
+        newEntries[newLength++] = newEntry;
+        if (newLength != MAX_ENTRIES) {
+            Entry[] trimmedNewEntries = new Entry[newLength];
+            System.arraycopy(newEntries, 0, trimmedNewEntries, 0, newLength);
+            newEntries = trimmedNewEntries;
+        }
+        // If another thread has added an entry concurrently, that's lost, but it will be re-added on the next miss.
+        entries = newEntries;
+    }
+
+    private static final class Entry {
+        private final Class<?> clazz;
+        private final String key;
+        private final ClassIntrospector classIntrospector;
+        private final int clearingCounter;
+        /** A non-indexed property read {@link Method}, or a {@link Field}. */
+        private final Member member;
+
+        private Entry(
+                Class<?> clazz, String key, ClassIntrospector classIntrospector, int clearingCounter, Member member) {
+            this.clazz = clazz;
+            this.key = key;
+            this.classIntrospector = classIntrospector;
+            this.clearingCounter = clearingCounter;
+            this.member = member;
+        }
+    }
+
+}
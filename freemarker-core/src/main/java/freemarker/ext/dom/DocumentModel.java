@@ -53,7 +53,8 @@ class DocumentModel extends NodeModel implements TemplateHashModel {
             NodeList nl = ((Document) node).getElementsByTagName("*");
             return new NodeListModel(nl, this);
         } else if (DomStringUtil.isXMLNameLike(key)) {
-            ElementModel em = (ElementModel) NodeModel.wrap(((Document) node).getDocumentElement());
+            ElementModel em = index != null
+                    ? getRootElement() : (ElementModel) NodeModel.wrap(((Document) node).getDocumentElement());
             if (em.matchesName(key, Environment.getCurrentEnvironment())) {
                 return em;
             } else {
@@ -65,7 +66,7 @@ class DocumentModel extends NodeModel implements TemplateHashModel {
     
     ElementModel getRootElement() {
         if (rootElement == null) {
-            rootElement = (ElementModel) wrap(((Document) node).getDocumentElement());
+            rootElement = (ElementModel) wrapRelated(((Document) node).getDocumentElement());
         }
         return rootElement;
     }
@@ -19,7 +19,10 @@
  
 package freemarker.ext.dom;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
@@ -36,6 +39,15 @@ import freemarker.template.TemplateSequenceModel;
 
 class ElementModel extends NodeModel implements TemplateScalarModel {
 
+    /** Used in indexed mode only; the child elements grouped by {@link #getNodeName()}. */
+    private HashMap<String, List<ElementModel>> childElementsByName;
+    /**
+     * Used in indexed mode only; the earlier results of {@link #get(String)} for keys where that's safe to reuse,
+     * valid for {@link #lookupCacheTemplate} only, as the result can depend on its namespace prefixes.
+     */
+    private HashMap<String, TemplateModel> lookupCache;
+    private Template lookupCacheTemplate;
+
     public ElementModel(Element element) {
         super(element);
     }
@@ -58,6 +70,36 @@ class ElementModel extends NodeModel implements TemplateScalarModel {
      */
     @Override
     public TemplateModel get(String key) throws TemplateModelException {
+        if (index != null && isLookupCacheable(key)) {
+            Environment env = Environment.getCurrentEnvironment();
+            if (env != null) {
+                Template template = env.getCurrentNamespace().getTemplate();
+                if (lookupCache == null || lookupCacheTemplate != template) {
+                    lookupCache = new HashMap<>();
+                    lookupCacheTemplate = template;
+                }
+                TemplateModel result = lookupCache.get(key);
+                if (result == null) {
+                    result = getUncached(key);
+                    lookupCache.put(key, result);
+                }
+                return result;
+            }
+        }
+        return getUncached(key);
+    }
+
+    /**
+     * Tells if the result of {@link #get(String)} for the key only depends on the DOM and on the namespace prefixes
+     * of the current template, and is never {@code null}.
+     */
+    private static boolean isLookupCacheable(String key) {
+        return key.equals("*")
+                || (key.startsWith("@") ? !key.startsWith("@@") && DomStringUtil.isXMLNameLike(key, 1)
+                        : DomStringUtil.isXMLNameLike(key));
+    }
+
+    private TemplateModel getUncached(String key) throws TemplateModelException {
         if (key.equals("*")) {
             NodeListModel ns = new NodeListModel(this);
             TemplateSequenceModel children = getChildNodes();
@@ -92,14 +134,14 @@ class ElementModel extends NodeModel implements TemplateScalarModel {
                         previousSibling = previousSibling.getPreviousSibling();
                     }
                     return previousSibling != null && previousSibling.getNodeType() == Node.ELEMENT_NODE
-                            ? wrap(previousSibling) : new NodeListModel(Collections.emptyList(), null);  
+                            ? wrapRelated(previousSibling) : new NodeListModel(Collections.emptyList(), null);  
                 } else if (key.equals(AtAtKey.NEXT_SIBLING_ELEMENT.getKey())) {
                     Node nextSibling = node.getNextSibling();
                     while (nextSibling != null && !this.isSignificantNode(nextSibling)) {
                         nextSibling = nextSibling.getNextSibling();
                     }
                     return nextSibling != null && nextSibling.getNodeType() == Node.ELEMENT_NODE
-                            ? wrap(nextSibling) : new NodeListModel(Collections.emptyList(), null);  
+                            ? wrapRelated(nextSibling) : new NodeListModel(Collections.emptyList(), null);  
                 } else {
                     // We don't know anything like this that's element-specific; fall back 
                     return super.get(key);
@@ -110,7 +152,7 @@ class ElementModel extends NodeModel implements TemplateScalarModel {
                     if (att == null) { 
                         return new NodeListModel(this);
                     }
-                    return wrap(att);
+                    return wrapRelated(att);
                 } else if (key.equals("@*")) {
                     return new NodeListModel(node.getAttributes(), this);
                 } else {
@@ -120,7 +162,8 @@ class ElementModel extends NodeModel implements TemplateScalarModel {
             }
         } else if (DomStringUtil.isXMLNameLike(key)) {
             // We interpret key as an element name
-            NodeListModel result = ((NodeListModel) getChildNodes()).filterByName(key);
+            NodeListModel result = index != null
+                    ? getChildElementsByName(key) : ((NodeListModel) getChildNodes()).filterByName(key);
             return result.size() != 1 ? result : result.get(0);
         } else {
             // We don't anything like this that's element-specific; fall back 
@@ -182,6 +225,56 @@ class ElementModel extends NodeModel implements TemplateScalarModel {
         return prefix + nodeName;
     }
     
+    /**
+     * Used in indexed mode instead of {@link NodeListModel#filterByName(String)} on the child nodes.
+     */
+    private NodeListModel getChildElementsByName(String qname) throws TemplateModelException {
+        if (childElementsByName == null) {
+            HashMap<String, List<ElementModel>> childElementsByName = new HashMap<>();
+            TemplateSequenceModel children = getChildNodes();
+            int size = children.size();
+            for (int i = 0; i < size; i++) {
+                TemplateModel child = children.get(i);
+                if (child instanceof ElementModel) {
+                    ElementModel childElement = (ElementModel) child;
+                    String name = childElement.getNodeName();
+                    List<ElementModel> sameNameElements = childElementsByName.get(name);
+                    if (sameNameElements == null) {
+                        sameNameElements = new ArrayList<>(1);
+                        childElementsByName.put(name, sameNameElements);
+                    }
+                    sameNameElements.add(childElement);
+                }
+            }
+            this.childElementsByName = childElementsByName;
+        }
+
+        // The qname is either just the node name, or a prefix plus ":" plus the node name.
+        List<ElementModel> candidates = childElementsByName.get(qname);
+        int colonIdx = qname.indexOf(':');
+        if (colonIdx != -1) {
+            List<ElementModel> prefixedCandidates = childElementsByName.get(qname.substring(colonIdx + 1));
+            if (prefixedCandidates != null) {
+                if (candidates != null) {
+                    // Rare (only with not namespace aware DOM); we would have to merge them in document order.
+                    return ((NodeListModel) getChildNodes()).filterByName(qname);
+                }
+                candidates = prefixedCandidates;
+            }
+        }
+
+        NodeListModel result = new NodeListModel(this);
+        if (candidates != null) {
+            Environment env = Environment.getCurrentEnvironment();
+            for (ElementModel candidate : candidates) {
+                if (candidate.matchesName(qname, env)) {
+                    result.add(candidate);
+                }
+            }
+        }
+        return result;
+    }
+
     private Attr getAttribute(String qname) {
         Element element = (Element) node;
         Attr result = element.getAttributeNode(qname);
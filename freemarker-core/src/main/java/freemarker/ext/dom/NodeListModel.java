@@ -78,16 +78,20 @@ class NodeListModel extends SimpleSequence implements TemplateHashModel, _Unexpe
     
     NodeListModel(NodeList nodeList, NodeModel contextNode) {
         super(NODE_WRAPPER);
+        NodeModelIndex index = contextNode != null ? contextNode.index : null;
         for (int i = 0; i < nodeList.getLength(); i++) {
-            list.add(nodeList.item(i));
+            Node node = nodeList.item(i);
+            list.add(index != null ? index.wrap(node) : node);
         }
         this.contextNode = contextNode;
     }
     
     NodeListModel(NamedNodeMap nodeList, NodeModel contextNode) {
         super(NODE_WRAPPER);
+        NodeModelIndex index = contextNode != null ? contextNode.index : null;
         for (int i = 0; i < nodeList.getLength(); i++) {
-            list.add(nodeList.item(i));
+            Node node = nodeList.item(i);
+            list.add(index != null ? index.wrap(node) : node);
         }
         this.contextNode = contextNode;
     }
@@ -173,6 +177,15 @@ class NodeListModel extends SimpleSequence implements TemplateHashModel, _Unexpe
             }
             return result;
         }
+        if (size != 0) {
+            SimpleXPath simpleXPath = SimpleXPath.compile(key);
+            if (simpleXPath != null) {
+                List<Node> result = simpleXPath.evaluate(rawNodeList());
+                if (result != null) {
+                    return wrapQueryResult(result, contextNode);
+                }
+            }
+        }
         XPathSupport xps = getXPathSupport();
         if (xps == null) {
             throw new TemplateModelException(
@@ -183,6 +196,22 @@ class NodeListModel extends SimpleSequence implements TemplateHashModel, _Unexpe
         return xps.executeQuery(context, key);
     }
     
+    /**
+     * Wraps the result of a {@link SimpleXPath} query similarly as {@link XPathSupport#executeQuery} does.
+     */
+    static TemplateModel wrapQueryResult(List<Node> nodes, NodeModel contextNode) {
+        NodeModelIndex index = contextNode != null ? contextNode.index : null;
+        if (nodes.size() == 1) {
+            Node node = nodes.get(0);
+            return index != null ? index.wrap(node) : NodeModel.wrap(node);
+        }
+        NodeListModel result = new NodeListModel(contextNode);
+        for (Node node : nodes) {
+            result.add(index != null ? index.wrap(node) : node);
+        }
+        return result;
+    }
+
     private List rawNodeList() throws TemplateModelException {
         int size = size();
         ArrayList al = new ArrayList(size);
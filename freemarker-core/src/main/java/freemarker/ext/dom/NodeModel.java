@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -117,6 +118,8 @@ implements TemplateNodeModelEx, TemplateHashModel, TemplateSequenceModel,
     final Node node;
     private TemplateSequenceModel children;
     private NodeModel parent;
+    /** Non-{@code null} if this was created in indexed mode; see {@link #wrapIndexed(Node)}. */
+    NodeModelIndex index;
     
     /**
      * Sets the DOM parser implementation to be used when building {@link NodeModel} objects from XML files or from
@@ -334,15 +337,33 @@ implements TemplateNodeModelEx, TemplateHashModel, TemplateSequenceModel,
                 }
             }
         } else {
+            TemplateModel result = executeSimpleXPathQuery(key);
+            if (result != null) {
+                return result;
+            }
             XPathSupport xps = getXPathSupport();
             if (xps == null) {
                 throw new TemplateModelException(
                         "No XPath support is available (add Apache Xalan or Jaxen as dependency). "
                         + "This is either malformed, or an XPath expression: " + key);
             }
-            return xps.executeQuery(node, key);
+            return wrapRelated(xps.executeQuery(node, key));
         }
     }
+
+    /**
+     * Executes the query without the XPath engine, if it's simple enough for {@link SimpleXPath}.
+     * 
+     * @return {@code null} if the query has to be executed with the XPath engine.
+     */
+    private TemplateModel executeSimpleXPathQuery(String query) {
+        SimpleXPath simpleXPath = SimpleXPath.compile(query);
+        if (simpleXPath == null) {
+            return null;
+        }
+        List<Node> result = simpleXPath.evaluate(Collections.singletonList(node));
+        return result != null ? NodeListModel.wrapQueryResult(result, this) : null;
+    }
     
     @Override
     public TemplateNodeModel getParentNode() {
@@ -353,19 +374,19 @@ implements TemplateNodeModelEx, TemplateHashModel, TemplateSequenceModel,
                     parentNode = ((Attr) node).getOwnerElement();
                 }
             }
-            parent = wrap(parentNode);
+            parent = wrapRelated(parentNode);
         }
         return parent;
     }
 
     @Override
     public TemplateNodeModelEx getPreviousSibling() throws TemplateModelException {
-        return wrap(node.getPreviousSibling());
+        return wrapRelated(node.getPreviousSibling());
     }
 
     @Override
     public TemplateNodeModelEx getNextSibling() throws TemplateModelException {
-        return wrap(node.getNextSibling());
+        return wrapRelated(node.getNextSibling());
     }
 
     @Override
@@ -402,11 +423,15 @@ implements TemplateNodeModelEx, TemplateHashModel, TemplateSequenceModel,
         }
         String query = (String) args.get(0);
         // Now, we try to behave as if this is an XPath expression
+        TemplateModel result = executeSimpleXPathQuery(query);
+        if (result != null) {
+            return result;
+        }
         XPathSupport xps = getXPathSupport();
         if (xps == null) {
             throw new TemplateModelException("No XPath support available");
         }
-        return xps.executeQuery(node, query);
+        return wrapRelated(xps.executeQuery(node, query));
     }
     
     /**
@@ -467,6 +492,56 @@ implements TemplateNodeModelEx, TemplateHashModel, TemplateSequenceModel,
         return result;
     }
     
+    /**
+     * Same as {@link #wrap(Node)}, but creates the {@link NodeModel} in indexed mode, which is recommended for big
+     * documents that are navigated a lot by the templates. In this mode each {@link Node} of the document is wrapped
+     * into the same {@link NodeModel} object every time (except for the nodes returned by XPath queries that aren't
+     * nodes themselves, like attribute values), so it can remember the results of the earlier lookups. The child
+     * elements of each element are indexed by name when first needed, so getting the child elements with a given name
+     * (like {@code catalog.item}) doesn't scan through all the children, and the results of the child element and
+     * attribute lookups are cached (separately for each template, as the namespace prefixes are template-specific).
+     *
+     * <p>
+     * This mode assumes that the DOM is not modified after wrapping it, as the cached lookup results won't reflect
+     * that. Also, it keeps all the {@link NodeModel}-s created for the document in memory as long as any of them is
+     * reachable.
+     *
+     * @since 2.3.33
+     */
+    static public NodeModel wrapIndexed(Node node) {
+        return node == null ? null : new NodeModelIndex().wrap(node);
+    }
+
+    /**
+     * Wraps a node that was reached from this node, so it will be in indexed mode if this node is.
+     */
+    final NodeModel wrapRelated(Node node) {
+        return index != null ? index.wrap(node) : wrap(node);
+    }
+
+    /**
+     * Ensures that the nodes in the query result are in indexed mode, if this node is.
+     */
+    final TemplateModel wrapRelated(TemplateModel queryResult) throws TemplateModelException {
+        if (index == null) {
+            return queryResult;
+        }
+        if (queryResult instanceof NodeModel) {
+            return index.wrap(((NodeModel) queryResult).node);
+        }
+        if (queryResult instanceof NodeListModel) {
+            NodeListModel nodes = (NodeListModel) queryResult;
+            int size = nodes.size();
+            List<NodeModel> indexedNodes = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                indexedNodes.add(index.wrap(((NodeModel) nodes.get(i)).node));
+            }
+            NodeModel contextNode = nodes.contextNode;
+            return new NodeListModel(indexedNodes, contextNode != null ? index.wrap(contextNode.node) : null);
+        }
+        return queryResult;
+    }
+
     /**
      * Recursively removes all comment nodes from the subtree.
      *
@@ -615,7 +690,7 @@ implements TemplateNodeModelEx, TemplateHashModel, TemplateSequenceModel,
         if (node instanceof Document) {
             return this;
         } else {
-            return wrap(node.getOwnerDocument());
+            return wrapRelated(node.getOwnerDocument());
         }
     }
 
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.IdentityHashMap;
+
+import org.w3c.dom.Node;
+
+/**
+ * Stores the {@link NodeModel}-s created in indexed mode (see {@link NodeModel#wrapIndexed(Node)}), so that the same
+ * {@link Node} is always wrapped into the same {@link NodeModel}, and thus the lookup results cached in them are
+ * reused. Not thread safe, just like {@link NodeModel}.
+ */
+final class NodeModelIndex {
+
+    private final IdentityHashMap<Node, NodeModel> nodeModels = new IdentityHashMap<>();
+
+    NodeModel wrap(Node node) {
+        if (node == null) {
+            return null;
+        }
+        NodeModel nodeModel = nodeModels.get(node);
+        if (nodeModel == null) {
+            nodeModel = NodeModel.wrap(node);
+            if (nodeModel != null) {
+                nodeModel.index = this;
+                nodeModels.put(node, nodeModel);
+            }
+        }
+        return nodeModel;
+    }
+
+}
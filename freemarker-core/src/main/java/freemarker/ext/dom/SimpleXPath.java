@@ -0,0 +1,530 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import freemarker.cache.MruCacheStorage;
+import freemarker.core.Environment;
+import freemarker.template.Template;
+
+/**
+ * A compiled XPath query that's in the simple subset that we can evaluate directly on the DOM, without using the
+ * {@link XPathSupport} (the external XPath engine). The supported subset is location paths with the child and
+ * descendant axes in abbreviated syntax, like {@code a/b}, {@code /a/b}, {@code //b}, {@code a//b}, an optional
+ * attribute step at the end, like {@code a/@id}, where the name tests are names (optionally with namespace prefix)
+ * or {@code *}, and the steps can have predicates like {@code [2]}, {@code [@id]}, {@code [@id='x']} and
+ * {@code [@id!='x']}. Anything else (including white-space) is left to the XPath engine.
+ */
+final class SimpleXPath {
+
+    private static final MruCacheStorage CACHE = new MruCacheStorage(100, 500);
+    /** Put into the cache for queries that aren't in the supported subset. */
+    private static final Object UNSUPPORTED = new Object();
+
+    private static final int AXIS_CHILD = 0;
+    /**
+     * The meaning of {@code //} if the step has no position predicate, as then it's the same as
+     * {@code /descendant-or-self::node()/child::}.
+     */
+    private static final int AXIS_DESCENDANT = 1;
+    /** The meaning of {@code //} if the step has a position predicate. */
+    private static final int AXIS_DESCENDANT_OR_SELF_CHILD = 2;
+    private static final int AXIS_ATTRIBUTE = 3;
+
+    private static final Comparator<Node> DOCUMENT_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(Node n1, Node n2) {
+            if (n1 == n2) {
+                return 0;
+            }
+            return (n1.compareDocumentPosition(n2) & Node.DOCUMENT_POSITION_FOLLOWING) != 0 ? -1 : 1;
+        }
+    };
+
+    private final boolean absolute;
+    private final Step[] steps;
+
+    private SimpleXPath(boolean absolute, Step[] steps) {
+        this.absolute = absolute;
+        this.steps = steps;
+    }
+
+    /**
+     * Returns the compiled query, or {@code null} if the query is not in the supported subset.
+     */
+    static SimpleXPath compile(String query) {
+        Object result;
+        synchronized (CACHE) {
+            result = CACHE.get(query);
+        }
+        if (result == null) {
+            result = new Parser(query).parse();
+            if (result == null) {
+                result = UNSUPPORTED;
+            }
+            synchronized (CACHE) {
+                CACHE.put(query, result);
+            }
+        }
+        return result != UNSUPPORTED ? (SimpleXPath) result : null;
+    }
+
+    /**
+     * Evaluates the query with the given context nodes.
+     * 
+     * @param contextNodes
+     *            The context nodes in document order.
+     * 
+     * @return The matching nodes in document order, or {@code null} if the query can't be evaluated here (like
+     *         because of an unknown namespace prefix), in which case the XPath engine should be used.
+     */
+    List<Node> evaluate(List<Node> contextNodes) {
+        Environment env = Environment.getCurrentEnvironment();
+        if (env == null) {
+            return null;
+        }
+        
+        List<Node> nodes = contextNodes;
+        if (absolute && !nodes.isEmpty()) {
+            Node node = nodes.get(0);
+            nodes = Collections.singletonList(
+                    node.getNodeType() == Node.DOCUMENT_NODE ? node : (Node) node.getOwnerDocument());
+        }
+        // Whether the nodes can contain each other, in which case the result of the next step might be not in
+        // document order, or contain duplicates:
+        boolean nodesMayNest = nodes.size() > 1;
+        for (Step step : steps) {
+            NameTest nameTest = step.nameTest;
+            String nsURI = nameTest.resolveNamespace(env);
+            if (nsURI == null) {
+                return null;
+            }
+            Predicate[] predicates = step.predicates;
+            String[] predicateNsURIs = new String[predicates.length];
+            for (int i = 0; i < predicates.length; i++) {
+                if (predicates[i].attributeName != null) {
+                    predicateNsURIs[i] = predicates[i].attributeName.resolveNamespace(env);
+                    if (predicateNsURIs[i] == null) {
+                        return null;
+                    }
+                }
+            }
+
+            List<Node> stepResult = new ArrayList<>();
+            for (Node node : nodes) {
+                switch (step.axis) {
+                case AXIS_CHILD:
+                    addMatchingChildren(node, step, nsURI, predicateNsURIs, stepResult);
+                    break;
+                case AXIS_DESCENDANT:
+                    addMatchingDescendants(node, step, nsURI, predicateNsURIs, stepResult);
+                    break;
+                case AXIS_DESCENDANT_OR_SELF_CHILD:
+                    addMatchingChildrenOfSelfAndDescendants(node, step, nsURI, predicateNsURIs, stepResult);
+                    break;
+                case AXIS_ATTRIBUTE:
+                    if (node.getNodeType() == Node.ELEMENT_NODE) {
+                        Attr attr = getAttribute(node, nameTest.localName, nsURI);
+                        if (attr != null) {
+                            stepResult.add(attr);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException();
+                }
+            }
+            
+            if (nodesMayNest || step.axis == AXIS_DESCENDANT_OR_SELF_CHILD) {
+                stepResult = toDocumentOrderSet(stepResult);
+            }
+            nodesMayNest |= step.axis == AXIS_DESCENDANT || step.axis == AXIS_DESCENDANT_OR_SELF_CHILD;
+            nodes = stepResult;
+        }
+        return nodes;
+    }
+
+    private static void addMatchingChildren(
+            Node node, Step step, String nsURI, String[] predicateNsURIs, List<Node> result) {
+        int resultStart = result.size();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (step.nameTest.matches(child, nsURI)) {
+                result.add(child);
+            }
+        }
+        applyPredicates(step.predicates, predicateNsURIs, result, resultStart);
+    }
+
+    private static void addMatchingDescendants(
+            Node node, Step step, String nsURI, String[] predicateNsURIs, List<Node> result) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                if (step.nameTest.matches(child, nsURI)
+                        && matchesAttributePredicates(child, step.predicates, predicateNsURIs)) {
+                    result.add(child);
+                }
+                addMatchingDescendants(child, step, nsURI, predicateNsURIs, result);
+            }
+        }
+    }
+
+    private static void addMatchingChildrenOfSelfAndDescendants(
+            Node node, Step step, String nsURI, String[] predicateNsURIs, List<Node> result) {
+        addMatchingChildren(node, step, nsURI, predicateNsURIs, result);
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                addMatchingChildrenOfSelfAndDescendants(child, step, nsURI, predicateNsURIs, result);
+            }
+        }
+    }
+
+    /**
+     * Filters the nodes in the result list starting from the given index, each predicate applied to the output of
+     * the previous one, so that positions are counted among the nodes that passed the earlier predicates.
+     */
+    private static void applyPredicates(
+            Predicate[] predicates, String[] predicateNsURIs, List<Node> result, int resultStart) {
+        for (int predIdx = 0; predIdx < predicates.length; predIdx++) {
+            Predicate predicate = predicates[predIdx];
+            int size = result.size() - resultStart;
+            if (predicate.position != 0) {
+                Node selected = predicate.position <= size ? result.get(resultStart + predicate.position - 1) : null;
+                truncate(result, resultStart);
+                if (selected != null) {
+                    result.add(selected);
+                }
+            } else {
+                int dst = resultStart;
+                for (int src = resultStart; src < resultStart + size; src++) {
+                    Node node = result.get(src);
+                    if (predicate.matches(node, predicateNsURIs[predIdx])) {
+                        result.set(dst++, node);
+                    }
+                }
+                truncate(result, dst);
+            }
+        }
+    }
+
+    private static boolean matchesAttributePredicates(Node node, Predicate[] predicates, String[] predicateNsURIs) {
+        for (int i = 0; i < predicates.length; i++) {
+            if (!predicates[i].matches(node, predicateNsURIs[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void truncate(List<Node> list, int size) {
+        list.subList(size, list.size()).clear();
+    }
+
+    private static List<Node> toDocumentOrderSet(List<Node> nodes) {
+        if (nodes.size() < 2) {
+            return nodes;
+        }
+        Map<Node, Boolean> seen = new IdentityHashMap<>();
+        List<Node> result = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (seen.put(node, Boolean.TRUE) == null) {
+                result.add(node);
+            }
+        }
+        Collections.sort(result, DOCUMENT_ORDER);
+        return result;
+    }
+
+    /**
+     * @param nsURI
+     *            The resolved namespace URI of the attribute name; "" for no namespace.
+     */
+    private static Attr getAttribute(Node element, String localName, String nsURI) {
+        NamedNodeMap attributes = element.getAttributes();
+        int length = attributes.getLength();
+        for (int i = 0; i < length; i++) {
+            Node attr = attributes.item(i);
+            if (localName.equals(getLocalName(attr)) && nsURI.equals(getNamespaceURI(attr))) {
+                return (Attr) attr;
+            }
+        }
+        return null;
+    }
+
+    private static String getLocalName(Node node) {
+        String localName = node.getLocalName();
+        return localName != null ? localName : node.getNodeName();
+    }
+
+    private static String getNamespaceURI(Node node) {
+        String nsURI = node.getNamespaceURI();
+        return nsURI != null ? nsURI : "";
+    }
+
+    private static class Step {
+        private final int axis;
+        private final NameTest nameTest;
+        private final Predicate[] predicates;
+
+        Step(int axis, NameTest nameTest, Predicate[] predicates) {
+            this.axis = axis;
+            this.nameTest = nameTest;
+            this.predicates = predicates;
+        }
+    }
+
+    private static class NameTest {
+        /** {@code null} if there was no prefix. */
+        private final String prefix;
+        /** {@code "*"} if any name matches. */
+        private final String localName;
+
+        NameTest(String prefix, String localName) {
+            this.prefix = prefix;
+            this.localName = localName;
+        }
+
+        /**
+         * Returns the namespace URI for the prefix, {@code ""} if there's no prefix, or {@code null} if the prefix
+         * is unknown.
+         */
+        String resolveNamespace(Environment env) {
+            if (prefix == null) {
+                return "";
+            }
+            String nsURI = prefix.equals(Template.DEFAULT_NAMESPACE_PREFIX)
+                    ? env.getDefaultNS() : env.getNamespaceForPrefix(prefix);
+            return nsURI == null || nsURI.length() == 0 ? null : nsURI;
+        }
+
+        boolean matches(Node node, String nsURI) {
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                return false;
+            }
+            return localName.equals("*")
+                    || localName.equals(getLocalName(node)) && nsURI.equals(getNamespaceURI(node));
+        }
+    }
+
+    private static class Predicate {
+        /** The 1-based position, or 0 if this is an attribute predicate. */
+        private final int position;
+        private final NameTest attributeName;
+        /** {@code null} if only the existence of the attribute is checked. */
+        private final String attributeValue;
+        private final boolean negated;
+
+        Predicate(int position) {
+            this.position = position;
+            attributeName = null;
+            attributeValue = null;
+            negated = false;
+        }
+
+        Predicate(NameTest attributeName, String attributeValue, boolean negated) {
+            position = 0;
+            this.attributeName = attributeName;
+            this.attributeValue = attributeValue;
+            this.negated = negated;
+        }
+
+        boolean matches(Node node, String attributeNsURI) {
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                return false;
+            }
+            Attr attr = getAttribute(node, attributeName.localName, attributeNsURI);
+            if (attr == null) {
+                return false;
+            }
+            return attributeValue == null || attributeValue.equals(attr.getValue()) != negated;
+        }
+    }
+
+    private static class Parser {
+        private final String src;
+        private int pos;
+
+        Parser(String src) {
+            this.src = src;
+        }
+
+        /**
+         * @return {@code null} if the query is not in the supported subset.
+         */
+        SimpleXPath parse() {
+            boolean absolute = false;
+            boolean descendant = false;
+            if (src.startsWith("//")) {
+                absolute = true;
+                descendant = true;
+                pos = 2;
+            } else if (src.startsWith("/")) {
+                absolute = true;
+                pos = 1;
+                if (src.length() == 1) {
+                    return new SimpleXPath(true, new Step[0]);
+                }
+            }
+            
+            List<Step> steps = new ArrayList<>();
+            while (true) {
+                int axis;
+                NameTest nameTest;
+                List<Predicate> predicates = new ArrayList<>();
+                if (skip('@')) {
+                    if (descendant) {
+                        return null;
+                    }
+                    axis = AXIS_ATTRIBUTE;
+                    nameTest = parseNameTest();
+                    if (nameTest == null || nameTest.localName.equals("*")) {
+                        return null;
+                    }
+                } else {
+                    nameTest = parseNameTest();
+                    if (nameTest == null) {
+                        return null;
+                    }
+                    boolean hasPositionPredicate = false;
+                    while (skip('[')) {
+                        Predicate predicate = parsePredicate();
+                        if (predicate == null) {
+                            return null;
+                        }
+                        hasPositionPredicate |= predicate.position != 0;
+                        predicates.add(predicate);
+                    }
+                    axis = !descendant ? AXIS_CHILD
+                            : hasPositionPredicate ? AXIS_DESCENDANT_OR_SELF_CHILD : AXIS_DESCENDANT;
+                }
+                steps.add(new Step(axis, nameTest, predicates.toArray(new Predicate[predicates.size()])));
+                
+                if (pos == src.length()) {
+                    return new SimpleXPath(absolute, steps.toArray(new Step[steps.size()]));
+                }
+                if (axis == AXIS_ATTRIBUTE || !skip('/')) {
+                    return null;
+                }
+                descendant = skip('/');
+            }
+        }
+
+        private NameTest parseNameTest() {
+            if (skip('*')) {
+                return new NameTest(null, "*");
+            }
+            String name = parseNCName();
+            if (name == null) {
+                return null;
+            }
+            if (skip(':')) {
+                String localName = parseNCName();
+                return localName != null ? new NameTest(name, localName) : null;
+            }
+            // Things like "text()" and "child::", which aren't supported:
+            if (pos < src.length() && src.charAt(pos) == '(') {
+                return null;
+            }
+            return new NameTest(null, name);
+        }
+
+        private Predicate parsePredicate() {
+            Predicate predicate;
+            if (skip('@')) {
+                NameTest attributeName = parseNameTest();
+                if (attributeName == null || attributeName.localName.equals("*")) {
+                    return null;
+                }
+                boolean negated = skip('!');
+                if (skip('=')) {
+                    String value = parseLiteral();
+                    if (value == null) {
+                        return null;
+                    }
+                    predicate = new Predicate(attributeName, value, negated);
+                } else if (negated) {
+                    return null;
+                } else {
+                    predicate = new Predicate(attributeName, null, false);
+                }
+            } else {
+                int start = pos;
+                while (pos < src.length() && src.charAt(pos) >= '0' && src.charAt(pos) <= '9') {
+                    pos++;
+                }
+                // We don't bother with position 0, or with overflow:
+                if (pos == start || pos - start > 9 || src.charAt(start) == '0') {
+                    return null;
+                }
+                predicate = new Predicate(Integer.parseInt(src.substring(start, pos)));
+            }
+            return skip(']') ? predicate : null;
+        }
+
+        private String parseLiteral() {
+            if (pos == src.length()) {
+                return null;
+            }
+            char quote = src.charAt(pos);
+            if (quote != '\'' && quote != '"') {
+                return null;
+            }
+            int end = src.indexOf(quote, pos + 1);
+            if (end == -1) {
+                return null;
+            }
+            String value = src.substring(pos + 1, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private String parseNCName() {
+            int start = pos;
+            while (pos < src.length()) {
+                char c = src.charAt(pos);
+                if (Character.isLetter(c) || c == '_'
+                        || pos != start && (Character.isDigit(c) || c == '-' || c == '.')) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            return pos != start ? src.substring(start, pos) : null;
+        }
+
+        private boolean skip(char c) {
+            if (pos < src.length() && src.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
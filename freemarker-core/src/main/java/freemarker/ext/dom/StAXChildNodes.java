@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import freemarker.core._StreamedNodeSequence;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+
+/**
+ * The child nodes of a {@link StAXContainerModel}. Iterating through them streams them, if they weren't read yet,
+ * while getting the size or an item by index reads all of them into memory.
+ */
+class StAXChildNodes implements _StreamedNodeSequence, TemplateCollectionModel {
+
+    private final StAXContainerModel container;
+
+    StAXChildNodes(StAXContainerModel container) {
+        this.container = container;
+    }
+
+    @Override
+    public TemplateModel get(int index) throws TemplateModelException {
+        return index >= 0 && index < size() ? container.getMaterializedChildren().get(index) : null;
+    }
+
+    @Override
+    public int size() throws TemplateModelException {
+        return container.getMaterializedChildren().size();
+    }
+
+    /**
+     * Used by {@code #list}, which looks ahead with {@link TemplateModelIterator#hasNext()} before processing the
+     * current node, so the current node is read into memory on that point, if it wasn't read till its end yet.
+     */
+    @Override
+    public TemplateModelIterator iterator() throws TemplateModelException {
+        return container.isStreamable()
+                ? new StreamingIterator(true) : new ListIterator(container.getMaterializedChildren().iterator());
+    }
+
+    @Override
+    public TemplateModelIterator releasingIterator() throws TemplateModelException {
+        return container.isStreamable()
+                ? new StreamingIterator(false) : new ListIterator(container.getMaterializedChildren().iterator());
+    }
+
+    private class StreamingIterator implements TemplateModelIterator {
+        private final boolean keepReturnedNodes;
+        private StAXNodeModel lastReturned;
+        private StAXNodeModel next;
+        private boolean ended;
+
+        StreamingIterator(boolean keepReturnedNodes) {
+            this.keepReturnedNodes = keepReturnedNodes;
+        }
+
+        @Override
+        public TemplateModel next() throws TemplateModelException {
+            if (!hasNext()) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+            lastReturned = next;
+            next = null;
+            return lastReturned;
+        }
+
+        @Override
+        public boolean hasNext() throws TemplateModelException {
+            if (next == null && !ended) {
+                if (keepReturnedNodes && lastReturned instanceof StAXContainerModel) {
+                    StAXContainerModel lastContainer = (StAXContainerModel) lastReturned;
+                    if (lastContainer.isStreamable()) {
+                        container.nodeReader.materialize(lastContainer);
+                    }
+                }
+                next = container.nodeReader.readNextChild(container);
+                if (next == null) {
+                    ended = true;
+                }
+            }
+            return next != null;
+        }
+    }
+
+    private static class ListIterator implements TemplateModelIterator {
+        private final Iterator<StAXNodeModel> iterator;
+
+        ListIterator(Iterator<StAXNodeModel> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public TemplateModel next() throws TemplateModelException {
+            try {
+                return iterator.next();
+            } catch (NoSuchElementException e) {
+                throw new TemplateModelException("The collection has no more items.", e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+    }
+
+}
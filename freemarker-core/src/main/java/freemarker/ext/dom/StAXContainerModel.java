@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.List;
+
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * A {@link StAXNodeModel} that can have child nodes.
+ */
+abstract class StAXContainerModel extends StAXNodeModel {
+
+    /** None of the child nodes were read yet. */
+    static final int UNREAD = 0;
+    /** The child nodes are (or were) read one by one, without storing them. */
+    static final int STREAMING = 1;
+    /** All the child nodes were read and are stored in {@link #children}. */
+    static final int MATERIALIZED = 2;
+    /** The parser has skipped the child nodes (or some of them). */
+    static final int SKIPPED = 3;
+
+    int state = UNREAD;
+    /** Tells if the end of this container wasn't read yet. */
+    boolean open = true;
+    /** The child nodes, if {@link #state} is {@link #MATERIALIZED}. */
+    List<StAXNodeModel> children;
+
+    StAXContainerModel(StAXNodeReader nodeReader, StAXContainerModel parent) {
+        super(nodeReader, parent);
+    }
+
+    @Override
+    public TemplateSequenceModel getChildNodes() {
+        return new StAXChildNodes(this);
+    }
+
+    /**
+     * Tells if the child nodes can be read one by one by {@link StAXNodeReader#readNextChild(StAXContainerModel)},
+     * instead of calling {@link #getMaterializedChildren()}.
+     */
+    boolean isStreamable() {
+        return state == UNREAD && open;
+    }
+
+    /**
+     * Returns all the child nodes, reading them into memory if they weren't read yet.
+     */
+    List<StAXNodeModel> getMaterializedChildren() throws TemplateModelException {
+        if (state == UNREAD && open) {
+            nodeReader.materialize(this);
+        }
+        if (state != MATERIALIZED) {
+            throw newChildNodesNotAvailableException();
+        }
+        return children;
+    }
+
+    TemplateModelException newChildNodesNotAvailableException() {
+        return new TemplateModelException(
+                state == STREAMING
+                        ? "The child nodes of " + getDescription() + " were already streamed (like with #recurse), "
+                                + "so they can't be read again."
+                        : "The child nodes of " + getDescription() + " were skipped while streaming the XML, "
+                                + "as the processing has moved past them. (With StAXNodeModel, the nodes can only "
+                                + "be visited in document order.)");
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.Collections;
+import java.util.List;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * The document node of a {@link StAXNodeModel} tree. Its only child node is the root element, which is read when
+ * it's first needed.
+ */
+class StAXDocumentModel extends StAXContainerModel implements TemplateHashModel {
+
+    StAXDocumentModel(StAXNodeReader nodeReader) {
+        super(nodeReader, null);
+        nodeReader.setDocument(this);
+    }
+
+    @Override
+    public String getNodeName() {
+        return "@document";
+    }
+
+    @Override
+    public String getNodeType() {
+        return "document";
+    }
+
+    @Override
+    boolean isStreamable() {
+        return false;
+    }
+
+    @Override
+    List<StAXNodeModel> getMaterializedChildren() throws TemplateModelException {
+        getRootElement();
+        return children;
+    }
+
+    StAXElementModel getRootElement() throws TemplateModelException {
+        if (state == UNREAD) {
+            StAXNodeModel root = nodeReader.readNextChild(this);
+            children = root != null ? Collections.singletonList(root) : Collections.<StAXNodeModel>emptyList();
+            state = MATERIALIZED;
+        }
+        return children.isEmpty() ? null : (StAXElementModel) children.get(0);
+    }
+
+    @Override
+    public TemplateModel get(String key) throws TemplateModelException {
+        if (key.equals("*")) {
+            return getRootElement();
+        } else if (DomStringUtil.isXMLNameLike(key)) {
+            StAXElementModel root = getRootElement();
+            if (root != null && root.matchesName(key, Environment.getCurrentEnvironment())) {
+                return root;
+            }
+            return new StAXNodeListModel(Collections.<StAXNodeModel>emptyList());
+        } else {
+            throw new TemplateModelException(
+                    "Unsupported key for the document node (XPath isn't supported by StAXNodeModel): " + key);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    String getDescription() {
+        return "the document node";
+    }
+
+}
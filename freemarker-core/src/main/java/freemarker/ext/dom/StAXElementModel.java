@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamReader;
+
+import freemarker.core.Environment;
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * An element in a {@link StAXNodeModel} tree; its attributes are read immediately, its child nodes on demand.
+ */
+class StAXElementModel extends StAXContainerModel implements TemplateScalarModel, TemplateHashModel {
+
+    private final String localName;
+    private final String nsURI;
+    private final String prefix;
+    private final String[] attributeLocalNames;
+    private final String[] attributeNsURIs;
+    private final String[] attributePrefixes;
+    private final String[] attributeValues;
+
+    /**
+     * @param reader
+     *            Must be at the {@code START_ELEMENT} event of this element.
+     */
+    StAXElementModel(StAXNodeReader nodeReader, StAXContainerModel parent, XMLStreamReader reader) {
+        super(nodeReader, parent);
+        localName = reader.getLocalName();
+        String nsURI = reader.getNamespaceURI();
+        this.nsURI = nsURI != null ? nsURI : "";
+        prefix = reader.getPrefix();
+
+        int attributeCount = reader.getAttributeCount();
+        attributeLocalNames = new String[attributeCount];
+        attributeNsURIs = new String[attributeCount];
+        attributePrefixes = new String[attributeCount];
+        attributeValues = new String[attributeCount];
+        for (int i = 0; i < attributeCount; i++) {
+            attributeLocalNames[i] = reader.getAttributeLocalName(i);
+            attributeNsURIs[i] = reader.getAttributeNamespace(i);
+            attributePrefixes[i] = reader.getAttributePrefix(i);
+            attributeValues[i] = reader.getAttributeValue(i);
+        }
+    }
+
+    @Override
+    public String getNodeName() {
+        return localName;
+    }
+
+    @Override
+    public String getNodeType() {
+        return "element";
+    }
+
+    @Override
+    public String getNodeNamespace() {
+        return nsURI;
+    }
+
+    /**
+     * Supports a subset of the keys that {@link ElementModel} supports: child element names, {@code "*"},
+     * {@code "@"} + attribute name, and some of the {@code "@@"} keys.
+     */
+    @Override
+    public TemplateModel get(String key) throws TemplateModelException {
+        if (key.equals("*")) {
+            List<StAXNodeModel> result = new ArrayList<>();
+            for (StAXNodeModel child : getMaterializedChildren()) {
+                if (child instanceof StAXElementModel) {
+                    result.add(child);
+                }
+            }
+            return new StAXNodeListModel(result);
+        } else if (key.startsWith("@@")) {
+            if (key.equals(AtAtKey.TEXT.getKey())) {
+                StringBuilder sb = new StringBuilder();
+                appendText(sb);
+                return new SimpleScalar(sb.toString());
+            } else if (key.equals(AtAtKey.LOCAL_NAME.getKey())) {
+                return new SimpleScalar(localName);
+            } else if (key.equals(AtAtKey.NAMESPACE.getKey())) {
+                return nsURI.length() != 0 ? new SimpleScalar(nsURI) : null;
+            } else if (key.equals(AtAtKey.QNAME.getKey())) {
+                String qname = getQualifiedName();
+                return qname != null ? new SimpleScalar(qname) : null;
+            } else {
+                throw new TemplateModelException("\"" + key + "\" is not supported by StAXNodeModel.");
+            }
+        } else if (key.startsWith("@")) {
+            if (!DomStringUtil.isXMLNameLike(key, 1)) {
+                throw new TemplateModelException("\"" + key + "\" is not supported by StAXNodeModel.");
+            }
+            String value = getAttribute(key.substring(1));
+            return value != null
+                    ? new AttributeValueModel(value) : new StAXNodeListModel(Collections.<StAXNodeModel>emptyList());
+        } else if (DomStringUtil.isXMLNameLike(key)) {
+            Environment env = Environment.getCurrentEnvironment();
+            List<StAXNodeModel> result = new ArrayList<>();
+            for (StAXNodeModel child : getMaterializedChildren()) {
+                if (child instanceof StAXElementModel && ((StAXElementModel) child).matchesName(key, env)) {
+                    result.add(child);
+                }
+            }
+            return result.size() == 1 ? result.get(0) : new StAXNodeListModel(result);
+        } else {
+            throw new TemplateModelException(
+                    "Unsupported key for an element (XPath isn't supported by StAXNodeModel): " + key);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    public String getAsString() throws TemplateModelException {
+        StringBuilder result = new StringBuilder();
+        for (StAXNodeModel child : getMaterializedChildren()) {
+            if (child instanceof StAXElementModel) {
+                throw new TemplateModelException(
+                        "Only elements with no child elements can be processed as text."
+                        + "\nThis element with name \"" + getRawQualifiedName()
+                        + "\" has a child element named: " + ((StAXElementModel) child).getRawQualifiedName());
+            }
+            result.append(((StAXTextModel) child).getAsString());
+        }
+        return result.toString();
+    }
+
+    private void appendText(StringBuilder sb) throws TemplateModelException {
+        for (StAXNodeModel child : getMaterializedChildren()) {
+            if (child instanceof StAXElementModel) {
+                ((StAXElementModel) child).appendText(sb);
+            } else {
+                sb.append(((StAXTextModel) child).getAsString());
+            }
+        }
+    }
+
+    private String getAttribute(String qname) {
+        for (int i = 0; i < attributeLocalNames.length; i++) {
+            if (qname.equals(getRawQualifiedName(attributePrefixes[i], attributeLocalNames[i]))) {
+                return attributeValues[i];
+            }
+        }
+        int colonIndex = qname.indexOf(':');
+        if (colonIndex > 0) {
+            String prefix = qname.substring(0, colonIndex);
+            String uri;
+            if (prefix.equals(Template.DEFAULT_NAMESPACE_PREFIX)) {
+                uri = Environment.getCurrentEnvironment().getDefaultNS();
+            } else {
+                uri = Environment.getCurrentEnvironment().getNamespaceForPrefix(prefix);
+            }
+            if (uri != null) {
+                String localName = qname.substring(1 + colonIndex);
+                for (int i = 0; i < attributeLocalNames.length; i++) {
+                    if (localName.equals(attributeLocalNames[i]) && uri.equals(attributeNsURIs[i])) {
+                        return attributeValues[i];
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private String getQualifiedName() {
+        if (nsURI.length() == 0) {
+            return localName;
+        }
+        Environment env = Environment.getCurrentEnvironment();
+        String defaultNS = env.getDefaultNS();
+        String prefix;
+        if (defaultNS != null && defaultNS.equals(nsURI)) {
+            prefix = "";
+        } else {
+            prefix = env.getPrefixForNamespace(nsURI);
+        }
+        if (prefix == null) {
+            return null; // We have no qualified name, because there is no prefix mapping
+        }
+        return prefix.length() > 0 ? prefix + ":" + localName : localName;
+    }
+
+    private String getRawQualifiedName() {
+        return getRawQualifiedName(prefix, localName);
+    }
+
+    private static String getRawQualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    boolean matchesName(String name, Environment env) {
+        return DomStringUtil.matchesName(name, localName, nsURI, env);
+    }
+
+    @Override
+    String getDescription() {
+        return "element \"" + getRawQualifiedName() + "\"";
+    }
+
+    /**
+     * The value of an attribute; like the attribute nodes of {@link NodeModel}, it's also a sequence that contains
+     * itself.
+     */
+    private static class AttributeValueModel implements TemplateScalarModel, TemplateSequenceModel {
+        private final String value;
+
+        AttributeValueModel(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String getAsString() {
+            return value;
+        }
+
+        @Override
+        public TemplateModel get(int index) {
+            return index == 0 ? this : null;
+        }
+
+        @Override
+        public int size() {
+            return 1;
+        }
+    }
+
+}
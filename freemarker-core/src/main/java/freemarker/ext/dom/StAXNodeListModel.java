@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import freemarker.template.SimpleScalar;
+import freemarker.template.SimpleSequence;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * The result of a query on {@link StAXNodeModel}-s that doesn't match exactly 1 node; the counterpart of
+ * {@link NodeListModel}.
+ */
+class StAXNodeListModel extends SimpleSequence implements TemplateHashModel {
+
+    StAXNodeListModel(List<StAXNodeModel> nodes) {
+        super(nodes, null);
+    }
+
+    @Override
+    public TemplateModel get(String key) throws TemplateModelException {
+        int size = size();
+        if (size == 1) {
+            return ((TemplateHashModel) get(0)).get(key);
+        }
+        if (key.equals(AtAtKey.TEXT.getKey())) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                TemplateModel node = get(i);
+                if (node instanceof StAXElementModel) {
+                    result.append(((TemplateScalarModel) ((StAXElementModel) node).get(key)).getAsString());
+                }
+            }
+            return new SimpleScalar(result.toString());
+        }
+        if (DomStringUtil.isXMLNameLike(key) || key.equals("*")) {
+            List<StAXNodeModel> result = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                TemplateModel node = get(i);
+                if (node instanceof StAXElementModel) {
+                    TemplateSequenceModel matches = (TemplateSequenceModel) ((StAXElementModel) node).get(key);
+                    int matchesSize = matches.size();
+                    for (int j = 0; j < matchesSize; j++) {
+                        result.add((StAXNodeModel) matches.get(j));
+                    }
+                }
+            }
+            return result.size() == 1 ? result.get(0) : new StAXNodeListModel(result);
+        }
+        throw new TemplateModelException(
+                "\"" + key + "\" is only applicable to a single XML node, but it was applied on "
+                + (size != 0
+                        ? size + " XML nodes (multiple matches)."
+                        : "an empty list of XML nodes (no matches)."));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+}
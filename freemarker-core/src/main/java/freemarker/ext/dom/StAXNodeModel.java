@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateNodeModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * Exposes an XML document that's read with StAX ({@link XMLStreamReader}) to the templates as a node tree, without
+ * loading the whole document into memory, unlike {@link NodeModel}. This is for processing documents that are too big
+ * to be loaded into a DOM, and it only supports a subset of what {@link NodeModel} does.
+ * 
+ * <p>
+ * The nodes are read as the template visits them. The child nodes of an element are normally streamed, that is, they
+ * are read one by one as {@code #recurse} (or {@code #visit}) walks through them, and are dropped after they were
+ * visited. So with {@code #recurse} memory usage doesn't depend on the size of the document, only on the size of
+ * the subtrees that had to be loaded into memory (see later). Because of streaming, the child nodes of an element can
+ * be visited only once. Trying to access them again causes an error, and so does trying to access the child nodes of
+ * an element that was already passed by the parser, like going back with {@code ?parent} and then looking for another
+ * child element.
+ * 
+ * <p>
+ * The subtree of an element is loaded into memory (materialized) if you access its child nodes before they were
+ * streamed, other than with {@code #recurse}/{@code #visit}. For example, getting the child elements by name (like
+ * {@code item.name}), getting the text with {@code @@text} or by using the element as a string, using
+ * {@code ?children?size} or {@code ?children[i]}, or by listing {@code ?children} with {@code #list} (as {@code #list}
+ * has to look ahead). A materialized subtree can be visited any number of times. To limit memory usage, the number
+ * of nodes that can be materialized in one go is limited (see {@link #wrap(XMLStreamReader, int)}), and exceeding that
+ * causes an error.
+ * 
+ * <p>
+ * Supported features: {@code #recurse}, {@code #visit} and {@code #fallback}; {@code ?children}, {@code ?parent},
+ * {@code ?root}, {@code ?ancestors}, {@code ?node_name}, {@code ?node_type}, {@code ?node_namespace}; getting child
+ * elements by name (also with namespace prefixes defined in {@code #ftl ns_prefixes}), {@code *} for all child
+ * elements, {@code @attributeName}, {@code @@text}, {@code @@local_name}, {@code @@namespace} and {@code @@qname};
+ * elements that only contain text can be used as strings. Not supported: XPath, {@code **}, {@code @*}, {@code @@},
+ * {@code @@markup} and the like, and sibling navigation. Comments, processing instructions and the document type
+ * declaration are ignored. Attributes are returned as strings, and like with {@link NodeModel}, a missing attribute
+ * gives an empty node sequence.
+ * 
+ * <p>
+ * This class is not thread safe, and neither is {@link XMLStreamReader}, so instances of this shouldn't be used as
+ * shared variable ({@link Configuration#setSharedVariable(String, Object)}). Also, as the reader is consumed during
+ * processing, an instance can be used for processing a template only once. Closing the {@link XMLStreamReader} is
+ * the responsibility of the caller.
+ * 
+ * @since 2.3.33
+ */
+public abstract class StAXNodeModel implements TemplateNodeModel, TemplateSequenceModel {
+
+    /**
+     * The default of the {@code maxMaterializedNodes} parameter of {@link #wrap(XMLStreamReader, int)}.
+     */
+    public static final int DEFAULT_MAX_MATERIALIZED_NODES = 10000;
+
+    final StAXNodeReader nodeReader;
+    final StAXContainerModel parent;
+
+    StAXNodeModel(StAXNodeReader nodeReader, StAXContainerModel parent) {
+        this.nodeReader = nodeReader;
+        this.parent = parent;
+    }
+
+    /**
+     * Same as {@link #wrap(XMLStreamReader, int)} with {@link #DEFAULT_MAX_MATERIALIZED_NODES}.
+     */
+    public static StAXNodeModel wrap(XMLStreamReader reader) {
+        return wrap(reader, DEFAULT_MAX_MATERIALIZED_NODES);
+    }
+
+    /**
+     * Creates the model of the document node.
+     * 
+     * @param reader
+     *            The reader of the document; it must be at the start of the document
+     *            ({@link XMLStreamConstants#START_DOCUMENT}). For consistent output with {@link NodeModel}, it should
+     *            be namespace aware (that's the default with StAX).
+     * @param maxMaterializedNodes
+     *            The maximum number of nodes in a subtree that's loaded into memory (see in the class documentation);
+     *            at least 1.
+     */
+    public static StAXNodeModel wrap(XMLStreamReader reader, int maxMaterializedNodes) {
+        NullArgumentException.check("reader", reader);
+        if (reader.getEventType() != XMLStreamConstants.START_DOCUMENT) {
+            throw new IllegalArgumentException("The XMLStreamReader must be at the start of the document.");
+        }
+        if (maxMaterializedNodes < 1) {
+            throw new IllegalArgumentException("maxMaterializedNodes must be at least 1");
+        }
+        return new StAXDocumentModel(new StAXNodeReader(reader, maxMaterializedNodes));
+    }
+
+    @Override
+    public TemplateNodeModel getParentNode() {
+        return parent;
+    }
+
+    @Override
+    public TemplateSequenceModel getChildNodes() {
+        return null;
+    }
+
+    @Override
+    public String getNodeNamespace() {
+        return null;
+    }
+
+    /**
+     * Always returns 1, as the node is also a sequence that contains itself, like {@link NodeModel}.
+     */
+    @Override
+    public final int size() {
+        return 1;
+    }
+
+    @Override
+    public final TemplateModel get(int i) {
+        return i == 0 ? this : null;
+    }
+
+    /**
+     * Same as {@link TemplateModel#toString()}, but used for error messages.
+     */
+    abstract String getDescription();
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import freemarker.template.TemplateModelException;
+
+/**
+ * Reads the nodes of a {@link StAXNodeModel} tree on demand, and keeps track of the elements whose end wasn't read
+ * yet.
+ */
+final class StAXNodeReader {
+
+    private final XMLStreamReader reader;
+    private final int maxMaterializedNodes;
+
+    /**
+     * The innermost container whose end wasn't read yet; its ancestors are open as well. {@code null} after the end
+     * of the document was read.
+     */
+    private StAXContainerModel innermostOpen;
+    /** Tells if the current event of the reader wasn't processed yet. */
+    private boolean eventPending;
+    private int materializationDepth;
+    private int materializedNodeCount;
+
+    StAXNodeReader(XMLStreamReader reader, int maxMaterializedNodes) {
+        this.reader = reader;
+        this.maxMaterializedNodes = maxMaterializedNodes;
+    }
+
+    void setDocument(StAXDocumentModel document) {
+        innermostOpen = document;
+    }
+
+    /**
+     * Reads the next child node of the container, skipping the rest of the previously read child (and its subtree),
+     * if that wasn't read till its end yet.
+     * 
+     * @return The next child node, or {@code null} if the end of the container was reached.
+     */
+    StAXNodeModel readNextChild(StAXContainerModel container) throws TemplateModelException {
+        if (!container.open) {
+            throw container.newChildNodesNotAvailableException();
+        }
+        boolean firstChild = container.state == StAXContainerModel.UNREAD;
+        if (firstChild) {
+            container.state = StAXContainerModel.STREAMING;
+        }
+        try {
+            while (innermostOpen != container) {
+                skipRest(innermostOpen);
+            }
+
+            StringBuilder text = null;
+            while (true) {
+                int event = nextEvent();
+                switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    if (container instanceof StAXElementModel) {
+                        if (text == null) {
+                            text = new StringBuilder();
+                        }
+                        if (event != XMLStreamConstants.ENTITY_REFERENCE) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        } else {
+                            text.append(reader.getText());
+                        }
+                    } // else it's white-space outside the root element
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    if (text != null) {
+                        eventPending = true;
+                        return new StAXTextModel(this, container, text.toString());
+                    }
+                    StAXElementModel element = new StAXElementModel(this, container, reader);
+                    innermostOpen = element;
+                    return element;
+                case XMLStreamConstants.END_ELEMENT:
+                case XMLStreamConstants.END_DOCUMENT:
+                    if (text != null) {
+                        eventPending = true;
+                        return new StAXTextModel(this, container, text.toString());
+                    }
+                    if (firstChild) {
+                        container.children = Collections.emptyList();
+                        container.state = StAXContainerModel.MATERIALIZED;
+                    }
+                    close(container);
+                    return null;
+                default:
+                    // Comments, processing instructions, and DTD are ignored.
+                    break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new TemplateModelException("Failed to read the XML", e);
+        }
+    }
+
+    /**
+     * Reads all the child nodes of the container recursively, and stores them in it.
+     */
+    void materialize(StAXContainerModel container) throws TemplateModelException {
+        if (materializationDepth == 0) {
+            materializedNodeCount = 0;
+        }
+        materializationDepth++;
+        boolean success = false;
+        try {
+            ArrayList<StAXNodeModel> children = new ArrayList<>();
+            StAXNodeModel child;
+            while ((child = readNextChild(container)) != null) {
+                if (++materializedNodeCount > maxMaterializedNodes) {
+                    throw new TemplateModelException(
+                            "Can't load the child nodes of " + container.getDescription()
+                            + " into memory, as that would exceed the limit of " + maxMaterializedNodes
+                            + " nodes (see the maxMaterializedNodes parameter of StAXNodeModel.wrap). "
+                            + "Consider processing this part of the document with #recurse or #visit, which "
+                            + "stream the child nodes instead.");
+                }
+                if (child instanceof StAXContainerModel) {
+                    materialize((StAXContainerModel) child);
+                }
+                children.add(child);
+            }
+            children.trimToSize();
+            container.children = children;
+            container.state = StAXContainerModel.MATERIALIZED;
+            success = true;
+        } finally {
+            materializationDepth--;
+            if (!success) {
+                container.children = null;
+                container.state = StAXContainerModel.SKIPPED;
+            }
+        }
+    }
+
+    /**
+     * Reads until the end of the container (which must be open), skipping all the nodes.
+     */
+    private void skipRest(StAXContainerModel container) throws XMLStreamException {
+        int depth = 0;
+        while (container.open) {
+            int event = nextEvent();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT || event == XMLStreamConstants.END_DOCUMENT) {
+                if (depth == 0) {
+                    StAXContainerModel closed = innermostOpen;
+                    if (closed.state != StAXContainerModel.MATERIALIZED) {
+                        closed.state = StAXContainerModel.SKIPPED;
+                    }
+                    close(closed);
+                } else {
+                    depth--;
+                }
+            }
+        }
+    }
+
+    private void close(StAXContainerModel container) {
+        container.open = false;
+        innermostOpen = container.parent;
+    }
+
+    private int nextEvent() throws XMLStreamException {
+        if (eventPending) {
+            eventPending = false;
+            return reader.getEventType();
+        }
+        return reader.next();
+    }
+
+}
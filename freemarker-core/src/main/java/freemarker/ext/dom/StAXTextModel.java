@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * A text node in a {@link StAXNodeModel} tree; adjacent text and CDATA sections are merged into one.
+ */
+class StAXTextModel extends StAXNodeModel implements TemplateScalarModel {
+
+    private final String text;
+
+    StAXTextModel(StAXNodeReader nodeReader, StAXContainerModel parent, String text) {
+        super(nodeReader, parent);
+        this.text = text;
+    }
+
+    @Override
+    public String getNodeName() {
+        return "@text";
+    }
+
+    @Override
+    public String getNodeType() {
+        return "text";
+    }
+
+    @Override
+    public String getAsString() {
+        return text;
+    }
+
+    @Override
+    String getDescription() {
+        return "a text node";
+    }
+
+}
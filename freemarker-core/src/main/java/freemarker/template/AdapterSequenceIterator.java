@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import freemarker.core._IterableSequence;
+
+/**
+ * Base of the {@link TemplateModelIterator}-s returned by {@link _IterableSequence#sequenceIterator()} of the
+ * adapters in this package. The items are wrapped with the {@link ObjectWrapper} just like by
+ * {@link TemplateSequenceModel#get(int)}, except that if an item is the same object as the previous one, and it was
+ * wrapped into an immutable model, then that model is returned again.
+ * 
+ * @since 2.3.33
+ */
+abstract class AdapterSequenceIterator implements TemplateModelIterator {
+
+    private final ObjectWrapper wrapper;
+    private Object prevItem;
+    private TemplateModel prevModel;
+
+    AdapterSequenceIterator(ObjectWrapper wrapper) {
+        this.wrapper = wrapper;
+    }
+
+    /**
+     * Returns the next item without wrapping it.
+     */
+    abstract Object nextItem() throws TemplateModelException;
+
+    @Override
+    public final TemplateModel next() throws TemplateModelException {
+        Object item = nextItem();
+        if (item == prevItem && prevModel != null) {
+            return prevModel;
+        }
+
+        TemplateModel model = wrapper.wrap(item);
+        if (model instanceof SimpleScalar || model instanceof SimpleNumber) {
+            prevItem = item;
+            prevModel = model;
+        } else {
+            prevItem = null;
+            prevModel = null;
+        }
+        return model;
+    }
+
+}
@@ -1046,12 +1046,30 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             TemplateLoader loader, CacheStorage storage,
             TemplateLookupStrategy templateLookupStrategy, TemplateNameFormat templateNameFormat,
             TemplateConfigurationFactory templateConfigurations) {
+        recreateTemplateCacheWith(
+                loader, storage, templateLookupStrategy, templateNameFormat, templateConfigurations, false);
+    }
+
+    /**
+     * @param oldCacheStillUsed
+     *            Whether the old cache is still used by another {@link Configuration}, which is the case when cloning.
+     */
+    private void recreateTemplateCacheWith(
+            TemplateLoader loader, CacheStorage storage,
+            TemplateLookupStrategy templateLookupStrategy, TemplateNameFormat templateNameFormat,
+            TemplateConfigurationFactory templateConfigurations, boolean oldCacheStillUsed) {
         TemplateCache oldCache = cache;
         cache = new TemplateCache(
                 loader, storage, templateLookupStrategy, templateNameFormat, templateConfigurations, this);
         cache.clear(); // for fully BC behavior
         cache.setDelay(oldCache.getDelay());
         cache.setLocalizedLookup(localizedLookup);
+        if (oldCache.getChangeWatching()) {
+            if (!oldCacheStillUsed) {
+                oldCache.setChangeWatching(false);
+            }
+            cache.setChangeWatching(true);
+        }
     }
     
     private void recreateTemplateCache() {
@@ -1178,7 +1196,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             copy.recreateTemplateCacheWith(
                     cache.getTemplateLoader(), cache.getCacheStorage(),
                     cache.getTemplateLookupStrategy(), cache.getTemplateNameFormat(),
-                    cache.getTemplateConfigurations());
+                    cache.getTemplateConfigurations(), true);
             return copy;
         } catch (CloneNotSupportedException e) {
             throw new BugException("Cloning failed", e);
@@ -1744,6 +1762,43 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public long getTemplateUpdateDelayMilliseconds() {
         return cache.getDelay();
     }
+
+    /**
+     * Sets whether to watch the template files for changes (with a {@link java.nio.file.WatchService}), instead of
+     * checking their last modification time when {@link #setTemplateUpdateDelayMilliseconds(long)} has elapsed.
+     * Defaults to {@code false}.
+     * 
+     * <p>
+     * When this is enabled, the cached templates aren't checked for update at all, instead they are removed from the
+     * template cache (together with the templates that include or import them) as soon as the change of the template
+     * file is reported by the file system. Thus a long template update delay can be used without getting outdated
+     * templates, and without the file system access that update checking involves. As the templates to remove are
+     * found based on their names, on case insensitive file systems the template names should use the same case as the
+     * file names. As creating a file can affect localized and acquisition lookups, it clears the whole cache. Some
+     * {@link java.nio.file.WatchService} implementations (like on Mac OS) poll the file system themselves, and so
+     * report changes with a few seconds of delay.
+     * 
+     * <p>
+     * This only works if the {@link #setTemplateLoader(TemplateLoader) template_loader} is a
+     * {@link FileTemplateLoader}, or a {@link MultiTemplateLoader} or {@link freemarker.cache.IndexedTemplateLoader}
+     * that only consist of those. Otherwise, and if watching can't be started, a warning is logged, and the update
+     * delay is used as usual. The events are processed on a daemon thread; to stop it, set this back to
+     * {@code false}.
+     * 
+     * @since 2.3.33
+     */
+    public void setTemplateChangeWatching(boolean templateChangeWatching) {
+        cache.setChangeWatching(templateChangeWatching);
+    }
+
+    /**
+     * The getter pair of {@link #setTemplateChangeWatching(boolean)}.
+     * 
+     * @since 2.3.33
+     */
+    public boolean getTemplateChangeWatching() {
+        return cache.getChangeWatching();
+    }
     
     /**
      * Sets whether directives such as {@code if}, {@code else}, etc must be written as {@code #if}, {@code #else}, etc.
@@ -3349,6 +3404,34 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     throws IOException {
         cache.removeTemplate(name, locale, customLookupCondition, encoding, parse);
     }    
+
+    /**
+     * Removes a template from the template cache, along with all the templates that directly or indirectly
+     * {@code #include} or {@code #import} it, for all locales, encodings, etc. This is useful if you know that a
+     * template was modified, and you want to make that visible without waiting for
+     * {@link #setTemplateUpdateDelayMilliseconds(long)} to pass, and without clearing the whole cache.
+     * See {@link TemplateCache#removeTemplateAndDependents(String)} for more.
+     * 
+     * <p>This method is thread-safe and can be called while the engine processes templates.
+     * 
+     * @return The normalized names of the templates that were removed; not {@code null}.
+     * 
+     * @since 2.3.33
+     */
+    public Set<String> removeTemplateAndDependentsFromCache(String name) throws IOException {
+        return cache.removeTemplateAndDependents(name);
+    }
+
+    /**
+     * Returns the names of the templates that directly or indirectly {@code #include} or {@code #import} the given
+     * template, as far as it's known from the templates that were loaded into the template cache. See
+     * {@link TemplateCache#getDependents(String)} for more.
+     * 
+     * @since 2.3.33
+     */
+    public Set<String> getDependentTemplateNames(String name) throws MalformedTemplateNameException {
+        return cache.getDependents(name);
+    }
     
     /**
      * The getter pair of {@link #setLocalizedLookup(boolean)}.
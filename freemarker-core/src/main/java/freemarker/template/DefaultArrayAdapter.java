@@ -22,6 +22,8 @@ package freemarker.template;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 
+import freemarker.core._IterableSequence;
+import freemarker.core._PrimitiveNumberSequence;
 import freemarker.ext.util.WrapperTemplateModel;
 
 /**
@@ -45,7 +47,7 @@ import freemarker.ext.util.WrapperTemplateModel;
  * @since 2.3.22
  */
 public abstract class DefaultArrayAdapter extends WrappingTemplateModel implements TemplateSequenceModel,
-        AdapterTemplateModel, WrapperTemplateModel, Serializable {
+        AdapterTemplateModel, WrapperTemplateModel, _IterableSequence, Serializable {
 
     /**
      * Factory method for creating new adapter instances.
@@ -102,6 +104,40 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
         return getWrappedObject();
     }
 
+    /**
+     * @since 2.3.33
+     */
+    @Override
+    public TemplateModelIterator sequenceIterator() throws TemplateModelException {
+        final int size = size();
+        return new AdapterSequenceIterator(getObjectWrapper()) {
+            private int index;
+
+            @Override
+            Object nextItem() {
+                return getItem(index++);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+        };
+    }
+
+    /**
+     * Returns the item at the given index without wrapping it; the index must be in range.
+     */
+    abstract Object getItem(int index);
+
+    /**
+     * Tells if the {@link ObjectWrapper} is known to wrap {@link Number}-s into {@link SimpleNumber}-s, in which case
+     * the items of primitive number arrays can be accessed as {@link _PrimitiveNumberSequence}.
+     */
+    private static boolean isWrappingNumbersToSimpleNumber(ObjectWrapper wrapper) {
+        return wrapper != null && wrapper.getClass() == DefaultObjectWrapper.class;
+    }
+
     private static class ObjectArrayAdapter extends DefaultArrayAdapter {
 
         private final Object[] array;
@@ -116,6 +152,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(array[index]) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return array[index];
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -142,6 +183,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Byte.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Byte.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -168,6 +214,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Short.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Short.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -180,13 +231,30 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
 
     }
 
-    private static class IntArrayAdapter extends DefaultArrayAdapter {
+    private static class IntArrayAdapter extends DefaultArrayAdapter implements _PrimitiveNumberSequence {
 
         private final int[] array;
+        private final int primitiveItemType;
 
         private IntArrayAdapter(int[] array, ObjectWrapper wrapper) {
             super(wrapper);
             this.array = array;
+            this.primitiveItemType = isWrappingNumbersToSimpleNumber(wrapper) ? ITEM_TYPE_INT : ITEM_TYPE_NONE;
+        }
+
+        @Override
+        public int getPrimitiveItemType() {
+            return primitiveItemType;
+        }
+
+        @Override
+        public long getLong(int index) {
+            return array[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return array[index];
         }
 
         @Override
@@ -194,6 +262,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Integer.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Integer.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -206,13 +279,30 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
 
     }
 
-    private static class LongArrayAdapter extends DefaultArrayAdapter {
+    private static class LongArrayAdapter extends DefaultArrayAdapter implements _PrimitiveNumberSequence {
 
         private final long[] array;
+        private final int primitiveItemType;
 
         private LongArrayAdapter(long[] array, ObjectWrapper wrapper) {
             super(wrapper);
             this.array = array;
+            this.primitiveItemType = isWrappingNumbersToSimpleNumber(wrapper) ? ITEM_TYPE_LONG : ITEM_TYPE_NONE;
+        }
+
+        @Override
+        public int getPrimitiveItemType() {
+            return primitiveItemType;
+        }
+
+        @Override
+        public long getLong(int index) {
+            return array[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return array[index];
         }
 
         @Override
@@ -220,6 +310,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Long.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Long.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -246,6 +341,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Float.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Float.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -258,13 +358,30 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
 
     }
 
-    private static class DoubleArrayAdapter extends DefaultArrayAdapter {
+    private static class DoubleArrayAdapter extends DefaultArrayAdapter implements _PrimitiveNumberSequence {
 
         private final double[] array;
+        private final int primitiveItemType;
 
         private DoubleArrayAdapter(double[] array, ObjectWrapper wrapper) {
             super(wrapper);
             this.array = array;
+            this.primitiveItemType = isWrappingNumbersToSimpleNumber(wrapper) ? ITEM_TYPE_DOUBLE : ITEM_TYPE_NONE;
+        }
+
+        @Override
+        public int getPrimitiveItemType() {
+            return primitiveItemType;
+        }
+
+        @Override
+        public long getLong(int index) {
+            return (long) array[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return array[index];
         }
 
         @Override
@@ -272,6 +389,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Double.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Double.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -298,6 +420,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Character.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Character.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -324,6 +451,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(Boolean.valueOf(array[index])) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Boolean.valueOf(array[index]);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -355,6 +487,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < length ? wrap(Array.get(array, index)) : null;
         }
 
+        @Override
+        Object getItem(int index) {
+            return Array.get(array, index);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return length;
@@ -21,8 +21,11 @@ package freemarker.template;
 
 import java.io.Serializable;
 import java.util.AbstractSequentialList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 
+import freemarker.core._IterableSequence;
 import freemarker.ext.util.WrapperTemplateModel;
 import freemarker.template.utility.ObjectWrapperWithAPISupport;
 import freemarker.template.utility.RichObjectWrapper;
@@ -48,7 +51,7 @@ import freemarker.template.utility.RichObjectWrapper;
  * @since 2.3.22
  */
 public class DefaultListAdapter extends WrappingTemplateModel implements TemplateSequenceModel,
-        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport, Serializable {
+        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport, _IterableSequence, Serializable {
 
     protected final List list;
 
@@ -82,6 +85,52 @@ public class DefaultListAdapter extends WrappingTemplateModel implements Templat
         return list.size();
     }
 
+    /**
+     * Unlike calling {@link #get(int)} for each index, this only uses {@link List#get(int)} if the list is
+     * {@link RandomAccess}, otherwise it uses {@link List#iterator()}, so for example a {@link java.util.LinkedList}
+     * is walked through in linear time.
+     * 
+     * @since 2.3.33
+     */
+    @Override
+    public TemplateModelIterator sequenceIterator() throws TemplateModelException {
+        if (list instanceof RandomAccess) {
+            final int size = list.size();
+            return new AdapterSequenceIterator(getObjectWrapper()) {
+                private int index;
+
+                @Override
+                Object nextItem() {
+                    try {
+                        return list.get(index++);
+                    } catch (IndexOutOfBoundsException e) {
+                        // Like get(int), we tolerate if the list was shrunk meanwhile, but without checking the
+                        // size for each item.
+                        return null;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+            };
+        } else {
+            final Iterator<?> it = list.iterator();
+            return new AdapterSequenceIterator(getObjectWrapper()) {
+                @Override
+                Object nextItem() {
+                    return it.hasNext() ? it.next() : null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+            };
+        }
+    }
+
     @Override
     public Object getAdaptedObject(Class hint) {
         return getWrappedObject();
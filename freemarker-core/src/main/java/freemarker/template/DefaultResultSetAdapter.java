@@ -0,0 +1,392 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.template;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import freemarker.ext.util.WrapperTemplateModel;
+import freemarker.template.utility.ObjectWrapperWithAPISupport;
+
+/**
+ * Adapts a {@link ResultSet} to a {@link TemplateCollectionModel}, whose items are the rows, so that a query result
+ * can be streamed into a template with {@code #list}, without loading the rows into memory first. Each row is a
+ * {@link TemplateHashModelEx2} where the keys are the column labels (so you can write {@code row.name}, or
+ * {@code row.NAME}, if there's no other column whose label only differs in case), and also a
+ * {@link TemplateSequenceModel} of the column values (so you can write {@code row[0]}).
+ *
+ * <p>
+ * To avoid per-row overhead (which matters when there are millions of rows), the column labels and types are only
+ * looked up once from the {@link ResultSetMetaData}, columns are read by their index, and the values of the common
+ * SQL types are read with the type-specific {@link ResultSet} methods, and are converted to the corresponding simple
+ * {@link TemplateModel} (like {@link SimpleNumber}, {@link SimpleScalar}, {@link SimpleDate}) without involving the
+ * {@link ObjectWrapper}. Other values are wrapped with the {@link ObjectWrapper}. SQL {@code NULL}-s are returned as
+ * {@code null} (i.e., they are missing values for the template language).
+ *
+ * <p>
+ * The same row {@link TemplateModel} object is returned for all rows, and also the array that stores the column
+ * values is reused. The column values of a row are read when the listing moves to that row (as the listing needs to
+ * move the cursor further to know if there are more rows, before the row is processed). Thus, a row value must not be
+ * stored and used after the listing has moved to the next row (so, for example, {@code ?sequence} won't work as one
+ * might expect).
+ *
+ * <p>
+ * The listing starts from the row after the current cursor position (normally, from the first row), and moves the
+ * cursor forward with {@link ResultSet#next()}. Hence, like with {@link DefaultIteratorAdapter}, the value can be
+ * listed only once; if the user tries to list it for a second time, an exception will be thrown instead of silently
+ * getting an empty listing. The adapter doesn't close the {@link ResultSet}; that remains the responsibility of the
+ * caller (after the template processing has finished).
+ *
+ * <p>
+ * Thread safety: Not thread-safe.
+ *
+ * <p>
+ * This adapter is not used automatically by {@link DefaultObjectWrapper}; you have to create it with
+ * {@link #adapt(ResultSet, ObjectWrapper)}, and put that into the data-model.
+ *
+ * @since 2.3.33
+ */
+public class DefaultResultSetAdapter extends WrappingTemplateModel implements TemplateCollectionModel,
+        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport {
+
+    private static final int COLUMN_TYPE_OTHER = 0;
+    private static final int COLUMN_TYPE_STRING = 1;
+    private static final int COLUMN_TYPE_INT = 2;
+    private static final int COLUMN_TYPE_LONG = 3;
+    private static final int COLUMN_TYPE_FLOAT = 4;
+    private static final int COLUMN_TYPE_DOUBLE = 5;
+    private static final int COLUMN_TYPE_BIG_DECIMAL = 6;
+    private static final int COLUMN_TYPE_BOOLEAN = 7;
+    private static final int COLUMN_TYPE_DATE = 8;
+    private static final int COLUMN_TYPE_TIME = 9;
+    private static final int COLUMN_TYPE_TIMESTAMP = 10;
+
+    private final ResultSet resultSet;
+    private boolean resultSetOwnedBySomeone;
+
+    /**
+     * Factory method for creating new adapter instances.
+     *
+     * @param resultSet
+     *            The result set to adapt; can't be {@code null}.
+     */
+    public static DefaultResultSetAdapter adapt(ResultSet resultSet, ObjectWrapper wrapper) {
+        return new DefaultResultSetAdapter(resultSet, wrapper);
+    }
+
+    private DefaultResultSetAdapter(ResultSet resultSet, ObjectWrapper wrapper) {
+        super(wrapper);
+        this.resultSet = resultSet;
+    }
+
+    @Override
+    public Object getWrappedObject() {
+        return resultSet;
+    }
+
+    @Override
+    public Object getAdaptedObject(Class<?> hint) {
+        return getWrappedObject();
+    }
+
+    @Override
+    public TemplateModelIterator iterator() throws TemplateModelException {
+        return new RowIterator();
+    }
+
+    @Override
+    public TemplateModel getAPI() throws TemplateModelException {
+        return ((ObjectWrapperWithAPISupport) getObjectWrapper()).wrapAsAPI(resultSet);
+    }
+
+    private static int getColumnType(int sqlType) {
+        switch (sqlType) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+            return COLUMN_TYPE_STRING;
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            return COLUMN_TYPE_INT;
+        case Types.BIGINT:
+            return COLUMN_TYPE_LONG;
+        case Types.REAL:
+            return COLUMN_TYPE_FLOAT;
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return COLUMN_TYPE_DOUBLE;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return COLUMN_TYPE_BIG_DECIMAL;
+        case Types.BOOLEAN:
+            return COLUMN_TYPE_BOOLEAN;
+        case Types.DATE:
+            return COLUMN_TYPE_DATE;
+        case Types.TIME:
+            return COLUMN_TYPE_TIME;
+        case Types.TIMESTAMP:
+            return COLUMN_TYPE_TIMESTAMP;
+        default:
+            return COLUMN_TYPE_OTHER;
+        }
+    }
+
+    private static TemplateModelException newSQLException(String action, SQLException e) {
+        return new TemplateModelException("Failed to " + action + " from the java.sql.ResultSet.", e);
+    }
+
+    /**
+     * Not thread-safe.
+     */
+    private class RowIterator implements TemplateModelIterator {
+
+        private boolean resultSetOwnedByMe;
+        /** Whether {@link ResultSet#next()} was already called for the row that {@link #next()} will return. */
+        private boolean nextRowFetched;
+        private boolean nextRowExists;
+        private RowModel row;
+
+        @Override
+        public TemplateModel next() throws TemplateModelException {
+            if (!hasNext()) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+            nextRowFetched = false;
+            if (row == null) {
+                row = new RowModel();
+            }
+            row.readCurrentRow();
+            return row;
+        }
+
+        @Override
+        public boolean hasNext() throws TemplateModelException {
+            if (!resultSetOwnedByMe) {
+                if (resultSetOwnedBySomeone) {
+                    throw new TemplateModelException(
+                            "This collection value wraps a java.sql.ResultSet, thus it can be listed only once.");
+                }
+                resultSetOwnedBySomeone = true;
+                resultSetOwnedByMe = true;
+            }
+
+            if (!nextRowFetched) {
+                try {
+                    nextRowExists = resultSet.next();
+                } catch (SQLException e) {
+                    throw newSQLException("move to the next row", e);
+                }
+                nextRowFetched = true;
+            }
+            return nextRowExists;
+        }
+    }
+
+    /**
+     * The row model that's reused for all rows; stores the values of the row where the cursor was when
+     * {@link #readCurrentRow()} was last called.
+     */
+    private class RowModel implements TemplateHashModelEx2, TemplateSequenceModel {
+
+        /** Column types, as {@code COLUMN_TYPE_...} constants, by 0-based column index. */
+        private final int[] columnTypes;
+        private final TemplateCollectionModel columnLabelsModel;
+        private final Map<String, Integer> columnIndexesByLabel;
+        /** Fallback for case-insensitive lookup, as the case of labels depends on the database. */
+        private final Map<String, Integer> columnIndexesByUpperCaseLabel;
+        private final String[] columnLabels;
+        private final TemplateModel[] columnValues;
+
+        RowModel() throws TemplateModelException {
+            try {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                columnTypes = new int[columnCount];
+                columnLabels = new String[columnCount];
+                columnValues = new TemplateModel[columnCount];
+                TemplateModel[] columnLabelModels = new TemplateModel[columnCount];
+                columnIndexesByLabel = new HashMap<>(columnCount * 4 / 3 + 1);
+                columnIndexesByUpperCaseLabel = new HashMap<>(columnCount * 4 / 3 + 1);
+                for (int i = 0; i < columnCount; i++) {
+                    columnTypes[i] = getColumnType(metaData.getColumnType(i + 1));
+                    String label = metaData.getColumnLabel(i + 1);
+                    columnLabels[i] = label;
+                    columnLabelModels[i] = new SimpleScalar(label);
+                    // If there are multiple columns with the same label, the first one wins, like in ResultSet.
+                    Integer index = Integer.valueOf(i);
+                    if (!columnIndexesByLabel.containsKey(label)) {
+                        columnIndexesByLabel.put(label, index);
+                    }
+                    String upperCaseLabel = label.toUpperCase(Locale.ROOT);
+                    if (!columnIndexesByUpperCaseLabel.containsKey(upperCaseLabel)) {
+                        columnIndexesByUpperCaseLabel.put(upperCaseLabel, index);
+                    }
+                }
+                columnLabelsModel = new SimpleCollection(Arrays.asList(columnLabelModels), getObjectWrapper());
+            } catch (SQLException e) {
+                throw newSQLException("get the meta data", e);
+            }
+        }
+
+        @Override
+        public TemplateModel get(String key) throws TemplateModelException {
+            Integer index = columnIndexesByLabel.get(key);
+            if (index == null) {
+                index = columnIndexesByUpperCaseLabel.get(key.toUpperCase(Locale.ROOT));
+                if (index == null) {
+                    return null;
+                }
+            }
+            return columnValues[index.intValue()];
+        }
+
+        @Override
+        public TemplateModel get(int index) throws TemplateModelException {
+            return index >= 0 && index < columnValues.length ? columnValues[index] : null;
+        }
+
+        @Override
+        public int size() {
+            return columnTypes.length;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return columnTypes.length == 0;
+        }
+
+        @Override
+        public TemplateCollectionModel keys() {
+            return columnLabelsModel;
+        }
+
+        @Override
+        public TemplateCollectionModel values() throws TemplateModelException {
+            return new SimpleCollection(Arrays.asList(columnValues.clone()), getObjectWrapper());
+        }
+
+        @Override
+        public KeyValuePairIterator keyValuePairIterator() {
+            return new KeyValuePairIterator() {
+                private int nextIndex;
+
+                @Override
+                public boolean hasNext() {
+                    return nextIndex < columnTypes.length;
+                }
+
+                @Override
+                public KeyValuePair next() throws TemplateModelException {
+                    if (nextIndex >= columnTypes.length) {
+                        throw new TemplateModelException("The collection has no more items.");
+                    }
+                    final int index = nextIndex++;
+                    final TemplateModel value = columnValues[index];
+                    return new KeyValuePair() {
+                        @Override
+                        public TemplateModel getKey() {
+                            return new SimpleScalar(columnLabels[index]);
+                        }
+
+                        @Override
+                        public TemplateModel getValue() {
+                            return value;
+                        }
+                    };
+                }
+            };
+        }
+
+        void readCurrentRow() throws TemplateModelException {
+            for (int i = 0; i < columnValues.length; i++) {
+                columnValues[i] = readColumnValue(i);
+            }
+        }
+
+        /**
+         * @param index 0-based column index
+         */
+        private TemplateModel readColumnValue(int index) throws TemplateModelException {
+            final ResultSet rs = resultSet;
+            final int columnIndex = index + 1;
+            try {
+                switch (columnTypes[index]) {
+                case COLUMN_TYPE_STRING: {
+                    String value = rs.getString(columnIndex);
+                    return value != null ? new SimpleScalar(value) : null;
+                }
+                case COLUMN_TYPE_INT: {
+                    int value = rs.getInt(columnIndex);
+                    return value != 0 || !rs.wasNull() ? new SimpleNumber(value) : null;
+                }
+                case COLUMN_TYPE_LONG: {
+                    long value = rs.getLong(columnIndex);
+                    return value != 0 || !rs.wasNull() ? new SimpleNumber(value) : null;
+                }
+                case COLUMN_TYPE_FLOAT: {
+                    float value = rs.getFloat(columnIndex);
+                    return value != 0 || !rs.wasNull() ? new SimpleNumber(value) : null;
+                }
+                case COLUMN_TYPE_DOUBLE: {
+                    double value = rs.getDouble(columnIndex);
+                    return value != 0 || !rs.wasNull() ? new SimpleNumber(value) : null;
+                }
+                case COLUMN_TYPE_BIG_DECIMAL: {
+                    BigDecimal value = rs.getBigDecimal(columnIndex);
+                    return value != null ? new SimpleNumber(value) : null;
+                }
+                case COLUMN_TYPE_BOOLEAN: {
+                    boolean value = rs.getBoolean(columnIndex);
+                    return value ? TemplateBooleanModel.TRUE : !rs.wasNull() ? TemplateBooleanModel.FALSE : null;
+                }
+                case COLUMN_TYPE_DATE: {
+                    java.sql.Date value = rs.getDate(columnIndex);
+                    return value != null ? new SimpleDate(value) : null;
+                }
+                case COLUMN_TYPE_TIME: {
+                    java.sql.Time value = rs.getTime(columnIndex);
+                    return value != null ? new SimpleDate(value) : null;
+                }
+                case COLUMN_TYPE_TIMESTAMP: {
+                    java.sql.Timestamp value = rs.getTimestamp(columnIndex);
+                    return value != null ? new SimpleDate(value) : null;
+                }
+                default: {
+                    Object value = rs.getObject(columnIndex);
+                    return value != null ? wrap(value) : null;
+                }
+                }
+            } catch (SQLException e) {
+                throw newSQLException("read column " + columnIndex + " (\"" + columnLabels[index] + "\")", e);
+            }
+        }
+    }
+
+}
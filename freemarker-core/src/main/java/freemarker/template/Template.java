@@ -19,27 +19,27 @@
 
 package freemarker.template;
 
-import java.io.BufferedReader;
-import java.io.FilterReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import freemarker.cache.TemplateCache;
 import freemarker.cache.TemplateLoader;
 import freemarker.cache.TemplateLookupStrategy;
+import freemarker.cache._CacheAPI;
 import freemarker.core.BugException;
 import freemarker.core.Configurable;
 import freemarker.core.Environment;
@@ -78,8 +78,6 @@ import freemarker.debug.impl.DebuggerService;
 public class Template extends Configurable {
     public static final String DEFAULT_NAMESPACE_PREFIX = "D";
     public static final String NO_NS_PREFIX = "N";
-
-    private static final int READER_BUFFER_SIZE = 4096;
     
     private Map macros = new HashMap();
     private List imports = new Vector();
@@ -98,6 +96,7 @@ public class Template extends Configurable {
     private Map prefixToNamespaceURILookup = new HashMap();
     private Map namespaceURIToPrefixLookup = new HashMap();
     private Version templateLanguageVersion;
+    private Set<String> dependencyNames;
 
     /**
      * A prime constructor to which all other constructors should
@@ -231,32 +230,20 @@ public class Template extends Configurable {
         this(name, sourceName, cfg, customParserConfiguration);
         
         this.setEncoding(encoding);
-        LineTableBuilder ltbReader;
         try {
             ParserConfiguration actualParserConfiguration = getParserConfiguration();
-            
-            if (!(reader instanceof BufferedReader) && !(reader instanceof StringReader)) {
-                reader = new BufferedReader(reader, READER_BUFFER_SIZE);
-            }
-            ltbReader = new LineTableBuilder(reader, actualParserConfiguration);
-            reader = ltbReader;
-            
+
+            // The whole source is loaded first, so that IO errors aren't swallowed by JavaCC (which treats them as EOF),
+            // and so the parser and the line table can work directly on a char array.
+            SourceBuffer source = SourceBuffer.load(reader);
+            buildLineTable(source.chars, source.length, actualParserConfiguration.getTabSize());
+
             try {
-                FMParser parser = new FMParser(this, reader, actualParserConfiguration);
+                FMParser parser = new FMParser(this, source.chars, source.length, actualParserConfiguration);
                 if (cfg != null) {
                     _CoreAPI.setPreventStrippings(parser, cfg.getPreventStrippings());
                 }
-                try {
-                    this.rootElement = parser.Root();
-                } catch (IndexOutOfBoundsException exc) {
-                    // There's a JavaCC bug where the Reader throws a RuntimeExcepton and then JavaCC fails with
-                    // IndexOutOfBoundsException. If that wasn't the case, we just rethrow. Otherwise we suppress the
-                    // IndexOutOfBoundsException and let the real cause to be thrown later. 
-                    if (!ltbReader.hasFailure()) {
-                        throw exc;
-                    }
-                    rootElement = null;
-                }
+                this.rootElement = parser.Root();
                 this.actualTagSyntax = parser._getLastTagSyntax();
                 this.interpolationSyntax = actualParserConfiguration.getInterpolationSyntax();
                 this.actualNamingConvention = parser._getLastNamingConvention();
@@ -272,9 +259,6 @@ public class Template extends Configurable {
             reader.close();
         }
         
-        // Throws any exception that JavaCC has silently treated as EOF:
-        ltbReader.throwFailure();
-        
         DebuggerService.registerTemplate(this);
         namespaceURIToPrefixLookup = Collections.unmodifiableMap(namespaceURIToPrefixLookup);
         prefixToNamespaceURILookup = Collections.unmodifiableMap(prefixToNamespaceURILookup);
@@ -563,6 +547,45 @@ public class Template extends Configurable {
         return sourceName != null ? sourceName : getName();
     }
 
+    /**
+     * Returns the names of the templates that this template {@code #include}-s or {@code #import}-s, as far as that's
+     * known at parse time, that is, when the name of the included or imported template is given with a literal (like
+     * {@code <#include "footer.ftl">}). The names are resolved relatively to the name of this template, and are
+     * normalized, so they are what {@link Configuration#getTemplate(String)} would put into the template cache.
+     * Templates included or imported with a name that's calculated on runtime, and the auto-includes and auto-imports
+     * are not in this set.
+     * 
+     * @return An unmodifiable set, not {@code null}.
+     * 
+     * @since 2.3.33
+     */
+    public Set<String> getDependencyNames() {
+        return dependencyNames != null ? Collections.unmodifiableSet(dependencyNames) : Collections.<String>emptySet();
+    }
+
+    /**
+     * Called by the parser when it has found an {@code #include} or {@code #import} with a literal template name.
+     */
+    void addDependencyName(String targetName) {
+        String fullName;
+        try {
+            fullName = name != null && !isClassicCompatible()
+                    ? _CacheAPI.toRootBasedName(getConfiguration().getTemplateNameFormat(), name, targetName)
+                    : targetName;
+            fullName = _CacheAPI.normalizeRootBasedName(getConfiguration().getTemplateNameFormat(), fullName);
+        } catch (MalformedTemplateNameException e) {
+            // Will fail when the #include or #import is executed; we can't include it in the dependencies anyway. 
+            return;
+        }
+        if (fullName == null) {
+            return;
+        }
+        if (dependencyNames == null) {
+            dependencyNames = new LinkedHashSet<>();
+        }
+        dependencyNames.add(fullName);
+    }
+
     /**
      * Returns the Configuration object associated with this template.
      */
@@ -795,113 +818,83 @@ public class Template extends Configurable {
     }
 
     /**
-     * Reader that builds up the line table info for us, and also helps in working around JavaCC's exception
-     * suppression.
+     * Fills the line table (used by {@link #getSource(int, int, int, int)}) from the source, in a single pass. Tabs
+     * are expanded to spaces according the tab size, so that the columns reported by the parser can be used as
+     * indexes. A CR-LF pair counts as a single line break.
      */
-    private class LineTableBuilder extends FilterReader {
-        
-        private final int tabSize;
-        private final StringBuilder lineBuf = new StringBuilder();
-        int lastChar;
-        boolean closed;
-        
-        /** Needed to work around JavaCC behavior where it silently treats any errors as EOF. */ 
-        private Exception failure; 
-
-        /**
-         * @param r the character stream to wrap
-         */
-        LineTableBuilder(Reader r, ParserConfiguration parserConfiguration) {
-            super(r);
-            tabSize = parserConfiguration.getTabSize();
-        }
-        
-        public boolean hasFailure() {
-            return failure != null;
-        }
-
-        public void throwFailure() throws IOException {
-            if (failure != null) {
-                if (failure instanceof IOException) {
-                    throw (IOException) failure;
+    private void buildLineTable(char[] chars, int length, int tabSize) {
+        StringBuilder expandedLine = null;
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r') {
+                int lineEnd = i + 1;
+                if (c == '\r' && lineEnd < length && chars[lineEnd] == '\n') { // CRLF under Windoze
+                    lineEnd++;
                 }
-                if (failure instanceof RuntimeException) {
-                    throw (RuntimeException) failure;
+                addLine(chars, lineStart, i, lineEnd, expandedLine);
+                expandedLine = null;
+                lineStart = lineEnd;
+                i = lineEnd - 1;
+            } else if (c == '\t' && tabSize != 1) {
+                if (expandedLine == null) {
+                    expandedLine = new StringBuilder(i - lineStart + tabSize + 16);
+                    expandedLine.append(chars, lineStart, i - lineStart);
                 }
-                throw new UndeclaredThrowableException(failure);
+                int numSpaces = tabSize - (expandedLine.length() % tabSize);
+                for (int j = 0; j < numSpaces; j++) {
+                    expandedLine.append(' ');
+                }
+            } else if (expandedLine != null) {
+                expandedLine.append(c);
             }
         }
-
-        @Override
-        public int read() throws IOException {
-            try {
-                int c = in.read();
-                handleChar(c);
-                return c;
-            } catch (Exception e) {
-                throw rememberException(e);
-            }
+        if (lineStart < length) {
+            addLine(chars, lineStart, length, length, expandedLine);
         }
+    }
 
-        private IOException rememberException(Exception e) throws IOException {
-            // JavaCC used to read from the Reader after it was closed. So we must not treat that as a failure. 
-            if (!closed) {
-                failure = e;
-            }
-            if (e instanceof IOException) {
-                return (IOException) e;
-            }
-            if (e instanceof RuntimeException) {
-                throw (RuntimeException) e;
-            }
-            throw new UndeclaredThrowableException(e);
+    /**
+     * @param expandedLine
+     *            If not {@code null}, the line had tabs, and this holds the tab-expanded line without the line break.
+     */
+    private void addLine(char[] chars, int lineStart, int lineBreakStart, int lineEnd, StringBuilder expandedLine) {
+        if (expandedLine == null) {
+            lines.add(new String(chars, lineStart, lineEnd - lineStart));
+        } else {
+            expandedLine.append(chars, lineBreakStart, lineEnd - lineBreakStart);
+            lines.add(expandedLine.toString());
         }
+    }
 
-        @Override
-        public int read(char cbuf[], int off, int len) throws IOException {
-            try {
-                int numchars = in.read(cbuf, off, len);
-                for (int i = off; i < off + numchars; i++) {
-                    char c = cbuf[i];
-                    handleChar(c);
-                }
-                return numchars;
-            } catch (Exception e) {
-                throw rememberException(e);
-            }
-        }
+    /**
+     * The whole template source loaded into a {@code char} array.
+     */
+    private static final class SourceBuffer {
 
-        @Override
-        public void close() throws IOException {
-            if (lineBuf.length() > 0) {
-                lines.add(lineBuf.toString());
-                lineBuf.setLength(0);
-            }
-            super.close();
-            closed = true;
-        }
+        private static final int INITIAL_CAPACITY = 4096;
 
-        private void handleChar(int c) {
-            if (c == '\n' || c == '\r') {
-                if (lastChar == '\r' && c == '\n') { // CRLF under Windoze
-                    int lastIndex = lines.size() - 1;
-                    String lastLine = (String) lines.get(lastIndex);
-                    lines.set(lastIndex, lastLine + '\n');
-                } else {
-                    lineBuf.append((char) c);
-                    lines.add(lineBuf.toString());
-                    lineBuf.setLength(0);
-                }
-            } else if (c == '\t' && tabSize != 1) {
-                int numSpaces = tabSize - (lineBuf.length() % tabSize);
-                for (int i = 0; i < numSpaces; i++) {
-                    lineBuf.append(' ');
+        private char[] chars;
+        private int length;
+
+        static SourceBuffer load(Reader reader) throws IOException {
+            SourceBuffer buffer = new SourceBuffer();
+            char[] chars = new char[INITIAL_CAPACITY];
+            int length = 0;
+            int readCount;
+            while ((readCount = reader.read(chars, length, chars.length - length)) != -1) {
+                length += readCount;
+                if (length == chars.length) {
+                    char[] newChars = new char[chars.length * 2];
+                    System.arraycopy(chars, 0, newChars, 0, length);
+                    chars = newChars;
                 }
-            } else {
-                lineBuf.append((char) c);
             }
-            lastChar = c;
+            buffer.chars = chars;
+            buffer.length = length;
+            return buffer;
         }
+
     }
 
     /**
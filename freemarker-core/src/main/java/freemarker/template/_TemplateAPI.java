@@ -137,6 +137,13 @@ public class _TemplateAPI {
         t.setOutputFormat(outputFormat);
     }
 
+    /**
+     * @since 2.3.33
+     */
+    public static void addDependencyName(Template t, String targetName) {
+        t.addDependencyName(targetName);
+    }
+
     public static void validateAutoEscapingPolicyValue(int autoEscaping) {
         if (autoEscaping != Configuration.ENABLE_IF_DEFAULT_AUTO_ESCAPING_POLICY
                 && autoEscaping != Configuration.ENABLE_IF_SUPPORTED_AUTO_ESCAPING_POLICY
@@ -24,6 +24,8 @@ import java.io.Writer;
 import java.util.Map;
 
 import freemarker.core.Environment;
+import freemarker.core._CaptureWriter;
+import freemarker.core._CharArrayPool;
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -106,8 +108,8 @@ public class CaptureOutput implements TemplateTransformModel {
             throw new TemplateModelException("'var' or 'local' or 'global' parameter evaluates to null string");
         }
 
-        final StringBuilder buf = new StringBuilder();
         final Environment env = Environment.getCurrentEnvironment();
+        final _CaptureWriter buf = _CharArrayPool.getInstance(env).newCaptureWriter();
         final boolean localVar = local;
         final boolean globalVar = global;
 
@@ -115,7 +117,7 @@ public class CaptureOutput implements TemplateTransformModel {
 
             @Override
             public void write(char cbuf[], int off, int len) {
-                buf.append(cbuf, off, len);
+                buf.write(cbuf, off, len);
             }
 
             @Override
@@ -126,6 +128,7 @@ public class CaptureOutput implements TemplateTransformModel {
             @Override
             public void close() throws IOException {
                 SimpleScalar result = new SimpleScalar(buf.toString());
+                buf.release();
                 try {
                     if (localVar) {
                         env.setLocalVariable(varName, result);
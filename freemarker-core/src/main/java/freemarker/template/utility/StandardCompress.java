@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Map;
 
+import freemarker.core.Environment;
+import freemarker.core._CharArrayPool;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateNumberModel;
@@ -123,7 +125,9 @@ public class StandardCompress implements TemplateTransformModel {
         private static final int LINEBREAK_LF = 6;
 
         private final Writer out;
-        private final char[] buf;
+        private final int bufSize;
+        private final _CharArrayPool bufPool;
+        private char[] buf;
         private final boolean singleLine;
     
         private int pos = 0;
@@ -132,15 +136,18 @@ public class StandardCompress implements TemplateTransformModel {
 
         public StandardCompressWriter(Writer out, int bufSize, boolean singleLine) {
             this.out = out;
+            this.bufSize = bufSize;
             this.singleLine = singleLine;
-            buf = new char[bufSize];
+            bufPool = _CharArrayPool.getInstance(Environment.getCurrentEnvironment());
+            buf = bufPool.borrow(bufSize);
         }
 
         @Override
         public void write(char[] cbuf, int off, int len) throws IOException {
+            checkNotClosed();
             for (; ; ) {
                 // Need to reserve space for the EOL potentially left in the state machine
-                int room = buf.length - pos - MAX_EOL_LENGTH; 
+                int room = bufSize - pos - MAX_EOL_LENGTH; 
                 if (room >= len) {
                     writeHelper(cbuf, off, len);
                     break;
@@ -226,13 +233,28 @@ public class StandardCompress implements TemplateTransformModel {
 
         @Override
         public void flush() throws IOException {
+            checkNotClosed();
             flushInternal();
             out.flush();
         }
 
         @Override
         public void close() throws IOException {
+            if (buf == null) {
+                return;
+            }
             flushInternal();
+            bufPool.giveBack(buf);
+            buf = null;
+        }
+
+        /**
+         * As {@link #close()} gives back the buffer to the pool, the writer can't be used after that.
+         */
+        private void checkNotClosed() throws IOException {
+            if (buf == null) {
+                throw new IOException("The writer was already closed.");
+            }
         }
     }
 }
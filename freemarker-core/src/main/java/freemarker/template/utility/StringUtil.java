@@ -53,6 +53,14 @@ public class StringUtil {
     private static final char[] HTML_APOS = new char[] { '&', '#', '3', '9', ';' };
     private static final char[] XML_APOS = new char[] { '&', 'a', 'p', 'o', 's', ';' };
 
+    /**
+     * Bit {@code n} is set if the character with code {@code n} might have to be escaped in XML or HTML. All those
+     * characters are below 64, so one {@code long} covers them, and we can classify a character with a single
+     * comparison and mask test, instead of comparing it with each of them.
+     */
+    private static final long XML_ESC_CANDIDATES_MASK
+            = 1L << '<' | 1L << '>' | 1L << '&' | 1L << '"' | 1L << '\'';
+
     /*
      *  For better performance most methods are folded down. Don't you scream... :)
      */
@@ -110,13 +118,23 @@ public class StringUtil {
     private static String XMLOrHTMLEnc(String s, boolean escGT, boolean escQuot, char[] apos) {
         final int ln = s.length();
         
-        // First we find out if we need to escape, and if so, what the length of the output will be:
+        // Most strings need no escaping, so we look for the first character that possibly needs escaping with the
+        // cheapest test possible:
+        final int firstCandidateIdx = indexOfXMLEscapeCandidate(s, 0, ln);
+        if (firstCandidateIdx == -1) {
+            return s; // Nothing to escape
+        }
+        
+        // Then we find out if we need to escape, and if so, what the length of the output will be:
         int firstEscIdx = -1;
         int lastEscIdx = 0;
         int plusOutLn = 0;
-        for (int i = 0; i < ln; i++) {
+        for (int i = firstCandidateIdx; i < ln; i++) {
             escape: do {
                 final char c = s.charAt(i);
+                if (!isXMLEscapeCandidate(c)) {
+                    break escape;
+                }
                 switch (c) {
                 case '<':
                     plusOutLn += LT.length - 1;
@@ -163,31 +181,33 @@ public class StringUtil {
             int dst = firstEscIdx;
             scan: for (int i = firstEscIdx; i <= lastEscIdx; i++) {
                 final char c = s.charAt(i);
-                switch (c) {
-                case '<':
-                    dst = shortArrayCopy(LT, esced, dst);
-                    continue scan;
-                case '>':
-                    if (!(escGT || maybeCDataEndGT(s, i))) {
-                        break;
-                    }
-                    dst = shortArrayCopy(GT, esced, dst);
-                    continue scan;
-                case '&':
-                    dst = shortArrayCopy(AMP, esced, dst);
-                    continue scan;
-                case '"':
-                    if (!escQuot) {
-                        break;
-                    }
-                    dst = shortArrayCopy(QUOT, esced, dst);
-                    continue scan;
-                case '\'': // apos
-                    if (apos == null) {
-                        break;
+                if (isXMLEscapeCandidate(c)) {
+                    switch (c) {
+                    case '<':
+                        dst = shortArrayCopy(LT, esced, dst);
+                        continue scan;
+                    case '>':
+                        if (!(escGT || maybeCDataEndGT(s, i))) {
+                            break;
+                        }
+                        dst = shortArrayCopy(GT, esced, dst);
+                        continue scan;
+                    case '&':
+                        dst = shortArrayCopy(AMP, esced, dst);
+                        continue scan;
+                    case '"':
+                        if (!escQuot) {
+                            break;
+                        }
+                        dst = shortArrayCopy(QUOT, esced, dst);
+                        continue scan;
+                    case '\'': // apos
+                        if (apos == null) {
+                            break;
+                        }
+                        dst = shortArrayCopy(apos, esced, dst);
+                        continue scan;
                     }
-                    dst = shortArrayCopy(apos, esced, dst);
-                    continue scan;
                 }
                 esced[dst++] = c;
             }
@@ -199,6 +219,23 @@ public class StringUtil {
         }
     }
     
+    /**
+     * Returns the index of the first character in the given range that might have to be escaped in XML or HTML, or
+     * -1 if there's none.
+     */
+    private static int indexOfXMLEscapeCandidate(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (isXMLEscapeCandidate(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isXMLEscapeCandidate(char c) {
+        return c < 64 && (XML_ESC_CANDIDATES_MASK & 1L << c) != 0;
+    }
+    
     private static boolean maybeCDataEndGT(String s, int i) {
         if (i == 0) return true;
         if (s.charAt(i - 1) != ']') return false;
@@ -211,7 +248,7 @@ public class StringUtil {
         int ln = s.length();
         for (int i = 0; i < ln; i++) {
             char c = s.charAt(i);
-            if (c == '<' || c == '>' || c == '&' || c == '"' || c == '\'') {
+            if (isXMLEscapeCandidate(c)) {
                 int flushLn = i - writtenEnd;
                 if (flushLn != 0) {
                     out.write(s, writtenEnd, flushLn);
@@ -1329,6 +1366,15 @@ public class StringUtil {
         return jsStringEnc(s, JsStringEncCompatibility.JAVA_SCRIPT);
     }
 
+    /**
+     * Like {@link #javaScriptStringEnc(String)}, but writes the result into a {@link Writer}.
+     *
+     * @since 2.3.33
+     */
+    public static void javaScriptStringEnc(String s, Writer out) throws IOException {
+        jsStringEnc(s, JsStringEncCompatibility.JAVA_SCRIPT, null, out);
+    }
+
     /**
      * Escapes a {@link String} to be safely insertable into a JSON string literal; for more see
      * {@link #jsStringEnc(String, JsStringEncCompatibility, JsStringEncQuotation)
@@ -1338,9 +1384,19 @@ public class StringUtil {
         return jsStringEnc(s, JsStringEncCompatibility.JSON);
     }
 
+    /**
+     * Like {@link #jsonStringEnc(String)}, but writes the result into a {@link Writer}.
+     *
+     * @since 2.3.33
+     */
+    public static void jsonStringEnc(String s, Writer out) throws IOException {
+        jsStringEnc(s, JsStringEncCompatibility.JSON, null, out);
+    }
+
     private static final int NO_ESC = 0;
     private static final int ESC_HEXA = 1;
     private static final int ESC_BACKSLASH = 3;
+    private static final int MAX_JS_STRING_ESCAPE_LENGTH = 6;
     
     /**
      * Escapes a {@link String} to be safely insertable into a JSON or JavaScript string literal; for more see
@@ -1436,108 +1492,34 @@ public class StringUtil {
             sb = new StringBuilder(ln + 8);
             sb.append(quotation.getSymbol());
         }
+        // The characters before this index were already appended to sb, if sb is non-null. We append the runs of
+        // characters that need no escaping in one step, when we reach the next character that needs escaping.
+        int appendedEnd = 0;
+        char[] escapeBuf = null;
         for (int i = 0; i < ln; i++) {
             final char c = s.charAt(i);
-            final int escapeType;  // 
             if (!(c > '>' && c < 0x7F && c != '\\') && c != ' ' && !(c >= 0xA0 && c < 0x2028)) {  // skip common chars
-                if (c <= 0x1F) {  // control chars range 1
-                    if (c == '\n') {
-                        escapeType = 'n';
-                    } else if (c == '\r') {
-                        escapeType = 'r';
-                    } else if (c == '\f') {
-                        escapeType = 'f';
-                    } else if (c == '\b') {
-                        escapeType = 'b';
-                    } else if (c == '\t') {
-                        escapeType = 't';
-                    } else {
-                        escapeType = ESC_HEXA;
-                    }
-                } else if (c == '"') {
-                    escapeType = quotation == APOSTROPHE ? NO_ESC : ESC_BACKSLASH;
-                } else if (c == '\'') {
-                    escapeType = !compatibility.javaScriptCompatible || quotation == QUOTATION_MARK ? NO_ESC
-                            : (compatibility.jsonCompatible ? ESC_HEXA : ESC_BACKSLASH);
-                } else if (c == '\\') {
-                    escapeType = ESC_BACKSLASH; 
-                } else if (c == '/'
-                        && (i == 0 && quotation == null || i != 0 && s.charAt(i - 1) == '<')) {
-                    // against closing elements with "</"
-                    escapeType = ESC_BACKSLASH;
-                } else if (c == '>') {
-                    // against "]]> and "-->"
-                    final boolean dangerous;
-                    if (quotation != null && i < 2) {
-                        dangerous = false;
-                    } else if (i == 0) {
-                        dangerous = true;
-                    } else {
-                        final char prevC = s.charAt(i - 1);
-                        if (prevC == ']' || prevC == '-') {
-                            if (i == 1) {
-                                dangerous = true;
-                            } else {
-                                final char prevPrevC = s.charAt(i - 2);
-                                dangerous = prevPrevC == prevC;
-                            }
-                        } else {
-                            dangerous = false;
-                        }
-                    }
-                    escapeType = dangerous ? (compatibility.jsonCompatible ? ESC_HEXA : ESC_BACKSLASH) : NO_ESC;
-                } else if (c == '<') {
-                    // against "<!"
-                    final boolean dangerous;
-                    if (i == ln - 1) {
-                        dangerous = quotation == null;
-                    } else {
-                        char nextC = s.charAt(i + 1);
-                        dangerous = nextC == '!' || nextC == '?';
-                    }
-                    escapeType = dangerous ? ESC_HEXA : NO_ESC;
-                } else if ((c >= 0x7F && c <= 0x9F)  // control chars range 2
-                            || (c == 0x2028 || c == 0x2029)  // UNICODE line terminators
-                            ) {
-                    escapeType = ESC_HEXA;
-                } else {
-                    escapeType = NO_ESC;
-                }
-                
+                final int escapeType = getJsStringEscapeType(s, i, c, compatibility, quotation);
                 if (escapeType != NO_ESC) { // If needs escaping
                     if (sb == null) {
                         sb = new StringBuilder(ln + 6);
-                        sb.append(s, 0, i);
                     }
-                    
-                    sb.append('\\');
-                    if (escapeType > 0x20) {
-                        sb.append((char) escapeType);
-                    } else if (escapeType == ESC_HEXA) {
-                        if (!compatibility.jsonCompatible && c < 0x100) {
-                            sb.append('x');
-                            sb.append(toHexDigitUpperCase(c >> 4));
-                            sb.append(toHexDigitUpperCase(c & 0xF));
-                        } else {
-                            sb.append('u');
-                            int cp = c;
-                            sb.append(toHexDigitUpperCase((cp >> 12) & 0xF));
-                            sb.append(toHexDigitUpperCase((cp >> 8) & 0xF));
-                            sb.append(toHexDigitUpperCase((cp >> 4) & 0xF));
-                            sb.append(toHexDigitUpperCase(cp & 0xF));
-                        }
-                    } else {  // escapeType == ESC_BACKSLASH
-                        sb.append(c);
+                    if (appendedEnd != i) {
+                        sb.append(s, appendedEnd, i);
                     }
-                    continue; 
+                    appendedEnd = i + 1;
+
+                    if (escapeBuf == null) {
+                        escapeBuf = new char[MAX_JS_STRING_ESCAPE_LENGTH];
+                    }
+                    sb.append(escapeBuf, 0, fillJsStringEscape(c, escapeType, compatibility, escapeBuf));
                 }
-                // Falls through when escapeType == NO_ESC 
             }
-            // Needs no escaping
-                
-            if (sb != null) sb.append(c);
         } // for each character
 
+        if (sb != null && appendedEnd != ln) {
+            sb.append(s, appendedEnd, ln);
+        }
         if (quotation != null) {
             sb.append(quotation.getSymbol());
         }
@@ -1545,6 +1527,161 @@ public class StringUtil {
         return sb == null ? s : sb.toString();
     }
 
+    /**
+     * Like {@link #jsStringEnc(String, JsStringEncCompatibility, JsStringEncQuotation)}, but writes the result into a
+     * {@link Writer}. The runs of characters that need no escaping are written directly from {@code s}, so if nothing
+     * needs escaping, this doesn't allocate anything, and calls {@link Writer#write(String, int, int)} only once (plus
+     * once for each quotation mark).
+     *
+     * @since 2.3.33
+     */
+    public static void jsStringEnc(
+            String s, JsStringEncCompatibility compatibility, JsStringEncQuotation quotation, Writer out)
+            throws IOException {
+        NullArgumentException.check("s", s);
+
+        if (quotation != null) {
+            if (quotation == APOSTROPHE && compatibility.jsonCompatible) {
+                throw new IllegalArgumentException("JSON compatible mode doesn't allow quotationMode=" + quotation);
+            }
+            out.write(quotation.getSymbol());
+        }
+        final int ln = s.length();
+        // The characters before this index were already written to out.
+        int writtenEnd = 0;
+        char[] escapeBuf = null;
+        for (int i = 0; i < ln; i++) {
+            final char c = s.charAt(i);
+            if (!(c > '>' && c < 0x7F && c != '\\') && c != ' ' && !(c >= 0xA0 && c < 0x2028)) {  // skip common chars
+                final int escapeType = getJsStringEscapeType(s, i, c, compatibility, quotation);
+                if (escapeType != NO_ESC) {
+                    if (writtenEnd != i) {
+                        out.write(s, writtenEnd, i - writtenEnd);
+                    }
+                    writtenEnd = i + 1;
+
+                    if (escapeBuf == null) {
+                        escapeBuf = new char[MAX_JS_STRING_ESCAPE_LENGTH];
+                    }
+                    out.write(escapeBuf, 0, fillJsStringEscape(c, escapeType, compatibility, escapeBuf));
+                }
+            }
+        } // for each character
+
+        if (writtenEnd != ln) {
+            out.write(s, writtenEnd, ln - writtenEnd);
+        }
+        if (quotation != null) {
+            out.write(quotation.getSymbol());
+        }
+    }
+
+    /**
+     * Decides how the character at the given index must be escaped by
+     * {@link #jsStringEnc(String, JsStringEncCompatibility, JsStringEncQuotation)}; only called for characters that
+     * aren't filtered out by the "common characters" fast check.
+     *
+     * @return {@link #NO_ESC}, {@link #ESC_HEXA}, {@link #ESC_BACKSLASH}, or the letter to put after the backslash.
+     */
+    private static int getJsStringEscapeType(
+            String s, int i, char c, JsStringEncCompatibility compatibility, JsStringEncQuotation quotation) {
+        if (c <= 0x1F) {  // control chars range 1
+            if (c == '\n') {
+                return 'n';
+            } else if (c == '\r') {
+                return 'r';
+            } else if (c == '\f') {
+                return 'f';
+            } else if (c == '\b') {
+                return 'b';
+            } else if (c == '\t') {
+                return 't';
+            } else {
+                return ESC_HEXA;
+            }
+        } else if (c == '"') {
+            return quotation == APOSTROPHE ? NO_ESC : ESC_BACKSLASH;
+        } else if (c == '\'') {
+            return !compatibility.javaScriptCompatible || quotation == QUOTATION_MARK ? NO_ESC
+                    : (compatibility.jsonCompatible ? ESC_HEXA : ESC_BACKSLASH);
+        } else if (c == '\\') {
+            return ESC_BACKSLASH;
+        } else if (c == '/'
+                && (i == 0 && quotation == null || i != 0 && s.charAt(i - 1) == '<')) {
+            // against closing elements with "</"
+            return ESC_BACKSLASH;
+        } else if (c == '>') {
+            // against "]]> and "-->"
+            final boolean dangerous;
+            if (quotation != null && i < 2) {
+                dangerous = false;
+            } else if (i == 0) {
+                dangerous = true;
+            } else {
+                final char prevC = s.charAt(i - 1);
+                if (prevC == ']' || prevC == '-') {
+                    if (i == 1) {
+                        dangerous = true;
+                    } else {
+                        final char prevPrevC = s.charAt(i - 2);
+                        dangerous = prevPrevC == prevC;
+                    }
+                } else {
+                    dangerous = false;
+                }
+            }
+            return dangerous ? (compatibility.jsonCompatible ? ESC_HEXA : ESC_BACKSLASH) : NO_ESC;
+        } else if (c == '<') {
+            // against "<!"
+            final boolean dangerous;
+            if (i == s.length() - 1) {
+                dangerous = quotation == null;
+            } else {
+                char nextC = s.charAt(i + 1);
+                dangerous = nextC == '!' || nextC == '?';
+            }
+            return dangerous ? ESC_HEXA : NO_ESC;
+        } else if ((c >= 0x7F && c <= 0x9F)  // control chars range 2
+                    || (c == 0x2028 || c == 0x2029)  // UNICODE line terminators
+                    ) {
+            return ESC_HEXA;
+        } else {
+            return NO_ESC;
+        }
+    }
+
+    /**
+     * Puts the escape sequence of {@code c} into {@code buf}, which must be at least
+     * {@link #MAX_JS_STRING_ESCAPE_LENGTH} long.
+     *
+     * @return The length of the escape sequence.
+     */
+    private static int fillJsStringEscape(
+            char c, int escapeType, JsStringEncCompatibility compatibility, char[] buf) {
+        buf[0] = '\\';
+        if (escapeType > 0x20) {
+            buf[1] = (char) escapeType;
+            return 2;
+        } else if (escapeType == ESC_HEXA) {
+            if (!compatibility.jsonCompatible && c < 0x100) {
+                buf[1] = 'x';
+                buf[2] = toHexDigitUpperCase(c >> 4);
+                buf[3] = toHexDigitUpperCase(c & 0xF);
+                return 4;
+            } else {
+                buf[1] = 'u';
+                buf[2] = toHexDigitUpperCase((c >> 12) & 0xF);
+                buf[3] = toHexDigitUpperCase((c >> 8) & 0xF);
+                buf[4] = toHexDigitUpperCase((c >> 4) & 0xF);
+                buf[5] = toHexDigitUpperCase(c & 0xF);
+                return 6;
+            }
+        } else {  // escapeType == ESC_BACKSLASH
+            buf[1] = c;
+            return 2;
+        }
+    }
+
     private static char toHexDigitLowerCase(int d) {
         return (char) (d < 0xA ? d + '0' : d - 0xA + 'a');
     }
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateNotFoundException;
+
+public class IndexedTemplateLoaderTest {
+
+    private File templateRootDir;
+    private RecordingFileTemplateLoader fileTemplateLoader;
+    private Configuration cfg;
+
+    @Before
+    public void setup() throws IOException {
+        templateRootDir = Files.createTempDir();
+        FileUtils.write(new File(templateRootDir, "foo.ftl"), "foo", StandardCharsets.UTF_8);
+        FileUtils.write(new File(templateRootDir, "sub/bar_en.ftl"), "bar_en", StandardCharsets.UTF_8);
+
+        fileTemplateLoader = new RecordingFileTemplateLoader(templateRootDir);
+        cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setLocale(Locale.US);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(templateRootDir);
+    }
+
+    @Test
+    public void testFileTemplateLoader() throws IOException {
+        IndexedTemplateLoader tl = new IndexedTemplateLoader(fileTemplateLoader);
+        cfg.setTemplateLoader(tl);
+        assertTrue(tl.isIndexed());
+        assertThat(tl.getIndexedTemplateNames(), containsInAnyOrder("foo.ftl", "sub/bar_en.ftl"));
+
+        assertEquals("foo", cfg.getTemplate("foo.ftl").toString());
+        assertEquals("bar_en", cfg.getTemplate("sub/bar.ftl").toString());
+        assertEquals("bar_en", cfg.getTemplate("sub/x/*/bar.ftl").toString());
+        try {
+            cfg.getTemplate("missing.ftl");
+            fail();
+        } catch (TemplateNotFoundException e) {
+            // Expected
+        }
+        // Only the lookups of existing templates reached the wrapped loader:
+        assertEquals(
+                listOf("foo.ftl", "sub/bar_en.ftl", "sub/bar_en.ftl"),
+                fileTemplateLoader.names);
+    }
+
+    @Test
+    public void testRefresh() throws IOException {
+        IndexedTemplateLoader tl = new IndexedTemplateLoader(fileTemplateLoader);
+        assertNull(tl.findTemplateSource("new.ftl"));
+        FileUtils.write(new File(templateRootDir, "new.ftl"), "new", StandardCharsets.UTF_8);
+        assertNull(tl.findTemplateSource("new.ftl"));
+
+        tl.refreshIndex();
+        assertNotNull(tl.findTemplateSource("new.ftl"));
+
+        FileUtils.write(new File(templateRootDir, "new2.ftl"), "new2", StandardCharsets.UTF_8);
+        assertNull(tl.findTemplateSource("new2.ftl"));
+        tl.resetState();
+        assertNotNull(tl.findTemplateSource("new2.ftl"));
+
+        FileUtils.write(new File(templateRootDir, "new3.ftl"), "new3", StandardCharsets.UTF_8);
+        tl.setIndexMaxAge(0);
+        sleepAtLeastAMillisecond();
+        assertNotNull(tl.findTemplateSource("new3.ftl"));
+
+        // Deleted templates need no refresh, as the wrapped loader is still asked:
+        assertTrue(new File(templateRootDir, "new3.ftl").delete());
+        tl.setIndexMaxAge(-1);
+        assertNull(tl.findTemplateSource("new3.ftl"));
+    }
+
+    @Test
+    public void testClassTemplateLoaderWithJarAndDirectory() throws IOException {
+        File jarFile = new File(templateRootDir, "templates.jar");
+        try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile))) {
+            jarOut.putNextEntry(new ZipEntry("tpl/"));
+            jarOut.putNextEntry(new ZipEntry("tpl/inJar.ftl"));
+            jarOut.write("inJar".getBytes(StandardCharsets.UTF_8));
+            jarOut.putNextEntry(new ZipEntry("tpl/sub/"));
+            jarOut.putNextEntry(new ZipEntry("tpl/sub/inJar2.ftl"));
+            jarOut.putNextEntry(new ZipEntry("other/x.ftl"));
+        }
+        File classesDir = new File(templateRootDir, "classes");
+        FileUtils.write(new File(classesDir, "tpl/inDir.ftl"), "inDir", StandardCharsets.UTF_8);
+
+        try (URLClassLoader classLoader = new URLClassLoader(
+                new URL[] { jarFile.toURI().toURL(), classesDir.toURI().toURL() }, null)) {
+            IndexedTemplateLoader tl = new IndexedTemplateLoader(new ClassTemplateLoader(classLoader, "tpl"));
+            assertTrue(tl.isIndexed());
+            assertThat(tl.getIndexedTemplateNames(), containsInAnyOrder("inJar.ftl", "sub/inJar2.ftl", "inDir.ftl"));
+            cfg.setTemplateLoader(tl);
+            assertEquals("inJar", cfg.getTemplate("inJar.ftl").toString());
+            assertEquals("inDir", cfg.getTemplate("inDir.ftl").toString());
+            assertNull(tl.findTemplateSource("x.ftl"));
+
+            // The root package can't be indexed:
+            assertFalse(new IndexedTemplateLoader(new ClassTemplateLoader(classLoader, "")).isIndexed());
+            // Neither a non-existent package (maybe it's in a jar without directory entries):
+            assertFalse(new IndexedTemplateLoader(new ClassTemplateLoader(classLoader, "noSuchDir")).isIndexed());
+        }
+    }
+
+    @Test
+    public void testClassTemplateLoaderWithResourceLoaderClass() throws IOException {
+        IndexedTemplateLoader tl = new IndexedTemplateLoader(new ClassTemplateLoader(getClass(), ""));
+        assertTrue(tl.isIndexed());
+        assertThat(tl.getIndexedTemplateNames(), hasItem("test.ftl"));
+        assertNotNull(tl.findTemplateSource("test.ftl"));
+
+        tl = new IndexedTemplateLoader(new ClassTemplateLoader(getClass(), "/freemarker/cache"));
+        assertThat(tl.getIndexedTemplateNames(), hasItem("test.ftl"));
+    }
+
+    @Test
+    public void testMultiTemplateLoader() throws IOException {
+        File otherDir = new File(templateRootDir, "other");
+        FileUtils.write(new File(otherDir, "other.ftl"), "other", StandardCharsets.UTF_8);
+
+        IndexedTemplateLoader tl = new IndexedTemplateLoader(new MultiTemplateLoader(new TemplateLoader[] {
+                new FileTemplateLoader(otherDir), fileTemplateLoader }));
+        assertTrue(tl.isIndexed());
+        assertThat(tl.getIndexedTemplateNames(), hasItems("other.ftl", "foo.ftl", "other/other.ftl"));
+        cfg.setTemplateLoader(tl);
+        assertEquals("other", cfg.getTemplate("other.ftl").toString());
+        assertEquals("foo", cfg.getTemplate("foo.ftl").toString());
+    }
+
+    @Test
+    public void testNotIndexable() throws IOException {
+        StringTemplateLoader stringTemplateLoader = new StringTemplateLoader();
+        stringTemplateLoader.putTemplate("s.ftl", "s");
+
+        IndexedTemplateLoader tl = new IndexedTemplateLoader(new MultiTemplateLoader(new TemplateLoader[] {
+                fileTemplateLoader, stringTemplateLoader }));
+        assertFalse(tl.isIndexed());
+        assertNull(tl.getIndexedTemplateNames());
+        cfg.setTemplateLoader(tl);
+        assertEquals("s", cfg.getTemplate("s.ftl").toString());
+        assertEquals(listOf("s_en_US.ftl", "s_en.ftl", "s.ftl"), fileTemplateLoader.names);
+    }
+
+    private static List<String> listOf(String... items) {
+        List<String> list = new ArrayList<>();
+        for (String item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    private static void sleepAtLeastAMillisecond() {
+        long startTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() <= startTime) {
+            Thread.yield();
+        }
+    }
+
+    private static class RecordingFileTemplateLoader extends FileTemplateLoader {
+        private final List<String> names = new ArrayList<>();
+
+        RecordingFileTemplateLoader(File baseDir) throws IOException {
+            super(baseDir);
+        }
+
+        @Override
+        public Object findTemplateSource(String name) throws IOException {
+            names.add(name);
+            return super.findTemplateSource(name);
+        }
+    }
+
+}
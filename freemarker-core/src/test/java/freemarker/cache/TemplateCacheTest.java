@@ -25,11 +25,14 @@ import java.io.IOException;
 import java.io.Reader;
 import java.net.URL;
 import java.util.Locale;
+import java.util.Map;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import freemarker.core.ParseException;
 import freemarker.template.Configuration;
@@ -200,6 +203,75 @@ public class TemplateCacheTest {
         assertEquals("1_en v2", cfg.getTemplate("1.ftl", Locale.UK).toString());        
     }
 
+    @Test
+    public void testRemovalWithDependents() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setCacheStorage(new StrongCacheStorage());
+        cfg.setLocale(Locale.US);
+        StringTemplateLoader loader = new StringTemplateLoader();
+        cfg.setTemplateLoader(loader);
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+
+        Map<String, String> sources = ImmutableMap.of(
+                "page.ftl", "<#include 'inc/header.ftl'>page v1",
+                "other.ftl", "<#import '/lib.ftl' as lib>other v1",
+                "unrelated.ftl", "<#include 'x' + '.ftl'>unrelated v1",
+                "inc/header.ftl", "<#import '../lib.ftl' as lib>header v1",
+                "lib.ftl", "lib v1");
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            loader.putTemplate(source.getKey(), source.getValue());
+        }
+
+        assertEquals(ImmutableSet.of("inc/header.ftl"), cfg.getTemplate("page.ftl").getDependencyNames());
+        assertEquals(ImmutableSet.of("lib.ftl"), cfg.getTemplate("inc/header.ftl").getDependencyNames());
+        assertEquals(ImmutableSet.of("lib.ftl"), cfg.getTemplate("other.ftl").getDependencyNames());
+        assertEquals(ImmutableSet.of(), cfg.getTemplate("unrelated.ftl").getDependencyNames());
+        assertEquals("lib v1", cfg.getTemplate("lib.ftl").toString());
+        assertEquals("lib v1", cfg.getTemplate("lib.ftl", Locale.GERMANY).toString());
+
+        assertEquals(ImmutableSet.of("inc/header.ftl", "page.ftl", "other.ftl"),
+                cfg.getDependentTemplateNames("lib.ftl"));
+        assertEquals(ImmutableSet.of("page.ftl"), cfg.getDependentTemplateNames("/inc/./header.ftl"));
+        assertEquals(ImmutableSet.of(), cfg.getDependentTemplateNames("page.ftl"));
+
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            loader.putTemplate(source.getKey(), source.getValue().replace("v1", "v2"));
+        }
+        assertEquals(ImmutableSet.of("inc/header.ftl", "page.ftl"),
+                cfg.removeTemplateAndDependentsFromCache("inc/header.ftl"));
+        // Dependents were removed, but the dependencies and the unrelated templates weren't:
+        assertThat(cfg.getTemplate("page.ftl").toString(), Matchers.endsWith("page v2"));
+        assertThat(cfg.getTemplate("inc/header.ftl").toString(), Matchers.endsWith("header v2"));
+        assertEquals("lib v1", cfg.getTemplate("lib.ftl").toString());
+        assertThat(cfg.getTemplate("other.ftl").toString(), Matchers.endsWith("other v1"));
+
+        assertEquals(ImmutableSet.of("lib.ftl", "inc/header.ftl", "page.ftl", "other.ftl"),
+                cfg.removeTemplateAndDependentsFromCache("lib.ftl"));
+        assertThat(cfg.getTemplate("other.ftl").toString(), Matchers.endsWith("other v2"));
+        assertEquals("lib v2", cfg.getTemplate("lib.ftl").toString());
+        assertEquals("lib v2", cfg.getTemplate("lib.ftl", Locale.GERMANY).toString());
+        assertThat(cfg.getTemplate("unrelated.ftl").toString(), Matchers.endsWith("unrelated v1"));
+    }
+
+    @Test
+    public void testRemovalWithDependentsCycle() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setCacheStorage(new StrongCacheStorage());
+        StringTemplateLoader loader = new StringTemplateLoader();
+        cfg.setTemplateLoader(loader);
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+
+        loader.putTemplate("a.ftl", "<#import 'b.ftl' as b>");
+        loader.putTemplate("b.ftl", "<#import 'a.ftl' as a>");
+        cfg.getTemplate("a.ftl");
+        cfg.getTemplate("b.ftl");
+        assertEquals(ImmutableSet.of("b.ftl", "a.ftl"), cfg.getDependentTemplateNames("a.ftl"));
+        assertEquals(ImmutableSet.of("a.ftl", "b.ftl"), cfg.removeTemplateAndDependentsFromCache("a.ftl"));
+
+        cfg.clearTemplateCache();
+        assertEquals(ImmutableSet.of(), cfg.getDependentTemplateNames("a.ftl"));
+    }
+
     @Test
     public void testZeroUpdateDelay() throws IOException {
         Configuration cfg = new Configuration();
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateNotFoundException;
+
+public class TemplateChangeWatchingTest {
+
+    private static final long MAX_WAIT_MILLIS = 30000;
+
+    private File templateRootDir;
+    private CountingFileTemplateLoader fileTemplateLoader;
+    private InvalidationCountingCacheStorage cacheStorage;
+    private Configuration cfg;
+
+    @Before
+    public void setup() throws IOException {
+        templateRootDir = Files.createTempDir();
+        write("foo.ftl", "foo");
+        write("sub/bar.ftl", "bar");
+        write("sub/bar_en.ftl", "bar_en");
+        write("main.ftl", "<#include 'inc.ftl'>");
+        write("inc.ftl", "inc");
+
+        fileTemplateLoader = new CountingFileTemplateLoader(templateRootDir);
+        cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setLocale(Locale.US);
+        cfg.setTemplateLoader(fileTemplateLoader);
+        cacheStorage = new InvalidationCountingCacheStorage();
+        cfg.setCacheStorage(cacheStorage);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        cfg.setTemplateChangeWatching(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cfg.setTemplateChangeWatching(false);
+        FileUtils.deleteDirectory(templateRootDir);
+    }
+
+    @Test
+    public void testNoUpdateChecks() throws Exception {
+        assertEquals("foo", cfg.getTemplate("foo.ftl").toString());
+        int lastModifiedCalls = fileTemplateLoader.lastModifiedCalls.get();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("foo", cfg.getTemplate("foo.ftl").toString());
+        }
+        assertEquals(lastModifiedCalls, fileTemplateLoader.lastModifiedCalls.get());
+
+        write("foo.ftl", "foo2");
+        waitForTemplateContent("foo.ftl", "foo2");
+    }
+
+    @Test
+    public void testLocalizedSource() throws Exception {
+        assertEquals("bar_en", cfg.getTemplate("sub/bar.ftl").toString());
+
+        write("sub/bar_en.ftl", "bar_en2");
+        waitForTemplateContent("sub/bar.ftl", "bar_en2");
+
+        assertTrue(new File(templateRootDir, "sub/bar_en.ftl").delete());
+        waitForTemplateContent("sub/bar.ftl", "bar");
+    }
+
+    @Test
+    public void testCreation() throws Exception {
+        try {
+            cfg.getTemplate("new.ftl");
+            fail();
+        } catch (TemplateNotFoundException e) {
+            // Expected
+        }
+        write("new.ftl", "new");
+        waitForTemplateContent("new.ftl", "new");
+
+        write("newDir/new.ftl", "new2");
+        waitForTemplateContent("newDir/new.ftl", "new2");
+        write("newDir/new.ftl", "new3");
+        waitForTemplateContent("newDir/new.ftl", "new3");
+    }
+
+    @Test
+    public void testDependentsRemoved() throws Exception {
+        Template main = cfg.getTemplate("main.ftl");
+        assertSame(main, cfg.getTemplate("main.ftl"));
+        // Otherwise waitForTemplateContent could load the changed inc.ftl before the watcher noticed the change:
+        assertEquals("inc", cfg.getTemplate("inc.ftl").toString());
+
+        write("inc.ftl", "inc2");
+        waitForTemplateContent("inc.ftl", "inc2");
+        assertNotSame(main, cfg.getTemplate("main.ftl"));
+    }
+
+    @Test
+    public void testCloneWatchesSeparately() throws Exception {
+        Configuration clonedCfg = (Configuration) cfg.clone();
+        try {
+            assertTrue(clonedCfg.getTemplateChangeWatching());
+            assertEquals("foo", clonedCfg.getTemplate("foo.ftl").toString());
+            assertEquals("foo", cfg.getTemplate("foo.ftl").toString());
+
+            write("foo.ftl", "foo2");
+            waitForTemplateContent("foo.ftl", "foo2");
+            waitForTemplateContent(clonedCfg, "foo.ftl", "foo2");
+        } finally {
+            clonedCfg.setTemplateChangeWatching(false);
+        }
+    }
+
+    @Test
+    public void testUnwatchableTemplateLoader() throws Exception {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("t.ftl", "1", 1);
+        cfg.setTemplateLoader(tl);
+        assertTrue(cfg.getTemplateChangeWatching());
+        assertEquals("1", cfg.getTemplate("t.ftl").toString());
+
+        // Falls back to the update delay, which is 0:
+        tl.putTemplate("t.ftl", "2", 2);
+        assertEquals("2", cfg.getTemplate("t.ftl").toString());
+    }
+
+    private void write(String name, String content) throws IOException {
+        FileUtils.write(new File(templateRootDir, name), content, StandardCharsets.UTF_8);
+    }
+
+    private void waitForTemplateContent(String name, String content) throws Exception {
+        waitForTemplateContent(cfg, name, content);
+    }
+
+    /**
+     * Waits until the watcher has invalidated the cache entry, instead of polling the template in a loop. As the
+     * changed template is reloaded after each invalidation, if it's still not the expected content (as the file was
+     * read while it was being written), we wait for the next invalidation.
+     */
+    private void waitForTemplateContent(Configuration cfg, String name, String content) throws Exception {
+        long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+        int lastModifiedCalls = fileTemplateLoader.lastModifiedCalls.get();
+        long invalidationCount = cacheStorage.getInvalidationCount();
+        while (!hasTemplateContent(cfg, name, content)) {
+            invalidationCount = cacheStorage.awaitInvalidation(invalidationCount, deadline);
+            if (invalidationCount == -1) {
+                fail("Change of " + name + " wasn't detected");
+            }
+        }
+        // Only the reloading should have called getLastModified:
+        assertTrue(fileTemplateLoader.lastModifiedCalls.get() - lastModifiedCalls <= 2);
+    }
+
+    private boolean hasTemplateContent(Configuration cfg, String name, String content) throws IOException {
+        try {
+            return cfg.getTemplate(name).toString().equals(content);
+        } catch (TemplateNotFoundException e) {
+            // The watcher hasn't yet noticed the creation of the file
+            return false;
+        }
+    }
+
+    /**
+     * Notifies the waiting test thread when the watcher thread removes entries from the cache.
+     */
+    private static class InvalidationCountingCacheStorage extends StrongCacheStorage {
+
+        private long invalidationCount;
+
+        @Override
+        public void remove(Object key) {
+            super.remove(key);
+            invalidated();
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            invalidated();
+        }
+
+        private synchronized void invalidated() {
+            invalidationCount++;
+            notifyAll();
+        }
+
+        synchronized long getInvalidationCount() {
+            return invalidationCount;
+        }
+
+        /**
+         * Waits until the invalidation count is greater than the given one.
+         *
+         * @return The new invalidation count, or -1 if the deadline has passed.
+         */
+        synchronized long awaitInvalidation(long lastInvalidationCount, long deadline) throws InterruptedException {
+            while (invalidationCount <= lastInvalidationCount) {
+                long remainingMillis = deadline - System.currentTimeMillis();
+                if (remainingMillis <= 0) {
+                    return -1;
+                }
+                wait(remainingMillis);
+            }
+            return invalidationCount;
+        }
+
+    }
+
+    private static class CountingFileTemplateLoader extends FileTemplateLoader {
+
+        private final AtomicInteger lastModifiedCalls = new AtomicInteger();
+
+        CountingFileTemplateLoader(File baseDir) throws IOException {
+            super(baseDir);
+        }
+
+        @Override
+        public long getLastModified(Object templateSource) {
+            lastModifiedCalls.incrementAndGet();
+            return super.getLastModified(templateSource);
+        }
+
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+
+public class URLTemplateLoaderJarSourcesImmutableTest {
+
+    private File tempDir;
+    private URLClassLoader classLoader;
+    private Configuration cfg;
+
+    @Before
+    public void setup() throws IOException {
+        tempDir = Files.createTempDir();
+        File jarFile = new File(tempDir, "templates.jar");
+        try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile))) {
+            jarOut.putNextEntry(new ZipEntry("tpl/inJar.ftl"));
+            jarOut.write("inJar".getBytes(StandardCharsets.UTF_8));
+            jarOut.putNextEntry(new ZipEntry("tpl/inJar2_en.ftl"));
+            jarOut.write("inJar2_en".getBytes(StandardCharsets.UTF_8));
+        }
+        File classesDir = new File(tempDir, "classes");
+        FileUtils.write(new File(classesDir, "tpl/inDir.ftl"), "inDir", StandardCharsets.UTF_8);
+        classLoader = new URLClassLoader(new URL[] { jarFile.toURI().toURL(), classesDir.toURI().toURL() }, null);
+
+        cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setLocale(Locale.US);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        classLoader.close();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testImmutable() throws IOException {
+        CountingClassTemplateLoader tl = new CountingClassTemplateLoader(classLoader);
+        tl.setJarSourcesImmutable(true);
+        assertTrue(tl.getJarSourcesImmutable());
+        cfg.setTemplateLoader(tl);
+
+        assertEquals("inJar", cfg.getTemplate("inJar.ftl").toString());
+        assertEquals("inJar2_en", cfg.getTemplate("inJar2.ftl").toString());
+        int getURLCalls = tl.getURLCalls;
+        for (int i = 0; i < 3; i++) {
+            assertEquals("inJar", cfg.getTemplate("inJar.ftl").toString());
+            assertEquals("inJar2_en", cfg.getTemplate("inJar2.ftl").toString());
+        }
+        assertEquals(getURLCalls, tl.getURLCalls);
+
+        // Not in a jar, so it's still checked for update:
+        assertEquals("inDir", cfg.getTemplate("inDir.ftl").toString());
+        getURLCalls = tl.getURLCalls;
+        assertEquals("inDir", cfg.getTemplate("inDir.ftl").toString());
+        assertTrue(tl.getURLCalls > getURLCalls);
+    }
+
+    @Test
+    public void testNotImmutable() throws IOException {
+        CountingClassTemplateLoader tl = new CountingClassTemplateLoader(classLoader);
+        assertFalse(tl.getJarSourcesImmutable());
+        cfg.setTemplateLoader(tl);
+
+        assertEquals("inJar", cfg.getTemplate("inJar.ftl").toString());
+        int getURLCalls = tl.getURLCalls;
+        assertEquals("inJar", cfg.getTemplate("inJar.ftl").toString());
+        assertTrue(tl.getURLCalls > getURLCalls);
+    }
+
+    @Test
+    public void testSourceReadRepeatedly() throws IOException {
+        ClassTemplateLoader tl = new ClassTemplateLoader(classLoader, "tpl");
+        tl.setJarSourcesImmutable(true);
+        URLTemplateSource source = (URLTemplateSource) tl.findTemplateSource("inJar.ftl");
+        assertTrue(source.isImmutable());
+        try {
+            for (int i = 0; i < 2; i++) {
+                try (InputStream in = source.getInputStream()) {
+                    assertEquals("inJar", IOUtils.toString(in, StandardCharsets.UTF_8));
+                }
+            }
+        } finally {
+            source.close();
+        }
+
+        URLTemplateSource dirSource = (URLTemplateSource) tl.findTemplateSource("inDir.ftl");
+        assertFalse(dirSource.isImmutable());
+        dirSource.close();
+    }
+
+    private static class CountingClassTemplateLoader extends ClassTemplateLoader {
+
+        private int getURLCalls;
+
+        CountingClassTemplateLoader(ClassLoader classLoader) {
+            super(classLoader, "tpl");
+        }
+
+        @Override
+        protected URL getURL(String name) {
+            getURLCalls++;
+            return super.getURL(name);
+        }
+
+    }
+
+}
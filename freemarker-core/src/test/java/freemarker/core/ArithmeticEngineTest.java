@@ -123,4 +123,59 @@ public class ArithmeticEngineTest {
         assertEquals(0.9, CONSERVATIVE_ENGINE.toNumber(".9"));
     }
 
+    @Test
+    public void fastIntegerEngineSameResultsTest() throws Exception {
+        Number[] operands = new Number[] {
+                0, 1, -1, 7, (byte) 3, (short) -5, 3L,
+                Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1,
+                new BigDecimal("1.5"), 2.25, BigInteger.TEN };
+        for (Number a : operands) {
+            for (Number b : operands) {
+                assertSameValue(BIGDECIMAL_ENGINE.add(a, b), FAST_INTEGER_BIGDECIMAL_ENGINE.add(a, b));
+                assertSameValue(BIGDECIMAL_ENGINE.subtract(a, b), FAST_INTEGER_BIGDECIMAL_ENGINE.subtract(a, b));
+                assertSameValue(BIGDECIMAL_ENGINE.multiply(a, b), FAST_INTEGER_BIGDECIMAL_ENGINE.multiply(a, b));
+                assertEquals(
+                        BIGDECIMAL_ENGINE.compareNumbers(a, b), FAST_INTEGER_BIGDECIMAL_ENGINE.compareNumbers(a, b));
+                if (BIGDECIMAL_ENGINE.compareNumbers(b, 0) != 0) {
+                    assertSameValue(BIGDECIMAL_ENGINE.divide(a, b), FAST_INTEGER_BIGDECIMAL_ENGINE.divide(a, b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fastIntegerEngineResultTypesTest() throws Exception {
+        assertEquals(Integer.valueOf(3), FAST_INTEGER_BIGDECIMAL_ENGINE.add(1, 2));
+        assertEquals(Long.valueOf(Integer.MAX_VALUE + 1L), FAST_INTEGER_BIGDECIMAL_ENGINE.add(Integer.MAX_VALUE, 1));
+        assertEquals(Integer.valueOf(-1), FAST_INTEGER_BIGDECIMAL_ENGINE.subtract(1L, 2L));
+        assertEquals(
+                new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE),
+                FAST_INTEGER_BIGDECIMAL_ENGINE.add(Long.MAX_VALUE, 1));
+        assertEquals(
+                new BigDecimal(Long.MIN_VALUE).negate(),
+                FAST_INTEGER_BIGDECIMAL_ENGINE.multiply(-1, Long.MIN_VALUE));
+        assertEquals(new BigDecimal("3.5"), FAST_INTEGER_BIGDECIMAL_ENGINE.add(1, new BigDecimal("2.5")));
+
+        assertEquals(Integer.valueOf(123), FAST_INTEGER_BIGDECIMAL_ENGINE.toNumber("123"));
+        assertEquals(Long.valueOf(12345678901234L), FAST_INTEGER_BIGDECIMAL_ENGINE.toNumber("12345678901234"));
+        assertEquals(
+                new BigDecimal("12345678901234567890"),
+                FAST_INTEGER_BIGDECIMAL_ENGINE.toNumber("12345678901234567890"));
+        assertEquals(new BigDecimal("1.0"), FAST_INTEGER_BIGDECIMAL_ENGINE.toNumber("1.0"));
+        assertEquals(Double.POSITIVE_INFINITY, FAST_INTEGER_BIGDECIMAL_ENGINE.toNumber("INF"));
+    }
+
+    @Test
+    public void simpleNumberCacheTest() {
+        assertSame(toSimpleNumber(5), toSimpleNumber(5));
+        assertSame(toSimpleNumber(-128), toSimpleNumber(-128));
+        assertNotSame(toSimpleNumber(5000), toSimpleNumber(5000));
+        assertEquals(5000, toSimpleNumber(5000).getAsNumber());
+        assertEquals(new BigDecimal("5"), toSimpleNumber(new BigDecimal("5")).getAsNumber());
+    }
+
+    private static void assertSameValue(Number expected, Number actual) {
+        assertEquals(expected + " vs " + actual, 0, BIGDECIMAL_ENGINE.compareNumbers(expected, actual));
+    }
+
 }
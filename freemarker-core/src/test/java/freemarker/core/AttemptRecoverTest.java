@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class AttemptRecoverTest extends TemplateTest {
+
+    @Test
+    public void testBasics() throws IOException, TemplateException {
+        assertOutput("a<#attempt>b<#recover>r</#attempt>c", "abc");
+        assertOutput("a<#attempt>b${noSuchVar}<#recover>r</#attempt>c", "arc");
+        assertOutput("a<#attempt><#recover>r</#attempt>c", "ac");
+    }
+
+    @Test
+    public void testNested() throws IOException, TemplateException {
+        assertOutput(
+                "1<#attempt>2<#attempt>3${noSuchVar}<#recover>R1</#attempt>4<#recover>R2</#attempt>5",
+                "12R145");
+        assertOutput(
+                "1<#attempt>2<#attempt>3<#recover>R1</#attempt>4${noSuchVar}<#recover>R2</#attempt>5",
+                "1R25");
+        assertOutput(
+                "1<#attempt>2<#attempt>3${noSuchVar}<#recover>R1${noSuchVar}</#attempt>4<#recover>R2</#attempt>5",
+                "1R25");
+        assertOutput(
+                "<#attempt>a<#attempt>b<#attempt>c${noSuchVar}<#recover>C</#attempt>"
+                + "<#attempt>d<#recover>D</#attempt><#recover>B</#attempt>e<#recover>A</#attempt>",
+                "abCde");
+    }
+
+    @Test
+    public void testInsideCapture() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign x>a<#attempt>b${noSuchVar}<#recover>r</#attempt>c</#assign>[${x}]",
+                "[arc]");
+        assertOutput(
+                "<#assign x>a<#attempt>b<#recover>r</#attempt>c</#assign>[${x}]",
+                "[abc]");
+        assertOutput(
+                "<#attempt><#assign x>a${noSuchVar}</#assign><#recover>r</#attempt>[${x!'-'}]",
+                "r[-]");
+        assertOutput(
+                "<#macro m><#nested></#macro>"
+                + "<#attempt>a<@m>b<#attempt>c<#stop 'x'><#recover>C</#attempt>d${noSuchVar}</@m><#recover>R</#attempt>",
+                "R");
+    }
+
+    @Test
+    public void testLongOutput() throws IOException, TemplateException {
+        assertOutput(
+                "<#attempt><#list 1..2000 as i>${i % 10}</#list><#attempt><#list 1..2000 as i>x</#list>${noSuchVar}"
+                + "<#recover>!</#attempt><#recover>r</#attempt>"
+                + "<#assign s><#attempt><#list 1..2000 as i>${i % 10}</#list><#recover>r</#attempt></#assign>"
+                + "${s?length?c}",
+                repeat("1234567890", 200) + "!" + "2000");
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+public class AutoFlushPolicyTest {
+
+    @Test
+    public void testNoneIsDefault() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        assertSame(AutoFlushPolicy.NONE, cfg.getAutoFlushPolicy());
+        assertEquals(Collections.singletonList(12), process(cfg, "<#list 1..3 as x>${x}abc</#list>"));
+        assertEquals(Arrays.asList(4, 12), process(cfg, "<#list 1..3 as x>${x}abc<#if x == 1><#flush></#if></#list>"));
+    }
+
+    @Test
+    public void testMaxUnflushedChars() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setAutoFlushPolicy(new AutoFlushPolicy(5, 0, Collections.<String>emptySet()));
+        assertEquals(Arrays.asList(7, 14, 21, 21), process(cfg, "<#list 1..3 as x>${x}abcdef</#list>"));
+        cfg.setAutoFlush(false);
+        assertEquals(Arrays.asList(7, 14, 21), process(cfg, "<#list 1..3 as x>${x}abcdef</#list>"));
+        // Captured output isn't flushed until it's written out:
+        assertEquals(Arrays.asList(6, 15),
+                process(cfg, "<#assign x>123456789</#assign>123<#attempt>456<#recover></#attempt>${x}"));
+    }
+
+    @Test
+    public void testFlushAfterMacros() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setAutoFlushPolicy(new AutoFlushPolicy(0, 0, Arrays.asList("head", "header")));
+        assertEquals(Arrays.asList(6, 14, 15),
+                process(cfg, "<#macro head><link></#macro><#macro header>[H]</#macro><#macro other>[O]</#macro>"
+                        + "<@head /><@other />xx<@header />y"));
+        // Nothing to flush:
+        assertEquals(Arrays.asList(2),
+                process(cfg, "<#macro head></#macro><@head />xx"));
+    }
+
+    @Test
+    public void testMaxUnflushedMillis() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setAutoFlushPolicy(new AutoFlushPolicy(0, 1, Collections.<String>emptySet()));
+        Template t = new Template(null, "a${sleep()}b${sleep()}c", cfg);
+        FlushRecordingWriter out = new FlushRecordingWriter();
+        t.process(Collections.singletonMap("sleep", (freemarker.template.TemplateMethodModelEx) args -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return "";
+        }), out);
+        assertEquals(2, out.flushPositions.get(0).intValue()); // "b" was written 5 ms after "a"
+        assertEquals(3, out.flushPositions.get(out.flushPositions.size() - 1).intValue());
+    }
+
+    @Test
+    public void testSetSetting() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setSetting(Configurable.AUTO_FLUSH_POLICY_KEY,
+                "max_unflushed_chars: 8192, max_unflushed_millis: 200, flush_after_macros: head, 'page header'");
+        AutoFlushPolicy policy = cfg.getAutoFlushPolicy();
+        assertEquals(8192, policy.getMaxUnflushedChars());
+        assertEquals(200, policy.getMaxUnflushedMillis());
+        assertEquals(Arrays.asList("head", "page header"), new ArrayList<>(policy.getFlushAfterMacros()));
+        assertEquals(
+                "max_unflushed_chars: 8192, max_unflushed_millis: 200, flush_after_macros: \"head\", \"page header\"",
+                policy.toString());
+
+        cfg.setSetting(Configurable.AUTO_FLUSH_POLICY_KEY_CAMEL_CASE, "flushAfterMacros: head");
+        assertEquals(new AutoFlushPolicy(0, 0, Collections.singleton("head")), cfg.getAutoFlushPolicy());
+
+        cfg.setSetting(Configurable.AUTO_FLUSH_POLICY_KEY, "none");
+        assertSame(AutoFlushPolicy.NONE, cfg.getAutoFlushPolicy());
+
+        try {
+            cfg.setSetting(Configurable.AUTO_FLUSH_POLICY_KEY, "max_unflushed_bytes: 1");
+            fail();
+        } catch (TemplateException e) {
+            assertTrue(e.getCause().getMessage().contains("max_unflushed_bytes"));
+        }
+        try {
+            cfg.setSetting(Configurable.AUTO_FLUSH_POLICY_KEY, "max_unflushed_chars: 1, 2");
+            fail();
+        } catch (TemplateException e) {
+            assertTrue(e.getCause().getMessage().contains("exactly 1"));
+        }
+    }
+
+    private static List<Integer> process(Configuration cfg, String ftl) throws IOException, TemplateException {
+        FlushRecordingWriter out = new FlushRecordingWriter();
+        new Template(null, ftl, cfg).process(null, out);
+        return out.flushPositions;
+    }
+
+    /**
+     * Records the length of the output at each flush.
+     */
+    private static class FlushRecordingWriter extends StringWriter {
+        private final List<Integer> flushPositions = new ArrayList<>();
+
+        @Override
+        public void flush() {
+            flushPositions.add(getBuffer().length());
+        }
+    }
+
+}
@@ -70,6 +70,22 @@ public class CFormatTemplateTest extends TemplateTest {
                         + "Java: \"a'b\\\"c\\u0001\" ");
     }
 
+    @Test
+    public void testDirectlyOutputtedInterpolations() throws TemplateException, IOException {
+        addToDataModel("n", 1.5);
+        getConfiguration().setOutputFormat(JSONOutputFormat.INSTANCE);
+        for (String cFormat : new String[] { "JSON", "JavaScript", "JavaScript or JSON", "legacy", "Java", "XS" }) {
+            String ftl = ""
+                    + "<#setting c_format='" + cFormat + "'>"
+                    + "${s?c} ${s?cn} ${n?c} ${true?c} ${null?cn} ${s?json_string} ${s?js_string} ${'</x>'?js_string}";
+            String expected = getOutput(ftl.replace("}", " + ''}"));
+            assertOutput(ftl, expected);
+        }
+        assertOutput("${s?json_string}", "a'b\\\"c\\u0001");
+        assertErrorContains("${noSuchVar?json_string}", "noSuchVar");
+        assertErrorContains("${noSuchVar?c}", "noSuchVar");
+    }
+
     @Test
     public void testUnsafeSetting() throws TemplateException, IOException {
         assertErrorContains("<#setting c_format='com.example.ExploitCFormat()'>", "not allowed");
@@ -70,4 +70,27 @@ public class CapturingAssignmentTest extends TemplateTest {
                 + "<#macro m><#local x><p>${1 + 1}</#local>${x + '&'}</#macro><@m/>${x!}", "<p>2&amp;");
     }
     
+    @Test
+    public void testNestedAndRepeated() throws IOException, TemplateException {
+        assertOutput("<#list 1..3 as i><#assign x>a<#assign y>b${i}</#assign>${y}c</#assign>[${x}]</#list>",
+                "[ab1c][ab2c][ab3c]");
+        assertOutput("<#macro m><#local x><#nested></#local>(${x})</#macro>"
+                + "<@m><@m>1</@m><@m>2</@m></@m><@m></@m>",
+                "((1)(2))()");
+        assertOutput("<#assign x><@capture_output var='y'>a<#assign z>b</#assign>${z}</@></#assign>[${x}${y}]",
+                "[ab]");
+    }
+
+    @Test
+    public void testLongCapture() throws IOException, TemplateException {
+        // Grows the buffer over the maximum size that's kept in the pool
+        String s = "0123456789abcdef";
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            expected.append(s);
+        }
+        assertOutput("<#list 1..2 as _><#assign x><#list 1..10000 as _>" + s + "</#list></#assign>"
+                + "${x?length?c}|</#list>${x}", "160000|160000|" + expected);
+    }
+
 }
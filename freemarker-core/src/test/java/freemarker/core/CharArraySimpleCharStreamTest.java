@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class CharArraySimpleCharStreamTest {
+
+    private static final String[] SOURCES = {
+            "",
+            "x",
+            "${x}",
+            "a\nb\r\nc\rd\n\n${x}\r\r${y}\r\n\r\n<#if x>\n\t${x}\n</#if>",
+            "\t\ta\t${x}\tb\n\t<#list xs as x>\t${x}\t</#list>",
+            "<#macro m a b>\n  [${a}]\r\n  <#nested>\n</#macro>\n<@m a=1 b=2>\n\tn\n</@m>",
+            "<#-- comment\n\t\r\n -->\n<#assign x = 1\n + 2>${x?string(\"\t\")}",
+            "árvíz\n\t${\"tűrő\"}\n",
+            "[#ftl]\n[#if x]\n\t[=x]\n[/#if]",
+            "line1\nline2\n  ${x +}",
+            "line1\r\n\tline2 <#if>",
+            "${\"unclosed",
+            "<#if x>",
+    };
+
+    @Test
+    public void testSamePositionsAsSimpleCharStream() throws Exception {
+        for (int tabSize : new int[] { 1, 4, 8 }) {
+            Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+            cfg.setTabSize(tabSize);
+            for (String source : SOURCES) {
+                assertEquals(
+                        "tabSize=" + tabSize + ", source=" + source,
+                        parseWithReader(cfg, source), parseWithCharArray(cfg, source));
+            }
+        }
+    }
+
+    @Test
+    public void testAdjustBeginLineColumn() throws Exception {
+        assertEquals(
+                Arrays.asList("a@1:1", "b@10:20", "\t@10:24", "c@10:25", "\n@10:26", "d@11:1", "e@11:2", "\t@11:4",
+                        "f@11:5"),
+                getTokenPositions("ab\tc\nde\tf", 1, 3, 10, 20));
+        assertEquals(
+                Arrays.asList("x@5:7", "\r@5:8", "\n@5:9", "y@6:1", "\r@6:2", "z@7:1"),
+                getTokenPositions("x\r\ny\rz", 0, 1, 5, 7));
+        assertEquals(
+                Arrays.asList("x@1:1", "\n@1:2", "y@2:1", "\n@3:3", "z@4:1"),
+                getTokenPositions("x\ny\nz", 3, 2, 3, 3));
+    }
+
+    /**
+     * Reads the source as 1 character long tokens, except that the token with the given index is adjusted to the
+     * given line and column after reading the given number of characters, then it's backed up to 1 character.
+     */
+    private static List<String> getTokenPositions(
+            String source, int adjustedToken, int adjustedTokenReadLength, int newLine, int newColumn)
+            throws Exception {
+        SimpleCharStream stream = new CharArraySimpleCharStream((source + "garbage").toCharArray(), source.length());
+        stream.setTabSize(4);
+        List<String> positions = new ArrayList<>();
+        for (int i = 0; i < source.length(); i++) {
+            stream.BeginToken();
+            if (i == adjustedToken) {
+                for (int j = 1; j < adjustedTokenReadLength; j++) {
+                    stream.readChar();
+                }
+                stream.adjustBeginLineColumn(newLine, newColumn);
+                stream.backup(adjustedTokenReadLength - 1);
+            }
+            assertEquals(stream.getBeginLine(), stream.getEndLine());
+            assertEquals(stream.getBeginColumn(), stream.getEndColumn());
+            positions.add(stream.GetImage() + "@" + stream.getBeginLine() + ":" + stream.getBeginColumn());
+        }
+        return positions;
+    }
+
+    private List<String> parseWithReader(Configuration cfg, String source) throws Exception {
+        Template t = new Template(null, "", cfg);
+        try {
+            return getPositions(new FMParser(t, new StringReader(source), cfg).Root());
+        } catch (ParseException | TokenMgrError e) {
+            return getError(e);
+        }
+    }
+
+    private List<String> parseWithCharArray(Configuration cfg, String source) throws Exception {
+        Template t = new Template(null, "", cfg);
+        char[] chars = (source + "garbage").toCharArray();
+        try {
+            return getPositions(new FMParser(t, chars, source.length(), cfg).Root());
+        } catch (ParseException | TokenMgrError e) {
+            return getError(e);
+        }
+    }
+
+    private static List<String> getError(Throwable e) {
+        List<String> result = new ArrayList<>();
+        result.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+        return result;
+    }
+
+    private static List<String> getPositions(TemplateElement root) {
+        List<String> positions = new ArrayList<>();
+        addPositions(root, positions);
+        return positions;
+    }
+
+    private static void addPositions(TemplateElement element, List<String> positions) {
+        positions.add(element.getNodeTypeSymbol()
+                + "@" + element.getBeginLine() + ":" + element.getBeginColumn()
+                + "-" + element.getEndLine() + ":" + element.getEndColumn());
+        for (int i = 0; i < element.getChildCount(); i++) {
+            addPositions(element.getChild(i), positions);
+        }
+    }
+
+}
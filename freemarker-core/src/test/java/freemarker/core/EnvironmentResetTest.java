@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.SimpleHash;
+import freemarker.template.SimpleNumber;
+import freemarker.template.Template;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+
+public class EnvironmentResetTest {
+
+    private Configuration cfg;
+    private StringTemplateLoader tl;
+
+    @Before
+    public void setup() {
+        cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setLocale(Locale.US);
+        tl = new StringTemplateLoader();
+        tl.putTemplate("lib.ftl", "<#global libRuns = (libRuns!0) + 1><#assign v = 'v' + libRuns>");
+        cfg.setTemplateLoader(tl);
+    }
+
+    @Test
+    public void testStateDoesNotLeak() throws Exception {
+        tl.putTemplate("main.ftl", ""
+                + "${x} ${1.5} ${leaked!'-'} ${leakedGlobal!'-'} "
+                + "<#setting locale='de_DE'><#assign leaked = 1><#global leakedGlobal = 1>"
+                + "<#import 'lib.ftl' as l>${l.v} ${1.5}");
+        Template t = cfg.getTemplate("main.ftl");
+
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(dataModel("x", 1), out);
+        env.process();
+        assertEquals("1 1.5 - - v1 1,5", out.toString());
+
+        env.setCustomAttribute("customAttr", "x");
+        env.setTimeZone(TimeZone.getTimeZone("GMT+03"));
+
+        for (int i = 2; i < 4; i++) {
+            out = new StringWriter();
+            env.reset(dataModel("x", i), out);
+            assertEquals(Locale.US, env.getLocale());
+            assertEquals(cfg.getTimeZone(), env.getTimeZone());
+            assertNull(env.getCustomAttribute("customAttr"));
+            env.process();
+            assertEquals(i + " 1.5 - - v1 1,5", out.toString());
+        }
+    }
+
+    @Test
+    public void testCachedFormatsKept() throws Exception {
+        tl.putTemplate("main.ftl", "${n} ${n?string('0.00')}");
+        Template t = cfg.getTemplate("main.ftl");
+
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(dataModel("n", 1.5), out);
+        env.process();
+        assertEquals("1.5 1.50", out.toString());
+        TemplateNumberFormat format = env.getTemplateNumberFormat("0.00");
+
+        // The first reset has no earlier setting values to compare with, so it drops the cached values:
+        out = new StringWriter();
+        env.reset(dataModel("n", 2.5), out);
+        env.process();
+        assertEquals("2.5 2.50", out.toString());
+        assertNotSame(format, env.getTemplateNumberFormat("0.00"));
+        format = env.getTemplateNumberFormat("0.00");
+
+        out = new StringWriter();
+        env.reset(dataModel("n", 2.75), out);
+        env.process();
+        assertEquals("2.75 2.75", out.toString());
+        assertSame(format, env.getTemplateNumberFormat("0.00"));
+
+        // Settings that the cached formats depend on were changed:
+        env.setLocale(Locale.GERMANY);
+        env.setNumberFormat("0.000");
+        env.getTemplateNumberFormat("0.00");
+        out = new StringWriter();
+        env.reset(dataModel("n", 3.5), out);
+        env.process();
+        assertEquals("3.5 3.50", out.toString());
+        assertNotSame(format, env.getTemplateNumberFormat("0.00"));
+
+        // Same via the setting directive:
+        tl.putTemplate("main2.ftl", "${n} <#setting locale='de_DE'>${n?string('0.00')}");
+        t = cfg.getTemplate("main2.ftl");
+        out = new StringWriter();
+        env = t.createProcessingEnvironment(dataModel("n", 1.5), out);
+        env.process();
+        assertEquals("1.5 1,50", out.toString());
+        out = new StringWriter();
+        env.reset(dataModel("n", 2.5), out);
+        assertEquals("2.50", env.getTemplateNumberFormat("0.00").formatToPlainText(
+                new SimpleNumber(2.5)));
+    }
+
+    @Test
+    public void testConfigurationChangeBetweenResetsDropsCachedFormats() throws Exception {
+        tl.putTemplate("main.ftl", "${n}");
+        Template t = cfg.getTemplate("main.ftl");
+
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(dataModel("n", 1.5), out);
+        env.process();
+        out = new StringWriter();
+        env.reset(dataModel("n", 2.5), out);
+        env.process();
+        assertEquals("2.5", out.toString());
+        TemplateNumberFormat format = env.getTemplateNumberFormat();
+
+        cfg.setNumberFormat("0.000");
+        out = new StringWriter();
+        env.reset(dataModel("n", 3.5), out);
+        env.process();
+        assertEquals("3.500", out.toString());
+        assertNotSame(format, env.getTemplateNumberFormat());
+    }
+
+    @Test
+    public void testConfigurationChangeBeforeFirstResetDropsCachedFormats() throws Exception {
+        tl.putTemplate("main.ftl", "${n} ${d}");
+        Template t = cfg.getTemplate("main.ftl");
+
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(dataModel("n", 1.5, "d", new Timestamp(0)), out);
+        env.process();
+
+        cfg.setNumberFormat("0.000");
+        cfg.setDateTimeFormat("iso");
+        cfg.setTimeZone(TimeZone.getTimeZone("UTC"));
+        out = new StringWriter();
+        env.reset(dataModel("n", 1.5, "d", new Timestamp(0)), out);
+        env.process();
+        assertEquals("1.500 1970-01-01T00:00:00Z", out.toString());
+    }
+
+    @Test
+    public void testCantResetDuringProcessing() throws Exception {
+        tl.putTemplate("main.ftl", "<@reset />");
+        Template t = cfg.getTemplate("main.ftl");
+        Environment env = t.createProcessingEnvironment(
+                Collections.singletonMap("reset", new TemplateDirectiveModel() {
+                    @Override
+                    public void execute(Environment env, Map params, TemplateModel[] loopVars,
+                            TemplateDirectiveBody body) throws TemplateException, IOException {
+                        try {
+                            env.reset(new SimpleHash(env.getObjectWrapper()), env.getOut());
+                            fail();
+                        } catch (IllegalStateException e) {
+                            env.getOut().write("failed");
+                        }
+                    }
+                }),
+                new StringWriter());
+        env.process();
+        assertEquals("failed", env.getOut().toString());
+    }
+
+    private TemplateHashModel dataModel(String name, Object value) {
+        SimpleHash dataModel = new SimpleHash(cfg.getObjectWrapper());
+        dataModel.put(name, value);
+        return dataModel;
+    }
+
+    private TemplateHashModel dataModel(String name1, Object value1, String name2, Object value2) {
+        SimpleHash dataModel = new SimpleHash(cfg.getObjectWrapper());
+        dataModel.put(name1, value1);
+        dataModel.put(name2, value2);
+        return dataModel;
+    }
+
+}
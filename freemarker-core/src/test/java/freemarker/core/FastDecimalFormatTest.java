@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class FastDecimalFormatTest {
+
+    private static final Locale[] LOCALES = new Locale[] {
+            Locale.US, Locale.GERMANY, Locale.FRANCE, new Locale("de", "CH"), new Locale("hu", "HU"),
+            new Locale("ar", "EG"), new Locale("hi", "IN"), new Locale("th", "TH", "TH") };
+
+    private static final String[] PATTERNS = new String[] {
+            "0", "0.00", "0.###", "#,##0.###", "#,##0.00", "#,#0.###", "#0.####", "000000", "#,##0.00;(#,##0.00)",
+            "0.0;m", "'x'0'y'", "#", "#.", "0.#E0", "#,##0%", "\u00A4#,##0.00", "#,##0.00 \u00A4",
+            "0.##;; roundingMode=halfUp", "0.##;; roundingMode=ceiling", "0.##;; roundingMode=floor",
+            "0.##;; roundingMode=down", "0.##;; roundingMode=up", "0.##;; roundingMode=unnecessary",
+            "#,##0.###;; roundingMode=ceiling", "#,##0.00 \u00A4;; roundingMode=floor", "0.#;; multiplier=1000",
+            "0.#;; multiplier=3", ",000.0;; decimalSeparator=_ groupingSeparator='.'", "0.00;; zeroDigit='@'",
+            "0.00;; minusSign=m", "#,##0.00;; currencyCode=EUR" };
+
+    private static final Number[] NUMBERS = new Number[] {
+            0, 1, -1, 5, 9, 10, -10, 99, 100, 999, 1000, -1000, 12345, 123456, 1234567, -7654321,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE / 3,
+            (short) -5, (byte) 7, BigInteger.valueOf(123456789), new BigInteger("123456789012345678901234567890"),
+            0.0, -0.0, 1.0, -1.0, 1000.0, 1e15, -1e15, 9007199254740992.0, 1e20, 0.5, 1.25, 2.675, Double.NaN,
+            Double.POSITIVE_INFINITY, 3f, 1.5f,
+            new BigDecimal("0"), new BigDecimal("0.000"), new BigDecimal("-0"), new BigDecimal("0.5"),
+            new BigDecimal("-0.5"), new BigDecimal("1.5"), new BigDecimal("2.5"), new BigDecimal("-2.5"),
+            new BigDecimal("0.05"), new BigDecimal("0.045"), new BigDecimal("0.0049"), new BigDecimal("-0.0049"),
+            new BigDecimal("1234.5"), new BigDecimal("1234.5678"), new BigDecimal("-1234.5678"),
+            new BigDecimal("1E+3"), new BigDecimal("1.20E+5"), new BigDecimal("0.000001"),
+            new BigDecimal("0.000667"), new BigDecimal("-0.000667"), new BigDecimal("0.0000001"),
+            new BigDecimal("-0.0000001"), new BigDecimal("0.0004"), new BigDecimal("-0.0004"),
+            new BigDecimal("99.995"), new BigDecimal("-99.995"), new BigDecimal("999999.9999"),
+            new BigDecimal("12345678901234567890123.456789012345678901234567890") };
+
+    @Test
+    public void testSameOutputAsDecimalFormat() throws ParseException {
+        for (Locale locale : LOCALES) {
+            List<NumberFormat> formats = new ArrayList<>();
+            for (String pattern : PATTERNS) {
+                formats.add(ExtendedDecimalFormatParser.parse(pattern, locale));
+            }
+            formats.add(NumberFormat.getNumberInstance(locale));
+            formats.add(NumberFormat.getCurrencyInstance(locale));
+            formats.add(NumberFormat.getPercentInstance(locale));
+            formats.add(NumberFormat.getIntegerInstance(locale));
+            DecimalFormat negativeMultiplierFormat = ExtendedDecimalFormatParser.parse("#,##0.0#", locale);
+            negativeMultiplierFormat.setMultiplier(-7);
+            formats.add(negativeMultiplierFormat);
+
+            for (NumberFormat format : formats) {
+                if (!(format instanceof DecimalFormat)) {
+                    continue;
+                }
+                DecimalFormat df = (DecimalFormat) format;
+                FastDecimalFormat fastFormat = FastDecimalFormat.compile(df);
+                if (fastFormat == null) {
+                    continue;
+                }
+                for (Number n : NUMBERS) {
+                    String fastResult = fastFormat.format(n);
+                    if (fastResult != null) {
+                        assertEquals(
+                                "Pattern " + df.toPattern() + ", locale " + locale + ", number " + n
+                                        + " (" + n.getClass().getSimpleName() + ")",
+                                df.format(n), fastResult);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCommonFormatsSupported() throws ParseException {
+        for (Locale locale : LOCALES) {
+            for (String pattern : new String[] { "0", "0.00", "#,##0.###", "#,##0.00;; roundingMode=halfUp" }) {
+                assertNotNull(pattern + ", " + locale,
+                        FastDecimalFormat.compile(ExtendedDecimalFormatParser.parse(pattern, locale)));
+            }
+            assertNotNull(locale.toString(),
+                    FastDecimalFormat.compile((DecimalFormat) NumberFormat.getNumberInstance(locale)));
+        }
+    }
+
+    @Test
+    public void testUnsupported() throws ParseException {
+        assertNull(FastDecimalFormat.compile(ExtendedDecimalFormatParser.parse("0.##E0", Locale.US)));
+        for (String roundingMode : new String[] { "up", "down", "ceiling", "floor" }) {
+            assertNull(roundingMode, FastDecimalFormat.compile(
+                    ExtendedDecimalFormatParser.parse("0.##;; roundingMode=" + roundingMode, Locale.US)));
+        }
+
+        FastDecimalFormat fastFormat = FastDecimalFormat.compile(
+                ExtendedDecimalFormatParser.parse("0.##", Locale.US));
+        assertNull(fastFormat.format(0.5));
+        assertNull(fastFormat.format(Double.NaN));
+        assertNull(fastFormat.format(-0.0));
+        assertNull(fastFormat.format(Long.MIN_VALUE));
+        assertNull(fastFormat.format(new BigInteger("123456789012345678901234567890")));
+        assertEquals("1.5", fastFormat.format(new BigDecimal("1.5")));
+        assertEquals("15", fastFormat.format(15.0));
+    }
+
+}
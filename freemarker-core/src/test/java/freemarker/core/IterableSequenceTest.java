@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.DefaultArrayAdapter;
+import freemarker.template.DefaultListAdapter;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.test.TemplateTest;
+
+public class IterableSequenceTest extends TemplateTest {
+
+    private static final DefaultObjectWrapper OW
+            = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_33).build();
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setNumberFormat("c");
+        return cfg;
+    }
+
+    @Test
+    public void testListing() throws Exception {
+        for (Object xs : createSequences("a", "b", "b", "c")) {
+            addToDataModel("xs", xs);
+            assertOutput("<#list xs as x>${x}<#sep>,</#list>", "a,b,b,c");
+            assertOutput("<#list xs as x>${x?index}${x?has_next?c[0]}<#if x == 'b'><#break></#if>;</#list>",
+                    "0t;1t");
+            assertOutput("<#list xs><#items as x>${x}</#items><#else>-</#list>", "abbc");
+            assertOutput("${xs?join(', ')}", "a, b, b, c");
+            assertOutput("${xs?filter(x -> x != 'b')?join(', ')}", "a, c");
+            assertOutput("${xs?map(x -> x?upper_case)?join(', ')}", "A, B, B, C");
+            assertOutput("<#list xs?filter(x -> x != 'a') as x>${x}</#list>", "bbc");
+            assertOutput("${xs?seq_contains('c')?c} ${xs?seq_contains('d')?c}", "true false");
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        for (Object xs : createSequences()) {
+            addToDataModel("xs", xs);
+            assertOutput("<#list xs as x>${x}<#else>-</#list>", "-");
+            assertOutput("${xs?join(', ', 'empty')}", "empty");
+            assertOutput("${xs?seq_contains('c')?c}", "false");
+        }
+    }
+
+    @Test
+    public void testNullItems() throws Exception {
+        for (Object xs : createSequences(1, null, 2)) {
+            addToDataModel("xs", xs);
+            assertOutput("<#list xs as x>${x!'null'}<#sep>,</#list>", "1,null,2");
+            assertOutput("${xs?join(',')}", "1,2");
+        }
+    }
+
+    @Test
+    public void testPrimitiveArrays() throws Exception {
+        addToDataModel("xs", new boolean[] { true, true, false });
+        assertOutput("<#list xs as x>${x?c}<#sep>,</#list>", "true,true,false");
+        addToDataModel("xs", new char[] { 'a', 'b' });
+        assertOutput("${xs?join('')} ${xs?seq_contains('b')?c}", "ab true");
+        addToDataModel("xs", new byte[] { 1, 1, 2 });
+        assertOutput("${xs?map(x -> x * 2)?join(',')}", "2,2,4");
+    }
+
+    @Test
+    public void testSameImmutableModelReused() throws TemplateModelException {
+        String s = "s";
+        Integer n = 1000;
+        StringBuilder mutable = new StringBuilder();
+        TemplateModelIterator it = ((_IterableSequence) DefaultListAdapter.adapt(
+                Arrays.asList(s, s, n, n, mutable, mutable), OW)).sequenceIterator();
+        TemplateModel s1 = it.next();
+        assertSame(s1, it.next());
+        TemplateModel n1 = it.next();
+        assertSame(n1, it.next());
+        TemplateModel m1 = it.next();
+        assertNotSame(m1, it.next());
+        assertFalse(it.hasNext());
+
+        it = ((_IterableSequence) DefaultArrayAdapter.adapt(new int[] { 5, 5 }, OW)).sequenceIterator();
+        assertSame(it.next(), it.next());
+    }
+
+    @Test
+    public void testRandomAccessListShrunkDuringIteration() throws TemplateModelException {
+        List<Object> list = new ArrayList<>(Arrays.asList("a", "b", "c"));
+        DefaultListAdapter seq = DefaultListAdapter.adapt(list, OW);
+        TemplateModelIterator it = ((_IterableSequence) seq).sequenceIterator();
+        assertEquals("a", OW.unwrap(it.next()));
+        list.remove(2);
+        assertEquals("b", OW.unwrap(it.next()));
+        // Like get(int) for an index that's out of bounds:
+        assertTrue(it.hasNext());
+        assertNull(it.next());
+        assertNull(seq.get(2));
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Returns sequences with the given items that support {@link _IterableSequence} in different ways.
+     */
+    private static List<Object> createSequences(Object... items) {
+        List<Object> arrayList = new ArrayList<>(Arrays.asList(items));
+        return Arrays.asList(
+                DefaultListAdapter.adapt(arrayList, OW),
+                DefaultListAdapter.adapt(new NonRandomAccessList(arrayList), OW),
+                DefaultArrayAdapter.adapt(items, OW));
+    }
+
+    /**
+     * A list that's neither {@link java.util.RandomAccess} nor {@link java.util.AbstractSequentialList}, and fails if
+     * it's accessed by index, so it must be walked through with its iterator.
+     */
+    private static class NonRandomAccessList extends AbstractList<Object> {
+
+        private final List<Object> items;
+
+        private NonRandomAccessList(List<Object> items) {
+            this.items = Collections.unmodifiableList(items);
+        }
+
+        @Override
+        public Object get(int index) {
+            throw new AssertionError("Shouldn't be accessed by index");
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return items.iterator();
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+    }
+
+}
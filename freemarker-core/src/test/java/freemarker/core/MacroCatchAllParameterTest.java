@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.test.TemplateTest;
+
+public class MacroCatchAllParameterTest extends TemplateTest {
+
+    private static final String DEFS = ""
+            + "<#macro m a b=a + 1 o...>"
+            + "${a} ${b} <#if o?isSequence>s${o?size}<#list o as v> ${v}</#list>"
+            + "<#else>h${o?size}<#list o as k, v> ${k}=${v}</#list></#if>"
+            + "</#macro>"
+            + "<#function f a o...><#return '${a} s${o?size}'></#function>";
+
+    @Test
+    public void testEmptyCatchAll() throws IOException, TemplateException {
+        assertOutput(DEFS + "<@m a=1 />", "1 2 h0");
+        assertOutput(DEFS + "<@m 1 />", "1 2 s0");
+        assertErrorContains(DEFS + "<@m />", "\"a\"", "not specified");
+        assertOutput(DEFS + "${f(1)}", "1 s0");
+        assertOutput(DEFS + "<@m?withArgs({'a': 1}) />", "1 2 h0");
+        assertOutput(DEFS + "<@m?withArgs([1, 5]) />", "1 5 s0");
+        assertOutput(DEFS + "<@m?withArgsLast([1]) />", "1 2 s0");
+    }
+
+    @Test
+    public void testNonEmptyCatchAll() throws IOException, TemplateException {
+        assertOutput(DEFS + "<@m a=1 x=2 y=3 />", "1 2 h2 x=2 y=3");
+        assertOutput(DEFS + "<@m 1 2 3 4 />", "1 2 s2 3 4");
+        assertOutput(DEFS + "${f(1, 2, 3)}", "1 s2");
+        assertOutput(DEFS + "<@m?withArgs({'x': 2}) a=1 />", "1 2 h1 x=2");
+        assertOutput(DEFS + "<@m?withArgsLast([7, 8, 9]) 1 />", "1 7 s2 8 9");
+        assertErrorContains(DEFS + "<@m?withArgs({'x': 2}) 1 2 3 />", "both named and positional");
+    }
+
+    @Test
+    public void testEmptyCatchAllModelType() throws IOException, TemplateException {
+        addToDataModel("className", new TemplateMethodModelEx() {
+            @Override
+            public Object exec(List args) throws TemplateModelException {
+                return args.get(0).getClass().getSimpleName();
+            }
+        });
+        String defs = "<#macro m o...>${className(o)}</#macro><#function f o...><#return className(o)></#function>";
+        assertOutput(defs + "<@m /> <@m x=1 /> <@m 1 /> <@m?withArgs([]) /> ${f()}",
+                "SimpleSequence SimpleHash SimpleSequence SimpleSequence SimpleSequence");
+    }
+
+    @Test
+    public void testEmptyCatchAllReadIndirectly() throws IOException, TemplateException {
+        assertOutput("<#macro m a o...><#list .locals as k, v>${k}:${v?size} </#list></#macro>"
+                + "<@m a=[1] /><@m [1] />", "a:1 o:0 a:1 o:0 ");
+        assertOutput("<#macro m a o...><#list .args as k, v>${k}=${v} </#list></#macro><@m a=1 /><@m 1 />",
+                "a=1 a=1 ");
+        assertOutput("<#macro m o...><#local o = 'x'>${o}</#macro><@m /> <@m y=1 />", "x x");
+        assertOutput("<#macro m o...><#if o?isHash>h<#else>s</#if><#local o = 'x'>${o}</#macro><@m x=1 /><@m />",
+                "hxsx");
+    }
+
+    @Test
+    public void testCatchAllIsFreshPerCall() throws IOException, TemplateException {
+        assertOutput(DEFS + "<@m a=1 x=2 /> <@m a=1 /> <@m a=1 y=3 />", "1 2 h1 x=2 1 2 h0 1 2 h1 y=3");
+        assertOutput(DEFS + "<@m 1 2 3 /> <@m 1 /> <@m 1 2 4 />", "1 2 s1 3 1 2 s0 1 2 s1 4");
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.StringReader;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.ext.dom.NodeModel;
+import freemarker.template.Configuration;
+import freemarker.test.TemplateTest;
+
+public class NodeHandlerDispatchTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setTemplateLoader(new StringTemplateLoader());
+        return cfg;
+    }
+
+    @Before
+    public void addDoc() throws Exception {
+        addToDataModel("doc", NodeModel.parse(new InputSource(new StringReader(
+                "<r xmlns:x='http://example.com/x'><a>1</a><b>2</b><a>3</a><x:a>4</x:a><c>5</c></r>"))));
+    }
+
+    @Test
+    public void testBasics() throws Exception {
+        assertOutput("<#recurse doc>"
+                + "<#macro r><#recurse></#macro>"
+                + "<#macro a>A(<#recurse>)</#macro>"
+                + "<#macro b>B(<#recurse>)</#macro>"
+                + "<#macro @element>?(<#recurse>)</#macro>",
+                "A(1)B(2)A(3)?(4)?(5)");
+    }
+
+    @Test
+    public void testNamespacePrefixes() throws Exception {
+        assertOutput("<#ftl ns_prefixes={'y': 'http://example.com/x'}>"
+                + "<#recurse doc>"
+                + "<#macro r><#recurse></#macro>"
+                + "<#macro a>A(<#recurse>)</#macro>"
+                + "<#macro 'y:a'>YA(<#recurse>)</#macro>"
+                + "<#macro @element>?(<#recurse>)</#macro>",
+                "A(1)?(2)A(3)YA(4)?(5)");
+    }
+
+    @Test
+    public void testUsingAndFallback() throws Exception {
+        addTemplate("lib1.ftl", "<#macro a>L1A(<#fallback>)</#macro>");
+        addTemplate("lib2.ftl", "<#macro a>L2A(<#recurse>)</#macro><#macro c>L2C</#macro><#macro @element>?</#macro>");
+        assertOutput("<#import 'lib1.ftl' as l1><#import 'lib2.ftl' as l2>"
+                + "<#recurse doc>"
+                + "<#macro r><#recurse using [l1, l2]>|<#recurse using l2>|<#recurse></#macro>"
+                + "<#macro a>A</#macro>"
+                + "<#macro @element>?</#macro>",
+                "L1A(L2A(1))?L1A(L2A(3))?L2C"
+                + "|L2A(1)?L2A(3)?L2C"
+                + "|A?A??");
+    }
+
+    @Test
+    public void testLazyImports() throws Exception {
+        getConfiguration().setLazyImports(true);
+        addTemplate("lib.ftl", "<#macro a>LA</#macro><#macro @element>L?</#macro>");
+        assertOutput("<#import 'lib.ftl' as l>"
+                + "<#recurse doc using 'lib.ftl'>|<#recurse doc using l>",
+                "L?|L?");
+        assertOutput("<#import 'lib.ftl' as l>"
+                + "<#visit doc.r.a[0] using l>|<#visit doc.r.a[0] using [l]>",
+                "LA|LA");
+    }
+
+    @Test
+    public void testHandlersChangedDuringProcessing() throws Exception {
+        assertOutput("<#recurse doc>"
+                + "<#macro r><#recurse></#macro>"
+                + "<#macro a>A<#assign a = a2><#assign unrelated = 1></#macro>"
+                + "<#macro a2>A2<#assign a = 'not a macro'></#macro>"
+                + "<#macro b>B<#assign c = b></#macro>"
+                + "<#macro @element>?</#macro>",
+                "ABA2?B");
+    }
+
+}
@@ -24,6 +24,9 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
 import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
@@ -358,6 +361,21 @@ public class NumberFormatTest extends TemplateTest {
         }
     }
 
+    @Test
+    public void testDirectedRoundingModesOfTinyNumbers() throws IOException, TemplateException {
+        getConfiguration().setLocale(Locale.US);
+        for (String n : new String[] { "-0.000667", "0.000667", "-0.004", "0.004" }) {
+            addToDataModel("n", new BigDecimal(n));
+            for (RoundingMode roundingMode : new RoundingMode[] {
+                    RoundingMode.FLOOR, RoundingMode.CEILING, RoundingMode.UP, RoundingMode.DOWN }) {
+                DecimalFormat df = new DecimalFormat("0.##", DecimalFormatSymbols.getInstance(Locale.US));
+                df.setRoundingMode(roundingMode);
+                assertOutput("${n?string('0.##;; roundingMode=" + roundingMode.name().toLowerCase() + "')}",
+                        df.format(new BigDecimal(n)));
+            }
+        }
+    }
+
     private static class MutableTemplateNumberModel implements TemplateNumberModel {
         
         private Number number;
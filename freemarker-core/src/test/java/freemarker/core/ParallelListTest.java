@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.test.TemplateTest;
+
+public class ParallelListTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_33);
+    }
+
+    @Test
+    public void testSameOutputAsSequential() throws IOException, TemplateException {
+        List<Integer> xs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            xs.add(i);
+        }
+        addToDataModel("xs", xs);
+        addToDataModel("it", xs.iterator());
+        String body = "${x}/${x?index}/${x?counter}/${x?has_next?c}/${x?is_first?c}<#sep>, </#sep>";
+        String sequential = getOutput("<#list xs as x>" + body + "</#list>");
+        assertOutput("<#list xs as x parallel>" + body + "</#list>", sequential);
+        assertOutput("<#list it as x parallel>" + body + "</#list>", sequential);
+        assertOutput("<#list 0..999 as x parallel>" + body + "</#list>", sequential);
+        assertOutput("<#list [] as x parallel>${x}<#else>empty</#list>", "empty");
+        assertOutput("<#list ['a'] as x parallel>${x}<#else>empty</#list>", "a");
+    }
+
+    @Test
+    public void testNestedContent() throws IOException, TemplateException {
+        assertOutput(""
+                + "<#macro row x><#local y = x * 2>[${x}:${y}<#nested y>]</#macro>"
+                + "<#function f x><#local r = x + 1><#return r></#function>"
+                + "<#assign prefix = 'p'>"
+                + "<#list 1..20 as x parallel>"
+                + "<@row x=f(x); y>${prefix}${y}</@row>"
+                + "<#list 1..2 as z>${z}<#if z == 2><#break></#if></#list>"
+                + "<#list 1..3 as z parallel>${x}${z}</#list>"
+                + "<#sep>,"
+                + "</#list>",
+                getOutput(""
+                + "<#macro row x><#local y = x * 2>[${x}:${y}<#nested y>]</#macro>"
+                + "<#function f x><#local r = x + 1><#return r></#function>"
+                + "<#assign prefix = 'p'>"
+                + "<#list 1..20 as x>"
+                + "<@row x=f(x); y>${prefix}${y}</@row>"
+                + "<#list 1..2 as z>${z}<#if z == 2><#break></#if></#list>"
+                + "<#list 1..3 as z>${x}${z}</#list>"
+                + "<#sep>,"
+                + "</#list>"));
+
+        // Inside a macro, the local variables of the macro are visible:
+        assertOutput("<#macro m><#local y = 'y'><#list 1..5 as x parallel>${x}${y}<#nested x></#list></#macro>"
+                + "<@m; x>(${x})</@m>",
+                "1y(1)2y(2)3y(3)4y(4)5y(5)");
+    }
+
+    @Test
+    public void testSettingsInherited() throws IOException, TemplateException {
+        addToDataModel("envLocale", (TemplateMethodModelEx) args ->
+                Environment.getCurrentEnvironment().getLocale().toString());
+        assertOutput("<#setting locale='de_DE'>"
+                + "<#list 1..5 as x parallel>${x / 2} ${envLocale()};</#list>",
+                "0,5 de_DE;1 de_DE;1,5 de_DE;2 de_DE;2,5 de_DE;");
+        assertErrorContains("<#list 1..5 as x parallel><#setting locale='en_US'></#list>",
+                "#setting", "not allowed", "parallel #list");
+    }
+
+    @Test
+    public void testRestrictions() throws IOException, TemplateException {
+        assertErrorContains("<#list 1..10 as x parallel><#assign y = x></#list>",
+                "#assign", "not allowed", "parallel #list");
+        assertErrorContains("<#list 1..10 as x parallel><#global y = x></#list>",
+                "#global", "not allowed", "parallel #list");
+        assertErrorContains("<#macro m><#list 1..10 as x parallel><#local y = x></#list></#macro><@m />",
+                "#local", "not allowed", "parallel #list");
+        assertErrorContains("<#list 1..10 as x parallel><#assign y>${x}</#assign></#list>",
+                "#assign", "not allowed", "parallel #list");
+        assertErrorContains("<#list 1..10 as x parallel><#assign y in .main>${x}</#assign></#list>",
+                "#assign", "not allowed", "parallel #list");
+        assertErrorContains("<#list 1..10 as x parallel><#global y>${x}</#global></#list>",
+                "#global", "not allowed", "parallel #list");
+        assertErrorContains("<#macro m><#list 1..10 as x parallel><#local y>${x}</#local></#list></#macro><@m />",
+                "#local", "not allowed", "parallel #list");
+        // The locals of a macro called inside the chunk aren't shared:
+        assertOutput("<#macro m x><#local y>${x}</#local>${y}</#macro><#list 1..3 as x parallel><@m x=x /></#list>",
+                "123");
+
+        addToDataModel("setVar", (TemplateDirectiveModel) (env, params, loopVars, body) -> {
+            String scope = params.get("scope").toString();
+            TemplateModel value = new SimpleScalar("v");
+            if (scope.equals("global")) {
+                env.setGlobalVariable("y", value);
+            } else if (scope.equals("namespace")) {
+                env.setVariable("y", value);
+            } else {
+                env.setLocalVariable("y", value);
+            }
+        });
+        assertJavaSideSetterFails("<#list 1..10 as x parallel><@setVar scope='global' /></#list>",
+                "Environment.setGlobalVariable");
+        assertJavaSideSetterFails("<#list 1..10 as x parallel><@setVar scope='namespace' /></#list>",
+                "Environment.setVariable");
+        assertJavaSideSetterFails(
+                "<#macro m><#list 1..10 as x parallel><@setVar scope='local' /></#list></#macro><@m />",
+                "Environment.setLocalVariable");
+        assertOutput("<#macro m><@setVar scope='local' />${y}</#macro><#list 1..3 as x parallel><@m /></#list>",
+                "vvv");
+        assertErrorContains("<#list 1..10 as x parallel><#macro m></#macro></#list>",
+                "macro", "not allowed", "parallel #list");
+        assertErrorContains("<#list 1..10 as x parallel><#include 'missing.ftl'></#list>",
+                "#include", "not allowed", "parallel #list");
+        assertErrorContains("<#list 1..10 as x parallel><#import 'missing.ftl' as lib></#list>",
+                "#import", "not allowed", "parallel #list");
+        assertErrorContains("<#function f><#list 1..10 as x parallel><#return x></#list></#function>${f()}",
+                "#return", "not allowed", "parallel #list");
+
+        assertErrorContains("<#list 1..10 as x parallel><#break></#list>", "#break", "must be nested inside");
+        assertErrorContains("<#list 1..2 as y><#list 1..10 as x parallel><#continue></#list></#list>",
+                "#continue", "must be nested inside");
+        assertErrorContains("<#list {'a': 1} as k, v parallel></#list>", "parallel", "key-value");
+        assertErrorContains("<#list 1..2 as x sequential></#list>", "Unsupported", "sequential");
+    }
+
+    @Test
+    public void testErrorPropagation() throws IOException, TemplateException {
+        assertErrorContains("<#list 1..100 as x parallel>${x}<#if x == 50>${noSuchVar}</#if></#list>",
+                "noSuchVar");
+        assertOutput("<#list 1..100 as x parallel><#attempt><#if x % 50 == 0>${noSuchVar}</#if><#recover>[${x}]"
+                + "</#attempt></#list>",
+                "[50][100]");
+    }
+
+    @Test
+    public void testErrorReportedOnce() throws IOException, TemplateException {
+        final AtomicInteger handlerCalls = new AtomicInteger();
+        getConfiguration().setTemplateExceptionHandler((te, env, out) -> {
+            handlerCalls.incrementAndGet();
+            TemplateExceptionHandler.RETHROW_HANDLER.handleTemplateException(te, env, out);
+        });
+        getConfiguration().setLogTemplateExceptions(false);
+        assertErrorContains("<#list 1..1000 as x parallel>${noSuchVar}</#list>", "noSuchVar");
+        assertEquals(1, handlerCalls.get());
+
+        // If the handler doesn't stop the processing, all errors are handled:
+        handlerCalls.set(0);
+        getConfiguration().setTemplateExceptionHandler((te, env, out) -> handlerCalls.incrementAndGet());
+        assertOutput("<#list 1..100 as x parallel>${noSuchVar}</#list>", "");
+        assertEquals(100, handlerCalls.get());
+    }
+
+    @Test
+    public void testSequentialWithTracer() throws IOException, TemplateException {
+        final Thread thread = Thread.currentThread();
+        final Set<Thread> tracerThreads = Collections.synchronizedSet(new HashSet<>());
+        final AtomicInteger tracedInterpolations = new AtomicInteger();
+        Template t = new Template(null, "<#list 1..100 as x parallel>${x}</#list>", getConfiguration());
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(null, out);
+        env.setTemplateProcessingTracer(new TemplateProcessingTracer() {
+            @Override
+            public void enterElement(Environment env, TracedElement tracedElement) {
+                tracerThreads.add(Thread.currentThread());
+                if (tracedElement.getDescription().startsWith("${")) {
+                    tracedInterpolations.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void exitElement(Environment env) {
+                tracerThreads.add(Thread.currentThread());
+            }
+        });
+        env.process();
+        assertEquals(Collections.singleton(thread), tracerThreads);
+        assertEquals(100, tracedInterpolations.get());
+        assertEquals(getOutput("<#list 1..100 as x>${x}</#list>"), out.toString());
+    }
+
+    private void assertJavaSideSetterFails(String ftl, String setterName) throws IOException, TemplateException {
+        try {
+            new Template(null, ftl, getConfiguration()).process(getDataModel(), new StringWriter());
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), allOf(
+                    containsString(setterName), containsString("not allowed"), containsString("parallel #list")));
+        }
+    }
+
+    @Test
+    public void testCanonicalForm() throws IOException {
+        assertEquals("<#list xs as x parallel>${x}</#list>",
+                new Template(null, "<#list xs as x parallel>${x}</#list>", getConfiguration())
+                        .getRootTreeNode().getCanonicalForm());
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.TemplateModelException;
+import freemarker.test.TemplateTest;
+
+public class PrimitiveNumberSequencesTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setNumberFormat("c");
+        return cfg;
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        assertOutput("<#list 1..5 as i>${i}<#sep>,</#list>", "1,2,3,4,5");
+        assertOutput("<#list 5..1 as i>${i}<#sep>,</#list>", "5,4,3,2,1");
+        assertOutput("${(5..1)?sort?join(',')}", "1,2,3,4,5");
+        assertOutput("${(3..<3)?sort?size}", "0");
+        assertOutput("${(5..1)?min} ${(5..1)?max}", "1 5");
+        assertOutput("${(1..*3)?min} ${(1..*3)?max}", "1 3");
+        assertOutput("${(1..5)?seq_contains(3)?c} ${(1..5)?seq_contains(6)?c} ${(1..5)?seq_contains(3.5)?c}",
+                "true false false");
+        assertOutput("${(1..5)?seq_contains('3')?c} ${(1..5)?seq_contains(3.0)?c}", "false true");
+        assertOutput("${(10..)?seq_contains(100)?c} ${(10..)?seq_contains(9)?c}", "true false");
+    }
+
+    @Test
+    public void testRangeItemsAreRegularNumbers() throws Exception {
+        assertOutput("<#list 1..3 as i>${(i + 0.5)}<#sep>,</#list>", "1.5,2.5,3.5");
+        assertOutput("<#assign s = (3..1)?sort>${s[0]?is_number?c} ${s[2] * 2}", "true 6");
+    }
+
+    @Test
+    public void testIntArray() throws Exception {
+        addToDataModel("xs", new int[] { 3, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 0 });
+        assertSameAsList(new Object[] { 3, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 0 });
+        assertOutput("${xs?seq_contains(-1)?c} ${xs?seq_contains(2)?c}", "true false");
+    }
+
+    @Test
+    public void testLongArray() throws Exception {
+        addToDataModel("xs", new long[] { 3L, Long.MAX_VALUE, -5L, Long.MIN_VALUE });
+        assertSameAsList(new Object[] { 3L, Long.MAX_VALUE, -5L, Long.MIN_VALUE });
+        assertOutput("${xs?seq_contains(-5)?c} ${xs?seq_contains(4)?c}", "true false");
+    }
+
+    @Test
+    public void testDoubleArray() throws Exception {
+        addToDataModel("xs", new double[] { 1.5, -2.25, 0.0, Double.POSITIVE_INFINITY });
+        assertSameAsList(new Object[] { 1.5, -2.25, 0.0, Double.POSITIVE_INFINITY });
+        assertOutput("${xs?seq_contains(1.5)?c} ${xs?seq_contains(2)?c}", "true false");
+    }
+
+    @Test
+    public void testDoubleArraySpecialValuesFallBack() throws Exception {
+        addToDataModel("xs", new double[] { 2.0, Double.NaN, 1.0 });
+        assertOutput("<#list xs as x>${x}<#sep>,</#list>", "2,NaN,1");
+        assertErrorContains("${xs?sort?join(',')}", "NaN");
+
+        addToDataModel("xs", new double[] { 1.0, -0.0, 0.0, -1.0 });
+        assertSameAsList(new Object[] { 1.0, -0.0, 0.0, -1.0 });
+    }
+
+    @Test
+    public void testEmptyArray() throws Exception {
+        addToDataModel("xs", new int[0]);
+        assertOutput("${xs?sort?size} ${xs?min!'-'} ${xs?max!'-'} ${xs?seq_contains(1)?c}", "0 - - false");
+    }
+
+    @Test
+    public void testArrayNotExposedAsPrimitiveWithCustomWrapper() throws TemplateModelException {
+        DefaultObjectWrapper customWrapper = new DefaultObjectWrapper(Configuration.VERSION_2_3_33) { };
+        customWrapper.setUseAdaptersForContainers(true);
+        assertEquals(_PrimitiveNumberSequence.ITEM_TYPE_NONE,
+                ((_PrimitiveNumberSequence) customWrapper.wrap(new int[] { 1 })).getPrimitiveItemType());
+
+        DefaultObjectWrapper standardWrapper = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_33).build();
+        assertEquals(_PrimitiveNumberSequence.ITEM_TYPE_INT,
+                ((_PrimitiveNumberSequence) standardWrapper.wrap(new int[] { 1 })).getPrimitiveItemType());
+    }
+
+    /**
+     * Checks that the results for the primitive array in the "xs" data-model variable are the same as for a
+     * {@link List} with the same content, as the last is never processed with the primitive fast paths.
+     */
+    private void assertSameAsList(Object[] items) throws Exception {
+        List<Object> list = new ArrayList<>();
+        for (Object item : items) {
+            list.add(item);
+        }
+        addToDataModel("ys", list);
+        for (String expression : new String[] {
+                "<#list %s as x>${x}<#sep>,</#list>",
+                "${%s?sort?join(',')}",
+                "${%s?sort?reverse?join(',')}",
+                "${%s?min} ${%s?max}",
+                "<#list %s?sort as x>${x?is_number?c}</#list>" }) {
+            String expected = getOutput(expression.replace("%s", "ys"));
+            assertOutput(expression.replace("%s", "xs"), expected);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.test.TemplateTest;
+
+public class SortBuiltInTest extends TemplateTest {
+
+    private static final String[] WORD_PARTS = {
+            "a", "A", "\u00E4", "\u00C4", "b", "B", "o", "\u00F6", "z", "Z", "-", " ", "1", "\u00DF", "ss" };
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setLocale(Locale.GERMANY);
+        return cfg;
+    }
+
+    @Test
+    public void testStringsSortedWithCollator() throws Exception {
+        Random random = new Random(1234);
+        for (int ln : new int[] { 1, 2, BuiltInsForSequences.sortBI.COLLATION_KEYS_MIN_LENGTH - 1, BuiltInsForSequences.sortBI.COLLATION_KEYS_MIN_LENGTH,
+                1000 }) {
+            List<String> words = new ArrayList<>();
+            List<Map<String, String>> rows = new ArrayList<>();
+            for (int i = 0; i < ln; i++) {
+                String word = randomWord(random);
+                words.add(word);
+                Map<String, String> row = new HashMap<>();
+                row.put("name", word);
+                rows.add(row);
+            }
+            addToDataModel("words", words);
+            addToDataModel("rows", rows);
+            addToDataModel("psort", new ParallelSortMethod());
+
+            List<String> sortedWords = new ArrayList<>(words);
+            Collections.sort(sortedWords, Collator.getInstance(Locale.GERMANY));
+            String expected = String.join("|", sortedWords);
+
+            assertOutput("<#list words?sort as w>${w}<#sep>|</#list>", expected);
+            assertOutput("<#list rows?sort_by('name') as r>${r.name}<#sep>|</#list>", expected);
+            assertOutput("<#list psort(rows, 'name') as r>${r.name}<#sep>|</#list>", expected);
+        }
+    }
+
+    @Test
+    public void testParallelSortOfOtherTypes() throws Exception {
+        addToDataModel("psort", new ParallelSortMethod());
+        assertOutput("<#list psort([3, 1, 2, 1.5, 0]) as x>${x?c}<#sep>, </#list>", "0, 1, 1.5, 2, 3");
+        assertOutput("<#list psort([true, false, true]) as x>${x?c}<#sep>, </#list>", "false, true, true");
+        assertOutput("<#list psort(['2020-01-02'?date.iso, '2020-01-01'?date.iso]) as x>${x?string.iso}"
+                + "<#sep>, </#list>", "2020-01-01, 2020-01-02");
+    }
+
+    @Test
+    public void testSortIsStable() throws Exception {
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, String> row = new HashMap<>();
+            row.put("key", i % 2 == 0 ? "x" : "a");
+            row.put("i", Integer.toString(i));
+            rows.add(row);
+        }
+        addToDataModel("rows", rows);
+        addToDataModel("psort", new ParallelSortMethod());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i < 100; i += 2) {
+            expected.append(i).append(',');
+        }
+        for (int i = 0; i < 100; i += 2) {
+            expected.append(i).append(',');
+        }
+        assertOutput("<#list rows?sort_by('key') as r>${r.i},</#list>", expected.toString());
+        assertOutput("<#list psort(rows, 'key') as r>${r.i},</#list>", expected.toString());
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int ln = random.nextInt(4);
+        for (int i = 0; i < ln; i++) {
+            sb.append(WORD_PARTS[random.nextInt(WORD_PARTS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Calls {@code ?sort}/{@code ?sort_by} with parallel sorting enabled even for short sequences.
+     */
+    private static class ParallelSortMethod implements TemplateMethodModelEx {
+
+        @Override
+        public Object exec(List args) throws TemplateModelException {
+            TemplateSequenceModel seq = (TemplateSequenceModel) args.get(0);
+            String[] keyNames = new String[args.size() - 1];
+            for (int i = 0; i < keyNames.length; i++) {
+                keyNames[i] = ((TemplateScalarModel) args.get(i + 1)).getAsString();
+            }
+            return BuiltInsForSequences.sortBI.sort(seq, keyNames.length != 0 ? keyNames : null, 2);
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.text.Normalizer;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.test.TemplateTest;
+
+public class StringComparisonNormalizationTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_33);
+    }
+
+    @Test
+    public void testTemplateComparisons() throws Exception {
+        addToDataModel("composed", "\u00C5");
+        addToDataModel("decomposed", "A\u030A");
+        addToDataModel("ligature", "\uFB01");
+        addToDataModel("nbsp", "a\u00A0b");
+        assertOutput("${(composed == decomposed)?c}", "true");
+        assertOutput("${(composed == 'A\u030A')?c}", "true");
+        assertOutput("${('\u00C5' == decomposed)?c}", "true");
+        assertOutput("${(ligature == 'fi')?c}", "true");
+        assertOutput("${(ligature != 'fi')?c}", "false");
+        assertOutput("${(nbsp == 'a b')?c}", "true");
+        assertOutput("${(composed == 'A')?c}", "false");
+        assertOutput("<#list ['x', 'A\u030A'] as s>${(s == composed)?c}<#sep>,</#list>", "false,true");
+        assertOutput("<#assign x = 'a'>${('${x}b' == 'ab')?c}", "true");
+    }
+
+    @Test
+    public void testSameResultAsNormalizer() {
+        String[] strings = {
+                "", "a", "abc", "ab", "A", "\u007F", "\u009F", "\u00A0", " ", "\u00C5", "A\u030A", "\u212B",
+                "\uFB01", "fi", "\u00BD", "1\u20442", "\uFF21", "x\u0301", "\u00E9", "e\u0301", "\uD835\uDC00" };
+        for (String left : strings) {
+            for (String right : strings) {
+                int expected = Integer.signum(Normalizer.normalize(left, Normalizer.Form.NFKC)
+                        .compareTo(Normalizer.normalize(right, Normalizer.Form.NFKC)));
+                assertEquals(left + " vs " + right, expected,
+                        Integer.signum(EvalUtil.compareNFKCNormalized(left, null, right, null)));
+                assertEquals(left + " vs " + right, expected,
+                        Integer.signum(EvalUtil.compareNFKCNormalized(
+                                left, new StringLiteral(left), right, new StringLiteral(right))));
+            }
+        }
+    }
+
+}
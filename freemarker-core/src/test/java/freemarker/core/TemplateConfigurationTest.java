@@ -159,6 +159,8 @@ public class TemplateConfigurationTest {
         SETTING_ASSIGNMENTS.put("SQLDateAndTimeTimeZone", NON_DEFAULT_TZ);
         SETTING_ASSIGNMENTS.put("URLEscapingCharset", "utf-16");
         SETTING_ASSIGNMENTS.put("autoFlush", false);
+        SETTING_ASSIGNMENTS.put("autoFlushPolicy",
+                new AutoFlushPolicy(1024, 0, Collections.<String>emptySet()));
         SETTING_ASSIGNMENTS.put("booleanFormat", "J,N");
         SETTING_ASSIGNMENTS.put("classicCompatibleAsInt", 2);
         SETTING_ASSIGNMENTS.put("dateFormat", "yyyy-#DDD");
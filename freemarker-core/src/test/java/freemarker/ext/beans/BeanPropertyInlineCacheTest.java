@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.beans;
+
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class BeanPropertyInlineCacheTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setObjectWrapper(new DefaultObjectWrapper(Configuration.VERSION_2_3_33));
+        return cfg;
+    }
+
+    @Test
+    public void testPolymorphicCallSite() throws IOException, TemplateException {
+        addToDataModel("xs", Arrays.asList(
+                new Person("A"), new Company("B"), new Person("C"), new Pet("D"), new Car("E"), new Person("F"),
+                new Company("G")));
+        assertOutput("<#list xs as x>${x.name}</#list>", "A1B2C1D3E4F1G2");
+        assertOutput("<#list xs as x>${x['name']}</#list>", "A1B2C1D3E4F1G2");
+        assertOutput("<#list xs as x><#list ['name', 'kind'] as k>${x[k]}</#list>;</#list>",
+                "A1person;B2company;C1person;D3pet;E4car;F1person;G2company;");
+    }
+
+    @Test
+    public void testFieldsAndMethods() throws IOException, TemplateException {
+        DefaultObjectWrapper ow = new DefaultObjectWrapper(Configuration.VERSION_2_3_33);
+        ow.setExposeFields(true);
+        getConfiguration().setObjectWrapper(ow);
+        addToDataModel("xs", Arrays.asList(new Person("A"), new Person("B")));
+        assertOutput("<#list xs as x>${x.publicField}${x.greet('Hi')}${x.name}</#list>", "fHi A1fHi B1");
+    }
+
+    @Test
+    public void testInvalidationOnClassIntrospectionCacheClearing() throws IOException, TemplateException {
+        DefaultObjectWrapper ow = new DefaultObjectWrapper(Configuration.VERSION_2_3_33);
+        final boolean[] kindAsName = new boolean[1];
+        ow.setMethodAppearanceFineTuner(new MethodAppearanceFineTuner() {
+            public void process(
+                    BeansWrapper.MethodAppearanceDecisionInput in, BeansWrapper.MethodAppearanceDecision out) {
+                if (kindAsName[0] && in.getMethod().getName().equals("getKind")) {
+                    try {
+                        out.setExposeAsProperty(new PropertyDescriptor("name", in.getMethod(), null));
+                    } catch (IntrospectionException e) {
+                        throw new RuntimeException(e);
+                    }
+                    out.setReplaceExistingProperty(true);
+                }
+            }
+        });
+        getConfiguration().setObjectWrapper(ow);
+        addToDataModel("x", new Person("A"));
+
+        addTemplate("t.ftl", "${x.name}");
+        assertOutputForNamed("t.ftl", "A1");
+        kindAsName[0] = true;
+        assertOutputForNamed("t.ftl", "A1");
+        ow.clearClassIntrospectionCache();
+        assertOutputForNamed("t.ftl", "person");
+        kindAsName[0] = false;
+        ow.removeFromClassIntrospectionCache(Person.class);
+        assertOutputForNamed("t.ftl", "A1");
+
+        // Replaces the ClassIntrospector of the wrapper:
+        ow.setExposureLevel(BeansWrapper.EXPOSE_PROPERTIES_ONLY);
+        kindAsName[0] = true;
+        assertOutputForNamed("t.ftl", "A1"); // As the fine tuner isn't used with EXPOSE_PROPERTIES_ONLY
+        ow.setExposureLevel(BeansWrapper.EXPOSE_SAFE);
+        assertOutputForNamed("t.ftl", "person");
+    }
+
+    @Test
+    public void testGetterException() throws IOException, TemplateException {
+        addToDataModel("xs", Arrays.asList(new Person("A"), new Person(null)));
+        assertErrorContains("<#list xs as x>${x.name}</#list>",
+                "An error has occurred when reading existing sub-variable \"name\"");
+    }
+
+    public static class Person {
+        private final String name;
+        public final String publicField = "f";
+
+        public Person(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            if (name == null) {
+                throw new IllegalStateException("No name");
+            }
+            return name + "1";
+        }
+
+        public String getKind() {
+            return "person";
+        }
+
+        public String greet(String greeting) {
+            return greeting + " ";
+        }
+    }
+
+    public static class Company {
+        private final String name;
+
+        public Company(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name + "2";
+        }
+
+        public String getKind() {
+            return "company";
+        }
+    }
+
+    public static class Pet {
+        private final String name;
+
+        public Pet(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name + "3";
+        }
+
+        public String getKind() {
+            return "pet";
+        }
+    }
+
+    public static class Car {
+        private final String name;
+
+        public Car(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name + "4";
+        }
+
+        public String getKind() {
+            return "car";
+        }
+    }
+
+}
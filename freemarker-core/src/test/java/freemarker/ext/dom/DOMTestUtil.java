@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateModel;
+
+/**
+ * The XML and the templates shared by the tests of the alternative node models ({@link NodeModel#wrapIndexed(
+ * org.w3c.dom.Node)}, {@link StAXNodeModel}) and of {@link SimpleXPath}, and the comparison of the output with that
+ * of the plain DOM {@link NodeModel}.
+ */
+final class DOMTestUtil {
+
+    static final String NS_X = "http://example.com/x";
+    static final String NS_Y = "http://example.com/y";
+
+    /** Maps the {@code x} prefix to {@link #NS_X}. */
+    static final String NS_PREFIXES_X_HEADER = "<#ftl ns_prefixes={'x': '" + NS_X + "'}>";
+
+    static final String CATALOG_XML = "<?xml version='1.0'?>\n"
+            + "<catalog xmlns:x='" + NS_X + "' xmlns:y='" + NS_Y + "'>\n"
+            + "  <item id='1'><name>A</name><price>10</price>"
+                    + "<item id='1.1'><name>A1</name></item><name>A2</name></item>\n"
+            + "  <other id='o'><item id='o.1'><name>O</name></item></other>\n"
+            + "  <item id='2' x:id='x2'><name>B<![CDATA[ & b]]></name></item>\n"
+            + "  <x:item id='x1'><x:name>XA</x:name></x:item>\n"
+            + "  <y:item>YA</y:item>\n"
+            + "  <item id='3' type='t'><name>C</name><name>C2</name></item>\n"
+            + "</catalog>";
+
+    /**
+     * Templates that only walk the {@link #CATALOG_XML} forward (no XPath, no sibling access, and nothing is read
+     * again after {@code #recurse} has gone past it), so they work with all node models.
+     */
+    static final String[] CATALOG_TEMPLATES = {
+            "${doc.catalog.item?size} ${doc.catalog.item[1].name} ${doc.catalog.item[1].@id}",
+            "<#list doc.catalog.item as i>${i.@id}:${i.name?size}<#sep>, </#list>",
+            "${doc.catalog['*']?size} ${doc.catalog.other?size} ${doc.catalog.nonexisting?size}",
+            "${doc.catalog.item.name?size} ${doc.catalog.item[2].name[1]} ${doc.catalog.other[0]?node_name}",
+            "${doc.catalog.item[0].@nonexisting?size} ${doc.catalog.item[0]['@@qname']}",
+            NS_PREFIXES_X_HEADER
+                    + "${doc.catalog['x:item'].@id} ${doc.catalog.item[1]['@x:id']} ${doc.catalog.item?size}",
+            "<#recurse doc>"
+                    + "<#macro catalog>[<#recurse>]</#macro>"
+                    + "<#macro item>(${.node.@id}:<#recurse>)</#macro>"
+                    + "<#macro name>${.node}</#macro>"
+                    + "<#macro @text>${.node?trim}</#macro>"
+                    + "<#macro @element>${.node?node_name}</#macro>",
+            NS_PREFIXES_X_HEADER
+                    + "<#recurse doc>"
+                    + "<#macro catalog><#recurse></#macro>"
+                    + "<#macro item>${.node.@id} ${.node['@x:id']?size} ${.node.name?size} ${.node['@@text']};</#macro>"
+                    + "<#macro 'x:item'>${.node['@@qname']} ${.node['@@local_name']} ${.node?node_namespace};</#macro>"
+                    + "<#macro @text></#macro><#macro @element></#macro>",
+            "<#recurse doc>"
+                    + "<#macro catalog><#recurse></#macro>"
+                    + "<#macro item>${.node?parent?node_name}/${.node?root?node_type}/${.node?ancestors?size}"
+                    + "/${.node.name[0]?node_type}/${.node.name[0]?children[0]?node_type};</#macro>"
+                    + "<#macro @text></#macro><#macro @element></#macro>",
+            "<#recurse doc>"
+                    + "<#macro catalog>"
+                    + "<#list .node?children as c>${c?node_type}<#if c?node_type == 'element'>:${c?node_name}</#if>"
+                    + "<#sep>,</#list>"
+                    + "</#macro>",
+    };
+
+    private DOMTestUtil() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Parses the XML into a namespace aware DOM.
+     */
+    static Document parse(String xml) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    /**
+     * Checks that the templates print the same with the node model created by {@code docFactory} as with
+     * {@link NodeModel#wrap(org.w3c.dom.Node)}, when it's put into the data-model as {@code doc}.
+     *
+     * @param docFactory
+     *            Called once per template, so it can return a new node model each time, if the model can only be
+     *            used once.
+     */
+    static void assertSameOutputAsDOM(Configuration cfg, String xml, String[] templates, DocFactory docFactory)
+            throws Exception {
+        Document dom = parse(xml);
+        for (String templateSource : templates) {
+            Template template = new Template(null, templateSource, cfg);
+            String expected = process(template, NodeModel.wrap(dom));
+            assertEquals(templateSource, expected, process(template, docFactory.create()));
+        }
+    }
+
+    private static String process(Template template, TemplateModel doc) throws Exception {
+        StringWriter out = new StringWriter();
+        template.process(Collections.singletonMap("doc", doc), out);
+        return out.toString();
+    }
+
+    interface DocFactory {
+        TemplateModel create() throws Exception;
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.dom;
+
+import static freemarker.ext.dom.DOMTestUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.test.TemplateTest;
+
+public class IndexedNodeModelTest extends TemplateTest {
+
+    /** Templates that use features that only the DOM based node models support. */
+    private static final String[] DOM_ONLY_TEMPLATES = {
+            "${doc.catalog.item.@id?join('|')} ${doc.catalog.item.name.@@text}",
+            "<#ftl ns_prefixes={'D': '" + NS_X + "'}>"
+                    + "${doc['N:catalog']['N:other']['N:item']['N:name']} ${doc['N:catalog']['N:item']?size} "
+                    + "${doc.catalog?size} ${doc['N:catalog'].item.@id}",
+            "${doc.catalog.item[2]?parent.item?size} ${doc.catalog.item[0].@@next_sibling_element?node_name} "
+                    + "${doc.catalog.other.@@previous_sibling_element.@id}",
+            "${doc['//name']?size} ${doc.catalog['item[@id=\"2\"]/name']} ${doc.catalog.item['name[2]']?join(',')}",
+            "<#list doc.catalog.item as i>${i?parent?node_name}<#if i?is_first>${i.item?parent.@id}</#if><#sep>,</#list>",
+    };
+
+    private final List<TemplateModel> remembered = new ArrayList<>();
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setTemplateLoader(new StringTemplateLoader());
+        return cfg;
+    }
+
+    @Test
+    public void testSameOutputAsNonIndexed() throws Exception {
+        final NodeModel doc = NodeModel.wrapIndexed(parse(CATALOG_XML));
+        DocFactory docFactory = new DocFactory() {
+            @Override
+            public TemplateModel create() {
+                return doc;
+            }
+        };
+        // Twice, so that we also use the cached results:
+        for (int i = 0; i < 2; i++) {
+            assertSameOutputAsDOM(getConfiguration(), CATALOG_XML, CATALOG_TEMPLATES, docFactory);
+            assertSameOutputAsDOM(getConfiguration(), CATALOG_XML, DOM_ONLY_TEMPLATES, docFactory);
+        }
+    }
+
+    @Test
+    public void testLookupResultsCachedPerTemplate() throws Exception {
+        addToDataModel("doc", NodeModel.wrapIndexed(parse(CATALOG_XML)));
+        addRememberMethod();
+        addTemplate("lib.ftl", "<#function items e><#return e.item></#function>");
+        assertOutput("<#import 'lib.ftl' as lib>"
+                + "${remember(doc.catalog.item)}${remember(doc.catalog.item)}"
+                + "${remember(lib.items(doc.catalog))}${remember(lib.items(doc.catalog))}"
+                + "${remember(doc.catalog.item)}"
+                + "${remember(doc.catalog.@id)}${remember(doc.catalog.@id)}"
+                + "${remember(doc.catalog['@@text'])}${remember(doc.catalog['@@text'])}",
+                "");
+        assertSame(remembered.get(0), remembered.get(1));
+        // The cache is dropped when another template does a lookup, as its namespace prefixes can differ:
+        assertNotSame(remembered.get(1), remembered.get(2));
+        assertSame(remembered.get(2), remembered.get(3));
+        assertNotSame(remembered.get(3), remembered.get(4));
+        for (int i = 1; i < 5; i++) {
+            assertEquals(3, ((TemplateSequenceModel) remembered.get(i)).size());
+        }
+        // The wrappers of the matching nodes are reused even if the lookup result isn't:
+        assertSame(
+                ((TemplateSequenceModel) remembered.get(0)).get(0),
+                ((TemplateSequenceModel) remembered.get(4)).get(0));
+        // Attribute lookups are cached as well:
+        assertSame(remembered.get(5), remembered.get(6));
+        // @@ keys aren't cached:
+        assertNotSame(remembered.get(7), remembered.get(8));
+    }
+
+    @Test
+    public void testNamespacePrefixesOfDifferentTemplates() throws Exception {
+        addToDataModel("doc", NodeModel.wrapIndexed(parse(CATALOG_XML)));
+        addTemplate("libX.ftl", "<#ftl ns_prefixes={'p': '" + NS_X + "'}><#function f e>"
+                + "<#return e['p:item']></#function>");
+        addTemplate("libY.ftl", "<#ftl ns_prefixes={'p': '" + NS_Y + "'}><#function f e>"
+                + "<#return e['p:item']></#function>");
+        assertOutput("<#import 'libX.ftl' as x><#import 'libY.ftl' as y>"
+                + "${x.f(doc.catalog).@id} ${y.f(doc.catalog)} ${x.f(doc.catalog).@id} ${doc.catalog['p:item']?size}",
+                "x1 YA x1 0");
+    }
+
+    @Test
+    public void testIndexNotInvalidatedByDOMChanges() throws Exception {
+        Document dom = parse(CATALOG_XML);
+        addToDataModel("doc", NodeModel.wrapIndexed(dom));
+        addToDataModel("nonIndexedDoc", NodeModel.wrap(dom));
+        assertOutput("${doc.catalog.item?size}", "3");
+
+        Element catalog = dom.getDocumentElement();
+        catalog.appendChild(dom.createElement("item"));
+        // The index of the child elements is built once, so even a template that has no cached lookup results doesn't
+        // see the change, as documented for wrapIndexed. Only a new wrapper does.
+        assertOutput("${doc.catalog.item?size} ${nonIndexedDoc.catalog.item?size}", "3 4");
+        addToDataModel("doc", NodeModel.wrapIndexed(dom));
+        assertOutput("${doc.catalog.item?size}", "4");
+    }
+
+    @Test
+    public void testWrappersReused() throws Exception {
+        NodeModel doc = NodeModel.wrapIndexed(parse(CATALOG_XML));
+        NodeModel catalog = (NodeModel) doc.getChildNodes().get(0);
+        assertSame(catalog, doc.getChildNodes().get(0));
+        NodeModel firstItem = (NodeModel) catalog.getChildNodes().get(1);
+        assertSame(catalog, firstItem.getParentNode());
+        assertSame(firstItem, ((NodeModel) catalog.getChildNodes().get(2)).getPreviousSibling());
+        assertSame(doc, firstItem.getDocumentNodeModel());
+
+        NodeModel nonIndexedDoc = NodeModel.wrap(doc.getNode());
+        assertNotSame(nonIndexedDoc.getChildNodes().get(0), catalog);
+        assertEquals(nonIndexedDoc.getChildNodes().get(0), catalog);
+    }
+
+    private void addRememberMethod() {
+        addToDataModel("remember", new TemplateMethodModelEx() {
+            @Override
+            public Object exec(List args) {
+                remembered.add((TemplateModel) args.get(0));
+                return "";
+            }
+        });
+    }
+
+}
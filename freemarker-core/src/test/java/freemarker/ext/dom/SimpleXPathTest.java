@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import static freemarker.ext.dom.DOMTestUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.test.TemplateTest;
+
+public class SimpleXPathTest extends TemplateTest {
+
+    private static final String[] SUPPORTED_QUERIES = {
+            "/", "/catalog", "catalog", "catalog/item", "catalog/*", "catalog/item/name", "catalog/item/@id",
+            "//item", "//name", "//item/name", "//item//name", "catalog//item", "//*", "//item/@id",
+            "catalog/item[2]", "catalog/item[3]", "catalog/item[@type]", "catalog/item[@type='t']",
+            "catalog/item[@id!='1']", "catalog/*[@id][2]", "catalog/item[2][@type]", "catalog/item[1][@type]",
+            "//item[1]", "//name[2]", "//item[@id='2']/name", "//item[@x:id='x2']", "//x:item", "//x:name",
+            "catalog/x:item/@id", "//D:item", "/catalog/item[@id=\"3\"]/name[2]", "//item[@id='1']//item",
+            "catalog/nonexistent", "//nonexistent", "catalog/item[9]",
+    };
+
+    private static final String[] UNSUPPORTED_QUERIES = {
+            "", "catalog/", "catalog//", "./item", "../item", "catalog/text()", "catalog/item[last()]",
+            "catalog/item[@id = '1']", "catalog/item[0]", "catalog/item[1 + 1]", "catalog/@*", "x:*", "//@id",
+            "catalog/item/@id/x", "child::item", "catalog | other", "item[@id='1]",
+    };
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_33);
+    }
+
+    @Test
+    public void testSameResultAsXPathEngine() throws Exception {
+        Document doc = parse(CATALOG_XML);
+        final List<String> mismatches = new ArrayList<>();
+        final Set<String> evaluatedQueries = new HashSet<>();
+        addToDataModel("doc", NodeModel.wrap(doc));
+        addToDataModel("queries", SUPPORTED_QUERIES);
+        addToDataModel("compare", new TemplateMethodModelEx() {
+            @Override
+            public Object exec(List args) throws TemplateModelException {
+                NodeModel context = (NodeModel) args.get(0);
+                String query = args.get(1).toString();
+                SimpleXPath simpleXPath = SimpleXPath.compile(query);
+                if (simpleXPath == null) {
+                    mismatches.add(query + ": not supported");
+                    return "";
+                }
+                List<Node> result = simpleXPath.evaluate(Collections.singletonList(context.node));
+                if (result == null) {
+                    // Unknown namespace prefix; the XPath engine will report the error.
+                    return "";
+                }
+                evaluatedQueries.add(query);
+                String actual = describe(result);
+                String expected = describe(context.getXPathSupport().executeQuery(context.node, query));
+                if (!actual.equals(expected)) {
+                    mismatches.add(query + ": " + actual + " instead of " + expected);
+                }
+                return "";
+            }
+        });
+        assertOutput(NS_PREFIXES_X_HEADER
+                + "<#list queries as q>${compare(doc, q)}${compare(doc.catalog, q)}</#list>", "");
+        assertOutput("<#ftl ns_prefixes={'D': '" + NS_X + "'}>"
+                + "<#list queries as q>${compare(doc, q)}</#list>", "");
+        assertEquals(Collections.emptyList(), mismatches);
+        assertEquals(new HashSet<>(Arrays.asList(SUPPORTED_QUERIES)), evaluatedQueries);
+    }
+
+    @Test
+    public void testUnsupported() {
+        for (String query : UNSUPPORTED_QUERIES) {
+            assertNull(query, SimpleXPath.compile(query));
+        }
+    }
+
+    @Test
+    public void testFastPathAndFallback() throws Exception {
+        Document doc = parse(CATALOG_XML);
+        Class prevXPathSupportClass = NodeModel.getXPathSupportClass();
+        NodeModel.setXPathSupportClass(MarkerXPathSupport.class);
+        try {
+            for (NodeModel docModel : new NodeModel[] { NodeModel.wrap(doc), NodeModel.wrapIndexed(doc) }) {
+                addToDataModel("doc", docModel);
+                // Evaluated without the XPath engine:
+                assertOutput("${doc['//item[@id=\"2\"]/name']} ${doc['//item']?size} ${doc['catalog/item[2]/@id']} "
+                        + "${doc.catalog['item/name']?size} ${doc.catalog.item['name[2]']?join(',')} "
+                        + "${doc['//nonexistent']?size} ${doc['//item[1]']?size}",
+                        "B & b 5 2 5 A2,C2 0 3");
+                assertOutput(NS_PREFIXES_X_HEADER + "${doc['//x:item/@id']} ${doc.catalog.item['@x:id']}",
+                        "x1 x2");
+                // Falls back to the XPath engine:
+                assertOutput("${doc['//item[last()]']} ${doc['catalog/item/text()']} ${doc['//@id']} "
+                        + "${doc['catalog / item']} ${doc.catalog.item['name[last()]']}",
+                        "engine engine engine engine engine");
+                // Unknown namespace prefix, so the engine reports the error:
+                assertOutput("${doc['//u:item']}", "engine");
+            }
+        } finally {
+            NodeModel.setXPathSupportClass(prevXPathSupportClass);
+        }
+    }
+
+    private static String describe(TemplateModel result) throws TemplateModelException {
+        List<Node> nodes = new ArrayList<>();
+        if (result instanceof TemplateSequenceModel) {
+            TemplateSequenceModel seq = (TemplateSequenceModel) result;
+            for (int i = 0; i < seq.size(); i++) {
+                nodes.add(((NodeModel) seq.get(i)).node);
+            }
+        }
+        return describe(nodes);
+    }
+
+    private static String describe(List<Node> nodes) {
+        StringBuilder sb = new StringBuilder();
+        for (Node node : nodes) {
+            if (sb.length() != 0) {
+                sb.append(", ");
+            }
+            sb.append(node.getNodeName());
+            if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+                sb.append('=').append(node.getNodeValue());
+            } else if (node.getNodeType() == Node.ELEMENT_NODE) {
+                sb.append('#').append(((org.w3c.dom.Element) node).getAttribute("id"));
+                sb.append('/').append(node.getTextContent());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Used instead of the real XPath engine, to show if a query was evaluated with it.
+     */
+    public static class MarkerXPathSupport implements XPathSupport {
+        @Override
+        public TemplateModel executeQuery(Object context, String xpathQuery) {
+            return new SimpleScalar("engine");
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateMethodModelEx;
+
+/**
+ * Compares the processing time and the memory usage of {@link NodeModel} and {@link StAXNodeModel}, with a template
+ * that uses {@code #recurse} on documents of growing size; it's not a real test, so it's {@link Ignore}-d, and must
+ * be run manually. The XML is generated on the fly, so it's not held in memory. The memory usage is the size of the
+ * live objects (measured after forced garbage collections) during processing, so run it with a heap that's big
+ * enough for the DOM (like {@code -Xmx2g}).
+ */
+@Ignore("Benchmark; run it manually")
+public class StAXNodeModelBenchmark {
+
+    private static final String TEMPLATE = "<#recurse doc>"
+            + "<#macro catalog><#recurse></#macro>"
+            + "<#macro item>${.node.@id}: ${.node.name} ${.node.price}<#if .node.@id?number % sampleInterval == 0>"
+            + "${sampleMemory()}</#if>\n</#macro>"
+            + "<#macro @text></#macro>";
+
+    private static long maxUsedMemory;
+
+    @Test
+    public void benchmark() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        Template template = new Template(null, TEMPLATE, cfg);
+        for (int items : new int[] { 10000, 100000, 1000000 }) {
+            System.out.println("Items: " + items);
+            // The first round is only for warming up, so that JIT-ing doesn't skew the results.
+            for (int round = 0; round < 2; round++) {
+                run("  DOM ", template, items, false, round == 0);
+                run("  StAX", template, items, true, round == 0);
+            }
+        }
+    }
+
+    private static void run(String label, Template template, int items, boolean stax, boolean warmUpOnly)
+            throws Exception {
+        System.gc();
+        maxUsedMemory = 0;
+        long startTime = System.nanoTime();
+        Object doc;
+        if (stax) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new CatalogReader(items));
+            doc = StAXNodeModel.wrap(reader);
+        } else {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            doc = NodeModel.wrap(
+                    dbf.newDocumentBuilder().parse(new InputSource(new CatalogReader(items))));
+        }
+        Map<String, Object> dataModel = new HashMap<>();
+        dataModel.put("doc", doc);
+        dataModel.put("sampleMemory", new SampleMemoryMethod());
+        dataModel.put("sampleInterval", items / 10);
+        template.process(dataModel, new DiscardingWriter());
+        long elapsedNanos = System.nanoTime() - startTime;
+        if (warmUpOnly) {
+            return;
+        }
+        System.out.printf("%s: %d ms, %.1f MB max. used heap%n",
+                label, elapsedNanos / 1000000, maxUsedMemory / 1024.0 / 1024);
+    }
+
+    private static class SampleMemoryMethod implements TemplateMethodModelEx {
+        @Override
+        public Object exec(List arguments) {
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            maxUsedMemory = Math.max(maxUsedMemory, runtime.totalMemory() - runtime.freeMemory());
+            return "";
+        }
+    }
+
+    /**
+     * Generates the XML document on the fly.
+     */
+    private static class CatalogReader extends Reader {
+        private final int items;
+        private int nextItem;
+        private String chunk = "<catalog>\n";
+        private int chunkIndex;
+
+        CatalogReader(int items) {
+            this.items = items;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (chunkIndex == chunk.length()) {
+                if (nextItem < items) {
+                    nextItem++;
+                    chunk = "  <item id='" + nextItem + "'><name>Item " + nextItem + "</name>"
+                            + "<price>" + (nextItem % 100) + ".99</price></item>\n";
+                } else if (nextItem == items) {
+                    nextItem++;
+                    chunk = "</catalog>\n";
+                } else {
+                    return -1;
+                }
+                chunkIndex = 0;
+            }
+            int count = Math.min(len, chunk.length() - chunkIndex);
+            chunk.getChars(chunkIndex, chunkIndex + count, cbuf, off);
+            chunkIndex += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to do
+        }
+    }
+
+    private static class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            // Discard
+        }
+
+        @Override
+        public void flush() {
+            // Nothing to do
+        }
+
+        @Override
+        public void close() {
+            // Nothing to do
+        }
+    }
+
+}
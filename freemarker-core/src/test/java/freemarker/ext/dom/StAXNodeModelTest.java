@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.dom;
+
+import static freemarker.ext.dom.DOMTestUtil.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import freemarker.core._StreamedNodeSequence;
+import freemarker.template.Configuration;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateNodeModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.test.TemplateTest;
+
+public class StAXNodeModelTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_33);
+    }
+
+    @Test
+    public void testSameOutputAsDOM() throws Exception {
+        assertSameOutputAsDOM(getConfiguration(), CATALOG_XML, CATALOG_TEMPLATES, new DocFactory() {
+            @Override
+            public TemplateModel create() throws Exception {
+                return wrapWithStAX(CATALOG_XML, StAXNodeModel.DEFAULT_MAX_MATERIALIZED_NODES);
+            }
+        });
+    }
+
+    @Test
+    public void testReleasingIteratorSkipsSubtreeOfReturnedNode() throws Exception {
+        TemplateNodeModel catalog = getRootElement(
+                wrapWithStAX(CATALOG_XML, StAXNodeModel.DEFAULT_MAX_MATERIALIZED_NODES));
+        TemplateModelIterator it = ((_StreamedNodeSequence) catalog.getChildNodes()).releasingIterator();
+        it.next(); // White-space
+        TemplateNodeModel firstItem = (TemplateNodeModel) it.next();
+        assertEquals("item", firstItem.getNodeName());
+        assertTrue(it.hasNext());
+        try {
+            firstItem.getChildNodes().size();
+            fail();
+        } catch (TemplateModelException e) {
+            assertThat(e.getMessage(), containsString("skipped"));
+        }
+
+        int elementCount = 0;
+        while (it.hasNext()) {
+            if (((TemplateNodeModel) it.next()).getNodeType().equals("element")) {
+                elementCount++;
+            }
+        }
+        assertEquals(5, elementCount);
+        try {
+            catalog.getChildNodes().size();
+            fail();
+        } catch (TemplateModelException e) {
+            assertThat(e.getMessage(), containsString("already streamed"));
+        }
+    }
+
+    @Test
+    public void testIteratorKeepsReturnedNodes() throws Exception {
+        TemplateNodeModel catalog = getRootElement(
+                wrapWithStAX(CATALOG_XML, StAXNodeModel.DEFAULT_MAX_MATERIALIZED_NODES));
+        TemplateModelIterator it = ((TemplateCollectionModel) catalog.getChildNodes()).iterator();
+        it.next(); // White-space
+        TemplateNodeModel firstItem = (TemplateNodeModel) it.next();
+        // Looking ahead loads the subtree of the returned node into memory, as #list needs that:
+        assertTrue(it.hasNext());
+        TemplateSequenceModel firstItemChildren = firstItem.getChildNodes();
+        assertEquals(4, firstItemChildren.size());
+        assertEquals("price", ((TemplateNodeModel) firstItemChildren.get(1)).getNodeName());
+    }
+
+    @Test
+    public void testIgnoredNodes() throws Exception {
+        addToDataModel("doc", wrapWithStAX(
+                "<!DOCTYPE r><!--c--><r>a<!--c-->b<?pi x?><e/>c</r>", StAXNodeModel.DEFAULT_MAX_MATERIALIZED_NODES));
+        assertOutput("<#list doc.r?children as c>${c?node_type}:${c?node_name}<#sep>, </#list>",
+                "text:@text, element:e, text:@text");
+    }
+
+    @Test
+    public void testCanOnlyGoForward() throws Exception {
+        addToDataModel("doc", wrapWithStAX(CATALOG_XML, StAXNodeModel.DEFAULT_MAX_MATERIALIZED_NODES));
+        assertErrorContains(
+                "<#recurse doc><#macro catalog><#recurse>${.node.item?size}</#macro>"
+                + "<#macro @element></#macro><#macro @text></#macro>",
+                "already streamed");
+
+        addToDataModel("doc", wrapWithStAX(CATALOG_XML, StAXNodeModel.DEFAULT_MAX_MATERIALIZED_NODES));
+        assertErrorContains(
+                "<#recurse doc><#macro catalog><#recurse></#macro>"
+                + "<#macro item>${.node?parent.other?size}</#macro><#macro @element></#macro><#macro @text></#macro>",
+                "already streamed");
+
+        addToDataModel("doc", wrapWithStAX(CATALOG_XML, StAXNodeModel.DEFAULT_MAX_MATERIALIZED_NODES));
+        assertErrorContains(
+                "<#recurse doc><#macro catalog><#recurse></#macro>"
+                + "<#macro item><#global first = first!.node></#macro>"
+                + "<#macro other>${first.name}</#macro><#macro @element></#macro><#macro @text></#macro>",
+                "skipped");
+    }
+
+    @Test
+    public void testMaterializationLimit() throws Exception {
+        // The catalog element has 13 child nodes, together with the white-space.
+        addToDataModel("doc", wrapWithStAX(CATALOG_XML, 12));
+        assertErrorContains("${doc.catalog.item?size}", "limit of 12", "#recurse");
+
+        // With #recurse only the subtrees of the item elements are materialized, one at a time. The biggest has 9
+        // nodes:
+        addToDataModel("doc", wrapWithStAX(CATALOG_XML, 9));
+        assertOutput("<#recurse doc><#macro catalog><#recurse></#macro>"
+                + "<#macro item>${.node.name?size}</#macro><#macro @element></#macro><#macro @text></#macro>",
+                "212");
+    }
+
+    private static TemplateNodeModel getRootElement(StAXNodeModel doc) throws TemplateModelException {
+        return (TemplateNodeModel) doc.getChildNodes().get(0);
+    }
+
+    private static StAXNodeModel wrapWithStAX(String xml, int maxMaterializedNodes) throws XMLStreamException {
+        return StAXNodeModel.wrap(
+                XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)), maxMaterializedNodes);
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.template;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import freemarker.test.TemplateTest;
+
+public class DefaultResultSetAdapterTest extends TemplateTest {
+
+    private static final String[] LABELS = { "ID", "Name", "PRICE", "ACTIVE", "CREATED", "EXTRA" };
+    private static final int[] TYPES = {
+            Types.INTEGER, Types.VARCHAR, Types.DECIMAL, Types.BOOLEAN, Types.DATE, Types.JAVA_OBJECT };
+    private static final Object[][] ROWS = {
+            { 1, "Foo", new BigDecimal("1.50"), true, java.sql.Date.valueOf("2020-01-02"), "x" },
+            { 2, "Bar", null, false, null, 123L },
+            { 0, null, BigDecimal.ZERO, null, java.sql.Date.valueOf("2021-03-04"), null } };
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        cfg.setDateFormat("yyyy-MM-dd");
+        cfg.setBooleanFormat("c");
+        return cfg;
+    }
+
+    @Test
+    public void testListing() throws IOException, TemplateException {
+        FakeResultSet fakeRs = new FakeResultSet();
+        addToDataModel("rows", DefaultResultSetAdapter.adapt(fakeRs.proxy, getConfiguration().getObjectWrapper()));
+        assertOutput(
+                "<#list rows as row>"
+                        + "${row.ID} ${row.name!'-'} ${row.Price!'-'} ${row.ACTIVE!'-'} ${row.CREATED!'-'} "
+                        + "${row.EXTRA!'-'} ${row[0]} ${row.noSuchColumn!'-'}; "
+                + "</#list>",
+                "1 Foo 1.5 true 2020-01-02 x 1 -; "
+                + "2 Bar - false - 123 2 -; "
+                + "0 - 0 - 2021-03-04 - 0 -; ");
+        assertEquals(1, fakeRs.getCallCount("getMetaData"));
+        assertEquals(ROWS.length, fakeRs.getCallCount("getInt")); // ${row[0]} doesn't read it again
+        assertEquals(ROWS.length, fakeRs.getCallCount("getObject")); // Only for the JAVA_OBJECT column
+    }
+
+    @Test
+    public void testRowAsHashAndSequence() throws IOException, TemplateException {
+        addToDataModel("rows", DefaultResultSetAdapter.adapt(
+                new FakeResultSet().proxy, getConfiguration().getObjectWrapper()));
+        assertOutput(
+                "<#list rows as row>"
+                        + "<#list row as k, v>${k}=${v!'-'}<#sep>, </#list> | "
+                        + "${row?keys?join(',')} | ${row?size} | <#list 0..<row?size as i>${row[i]!'-'}<#sep>, </#list>"
+                        + "<#break>"
+                + "</#list>",
+                "ID=1, Name=Foo, PRICE=1.5, ACTIVE=true, CREATED=2020-01-02, EXTRA=x | "
+                        + "ID,Name,PRICE,ACTIVE,CREATED,EXTRA | 6 | 1, Foo, 1.5, true, 2020-01-02, x");
+    }
+
+    @Test
+    public void testCanBeListedOnlyOnce() throws IOException, TemplateException {
+        addToDataModel("rows", DefaultResultSetAdapter.adapt(
+                new FakeResultSet().proxy, getConfiguration().getObjectWrapper()));
+        assertErrorContains(
+                "<#list rows as row>${row.ID}</#list><#list rows as row>${row.ID}</#list>",
+                "can be listed only once");
+    }
+
+    @Test
+    public void testSQLException() throws IOException, TemplateException {
+        FakeResultSet fakeRs = new FakeResultSet();
+        fakeRs.failOnColumnRead = true;
+        addToDataModel("rows", DefaultResultSetAdapter.adapt(fakeRs.proxy, getConfiguration().getObjectWrapper()));
+        assertErrorContains("<#list rows as row>${row.Name}</#list>", "read column 1 (\"ID\")");
+    }
+
+    private static class FakeResultSet implements InvocationHandler {
+
+        final ResultSet proxy = (ResultSet) Proxy.newProxyInstance(
+                FakeResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, this);
+        final ResultSetMetaData metaDataProxy = (ResultSetMetaData) Proxy.newProxyInstance(
+                FakeResultSet.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("getColumnCount")) {
+                            return LABELS.length;
+                        } else if (name.equals("getColumnLabel")) {
+                            return LABELS[(Integer) args[0] - 1];
+                        } else if (name.equals("getColumnType")) {
+                            return TYPES[(Integer) args[0] - 1];
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+        private final Map<String, Integer> callCounts = new HashMap<>();
+        private int rowIndex = -1;
+        private boolean wasNull;
+        boolean failOnColumnRead;
+
+        int getCallCount(String methodName) {
+            Integer count = callCounts.get(methodName);
+            return count != null ? count : 0;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            callCounts.put(name, getCallCount(name) + 1);
+            if (name.equals("next")) {
+                rowIndex++;
+                return rowIndex < ROWS.length;
+            } else if (name.equals("getMetaData")) {
+                return metaDataProxy;
+            } else if (name.equals("wasNull")) {
+                return wasNull;
+            } else if (name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer) {
+                if (failOnColumnRead) {
+                    throw new SQLException("Simulated failure");
+                }
+                if (rowIndex < 0 || rowIndex >= ROWS.length) {
+                    throw new SQLException("Not on a row");
+                }
+                Object value = ROWS[rowIndex][(Integer) args[0] - 1];
+                wasNull = value == null;
+                Class<?> returnType = method.getReturnType();
+                if (value == null && returnType.isPrimitive()) {
+                    return returnType == boolean.class ? (Object) Boolean.FALSE : (Object) 0;
+                }
+                return value;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+}
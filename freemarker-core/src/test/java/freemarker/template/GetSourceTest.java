@@ -20,6 +20,8 @@ package freemarker.template;
 
 import static org.junit.Assert.*;
 
+import java.io.StringWriter;
+
 import org.junit.Test;
 
 public class GetSourceTest {
@@ -49,5 +51,35 @@ public class GetSourceTest {
             assertEquals("a\n\tb\nc", t.getSource(1, 1, 1, 3));
         }
     }
-    
+
+    @Test
+    public void testGetSourceLineBreaks() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+        cfg.setTabSize(4);
+
+        Template t = new Template(null, "a\r\nb\rx\ty\t\r\n\r\nc\n", cfg);
+        assertEquals("a\r\nb\rx   y   \r\n\r\nc", t.getSource(1, 1, 1, 5));
+        assertEquals("x   y   \r\n", t.getSource(1, 3, 10, 3));
+        assertEquals("y", t.getSource(5, 3, 5, 3));
+    }
+
+    @Test
+    public void testGetSourceOfLongTemplate() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("<#-- ").append(i).append(" -->\t${x").append(i).append("}\n");
+        }
+        Template t = new Template(null, sb.toString(), cfg);
+        assertEquals("${x1999}", t.getSource(17, 2000, 24, 2000));
+        try {
+            t.process(null, new StringWriter());
+            fail();
+        } catch (TemplateException e) {
+            assertEquals(Integer.valueOf(1), e.getLineNumber());
+            assertEquals(Integer.valueOf(19), e.getColumnNumber());
+        }
+    }
+
 }
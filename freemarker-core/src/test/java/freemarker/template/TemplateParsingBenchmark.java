@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import freemarker.core.FMParser;
+
+/**
+ * Measures template parsing throughput; it's not a real test, so it's {@link Ignore}-d, and must be run manually. It
+ * compares parsing through {@link Template}'s constructor (which loads the whole source into a {@code char} array,
+ * builds the line table, and then lexes the array directly) with the {@link Reader}-based {@link FMParser}
+ * constructor, where {@link freemarker.core.SimpleCharStream} does the buffering.
+ * 
+ * <p>Note that the generated {@code FMParserTokenManager.jjMoveNfa_0} method is bigger than what HotSpot compiles by
+ * default, so the results are dominated by interpreting that. To see the cost of the rest, run with
+ * {@code -XX:-DontCompileHugeMethods}.
+ */
+@Ignore("Benchmark; run it manually")
+public class TemplateParsingBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 1000;
+
+    @Test
+    public void benchmark() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_33);
+        for (int size : new int[] { 1, 10, 100 }) {
+            String source = createSource(size);
+            System.out.println("Template length: " + source.length() + " chars");
+            // The first round is only for warming up both paths, so that their JIT-ing doesn't skew the results.
+            for (int round = 0; round < 2; round++) {
+                run("  Template constructor", source, cfg, false, round == 0);
+                run("  Reader based parser ", source, cfg, true, round == 0);
+            }
+        }
+    }
+
+    private static void run(String label, String source, Configuration cfg, boolean readerBased, boolean warmUpOnly)
+            throws IOException {
+        char[] sourceChars = source.toCharArray();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            parse(sourceChars, cfg, readerBased);
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            parse(sourceChars, cfg, readerBased);
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+        if (warmUpOnly) {
+            return;
+        }
+        System.out.printf("%s: %.1f us/template, %.1f MB/s%n",
+                label,
+                elapsedNanos / 1000.0 / MEASURED_ROUNDS,
+                (double) sourceChars.length * MEASURED_ROUNDS / (elapsedNanos / 1e9) / 1000000);
+    }
+
+    private static void parse(char[] source, Configuration cfg, boolean readerBased) throws IOException {
+        Reader reader = new CharArrayReader(source);
+        if (readerBased) {
+            Template dummyTemplate = new Template(null, new StringReader(""), cfg);
+            new FMParser(dummyTemplate, reader, cfg).Root();
+        } else {
+            new Template(null, reader, cfg);
+        }
+    }
+
+    private static String createSource(int repeats) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < repeats; i++) {
+            sb.append("<#macro m").append(i).append(" items>\n");
+            sb.append("\t<ul>\n");
+            sb.append("\t<#list items as item>\n");
+            sb.append("\t\t<li class=\"${item?index % 2 == 0?then('even', 'odd')}\">${item.name?html}</li>\n");
+            sb.append("\t</#list>\n");
+            sb.append("\t</ul>\n");
+            sb.append("</#macro>\n");
+            sb.append("<#-- Some comment -->\n");
+            sb.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.</p>\n");
+            sb.append("<#if user??>Hello ${user.name}!<#else>Hello guest!</#if>\n");
+        }
+        return sb.toString();
+    }
+
+}
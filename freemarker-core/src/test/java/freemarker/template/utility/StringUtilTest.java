@@ -130,6 +130,18 @@ public class StringUtilTest {
     private void assertEsc(String s, String javaScript, String json) {
         assertEquals(javaScript, StringUtil.jsStringEnc(s, false));
         assertEquals(json, StringUtil.jsStringEnc(s, true));
+
+        try {
+            StringWriter sw = new StringWriter();
+            StringUtil.javaScriptStringEnc(s, sw);
+            assertEquals(javaScript, sw.toString());
+
+            sw = new StringWriter();
+            StringUtil.jsonStringEnc(s, sw);
+            assertEquals(json, sw.toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private void assertFTLEsc(String s, String partAny, String partQuot, String partApos, String quoted) {
@@ -352,6 +364,13 @@ public class StringUtilTest {
         testXHTMLEnc("a&gt;", "a>");
         testXHTMLEnc("&lt;&gt;", "<>");
         testXHTMLEnc("a&lt;&gt;b", "a<>b");
+        
+        // Characters whose code is 64 more than that of a special character:
+        s = "|~fbg\u013C\u013E";
+        assertSame(s, StringUtil.XHTMLEnc(s));
+        testXHTMLEnc("|~fbg\u013C\u013E&gt;", s + ">");
+        testXHTMLEnc("x &lt; y, but y &gt; x, so x &lt;= y &amp;&amp; \u0100 &amp; z", "x < y, but y > x, so x <= y && \u0100 & z");
+        testXHTMLEnc("&quot;&#39;no escapes in this long tail, all from here on", "\"'no escapes in this long tail, all from here on");
     }
     
     private void testXHTMLEnc(String expected, String in) throws IOException {
@@ -426,6 +445,11 @@ public class StringUtilTest {
         assertEquals("x]]&gt;", StringUtil.XMLEncNQG("x]]>"));
         assertEquals("x]>", StringUtil.XMLEncNQG("x]>"));
         assertEquals("]x>", StringUtil.XMLEncNQG("]x>"));
+        
+        s = "a>b\"c'd";
+        assertSame(s, StringUtil.XMLEncNQG(s));
+        assertEquals("a>b\"c'd&lt;", StringUtil.XMLEncNQG("a>b\"c'd<"));
+        assertEquals("&lt;a>b\"c'd", StringUtil.XMLEncNQG("<a>b\"c'd"));
     }
 
     @Test
@@ -453,6 +477,34 @@ public class StringUtilTest {
         assertEquals(expected, sw.toString());
     }
 
+    @Test
+    public void jsStringEncWriterTests() throws IOException {
+        String[] samples = {
+                "", "a", "==> I/m <safe>!", "\u00E1rv\u00EDzt\u0171r\u0151 \u3020",
+                "a'b\"c\u0001", "</e>", "/e>", "-->", "]]>", "<!x", "<?x", "c<", ">", "\\",
+                "\n\r\f\b\t \u0000\u0019\u001F \u007F\u0080\u009F \u2028\u2029" };
+        for (JsStringEncCompatibility compatibility : JsStringEncCompatibility.values()) {
+            for (StringUtil.JsStringEncQuotation quotation
+                    : new StringUtil.JsStringEncQuotation[] { null, QUOTATION_MARK, APOSTROPHE }) {
+                if (quotation == APOSTROPHE && compatibility.isJSONCompatible()) {
+                    continue;
+                }
+                for (String sample : samples) {
+                    StringWriter sw = new StringWriter();
+                    StringUtil.jsStringEnc(sample, compatibility, quotation, sw);
+                    assertEquals(StringUtil.jsStringEnc(sample, compatibility, quotation), sw.toString());
+                }
+            }
+        }
+
+        try {
+            StringUtil.jsStringEnc("", JSON, APOSTROPHE, new StringWriter());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     @Test
     public void jsStringEncQuotationTests() {
         for (JsStringEncCompatibility anyCompatibility : JsStringEncCompatibility.values()) {
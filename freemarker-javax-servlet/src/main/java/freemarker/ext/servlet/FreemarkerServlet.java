@@ -224,7 +224,10 @@ import freemarker.template.utility.StringUtil;
  * This corresponds to {@link HttpServletResponse#setBufferSize(int)}. If the {@link HttpServletResponse} state doesn't
  * allow changing the buffer size, it will silently do nothing. If this init param isn't specified, then the buffer size
  * is not set by {@link FreemarkerServlet} in the HTTP response, which usually means that the default buffer size of the
- * servlet container will be used.</li>
+ * servlet container will be used. To send parts of the page to the browser before the buffer is full (and before the
+ * template processing is finished), use the {@code auto_flush_policy} init-param, like {@code
+ * <param-value>max_unflushed_chars: 8192, flush_after_macros: page_head</param-value>}; see
+ * {@link Configuration#setAutoFlushPolicy(freemarker.core.AutoFlushPolicy)}.</li>
  *
  * <li><strong>{@value #INIT_PARAM_EXCEPTION_ON_MISSING_TEMPLATE}</strong> (since 2.3.22): If {@code false} (default,
  * but not recommended), if a template is requested that's missing, this servlet responses with a HTTP 404 "Not found"